@@ -0,0 +1,172 @@
+package com.example.viperview.yolo;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Accuracy against latency of a quantized pose model next to the float16
+ * export it was made from, on a fixed image set. The float16 detections are
+ * the reference; see {@link PoseAgreement} for what the numbers mean.
+ * Latency is the median of {@link #TIMED_RUNS} runs per image after
+ * warm-up, split into preprocess, inference and decode.
+ *
+ * Put the images (JPEG or PNG) under src/androidTest/assets/pose_eval and
+ * both models under src/main/assets, then run
+ *
+ *   ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=\
+ *       com.example.viperview.yolo.QuantizedPoseComparison
+ *
+ * adding -Pandroid.testInstrumentationRunnerArguments.delegate=gpu:4 (or
+ * .quantized_model=...) to change the defaults. Results go to logcat under
+ * the QuantizedPoseComparison tag. Skipped when images or models are missing.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuantizedPoseComparison {
+
+    private static final String TAG = "QuantizedPoseComparison";
+    private static final String FLOAT_MODEL = "yolo11n-pose_float16.tflite";
+    private static final String QUANTIZED_MODEL = "yolo11n-pose_int8.tflite";
+    private static final String IMAGE_DIR = "pose_eval";
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 10;
+
+    /** Per-stage medians of one model, summed over the image set. */
+    private static final class Timing {
+        double preprocessMs;
+        double inferMs;
+        double decodeMs;
+
+        double totalMs() {
+            return preprocessMs + inferMs + decodeMs;
+        }
+
+        String summary(int images) {
+            return String.format(Locale.ROOT, "preprocess=%.2fms infer=%.2fms decode=%.2fms total=%.2fms",
+                    preprocessMs / images, inferMs / images, decodeMs / images, totalMs() / images);
+        }
+    }
+
+    @Test
+    public void quantizedAgainstFloat16() throws Exception {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        DelegateConfig config = DelegateConfig.parse(arguments.getString("delegate", "cpu:4"));
+        String quantizedModel = arguments.getString("quantized_model", QUANTIZED_MODEL);
+        // images ship with the test APK, models with the app
+        AssetManager testAssets = InstrumentationRegistry.getInstrumentation().getContext().getAssets();
+        Context app = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        List<Bitmap> images = loadImages(testAssets);
+        assumeTrue("No images under assets/" + IMAGE_DIR, !images.isEmpty());
+        assumeTrue("Missing " + FLOAT_MODEL, hasAsset(app.getAssets(), FLOAT_MODEL));
+        assumeTrue("Missing " + quantizedModel, hasAsset(app.getAssets(), quantizedModel));
+
+        PoseDetector reference = new PoseDetector(app.getAssets(), FLOAT_MODEL, 1, config);
+        PoseDetector quantized = new PoseDetector(app.getAssets(), quantizedModel, 1, config);
+        try {
+            assertNotNull(quantizedModel + " has a float input", quantized.getInputQuantization());
+            PoseAgreement agreement = new PoseAgreement();
+            PoseDetections expected = new PoseDetections();
+            PoseDetections actual = new PoseDetections();
+            Timing referenceTiming = new Timing();
+            Timing quantizedTiming = new Timing();
+            for (Bitmap image : images) {
+                measure(reference, image, expected, referenceTiming);
+                measure(quantized, image, actual, quantizedTiming);
+                agreement.add(expected, actual);
+            }
+
+            Log.i(TAG, String.format(Locale.ROOT, "%d images on %s, %s against %s", images.size(),
+                    reference.getDelegateConfig(), quantizedModel, FLOAT_MODEL));
+            Log.i(TAG, "float16 " + referenceTiming.summary(images.size()));
+            Log.i(TAG, "quantized (input " + quantized.getInputQuantization() + ", output "
+                    + (quantized.getOutputQuantization() != null ? quantized.getOutputQuantization() : "float")
+                    + ") " + quantizedTiming.summary(images.size()));
+            Log.i(TAG, String.format(Locale.ROOT, "speedup %.2fx, %s",
+                    referenceTiming.totalMs() / quantizedTiming.totalMs(), agreement.summary()));
+        } finally {
+            reference.close();
+            quantized.close();
+        }
+    }
+
+    // leaves the last run's detections in out
+    private static void measure(PoseDetector detector, Bitmap image, PoseDetections out, Timing timing)
+            throws InterruptedException {
+        double[] preprocess = new double[TIMED_RUNS];
+        double[] infer = new double[TIMED_RUNS];
+        double[] decode = new double[TIMED_RUNS];
+        PoseDetector.Session session = detector.acquireSession();
+        try {
+            for (int run = -WARMUP_RUNS; run < TIMED_RUNS; run++) {
+                long start = System.nanoTime();
+                session.preprocess(image);
+                long preprocessed = System.nanoTime();
+                session.infer();
+                long inferred = System.nanoTime();
+                session.decode(out);
+                long decoded = System.nanoTime();
+                if (run < 0)
+                    continue;
+                preprocess[run] = (preprocessed - start) / 1e6;
+                infer[run] = (inferred - preprocessed) / 1e6;
+                decode[run] = (decoded - inferred) / 1e6;
+            }
+        } finally {
+            detector.releaseSession(session);
+        }
+        timing.preprocessMs += median(preprocess);
+        timing.inferMs += median(infer);
+        timing.decodeMs += median(decode);
+    }
+
+    private static double median(double[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    private static List<Bitmap> loadImages(AssetManager assets) throws IOException {
+        List<Bitmap> images = new ArrayList<>();
+        String[] names = assets.list(IMAGE_DIR);
+        if (names == null)
+            return images;
+        Arrays.sort(names); // a fixed order, so runs compare image for image
+        for (String name : names) {
+            try (InputStream in = assets.open(IMAGE_DIR + "/" + name)) {
+                Bitmap image = BitmapFactory.decodeStream(in);
+                if (image != null)
+                    images.add(image);
+                else
+                    Log.w(TAG, "Skipping " + name + ", not an image");
+            }
+        }
+        return images;
+    }
+
+    private static boolean hasAsset(AssetManager assets, String path) {
+        try (InputStream in = assets.open(path)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
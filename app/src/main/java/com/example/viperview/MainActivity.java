@@ -4,10 +4,10 @@ import android.animation.ValueAnimator;
 import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.view.animation.DecelerateInterpolator;
-import android.widget.ImageView;
 import android.util.Log;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.ImageProxy;
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.core.view.WindowCompat;
@@ -16,32 +16,111 @@ import androidx.core.view.WindowInsetsControllerCompat;
 import com.example.viperview.audio.VoiceListener;
 
 import com.example.viperview.camera.CameraController;
+import com.example.viperview.camera.CameraFrame;
+import com.example.viperview.display.BitmapPool;
+import com.example.viperview.display.OverlayRenderer;
+import com.example.viperview.display.StereoSurfaceView;
 import com.example.viperview.permissions.PermissionManager;
+import com.example.viperview.pipeline.CropRect;
+import com.example.viperview.pipeline.FrameBus;
+import com.example.viperview.pipeline.ModelScheduler;
+import com.example.viperview.pipeline.RefCountedPool;
+import com.example.viperview.pipeline.StagedPipeline;
+import com.example.viperview.pipeline.TensorSource;
+import com.example.viperview.tracking.HeadOrientationSensor;
+import com.example.viperview.tracking.PoseTracker;
+import com.example.viperview.tracking.TrackedPoses;
+import com.example.viperview.yolo.BitmapTensorSource;
+import com.example.viperview.yolo.DelegateConfig;
+import com.example.viperview.yolo.DelegatePreferences;
+import com.example.viperview.yolo.DelegateTuner;
+import com.example.viperview.yolo.InputSizeController;
+import com.example.viperview.yolo.PoseDetections;
 import com.example.viperview.yolo.PoseDetector;
+import com.example.viperview.yolo.PoseModel;
+import com.example.viperview.yolo.RgbaTensorSource;
+import com.example.viperview.yolo.SegmentationDetections;
+import com.example.viperview.yolo.SegmentationModel;
+import com.example.viperview.yolo.TfliteInterpreters;
 import com.example.viperview.camera_stream.CameraStream;
 
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class MainActivity extends AppCompatActivity {
 
+    private static final String TAG = "MainActivity";
+    private static final String EXTRA_DELEGATE = "delegate";
+    private static final String EXTRA_RECALIBRATE = "recalibrate";
+    private static final String EXTRA_POSE_MODEL = "pose_model";
+
+    // One camera frame on its way through the pose pipeline. Pooled.
+    private static final class PoseJob {
+        RefCountedPool.Ref<CameraFrame> source; // held until preprocess is done with the image
+        long timestampNs;
+        RefCountedPool.Ref<Bitmap> shown; // owned by the job until the render stage hands it on
+        CropRect crop; // the zoom at preprocess time; poses are mapped back out of it
+        ModelScheduler<PoseJob>.Plan plan;
+        final PoseDetections poses = new PoseDetections();
+        boolean hasPoses;
+        SegmentationDetections segments; // allocated on first use, most frames have none
+        boolean hasSegments;
+    }
+
     private CameraController cameraController;
     private PermissionManager permissionManager;
     private CameraStream cameraStream;
 
-    private ImageView leftImage;
-    private ImageView rightImage;
-    private PoseDetector poseDetector;
-
-    private final java.util.concurrent.ExecutorService inferExec = java.util.concurrent.Executors
-            .newSingleThreadExecutor();
-
-    private final AtomicBoolean isProcessing = new AtomicBoolean(false);
+    private StereoSurfaceView stereoView;
+    private HeadOrientationSensor headOrientation;
+    private volatile PoseDetector poseDetector; // set by the model loader
+    // the model loader only starts the pipeline if onDestroy has not run yet
+    private final Object loaderLock = new Object();
+    private boolean destroyed = false; // guarded by loaderLock
+    private DelegateTuner delegateTuner;
+    // only touched on the render stage
+    private final PoseTracker poseTracker = new PoseTracker();
+    private final TrackedPoses trackedPoses = new TrackedPoses();
+    // inference runs on a single stage thread, so one interpreter per model is enough
+    private static final int INTERPRETER_POOL_SIZE = 1;
+    private static final int PIPELINE_LOG_INTERVAL = 150;
+
+    // rates in Hz; pose runs on every other frame and the tracker fills in the rest
+    private static final int POSE_RATE = 15;
+    private static final int SEGMENTATION_RATE = 5;
+    private static final String POSE_MODEL = "yolo11n-pose_float16.tflite";
+    // e.g. "yolo11n-pose_int8.tflite"; quantized models are recognized from their tensor types
+    private String poseModelPath = POSE_MODEL;
+    // input sizes the pose model switches between with load and subject distance
+    private static final int[] POSE_INPUT_SIZES = { 160, 224, 320 };
+    // pose inference may take half a pose frame; the other models share the rest of the stage
+    private static final double POSE_BUDGET_MS = 1000.0 / POSE_RATE / 2;
+    private static final String SEGMENTATION_MODEL = "yolo11n-seg_float16.tflite";
+
+    private volatile StagedPipeline<PoseJob> posePipeline; // set by the model loader
+    // preprocess plus one job in each hand-off and stage
+    private final ModelScheduler<PoseJob> modelScheduler = new ModelScheduler<>(3);
+    private PoseModel<PoseJob> poseModel;
+    private SegmentationModel<PoseJob> segmentationModel;
+    private final BitmapTensorSource tensorSource = new BitmapTensorSource();
+    private final RgbaTensorSource rgbaTensorSource = new RgbaTensorSource();
+    // fill model inputs straight from RGBA camera planes instead of from the display Bitmap
+    private boolean directTensorInput = true;
+    // decoded and camera frames: one being made, one pending and one on screen, plus slack
+    private final BitmapPool bitmapPool = new BitmapPool(4);
+    private final ConcurrentLinkedQueue<PoseJob> spareJobs = new ConcurrentLinkedQueue<>();
     private VoiceListener voiceListener;
-    private boolean displaySkeletons = true;
-    private boolean displayBBox = true;
+    // toggled by voice on the UI thread, read by the pose pipeline
+    private volatile boolean displaySkeletons = true;
+    private volatile boolean displayBBox = true;
+    private volatile boolean displaySegmentation = true;
+    // both can run at once off the one camera; local inference then owns the display
+    private boolean runLocalInference = false;
+    private boolean runRemoteInference = true;
 
     private float zoomFactor = 1.0f;
+    private volatile CropRect crop = CropRect.FULL;
     private float targetZoom = 1.0f;
     private final float MAX_ZOOM = 3.0f;
     private final float MIN_ZOOM = 1.0f;
@@ -50,26 +129,36 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main_image_view);
+        setContentView(R.layout.activity_main_stereo);
 
         hideSystemUI();
 
-        cameraController = new CameraController(this);
+        cameraController = new CameraController(this, bitmapPool);
         permissionManager = new PermissionManager(this);
 
+        // for testing: adb shell am start -n com.example.viperview/.MainActivity --es delegate gpu:4
+        // (or --ez recalibrate true to time every delegate again)
+        delegateTuner = new DelegateTuner(new DelegatePreferences(this));
+        String forcedDelegate = getIntent().getStringExtra(EXTRA_DELEGATE);
         try {
-            poseDetector = new PoseDetector(getAssets(), "yolo11n-pose_float16.tflite");
-        } catch (IOException e) {
-            e.printStackTrace();
-            finish();
-            return;
+            if (forcedDelegate != null)
+                delegateTuner.setForced(DelegateConfig.parse(forcedDelegate));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring delegate extra", e);
         }
+        delegateTuner.setRemeasure(getIntent().getBooleanExtra(EXTRA_RECALIBRATE, false));
+        // --es pose_model yolo11n-pose_int8.tflite runs a quantized export instead
+        String poseModelExtra = getIntent().getStringExtra(EXTRA_POSE_MODEL);
+        if (poseModelExtra != null)
+            poseModelPath = poseModelExtra;
 
-        defineImageViews();
+        stereoView = findViewById(R.id.stereoView);
+        // frames are shifted by the head turn since their capture, hiding the round trip
+        headOrientation = new HeadOrientationSensor(this);
+        stereoView.setReprojection(headOrientation.getOrientations());
 
         if (permissionManager.allPermissionsGranted()) {
-            // startCapturing();
-            startStreaming();
+            startCamera();
             setupVoiceListener();
         } else {
             ActivityCompat.requestPermissions(
@@ -79,12 +168,26 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // one camera binding; local inference and the uplink each subscribe to its frames
+    private void startCamera() {
+        if (runLocalInference)
+            startCapturing();
+        if (runRemoteInference)
+            startStreaming();
+        else
+            cameraController.setOutputFormat(CameraController.OutputFormat.RGBA); // CameraX converts
+        cameraController.start(this);
+        if (cameraController.getFieldOfView() > 0)
+            stereoView.setCameraFieldOfView(cameraController.getFieldOfView());
+    }
+
     private void startStreaming() {
         // Optional: stream frames over network
-        cameraStream = new CameraStream(this, leftImage, rightImage);
-        cameraStream.setFrameProcessor(frame -> applyZoom(frame, zoomFactor));
+        cameraStream = new CameraStream(this, stereoView, bitmapPool);
+        cameraStream.setCrop(crop);
+        cameraStream.setShowReplies(!runLocalInference);
 
-        cameraStream.startStreaming(this);
+        cameraStream.startStreaming(cameraController);
     }
 
     private void setupVoiceListener() {
@@ -111,23 +214,31 @@ public class MainActivity extends AppCompatActivity {
             // android.widget.Toast.makeText(this, "Activating thermal highlight!",
             // android.widget.Toast.LENGTH_SHORT).show();
             // You could trigger your YOLO or thermal highlight logic here
-            cameraStream.toggleMLEnabled();
+            toggleOverlay();
         } else if (command.contains("skeleton")) {
             displaySkeletons = !displaySkeletons;
             // android.widget.Toast.makeText(this, "Toggling skeletons",
             // android.widget.Toast.LENGTH_SHORT).show();
-            cameraStream.toggleMLEnabled();
+            if (cameraStream != null) {
+                cameraStream.setOverlayOptions(displaySkeletons, displayBBox);
+                cameraStream.toggleMLEnabled();
+            }
         } else if (command.contains("overlay")) {
             // android.widget.Toast.makeText(this, "Toggling skeletons",
             // android.widget.Toast.LENGTH_SHORT).show();
-            cameraStream.toggleMLEnabled();
+            toggleOverlay();
         } else if (command.contains("engage") || command.contains("disengage")) {
             // android.widget.Toast.makeText(this, "Toggling skeletons",
             // android.widget.Toast.LENGTH_SHORT).show();
-            cameraStream.toggleMLEnabled();
+            toggleOverlay();
+        } else if (command.contains("segment")) {
+            displaySegmentation = !displaySegmentation;
         } else if (command.contains("box")) {
             displayBBox = !displayBBox;
-            cameraStream.toggleMLEnabled();
+            if (cameraStream != null) {
+                cameraStream.setOverlayOptions(displaySkeletons, displayBBox);
+                cameraStream.toggleMLEnabled();
+            }
         } else if (command.contains("zoom in")) {
             targetZoom = MAX_ZOOM;
             animateZoomChange();
@@ -140,6 +251,17 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // the server's overlay when streaming, otherwise the one drawn from local inference
+    private void toggleOverlay() {
+        if (cameraStream != null) {
+            cameraStream.toggleMLEnabled();
+        } else {
+            boolean show = !(displaySkeletons || displayBBox);
+            displaySkeletons = show;
+            displayBBox = show;
+        }
+    }
+
     private void animateZoomChange() {
         if (zoomAnimator != null && zoomAnimator.isRunning()) {
             zoomAnimator.cancel();
@@ -151,77 +273,171 @@ public class MainActivity extends AppCompatActivity {
 
         zoomAnimator.addUpdateListener(anim -> {
             zoomFactor = (float) anim.getAnimatedValue();
-            // The next frame rendered by your camera loop will automatically use this
-            // zoomFactor
+            // no zoomed copy is made anywhere: the display, the uplink and
+            // preprocessing each read just this region of the full frame
+            crop = CropRect.centerZoom(zoomFactor);
+            stereoView.setCrop(crop);
+            if (cameraStream != null)
+                cameraStream.setCrop(crop);
         });
 
         zoomAnimator.start();
     }
 
-    private Bitmap applyZoom(Bitmap frame, float zoomFactor) {
-        Log.d("hello", "" + zoomFactor);
-        if (zoomFactor <= 1.01f)
-            return frame; // no zoom
-
-        int width = frame.getWidth();
-        int height = frame.getHeight();
-
-        // Calculate cropped region
-        int cropWidth = (int) (width / zoomFactor);
-        int cropHeight = (int) (height / zoomFactor);
-
-        int xOffset = (width - cropWidth) / 2;
-        int yOffset = (height - cropHeight) / 2;
-
-        Bitmap cropped = Bitmap.createBitmap(frame, xOffset, yOffset, cropWidth, cropHeight);
-        // Scale cropped region back to original size for display
-        return Bitmap.createScaledBitmap(cropped, width, height, true);
+    private void registerModels() {
+        poseModel = new PoseModel<>(poseDetector, (job, poses, timestampNs) -> {
+            job.poses.copyFrom(poses);
+            // the tracker and overlay work in whole-frame coordinates, so zooming keeps tracks
+            job.poses.mapFromCrop(job.crop);
+            job.hasPoses = true;
+        });
+        if (poseDetector.getInputSizes().length > 1) {
+            InputSizeController sizeController = new InputSizeController(poseDetector.getInputSizes(),
+                    poseDetector.getInputSizeIndex());
+            sizeController.setFrameBudgetMs(POSE_BUDGET_MS);
+            poseModel.setInputSizeController(sizeController);
+        }
+        modelScheduler.register(poseModel, POSE_RATE, 10);
+        // optional, only when it ships with the build
+        try {
+            segmentationModel = new SegmentationModel<>(getAssets(), SEGMENTATION_MODEL,
+                    (job, segments, timestampNs) -> {
+                        if (job.segments == null)
+                            job.segments = new SegmentationDetections();
+                        job.segments.copyFrom(segments);
+                        job.hasSegments = true;
+                    });
+            modelScheduler.register(segmentationModel, SEGMENTATION_RATE, 5);
+        } catch (IOException e) {
+            Log.i(TAG, "No segmentation model (" + SEGMENTATION_MODEL + "), skipping it");
+        }
     }
 
     private void startCapturing() {
-        cameraController.startFrameCapture(frame -> {
-            // Show input stream immediately
-            runOnUiThread(() -> leftImage.setImageBitmap(frame));
-
-            // Avoid overlapping inference calls
-            if (isProcessing.get())
+        // loading the models (and on first launch timing each delegate) takes seconds,
+        // so it happens off the main thread and frames are taken once it is done
+        Thread loader = new Thread(() -> {
+            PoseDetector detector;
+            try {
+                DelegateConfig config = TfliteInterpreters.tune(getAssets(), poseModelPath, delegateTuner);
+                detector = new PoseDetector(getAssets(), poseModelPath, INTERPRETER_POOL_SIZE, config,
+                        POSE_INPUT_SIZES);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load " + poseModelPath, e);
+                runOnUiThread(this::finish);
                 return;
-            isProcessing.set(true);
-
-            inferExec.execute(() -> {
-                Bitmap zoomedFrame = applyZoom(frame, zoomFactor);
-
-                try {
-                    if (displaySkeletons || displayBBox) {
-                        float[][][] detections = poseDetector.run(zoomedFrame);
-                        Bitmap result = poseDetector.drawSkeleton(zoomedFrame, detections, displaySkeletons,
-                                displayBBox);
-
-                        runOnUiThread(() -> {
-                            leftImage.setImageBitmap(result);
-                            rightImage.setImageBitmap(result);
-                        });
-                    } else {
-                        runOnUiThread(() -> {
-                            leftImage.setImageBitmap(zoomedFrame);
-                            rightImage.setImageBitmap(zoomedFrame);
-                        });
-                    }
-
-                } finally {
-                    isProcessing.set(false);
+            }
+            Log.i(TAG, "Pose model running on " + detector.getDelegateConfig() + " at input sizes "
+                    + Arrays.toString(detector.getInputSizes()) + ", input "
+                    + (detector.getInputQuantization() != null ? detector.getInputQuantization() : "float"));
+            synchronized (loaderLock) {
+                if (destroyed) {
+                    detector.close(); // nobody left to run it
+                    return;
                 }
-            });
+                poseDetector = detector;
+                registerModels();
+                startPosePipeline();
+            }
+        }, "model-loader");
+        loader.start();
+    }
+
+    private void startPosePipeline() {
+        posePipeline = new StagedPipeline<>("pose", this::releasePoseJob);
+        posePipeline.addStage("preprocess", job -> {
+            // converted here rather than on arrival, so frames replaced at the entry never are
+            job.shown = job.source.get().getBitmap();
+            job.crop = crop;
+            modelScheduler.setEnabled(poseModel, displaySkeletons || displayBBox);
+            if (segmentationModel != null)
+                modelScheduler.setEnabled(segmentationModel, displaySegmentation);
+            job.plan = modelScheduler.plan(job.timestampNs);
+            // one resize + normalize per input size, shared by every model due on this frame
+            if (job.plan != null)
+                modelScheduler.prepare(job.plan, tensorSourceFor(job));
+            job.source.release();
+            job.source = null;
+        });
+        posePipeline.addStage("infer", job -> {
+            if (job.plan == null)
+                return;
+            modelScheduler.dispatch(job.plan, job);
+            modelScheduler.release(job.plan);
+            job.plan = null;
         });
+        posePipeline.addStage("render", this::renderPoseJob);
+        posePipeline.setFailureHandler((job, e) -> Log.e(TAG, "Pose pipeline failed", e));
+        modelScheduler.setFailureHandler((stats, e) -> Log.e(TAG, stats.getName() + " failed ("
+                + stats.getFailureCount() + " so far)", e));
+        posePipeline.start();
+
+        cameraController.getFrames().subscribe("inference", FrameBus.Backpressure.LATEST, 1, frame -> {
+            // the render stage shows the frame together with its overlay
+            PoseJob job = spareJobs.poll();
+            if (job == null)
+                job = new PoseJob();
+            job.source = frame.retain();
+            job.timestampNs = frame.get().getTimestampNs();
+            // a frame still waiting for preprocess is replaced by this one
+            posePipeline.offer(job);
+        });
+    }
+
+    private TensorSource tensorSourceFor(PoseJob job) {
+        CameraFrame frame = job.source.get();
+        if (directTensorInput && frame.isRgba()) {
+            ImageProxy.PlaneProxy plane = frame.getImage().getPlanes()[0];
+            return rgbaTensorSource.set(plane.getBuffer(), plane.getRowStride(), frame.getWidth(),
+                    frame.getHeight(), job.crop);
+        }
+        return tensorSource.set(job.shown.get(), job.crop);
     }
 
-    private void defineImageViews() {
-        leftImage = findViewById(R.id.leftImage);
-        rightImage = findViewById(R.id.rightImage);
+    private void renderPoseJob(PoseJob job) {
+        if (job.hasPoses)
+            poseTracker.update(job.poses, job.timestampNs);
+
+        // the frame is shown as is; only the overlay redraws with the detections
+        if (displaySkeletons || displayBBox)
+            poseTracker.predict(job.timestampNs, trackedPoses);
+        else
+            trackedPoses.clear();
+        Bitmap shown = job.shown.get();
+        OverlayRenderer overlay = stereoView.getDetectionOverlay();
+        overlay.setFrameSize(shown.getWidth(), shown.getHeight());
+        overlay.setOptions(displaySkeletons, displayBBox, displaySegmentation);
+        overlay.setPoses(trackedPoses);
+        // masks arrive at SEGMENTATION_RATE and stay up until the next ones
+        if (job.hasSegments)
+            overlay.setSegments(job.segments, job.crop);
+        stereoView.setFrame(job.shown, job.timestampNs);
+        job.shown = null;
+
+        if (posePipeline.getCompletedCount() % PIPELINE_LOG_INTERVAL == 0) {
+            Log.d(TAG, posePipeline.summary());
+            Log.d(TAG, modelScheduler.summary() + " | pose input " + poseDetector.getInputWidth());
+            Log.d(TAG, bitmapPool.summary());
+            Log.d(TAG, cameraController.getFrames().summary());
+        }
+    }
 
-        float shift = getResources().getDisplayMetrics().density * 25;
-        leftImage.setTranslationX(shift);
-        rightImage.setTranslationX(-shift);
+    private void releasePoseJob(PoseJob job) {
+        if (job.plan != null) {
+            modelScheduler.release(job.plan);
+            job.plan = null;
+        }
+        if (job.source != null) {
+            job.source.release();
+            job.source = null;
+        }
+        if (job.shown != null) {
+            job.shown.release();
+            job.shown = null;
+        }
+        job.hasPoses = false;
+        job.hasSegments = false;
+        spareJobs.offer(job);
     }
 
     private void hideSystemUI() {
@@ -242,8 +458,7 @@ public class MainActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == PermissionManager.REQUEST_CODE_PERMISSIONS) {
             if (permissionManager.allPermissionsGranted()) {
-                // startCapturing();
-                startStreaming();
+                startCamera();
                 setupVoiceListener();
             } else {
                 finish();
@@ -251,12 +466,38 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // the sensor only runs while the activity is in front, so a paused app draws no power for it
+    @Override
+    protected void onResume() {
+        super.onResume();
+        headOrientation.start();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        headOrientation.stop();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // from here on the loader leaves everything alone; what it already started is closed below
+        synchronized (loaderLock) {
+            destroyed = true;
+        }
         if (voiceListener != null)
             voiceListener.destroy();
-        inferExec.shutdown();
+        if (cameraStream != null)
+            cameraStream.stopStreaming();
+        if (posePipeline != null)
+            posePipeline.close();
+        // the pipeline's threads are gone, so nothing runs the interpreters any more
+        if (segmentationModel != null)
+            segmentationModel.close();
+        if (poseDetector != null)
+            poseDetector.close();
+        cameraController.stop();
     }
 
 }
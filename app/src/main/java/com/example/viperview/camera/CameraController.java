@@ -2,47 +2,120 @@ package com.example.viperview.camera;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.PixelFormat;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
+import android.util.Log;
+import android.util.Size;
 import android.util.SizeF;
 
 import androidx.annotation.OptIn;
+import androidx.camera.camera2.interop.Camera2CameraInfo;
 import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
-import androidx.camera.lifecycle.ProcessCameraProvider;
-import androidx.camera.core.CameraSelector;
 import androidx.camera.core.Preview;
-import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LifecycleOwner;
 
+import com.example.viperview.display.BitmapPool;
+import com.example.viperview.pipeline.FrameBus;
+import com.example.viperview.pipeline.RefCountedPool;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.nio.ByteBuffer;
 import java.util.Collections;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * The one camera binding in the app: picks the widest back camera, binds a
+ * preview and an analysis use case once, and publishes every analysis image
+ * on a {@link FrameBus}. Local inference, the uplink and anything else
+ * subscribe there instead of binding a camera of their own; an image is
+ * closed when the last of them releases it. Images arrive on a dedicated
+ * analysis thread and are converted, if at all, on the subscribers' threads;
+ * the main thread only binds the camera.
+ */
 public class CameraController {
 
+    public enum OutputFormat {
+        YUV, // YUV_420_888, what the uplink encoders read
+        RGBA // RGBA_8888 converted by CameraX, for local inference and display only
+    }
+
+    private static final String TAG = "CameraController";
+    public static final int DEFAULT_WIDTH = 640;
+    public static final int DEFAULT_HEIGHT = 480;
+    // images subscribers may hold at once: roughly one waiting and one in use per subscriber
+    private static final int IMAGE_QUEUE_DEPTH = 6;
+
     private final Context context;
+    private final BitmapPool bitmapPool;
+    private final FrameBus<CameraFrame> frames = new FrameBus<>("camera");
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor();
+    private float fieldOfView; // horizontal, radians; 0 until start()
+    private volatile OutputFormat outputFormat = OutputFormat.YUV;
+    private ByteBuffer packedRows; // guarded by this; only for devices that pad RGBA rows
+    private int[] argbPixels; // guarded by this; YUV frames converted for a pooled Bitmap
+    private final YuvRows yuvRows = new YuvRows(); // guarded by this
 
-    public CameraController(Context context) {
+    // main thread only
+    private ProcessCameraProvider cameraProvider;
+    private LifecycleOwner lifecycleOwner;
+    private CameraSelector cameraSelector;
+    private Preview preview;
+    private ImageAnalysis analysis;
+    private Size analysisSize = new Size(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    private Executor previewExecutor;
+    private Preview.SurfaceProvider previewSurfaceProvider;
+
+    public CameraController(Context context, BitmapPool bitmapPool) {
         this.context = context;
+        this.bitmapPool = bitmapPool;
+    }
+
+    /** Format of the published images; set before {@link #start}. */
+    public void setOutputFormat(OutputFormat format) {
+        this.outputFormat = format;
+    }
+
+    public FrameBus<CameraFrame> getFrames() {
+        return frames;
+    }
+
+    /** Horizontal field of view of the chosen camera in radians, known once {@link #start} returns. */
+    public float getFieldOfView() {
+        return fieldOfView;
+    }
+
+    /**
+     * Where the preview goes, e.g. a video encoder's input surface. Without
+     * one the preview only keeps the camera running. Main thread.
+     */
+    public void setPreviewSurfaceProvider(Executor executor, Preview.SurfaceProvider provider) {
+        previewExecutor = executor;
+        previewSurfaceProvider = provider;
+        if (preview != null)
+            preview.setSurfaceProvider(executor, provider);
     }
 
     @OptIn(markerClass = ExperimentalCamera2Interop.class)
-    public void startFrameCapture(java.util.function.Consumer<Bitmap> onFrame) {
+    public void start(LifecycleOwner owner) {
+        lifecycleOwner = owner;
+        String ultraWideId = findUltraWideCameraId();
         ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(context);
 
         cameraProviderFuture.addListener(() -> {
             try {
-                ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
-
-                String ultraWideId = findUltraWideCameraId();
-                CameraSelector cameraSelector;
+                cameraProvider = cameraProviderFuture.get();
 
                 if (ultraWideId != null) {
+                    Log.d(TAG, "Found ultrawide camera: " + ultraWideId);
                     cameraSelector = new CameraSelector.Builder()
                             .addCameraFilter(cameras -> {
                                 for (androidx.camera.core.CameraInfo info : cameras) {
@@ -55,49 +128,118 @@ public class CameraController {
                             })
                             .build();
                 } else {
+                    Log.d(TAG, "Ultrawide not found, using default back camera");
                     cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
                 }
 
-                ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                        .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888)
+                preview = new Preview.Builder()
+                        .setTargetResolution(new Size(DEFAULT_WIDTH, DEFAULT_HEIGHT))
                         .build();
+                if (previewSurfaceProvider != null)
+                    preview.setSurfaceProvider(previewExecutor, previewSurfaceProvider);
+                else
+                    preview.setSurfaceProvider(null);
+                analysis = buildAnalysis(analysisSize);
 
-                imageAnalysis.setAnalyzer(ContextCompat.getMainExecutor(context), image -> {
-                    // Convert frame to Bitmap
-                    Bitmap frameBitmap = toBitmap(image);
-                    if (frameBitmap != null && onFrame != null) {
-                        onFrame.accept(frameBitmap);
-                    }
-                    image.close(); // always close image to avoid backpressure
-                });
-
-                cameraProvider.bindToLifecycle(
-                        (androidx.lifecycle.LifecycleOwner) context,
-                        cameraSelector,
-                        imageAnalysis
-                );
+                cameraProvider.unbindAll();
+                cameraProvider.bindToLifecycle(lifecycleOwner, cameraSelector, preview, analysis);
+                Log.d(TAG, "Camera started.");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to start camera", e);
+            }
+        }, ContextCompat.getMainExecutor(context));
+    }
 
+    private ImageAnalysis buildAnalysis(Size size) {
+        // subscribers apply their own backpressure, so every image is published
+        // and the camera only stalls once they hold IMAGE_QUEUE_DEPTH of them
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setTargetResolution(size)
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_BLOCK_PRODUCER)
+                .setImageQueueDepth(IMAGE_QUEUE_DEPTH)
+                .setOutputImageFormat(outputFormat == OutputFormat.RGBA
+                        ? ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888
+                        : ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                .build();
+        analysis.setAnalyzer(analysisExecutor, this::publish);
+        return analysis;
+    }
 
+    private void publish(ImageProxy image) {
+        frames.publish(RefCountedPool.wrap(new CameraFrame(image, this), CameraFrame::close));
+    }
 
-            } catch (ExecutionException | InterruptedException e) {
-                e.printStackTrace();
+    // for CameraFrame.getBitmap, on whichever subscriber thread asks first
+    RefCountedPool.Ref<Bitmap> toBitmap(ImageProxy image) {
+        int width = image.getWidth(), height = image.getHeight();
+        RefCountedPool.Ref<Bitmap> ref = bitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        if (image.getFormat() != PixelFormat.RGBA_8888) {
+            ImageProxy.PlaneProxy[] planes = image.getPlanes();
+            synchronized (this) {
+                if (argbPixels == null || argbPixels.length < width * height)
+                    argbPixels = new int[width * height];
+                yuvRows.toArgb(planes[0].getBuffer(), planes[0].getRowStride(), planes[1].getBuffer(),
+                        planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                        width, height, argbPixels);
+                ref.get().setPixels(argbPixels, 0, width, 0, 0, width, height);
             }
-        }, ContextCompat.getMainExecutor(context));
-    }
+            return ref;
+        }
 
-    private Bitmap toBitmap(ImageProxy image) {
         ImageProxy.PlaneProxy plane = image.getPlanes()[0];
-        ByteBuffer buffer = plane.getBuffer();
-        int width = image.getWidth();
-        int height = image.getHeight();
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        bitmap.copyPixelsFromBuffer(buffer);
-        return bitmap;
+        // a duplicate shares the pixels but not the position other readers rely on
+        ByteBuffer pixels = plane.getBuffer().duplicate();
+        pixels.rewind();
+        if (RgbaRows.isPacked(plane.getRowStride(), plane.getPixelStride(), width)) {
+            ref.get().copyPixelsFromBuffer(pixels);
+            return ref;
+        }
+        synchronized (this) {
+            if (packedRows == null || packedRows.capacity() < width * height * 4)
+                packedRows = ByteBuffer.allocateDirect(width * height * 4);
+            RgbaRows.pack(pixels, plane.getRowStride(), width, height, packedRows);
+            ref.get().copyPixelsFromBuffer(packedRows);
+        }
+        return ref;
+    }
+
+    /**
+     * Rebinds just the analysis use case at a new resolution; the preview
+     * (and any video encoder behind it) keeps running. Any thread.
+     */
+    public void setAnalysisSize(Size size) {
+        ContextCompat.getMainExecutor(context).execute(() -> rebindAnalysis(size));
+    }
+
+    private void rebindAnalysis(Size size) {
+        if (size.equals(analysisSize))
+            return;
+        if (cameraProvider == null || analysis == null) {
+            analysisSize = size; // picked up by start()
+            return;
+        }
+        try {
+            cameraProvider.unbind(analysis);
+            analysis = buildAnalysis(size);
+            cameraProvider.bindToLifecycle(lifecycleOwner, cameraSelector, analysis);
+            analysisSize = size;
+            Log.d(TAG, "Analysis resolution now " + size);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to rebind analysis at " + size, e);
+        }
+    }
+
+    public void stop() {
+        if (cameraProvider != null)
+            cameraProvider.unbindAll();
+        frames.close();
+        analysisExecutor.shutdown();
     }
 
     private String findUltraWideCameraId() {
         CameraManager cm = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        if (cm == null)
+            return null;
 
         String bestId = null;
         float maxFov = 0f;
@@ -108,11 +250,10 @@ public class CameraController {
                 Integer facing = c.get(CameraCharacteristics.LENS_FACING);
                 if (facing != null && facing == CameraMetadata.LENS_FACING_BACK) {
                     float[] focalLengths = c.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
-                    if (focalLengths != null && focalLengths.length > 0) {
-                        float focal = focalLengths[0];
-                        float sensorWidth = c.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE).getWidth();
-                        float fov = 2 * (float) Math.atan(sensorWidth / (2 * focal));
-
+                    SizeF sensorSize = c.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+                    if (focalLengths != null && focalLengths.length > 0 && sensorSize != null) {
+                        float fov = 2 * (float) Math.atan(sensorSize.getWidth() / (2 * focalLengths[0]));
+                        Log.d(TAG, "Camera " + id + " FOV: " + Math.toDegrees(fov) + "°");
                         if (fov > maxFov) {
                             maxFov = fov;
                             bestId = id;
@@ -120,8 +261,12 @@ public class CameraController {
                     }
                 }
             }
+            if (bestId != null) {
+                Log.d(TAG, "Selected camera with widest FOV: " + Math.toDegrees(maxFov) + "°");
+                fieldOfView = maxFov;
+            }
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.e(TAG, "Error finding ultrawide camera", e);
         }
         return bestId;
     }
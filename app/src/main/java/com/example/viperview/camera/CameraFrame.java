@@ -0,0 +1,71 @@
+package com.example.viperview.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.PixelFormat;
+
+import androidx.camera.core.ImageProxy;
+
+import com.example.viperview.pipeline.RefCountedPool;
+
+/**
+ * One camera image as published on {@link CameraController#getFrames}. The
+ * image stays open until the last subscriber releases the frame; anything a
+ * subscriber needs past that has to be copied out or referenced first. The
+ * Bitmap is converted once, on first request, and shared by every
+ * subscriber that asks.
+ */
+public final class CameraFrame {
+
+    private final ImageProxy image;
+    private final CameraController owner;
+    private final long timestampNs;
+    private RefCountedPool.Ref<Bitmap> bitmap; // guarded by this
+
+    CameraFrame(ImageProxy image, CameraController owner) {
+        this.image = image;
+        this.owner = owner;
+        this.timestampNs = image.getImageInfo().getTimestamp();
+    }
+
+    public ImageProxy getImage() {
+        return image;
+    }
+
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /** True for a single RGBA_8888 plane, false for YUV_420_888. */
+    public boolean isRgba() {
+        return image.getFormat() == PixelFormat.RGBA_8888;
+    }
+
+    /** Sensor timestamp; elapsedRealtimeNanos on devices with a REALTIME timestamp source. */
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    /**
+     * The frame as an ARGB_8888 Bitmap, as a reference of the caller's own:
+     * it stays valid after the frame is released, until the caller releases it.
+     */
+    public synchronized RefCountedPool.Ref<Bitmap> getBitmap() {
+        if (bitmap == null)
+            bitmap = owner.toBitmap(image);
+        return bitmap.retain();
+    }
+
+    void close() {
+        synchronized (this) {
+            if (bitmap != null) {
+                bitmap.release();
+                bitmap = null;
+            }
+        }
+        image.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.viperview.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Row handling for RGBA_8888 planes. Bitmap.copyPixelsFromBuffer expects
+ * rows packed back to back, but some devices pad each row of the camera's
+ * plane to an alignment, so those rows have to be packed first.
+ */
+final class RgbaRows {
+
+    private RgbaRows() {
+    }
+
+    /** True if the plane can be copied into a Bitmap as is. */
+    static boolean isPacked(int rowStride, int pixelStride, int width) {
+        return pixelStride == 4 && rowStride == width * 4;
+    }
+
+    /**
+     * Copies {@code height} rows of {@code width} pixels from a padded plane
+     * into {@code out}, packed, and flips {@code out} for reading. Leaves the
+     * plane's position alone.
+     */
+    static void pack(ByteBuffer plane, int rowStride, int width, int height, ByteBuffer out) {
+        ByteBuffer rows = plane.duplicate();
+        int rowBytes = width * 4;
+        out.clear();
+        for (int y = 0; y < height; y++) {
+            int start = y * rowStride;
+            rows.limit(start + rowBytes);
+            rows.position(start);
+            out.put(rows);
+        }
+        out.flip();
+    }
+}
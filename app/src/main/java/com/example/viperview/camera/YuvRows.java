@@ -0,0 +1,71 @@
+package com.example.viperview.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888 planes to ARGB pixels, for drawing camera frames into pooled
+ * Bitmaps instead of the new Bitmap ImageProxy.toBitmap allocates per
+ * frame. BT.601 full range in 16.16 fixed point, chroma shared by each 2x2
+ * block, strides respected. Each plane row is bulk-read into scratch arrays
+ * kept between frames, so the planes are never read a byte at a time. Not
+ * thread safe.
+ */
+final class YuvRows {
+
+    private static final int SHIFT = 16;
+    private static final int HALF = 1 << (SHIFT - 1);
+    private static final int V_TO_R = 91881; // 1.402
+    private static final int U_TO_G = 22554; // 0.344136
+    private static final int V_TO_G = 46802; // 0.714136
+    private static final int U_TO_B = 116130; // 1.772
+
+    private byte[] lumaRow = new byte[0];
+    private byte[] uRow = new byte[0];
+    private byte[] vRow = new byte[0];
+
+    /**
+     * Converts {@code height} rows of {@code width} pixels into {@code out},
+     * row after row, opaque. Leaves the planes' positions alone.
+     */
+    void toArgb(ByteBuffer yPlane, int yRowStride, ByteBuffer uPlane, ByteBuffer vPlane,
+            int uvRowStride, int uvPixelStride, int width, int height, int[] out) {
+        // duplicates share the pixels but not the positions other readers rely on
+        ByteBuffer lumaRows = yPlane.duplicate();
+        ByteBuffer uRows = uPlane.duplicate();
+        ByteBuffer vRows = vPlane.duplicate();
+        // the last chroma sample of a row, not the whole stride: planes may end right after it
+        int chromaBytes = ((width + 1) / 2 - 1) * uvPixelStride + 1;
+        if (lumaRow.length < width)
+            lumaRow = new byte[width];
+        if (uRow.length < chromaBytes) {
+            uRow = new byte[chromaBytes];
+            vRow = new byte[chromaBytes];
+        }
+
+        for (int y = 0, o = 0; y < height; y++) {
+            lumaRows.position(y * yRowStride);
+            lumaRows.get(lumaRow, 0, width);
+            if ((y & 1) == 0) {
+                int chromaRow = (y >> 1) * uvRowStride;
+                uRows.position(chromaRow);
+                uRows.get(uRow, 0, chromaBytes);
+                vRows.position(chromaRow);
+                vRows.get(vRow, 0, chromaBytes);
+            }
+            for (int x = 0; x < width; x++, o++) {
+                int luma = (lumaRow[x] & 0xFF) << SHIFT;
+                int uv = (x >> 1) * uvPixelStride;
+                int u = (uRow[uv] & 0xFF) - 128;
+                int v = (vRow[uv] & 0xFF) - 128;
+                int r = clamp((luma + V_TO_R * v + HALF) >> SHIFT);
+                int g = clamp((luma - U_TO_G * u - V_TO_G * v + HALF) >> SHIFT);
+                int b = clamp((luma + U_TO_B * u + HALF) >> SHIFT);
+                out[o] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.viperview.camera_stream;
+
+/**
+ * Picks an uplink quality level from periodic network samples. Levels form a
+ * ladder from best (index 0) to cheapest. The controller steps down quickly
+ * when the link is congested and steps up slowly when it is healthy; every
+ * failed step up doubles the number of healthy samples needed before the
+ * next attempt, so a link sitting on the edge of a level does not oscillate.
+ *
+ * Pure Java so it can be driven by simulated traces in tests.
+ */
+public class AdaptiveStreamController {
+
+    public static final class Level {
+        public final int width;
+        public final int height;
+        public final int frameRate;
+        public final int bitrate;
+        public final int jpegQuality;
+
+        public Level(int width, int height, int frameRate, int bitrate, int jpegQuality) {
+            this.width = width;
+            this.height = height;
+            this.frameRate = frameRate;
+            this.bitrate = bitrate;
+            this.jpegQuality = jpegQuality;
+        }
+
+        public boolean sameResolution(Level other) {
+            return other != null && width == other.width && height == other.height;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "@" + frameRate + " " + bitrate / 1000 + "kbps q" + jpegQuality;
+        }
+    }
+
+    /** Counters gathered over one sampling interval. */
+    public static final class Sample {
+        public double rttMs = Double.NaN; // mean network RTT, NaN if no replies carried a header
+        public long sentFrames; // frames written to the transport
+        public long replacedFrames; // frames evicted from the send queue before sending
+        public long returnedFrames; // frames received back from the server
+        // the server echoes frame headers, so replies can be matched to sends; without
+        // that, returns and RTT say nothing (ML off, a legacy server, an empty scene)
+        public boolean echoesHeaders;
+
+        public Sample set(double rttMs, long sent, long replaced, long returned, boolean echoesHeaders) {
+            this.rttMs = rttMs;
+            this.sentFrames = sent;
+            this.replacedFrames = replaced;
+            this.returnedFrames = returned;
+            this.echoesHeaders = echoesHeaders;
+            return this;
+        }
+
+        /** A known RTT can only have come from echoed headers. */
+        public Sample set(double rttMs, long sent, long replaced, long returned) {
+            return set(rttMs, sent, replaced, returned, !Double.isNaN(rttMs));
+        }
+    }
+
+    static final double HIGH_RTT_MS = 150;
+    static final double LOW_RTT_MS = 80;
+    static final double MAX_HEALTHY_LOSS = 0.05;
+    static final double MIN_CONGESTED_LOSS = 0.2;
+    static final double MIN_HEALTHY_RETURN = 0.9;
+    static final double MAX_CONGESTED_RETURN = 0.7;
+    static final int DOWNGRADE_AFTER = 2;
+    static final int UPGRADE_AFTER = 5;
+    static final int MAX_UPGRADE_AFTER = 40;
+    static final long HOLD_MS = 3000;
+
+    private final Level[] ladder;
+    private int index;
+    private int badStreak = 0;
+    private int goodStreak = 0;
+    private int upgradeAfter = UPGRADE_AFTER;
+    private long lastChangeMs = Long.MIN_VALUE / 2;
+    private boolean lastChangeWasUpgrade = false;
+
+    public AdaptiveStreamController(Level[] ladder, int startIndex) {
+        if (ladder.length == 0)
+            throw new IllegalArgumentException("empty ladder");
+        this.ladder = ladder.clone();
+        this.index = Math.max(0, Math.min(ladder.length - 1, startIndex));
+    }
+
+    public static Level[] defaultLadder() {
+        return new Level[] {
+                new Level(1280, 720, 30, 4_000_000, 85),
+                new Level(640, 480, 30, 2_000_000, 80),
+                new Level(640, 480, 20, 1_200_000, 70),
+                new Level(480, 360, 20, 800_000, 70),
+                new Level(320, 240, 15, 400_000, 60)
+        };
+    }
+
+    public Level getLevel() {
+        return ladder[index];
+    }
+
+    public int getLevelIndex() {
+        return index;
+    }
+
+    /**
+     * Feeds one interval of measurements. Returns the new level if it
+     * changed, otherwise null.
+     */
+    public Level update(long nowMs, Sample sample) {
+        long offered = sample.sentFrames + sample.replacedFrames;
+        if (offered == 0)
+            return null; // nothing captured, nothing to judge
+
+        double loss = (double) sample.replacedFrames / offered;
+        double returned = sample.sentFrames > 0 ? (double) sample.returnedFrames / sample.sentFrames : 0;
+        // without echoed headers only the send queue's loss is evidence either way
+        boolean echoes = sample.echoesHeaders;
+        boolean rttKnown = echoes && !Double.isNaN(sample.rttMs);
+
+        boolean congested = loss > MIN_CONGESTED_LOSS
+                || (echoes && (returned < MAX_CONGESTED_RETURN || (rttKnown && sample.rttMs > HIGH_RTT_MS)));
+        boolean healthy = loss < MAX_HEALTHY_LOSS
+                && (!echoes || (returned > MIN_HEALTHY_RETURN && (!rttKnown || sample.rttMs < LOW_RTT_MS)));
+
+        if (congested) {
+            goodStreak = 0;
+            badStreak++;
+        } else if (healthy) {
+            badStreak = 0;
+            goodStreak++;
+        } else {
+            // in the dead band: neither push nor pull
+            badStreak = 0;
+            goodStreak = 0;
+        }
+
+        boolean settled = nowMs - lastChangeMs >= HOLD_MS;
+        if (badStreak >= DOWNGRADE_AFTER && index < ladder.length - 1) {
+            if (lastChangeWasUpgrade && !settled) {
+                // the last probe upward failed, wait longer before the next one
+                upgradeAfter = Math.min(upgradeAfter * 2, MAX_UPGRADE_AFTER);
+            }
+            return change(index + 1, nowMs, false);
+        }
+        if (goodStreak >= upgradeAfter && index > 0 && settled) {
+            return change(index - 1, nowMs, true);
+        }
+        if (settled && lastChangeWasUpgrade && goodStreak >= UPGRADE_AFTER) {
+            // the new level held up, go back to normal probing
+            upgradeAfter = UPGRADE_AFTER;
+        }
+        return null;
+    }
+
+    private Level change(int newIndex, long nowMs, boolean upgrade) {
+        index = newIndex;
+        badStreak = 0;
+        goodStreak = 0;
+        lastChangeMs = nowMs;
+        lastChangeWasUpgrade = upgrade;
+        return ladder[index];
+    }
+
+    int getUpgradeAfter() {
+        return upgradeAfter;
+    }
+}
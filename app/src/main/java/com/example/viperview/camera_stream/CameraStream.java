@@ -2,64 +2,153 @@ package com.example.viperview.camera_stream;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraManager;
-import android.hardware.camera2.CameraMetadata;
-import android.media.Image;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Size;
-import android.widget.ImageView;
+import android.view.Surface;
 
-import androidx.annotation.OptIn;
-import androidx.camera.camera2.interop.Camera2CameraInfo;
-import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
-import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
-import androidx.camera.core.Preview;
-import androidx.camera.lifecycle.ProcessCameraProvider;
-import androidx.core.content.ContextCompat;
-import androidx.lifecycle.LifecycleOwner;
 
-import com.google.common.util.concurrent.ListenableFuture;
+import com.example.viperview.camera.CameraController;
+import com.example.viperview.camera.CameraFrame;
+import com.example.viperview.display.BitmapPool;
+import com.example.viperview.display.OverlayRenderer;
+import com.example.viperview.display.StereoSurfaceView;
+import com.example.viperview.pipeline.CropRect;
+import com.example.viperview.pipeline.FrameBus;
+import com.example.viperview.pipeline.RefCountedPool;
+import com.example.viperview.yolo.PoseDetections;
 
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CameraStream {
 
+    /**
+     * Runs on every frame before it is shown. Takes over the reference it is
+     * given and returns the one to show, which may be the same.
+     */
     public interface FrameProcessor {
-        Bitmap process(Bitmap frame);
+        RefCountedPool.Ref<Bitmap> process(RefCountedPool.Ref<Bitmap> frame);
+    }
+
+    public enum TransportType {
+        SOCKET, // blocking java.net.Socket streams
+        CHANNEL, // non-blocking SocketChannel with gather writes
+        UDP, // fragmented datagrams, no head-of-line blocking
+        UDP_FEC // UDP plus one XOR parity datagram per group of fragments
+    }
+
+    public enum DownlinkMode {
+        JPEG, // server sends back the annotated frame
+        DETECTIONS // server sends DetectionCodec records, overlays are drawn on the local frame
     }
 
     private FrameProcessor frameProcessor;
 
     private static final String TAG = "CameraStream";
     private static final int CONNECT_TIMEOUT_MS = 4000;
-
-    private Socket socket;
-    private OutputStream output;
-    private InputStream input;
-    private final ImageView leftImage;
-    private final ImageView rightImage;
+    private static final int RECONNECT_INTERVAL_MS = 1000;
+    private static final int MAX_RECONNECT_INTERVAL_MS = 10_000;
+    private static final int REORDER_CAPACITY = 8;
+    private static final long REORDER_WAIT_NS = 100_000_000L;
+    // a server that has not answered a frame within this long has dropped it
+    private static final long OUTSTANDING_TIMEOUT_NS = 1_000_000_000L;
+    private static final long DRAIN_INTERVAL_MS = 50;
+    private static final int DEFAULT_SEND_QUEUE_DEPTH = 1;
+    private static final int STREAM_FRAME_RATE = 30;
+    private static final int JPEG_WORKERS = 2;
+    private static final int UDP_PARITY_GROUP = 8;
+    private static final long UDP_DEADLINE_MS = 150;
+    // enough to cover a few hundred ms of round trip at 30 fps
+    private static final int FRAME_HISTORY_SIZE = 8;
+    private static final long ADAPT_INTERVAL_MS = 1000;
+
+    private volatile TransportType transportType = TransportType.CHANNEL;
+    private final StereoSurfaceView display;
+    private final BitmapPool bitmapPool;
     private final Context context;
 
-    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor();
-    private final ExecutorService networkExecutor = Executors.newSingleThreadExecutor();
-
-    private final String serverIp = "100.118.244.118";
-    // private final String serverIp = "192.168.1.2";
-    // private final String serverIp = "100.101.13.39";
-    private final int serverPort = 9999;
-
-    private volatile boolean isProcessingFrame = false;
+    // connection attempts never queue behind frame sends
+    private final ExecutorService connectionExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService senderExecutor = Executors.newSingleThreadExecutor();
+
+    private final ExecutorService encoderExecutor = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService controlExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // queued frames + the one being converted + the one being sent
+    private final FrameBufferPool framePool = new FrameBufferPool(DEFAULT_SEND_QUEUE_DEPTH + 2);
+    private byte[] chromaScratch = new byte[0]; // analysis thread only
+    private final LatestFrameQueue<EncodedFrame> sendQueue = new LatestFrameQueue<>(DEFAULT_SEND_QUEUE_DEPTH,
+            EncodedFrame::release);
+
+    private volatile FrameCodec codec = FrameCodec.RAW_NV21;
+    private volatile int jpegQuality = 80;
+    private volatile int videoBitrate = 2_000_000;
+    private volatile FrameEncoder encoder;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    // Rolling ~10 s windows. Capture timestamps use the camera's clock, which is
+    // elapsedRealtimeNanos on devices reporting a REALTIME timestamp source.
+    private final LatencyHistogram captureToSend = new LatencyHistogram("capture->send", 2000, 5);
+    private final LatencyHistogram networkRoundTrip = new LatencyHistogram("network rtt", 2000, 5);
+    private final LatencyHistogram decodeToDisplay = new LatencyHistogram("decode->display", 2000, 5);
+    private volatile long lastLatencyLogMs = 0; // receive threads, a rare double log is harmless
+
+    // Adaptive quality: samples are gathered by the send/receive threads and
+    // judged once per ADAPT_INTERVAL_MS on controlExecutor.
+    private final AdaptiveStreamController adaptiveController = new AdaptiveStreamController(
+            AdaptiveStreamController.defaultLadder(), 1);
+    private final AdaptiveStreamController.Sample adaptiveSample = new AdaptiveStreamController.Sample();
+    private final FrameRateLimiter frameRateLimiter = new FrameRateLimiter(STREAM_FRAME_RATE);
+    private volatile boolean adaptiveEnabled = true;
+    private final AtomicLong returnedFrames = new AtomicLong();
+    private final AtomicLong unmatchedFrames = new AtomicLong(); // legacy replies with nothing outstanding
+    private final AtomicLong rttSumNs = new AtomicLong();
+    private final AtomicLong rttSamples = new AtomicLong();
+    private volatile boolean serverEchoesHeaders = false; // set by the first reply with a header
+    private long lastSent, lastReplaced, lastReturned; // controlExecutor only
+
+    private CameraController camera;
+    private FrameBus<CameraFrame>.Subscription uplinkSubscription;
+
+    private List<InferenceEndpoint> endpoints = Collections.singletonList(
+            new InferenceEndpoint("100.118.244.118", 9999));
+    // new InferenceEndpoint("192.168.1.2", 9999)
+    // new InferenceEndpoint("100.101.13.39", 9999)
+    private volatile EndpointPool endpointPool;
+
+    // Replies from all endpoints meet in the reorder buffer; display() runs under its lock, so
+    // only one thread at a time touches downlinkDetections.
+    private final ArrayDeque<ReturnedFrame> returnedPool = new ArrayDeque<>();
+    private final ReorderBuffer<ReturnedFrame> reorderBuffer = new ReorderBuffer<>(REORDER_CAPACITY,
+            REORDER_WAIT_NS, this::recycleReturned);
+    private final PoseDetections downlinkDetections = new PoseDetections();
+
+    private volatile DownlinkMode downlinkMode = DownlinkMode.JPEG;
+    private volatile CropRect crop = CropRect.FULL;
+    private final FrameHistory<RefCountedPool.Ref<Bitmap>> localFrames = new FrameHistory<>(FRAME_HISTORY_SIZE,
+            RefCountedPool.Ref::release);
+    private volatile boolean displaySkeletons = true;
+    private volatile boolean displayBBox = true;
+    private volatile boolean showReplies = true;
+
+    // only touched from senderExecutor
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(FrameProtocol.UPLINK_HEADER_BYTES);
+    private final FrameProtocol.UplinkHeader uplinkHeader = new FrameProtocol.UplinkHeader();
+    private final int[] cropPixels = new int[4];
+    private final ByteBuffer streamHeaderBuffer = ByteBuffer.allocate(StreamHeader.SIZE);
+    private final StreamHeader streamHeader = new StreamHeader();
+    private long lostFrames = 0;
+    private boolean awaitingKeyFrame = false;
 
     private volatile boolean mlEnabled = false; // toggle ML on/off
 
@@ -68,130 +157,257 @@ public class CameraStream {
         this.mlEnabled = !this.mlEnabled;
     }
 
-    public CameraStream(Context context, ImageView leftImage, ImageView rightImage) {
+    public CameraStream(Context context, StereoSurfaceView display, BitmapPool bitmapPool) {
         this.context = context;
-        this.leftImage = leftImage;
-        this.rightImage = rightImage;
+        this.display = display;
+        this.bitmapPool = bitmapPool;
     }
 
-    @OptIn(markerClass = ExperimentalCamera2Interop.class)
-    public void startStreaming(LifecycleOwner lifecycleOwner) {
-        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(context);
-
-        cameraProviderFuture.addListener(() -> {
-            try {
-                ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
-
-                // Find ultrawide camera
-                String ultraWideId = findUltraWideCameraId();
-                CameraSelector cameraSelector;
-
-                if (ultraWideId != null) {
-                    Log.d(TAG, "Found ultrawide camera: " + ultraWideId);
-                    cameraSelector = new CameraSelector.Builder()
-                            .addCameraFilter(cameras -> {
-                                for (androidx.camera.core.CameraInfo info : cameras) {
-                                    String id = Camera2CameraInfo.from(info).getCameraId();
-                                    if (id.equals(ultraWideId)) {
-                                        return Collections.singletonList(info);
-                                    }
-                                }
-                                return cameras;
-                            })
-                            .build();
-                } else {
-                    Log.d(TAG, "Ultrawide not found, using default back camera");
-                    cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
+    /**
+     * Subscribes to the camera's frames and starts sending them. Main thread,
+     * before the camera is started, so a video encoder gets the preview surface.
+     */
+    public void startStreaming(CameraController camera) {
+        this.camera = camera;
+        // the encoders read YUV planes
+        camera.setOutputFormat(CameraController.OutputFormat.YUV);
+        encoder = createEncoder();
+
+        // for hardware video the camera's preview feeds the encoder
+        if (encoder instanceof MediaCodecFrameEncoder) {
+            MediaCodecFrameEncoder videoEncoder = (MediaCodecFrameEncoder) encoder;
+            camera.setPreviewSurfaceProvider(encoderExecutor, request -> {
+                try {
+                    Size size = request.getResolution();
+                    Surface surface = videoEncoder.start(size.getWidth(), size.getHeight());
+                    request.provideSurface(surface, encoderExecutor, result -> {
+                    });
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to start video encoder", e);
+                    request.willNotProvideSurface();
                 }
+            });
+        }
+        // only the newest frame waits; the send queue behind it does its own replacing
+        uplinkSubscription = camera.getFrames().subscribe("uplink", FrameBus.Backpressure.LATEST, 1,
+                this::analyzeFrame);
+
+        Log.d(TAG, "Camera streaming started.");
+        endpointPool = new EndpointPool(endpoints, this::createTransport, DownlinkListener::new,
+                connectionExecutor, CONNECT_TIMEOUT_MS, RECONNECT_INTERVAL_MS, MAX_RECONNECT_INTERVAL_MS);
+        senderExecutor.execute(this::sendLoop);
+        controlExecutor.scheduleWithFixedDelay(this::adaptQuality, ADAPT_INTERVAL_MS,
+                ADAPT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        controlExecutor.scheduleWithFixedDelay(this::drainReturned, DRAIN_INTERVAL_MS,
+                DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        ensureConnected();
+    }
 
-                // Hidden preview to keep camera alive
-                Preview preview = new Preview.Builder()
-                        .setTargetResolution(new Size(640, 480))
-                        .build();
-                preview.setSurfaceProvider(null);
-
-                ImageAnalysis analysis = new ImageAnalysis.Builder()
-                        .setTargetResolution(new Size(640, 480))
-                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                        .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
-                        .build();
-
-                analysis.setAnalyzer(analysisExecutor, this::analyzeFrame);
-
-                cameraProvider.unbindAll();
-                cameraProvider.bindToLifecycle(
-                        lifecycleOwner,
-                        cameraSelector,
-                        preview,
-                        analysis);
-
-                Log.d(TAG, "Camera streaming started.");
-                ensureConnected();
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to start camera", e);
-            }
-        }, ContextCompat.getMainExecutor(context));
+    /**
+     * Digital zoom: sent with every frame so the server runs on just this
+     * region. Frames and detections still come back for the whole frame;
+     * the display applies the same crop.
+     */
+    public void setCrop(CropRect crop) {
+        this.crop = crop;
+    }
+
+    /**
+     * Whether replies go to the display. Off while local inference owns it;
+     * the stream still runs and its latencies are still measured.
+     */
+    public void setShowReplies(boolean show) {
+        this.showReplies = show;
     }
 
     public void setFrameProcessor(FrameProcessor processor) {
         this.frameProcessor = processor;
     }
 
-    private String findUltraWideCameraId() {
-        CameraManager cm = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-        if (cm == null)
-            return null;
+    // Inference servers as "host:port"; must be set before startStreaming.
+    public void setEndpoints(List<String> addresses) {
+        List<InferenceEndpoint> parsed = new ArrayList<>();
+        for (String address : addresses)
+            parsed.add(InferenceEndpoint.parse(address));
+        if (parsed.isEmpty())
+            throw new IllegalArgumentException("no endpoints");
+        this.endpoints = parsed;
+    }
 
-        String bestId = null;
-        float maxFov = 0f;
+    public List<InferenceEndpoint> getEndpoints() {
+        return endpoints;
+    }
 
-        try {
-            for (String id : cm.getCameraIdList()) {
-                CameraCharacteristics c = cm.getCameraCharacteristics(id);
-                Integer facing = c.get(CameraCharacteristics.LENS_FACING);
+    // Takes effect on the next (re)connect.
+    public void setTransportType(TransportType type) {
+        this.transportType = type;
+    }
+
+    // Codec settings must be chosen before startStreaming.
+    public void setCodec(FrameCodec codec) {
+        this.codec = codec;
+    }
+
+    public void setDownlinkMode(DownlinkMode mode) {
+        this.downlinkMode = mode;
+        // returned JPEGs carry their own overlay
+        if (mode == DownlinkMode.JPEG)
+            display.getDetectionOverlay().clear();
+    }
 
-                if (facing != null && facing == CameraMetadata.LENS_FACING_BACK) {
-                    float[] focalLengths = c.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+    // Only used in DETECTIONS mode; in JPEG mode the server draws the overlay.
+    public void setOverlayOptions(boolean displaySkeletons, boolean displayBBox) {
+        this.displaySkeletons = displaySkeletons;
+        this.displayBBox = displayBBox;
+    }
 
-                    if (focalLengths != null && focalLengths.length > 0) {
-                        float focal = focalLengths[0];
-                        android.util.SizeF sensorSize = c.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+    public void setJpegQuality(int quality) {
+        this.jpegQuality = quality;
+        if (encoder instanceof JpegFrameEncoder)
+            ((JpegFrameEncoder) encoder).setQuality(quality);
+    }
 
-                        if (sensorSize != null) {
-                            float sensorWidth = sensorSize.getWidth();
-                            float fov = 2 * (float) Math.atan(sensorWidth / (2 * focal));
+    public void setVideoBitrate(int bitrate) {
+        this.videoBitrate = bitrate;
+        if (encoder instanceof MediaCodecFrameEncoder)
+            ((MediaCodecFrameEncoder) encoder).setBitrate(bitrate);
+    }
 
-                            Log.d(TAG, "Camera " + id + " FOV: " + Math.toDegrees(fov) + "°");
+    // When disabled the stream stays at the level it is currently on.
+    public void setAdaptiveStreaming(boolean enabled) {
+        this.adaptiveEnabled = enabled;
+    }
 
-                            if (fov > maxFov) {
-                                maxFov = fov;
-                                bestId = id;
-                            }
-                        }
-                    }
-                }
-            }
+    public AdaptiveStreamController.Level getStreamLevel() {
+        return adaptiveController.getLevel();
+    }
 
-            if (bestId != null) {
-                Log.d(TAG, "Selected camera with widest FOV: " + Math.toDegrees(maxFov) + "°");
-            }
+    private void adaptQuality() {
+        try {
+            long sent = sendQueue.getSentCount();
+            long replaced = sendQueue.getReplacedCount();
+            long returned = returnedFrames.get();
+            long rttCount = rttSamples.getAndSet(0);
+            long rttSum = rttSumNs.getAndSet(0);
+            adaptiveSample.set(rttCount > 0 ? rttSum / (double) rttCount / 1e6 : Double.NaN,
+                    sent - lastSent, replaced - lastReplaced, returned - lastReturned, serverEchoesHeaders);
+            lastSent = sent;
+            lastReplaced = replaced;
+            lastReturned = returned;
+
+            EndpointPool pool = endpointPool;
+            if (pool != null)
+                pool.ensureConnected(System.currentTimeMillis());
+            // a missing connection is the reconnect logic's problem, not a quality problem
+            if (!adaptiveEnabled || pool == null || !pool.hasConnected())
+                return;
+            AdaptiveStreamController.Level level = adaptiveController.update(System.currentTimeMillis(),
+                    adaptiveSample);
+            if (level != null)
+                applyLevel(level);
         } catch (Exception e) {
-            Log.e(TAG, "Error finding ultrawide camera", e);
+            Log.e(TAG, "adaptQuality failed", e);
+        }
+    }
+
+    private void applyLevel(AdaptiveStreamController.Level level) {
+        Log.d(TAG, "Stream level -> " + level);
+        if (codec.isInterFrame()) {
+            // the encoder is fed by the preview surface, so only its bitrate can follow the link
+            setVideoBitrate(level.bitrate);
+            return;
+        }
+        frameRateLimiter.setFrameRate(level.frameRate);
+        setJpegQuality(level.jpegQuality);
+        // the camera is shared, so local inference sees the new size too; it resizes anyway
+        camera.setAnalysisSize(new Size(level.width, level.height));
+    }
+
+    public LatencyHistogram getCaptureToSendLatency() {
+        return captureToSend;
+    }
+
+    public LatencyHistogram getNetworkRoundTripLatency() {
+        return networkRoundTrip;
+    }
+
+    public LatencyHistogram getDecodeToDisplayLatency() {
+        return decodeToDisplay;
+    }
+
+    private FrameEncoder createEncoder() {
+        // sequence numbers are assigned as frames enter the queue, so replaced frames show up as gaps
+        FrameEncoder.Sink sink = frame -> {
+            frame.sequence = nextSequence.getAndIncrement();
+            sendQueue.offer(frame);
+        };
+        switch (codec) {
+            case JPEG:
+                return new JpegFrameEncoder(framePool, sink, new YuvJpegCompressor(), jpegQuality, JPEG_WORKERS);
+            case H264:
+            case HEVC:
+                return new MediaCodecFrameEncoder(codec, framePool, sink, videoBitrate, STREAM_FRAME_RATE, 1);
+            case RAW_NV21:
+            default:
+                return new RawNv21Encoder(framePool, sink);
         }
+    }
 
-        return bestId;
+    // How many converted frames may wait for the uplink; older ones are replaced.
+    public void setSendQueueDepth(int depth) {
+        sendQueue.setDepth(depth);
+        framePool.setCapacity(depth + 2);
     }
 
-    private void analyzeFrame(ImageProxy image) {
+    public long getSentFrameCount() {
+        return sendQueue.getSentCount();
+    }
+
+    public long getReplacedFrameCount() {
+        return sendQueue.getReplacedCount();
+    }
+
+    public long getDroppedFrameCount() {
+        return sendQueue.getDroppedCount();
+    }
+
+    public void stopStreaming() {
+        if (uplinkSubscription != null)
+            uplinkSubscription.cancel();
+        sendQueue.close();
+        senderExecutor.shutdownNow();
+        connectionExecutor.shutdownNow();
+        encoderExecutor.execute(() -> {
+            if (encoder != null)
+                encoder.close();
+        });
+        encoderExecutor.shutdown();
+        controlExecutor.shutdownNow();
+        EndpointPool pool = endpointPool;
+        if (pool != null)
+            pool.closeAll();
+    }
+
+    // on the uplink subscription's thread; the bus releases the frame afterwards
+    private void analyzeFrame(RefCountedPool.Ref<CameraFrame> ref) {
+        CameraFrame frame = ref.get();
         try {
-            byte[] nv21 = imageProxyToNV21(image);
-            if (nv21 != null) {
-                networkExecutor.execute(() -> sendRawFrame(nv21));
+            if (!frameRateLimiter.accept(frame.getTimestampNs()))
+                return;
+
+            if (downlinkMode == DownlinkMode.DETECTIONS) {
+                // keep the frame around so the detections can be drawn on exactly this image;
+                // the Bitmap is shared with any other subscriber that converts the frame
+                localFrames.put(frame.getTimestampNs(), frame.getBitmap());
             }
+
+            FrameEncoder encoder = this.encoder;
+            if (encoder == null || encoder instanceof MediaCodecFrameEncoder)
+                return; // video frames come in through the encoder's input surface
+            byte[] nv21 = imageProxyToNV21(frame.getImage());
+            encoder.encode(nv21, frame.getWidth(), frame.getHeight(), frame.getTimestampNs());
         } catch (Exception e) {
             Log.e(TAG, "Analyzer error", e);
-        } finally {
-            image.close();
         }
     }
 
@@ -199,116 +415,316 @@ public class CameraStream {
         ImageProxy.PlaneProxy[] planes = image.getPlanes();
         int width = image.getWidth();
         int height = image.getHeight();
-        byte[] nv21 = new byte[width * height * 3 / 2];
-
-        // Copy Y plane
-        ByteBuffer yBuffer = planes[0].getBuffer();
-        int yRowStride = planes[0].getRowStride();
-        for (int row = 0; row < height; row++) {
-            yBuffer.position(row * yRowStride);
-            yBuffer.get(nv21, row * width, width);
-        }
+        byte[] nv21 = framePool.acquire(Nv21Converter.frameSize(width, height));
+        if (chromaScratch.length < width)
+            chromaScratch = new byte[width];
 
-        // Copy VU interleaved plane
-        ByteBuffer uBuffer = planes[1].getBuffer();
-        ByteBuffer vBuffer = planes[2].getBuffer();
-        int uvRowStride = planes[1].getRowStride();
-        int uvPixelStride = planes[1].getPixelStride();
-
-        int offset = width * height;
-        for (int row = 0; row < height / 2; row++) {
-            for (int col = 0; col < width / 2; col++) {
-                nv21[offset++] = vBuffer.get(row * uvRowStride + col * uvPixelStride);
-                nv21[offset++] = uBuffer.get(row * uvRowStride + col * uvPixelStride);
-            }
+        try {
+            Nv21Converter.convert(width, height,
+                    planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[1].getRowStride(), planes[1].getPixelStride(),
+                    nv21, chromaScratch);
+        } catch (RuntimeException e) {
+            framePool.release(nv21);
+            throw e;
         }
         return nv21;
     }
 
-    private void sendRawFrame(byte[] nv21) {
+    private void sendLoop() {
         try {
-            if (output == null)
-                return;
-            ByteBuffer header = ByteBuffer.allocate(5);
-            header.putInt(nv21.length);
-            header.put((byte) (mlEnabled ? 1 : 0));
-            output.write(header.array());
-            output.write(nv21);
-            output.flush();
-        } catch (Exception e) {
-            Log.e(TAG, "sendRawFrame failed", e);
-            closeSocket();
+            while (true) {
+                EncodedFrame frame = sendQueue.take();
+                if (frame == null)
+                    return; // queue closed
+
+                if (frame.codec.isInterFrame() && skipUntilKeyFrame(frame)) {
+                    sendQueue.drop(frame);
+                } else if (endpointPool == null || !endpointPool.hasConnected()) {
+                    sendQueue.drop(frame);
+                    ensureConnected();
+                } else if (sendFrame(frame)) {
+                    sendQueue.markSent(frame);
+                } else {
+                    sendQueue.drop(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A dropped H.264/HEVC frame breaks every frame that references it, so after
+    // any loss wait for a fresh key frame before sending again.
+    private boolean skipUntilKeyFrame(EncodedFrame frame) {
+        long lost = sendQueue.getReplacedCount() + sendQueue.getDroppedCount();
+        if (lost != lostFrames) {
+            lostFrames = lost;
+            if (!awaitingKeyFrame) {
+                awaitingKeyFrame = true;
+                encoder.requestKeyFrame();
+            }
         }
+        if (awaitingKeyFrame && frame.keyFrame)
+            awaitingKeyFrame = false;
+        return awaitingKeyFrame;
     }
 
-    private void receiveFrames() {
-        new Thread(() -> {
+    private boolean sendFrame(EncodedFrame frame) {
+        // inter-frame codecs stay on one server, each server decodes its own stream
+        InferenceEndpoint endpoint = endpointPool.select(frame.codec.isInterFrame());
+        if (endpoint == null)
+            return false;
+        FrameTransport transport = endpoint.getTransport();
+        try {
+            if (transport == null)
+                return false;
+
+            encoder.describe(streamHeader);
+            streamHeader.width = frame.width;
+            streamHeader.height = frame.height;
+            if (streamHeader.frameRate == 0)
+                streamHeader.frameRate = STREAM_FRAME_RATE;
+            if (!endpoint.hasStreamHeader(transport, streamHeader) && frame.codec.isInterFrame() && !frame.keyFrame) {
+                // the server cannot start decoding on a delta frame
+                encoder.requestKeyFrame();
+                return false;
+            }
+            // over UDP also repeated, so a lost header or a restarted server only costs a key frame interval
+            long nowNs = SystemClock.elapsedRealtimeNanos();
+            if (endpoint.isStreamHeaderDue(transport, streamHeader, frame.keyFrame, nowNs))
+                endpoint.sendStreamHeader(transport, streamHeader, streamHeaderBuffer, nowNs);
+
+            uplinkHeader.flags = (mlEnabled ? FrameProtocol.FLAG_ML_ENABLED : 0)
+                    | (frame.keyFrame ? FrameProtocol.FLAG_KEY_FRAME : 0)
+                    | (downlinkMode == DownlinkMode.DETECTIONS ? FrameProtocol.FLAG_WANT_DETECTIONS : 0);
+            uplinkHeader.codec = frame.codec;
+            uplinkHeader.width = frame.width;
+            uplinkHeader.height = frame.height;
+            uplinkHeader.sequence = frame.sequence;
+            uplinkHeader.captureTimestampNs = frame.timestampNs;
+            uplinkHeader.sendTimeNs = SystemClock.elapsedRealtimeNanos();
+            uplinkHeader.payloadLength = frame.length;
+            crop.toPixels(frame.width, frame.height, 1, cropPixels);
+            uplinkHeader.cropX = cropPixels[0];
+            uplinkHeader.cropY = cropPixels[1];
+            uplinkHeader.cropWidth = cropPixels[2];
+            uplinkHeader.cropHeight = cropPixels[3];
+
+            headerBuffer.clear();
+            uplinkHeader.write(headerBuffer);
+            headerBuffer.flip();
+            // outstanding before the write, since a fast reply can beat send() returning
+            endpoint.onSent(frame.sequence, uplinkHeader.sendTimeNs);
             try {
-                if (input == null)
-                    return;
-                while (true) {
-                    byte[] lenBytes = new byte[4];
-                    if (input.read(lenBytes) != 4)
-                        break;
-                    int frameLen = ByteBuffer.wrap(lenBytes).getInt();
-                    byte[] jpegBytes = input.readNBytes(frameLen);
-
-                    // Skip frame if UI is still processing
-                    if (isProcessingFrame) {
-                        Log.d(TAG, "Dropping frame - UI busy");
-                        continue;
-                    }
-
-                    isProcessingFrame = true;
-                    Bitmap bmp = BitmapFactory.decodeByteArray(jpegBytes, 0, jpegBytes.length);
-                    if (bmp != null) {
-                        Bitmap processedBmp = (frameProcessor != null) ? frameProcessor.process(bmp) : bmp;
-
-                        leftImage.post(() -> {
-                            leftImage.setImageBitmap(processedBmp);
-                            rightImage.setImageBitmap(processedBmp);
-                            isProcessingFrame = false;
-                        });
-                    } else {
-                        isProcessingFrame = false;
-                    }
-                }
+                transport.send(headerBuffer, frame.data, 0, frame.length);
             } catch (Exception e) {
-                Log.e(TAG, "receiveFrames error", e);
-                closeSocket();
+                endpoint.onSendFailed(frame.sequence);
+                throw e;
             }
-        }).start();
+            captureToSend.record(uplinkHeader.sendTimeNs - frame.timestampNs);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "sendFrame to " + endpoint.host + " failed", e);
+            endpointPool.disconnect(endpoint, transport);
+            return false;
+        }
     }
 
-    private void ensureConnected() {
-        networkExecutor.execute(() -> {
-            try {
-                if (socket != null && socket.isConnected() && !socket.isClosed())
-                    return;
+    private void logLatencies() {
+        long now = System.currentTimeMillis();
+        if (now - lastLatencyLogMs < 5000)
+            return;
+        lastLatencyLogMs = now;
+        Log.d(TAG, captureToSend.summary() + " | " + networkRoundTrip.summary() + " | "
+                + decodeToDisplay.summary() + " | " + bitmapPool.summary());
+        EndpointPool pool = endpointPool;
+        if (pool != null)
+            Log.d(TAG, pool.summary(now) + " | reordered=" + reorderBuffer.getReorderedCount() + " stale="
+                    + reorderBuffer.getStaleCount() + " unmatched=" + unmatchedFrames.get());
+    }
 
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(serverIp, serverPort), CONNECT_TIMEOUT_MS);
-                output = socket.getOutputStream();
-                input = socket.getInputStream();
+    // A downlink message copied out of the transport's buffer so it can wait in the reorder buffer.
+    private static final class ReturnedFrame {
+        int payloadType;
+        long sequence;
+        long captureTimestampNs;
+        byte[] data = new byte[0];
+        int length;
+    }
 
-                Log.d(TAG, "Connected to server");
+    private ReturnedFrame acquireReturned() {
+        synchronized (returnedPool) {
+            ReturnedFrame returned = returnedPool.pollFirst();
+            return returned != null ? returned : new ReturnedFrame();
+        }
+    }
 
-                receiveFrames();
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to connect", e);
-                closeSocket();
-            }
-        });
+    private void recycleReturned(ReturnedFrame returned) {
+        synchronized (returnedPool) {
+            if (returnedPool.size() < REORDER_CAPACITY + 2)
+                returnedPool.addLast(returned);
+        }
+    }
+
+    // Runs on controlExecutor: gives up on frames a server dropped and releases what that unblocks.
+    private void drainReturned() {
+        EndpointPool pool = endpointPool;
+        if (pool == null)
+            return;
+        long now = SystemClock.elapsedRealtimeNanos();
+        pool.expire(now, OUTSTANDING_TIMEOUT_NS);
+        reorderBuffer.drain(now, pool.getOldestOutstanding(), this::display);
     }
 
-    private void closeSocket() {
+    private void display(ReturnedFrame returned) {
         try {
-            if (socket != null)
-                socket.close();
-        } catch (Exception ignored) {
+            if (!showReplies)
+                return;
+            if (returned.payloadType == FrameProtocol.PAYLOAD_DETECTIONS)
+                showDetections(returned);
+            else
+                showJpeg(returned);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "display failed", e);
+        } finally {
+            recycleReturned(returned);
+        }
+    }
+
+    // the display keeps only the newest frame per vsync, so nothing is dropped here
+    private void showJpeg(ReturnedFrame returned) {
+        long decodeStartNs = SystemClock.elapsedRealtimeNanos();
+        RefCountedPool.Ref<Bitmap> bmp = bitmapPool.decode(returned.data, 0, returned.length);
+        if (bmp == null)
+            return;
+        RefCountedPool.Ref<Bitmap> processedBmp = (frameProcessor != null) ? frameProcessor.process(bmp) : bmp;
+        // legacy replies carry no capture time (0), so they are shown without reprojection
+        display.setFrame(processedBmp, returned.captureTimestampNs);
+        decodeToDisplay.record(SystemClock.elapsedRealtimeNanos() - decodeStartNs);
+    }
+
+    private void showDetections(ReturnedFrame returned) {
+        RefCountedPool.Ref<Bitmap> frame = localFrames.take(returned.captureTimestampNs);
+        if (frame == null) {
+            Log.d(TAG, "No local frame for detections " + returned.sequence);
+            return;
+        }
+        try {
+            DetectionCodec.decode(ByteBuffer.wrap(returned.data, 0, returned.length), downlinkDetections);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Bad detections payload", e);
+            frame.release();
+            return;
+        }
+
+        long decodeStartNs = SystemClock.elapsedRealtimeNanos();
+        RefCountedPool.Ref<Bitmap> processedBmp = (frameProcessor != null) ? frameProcessor.process(frame) : frame;
+        // the local frame is shown as is; the detections go to the overlay
+        OverlayRenderer overlay = display.getDetectionOverlay();
+        overlay.setFrameSize(processedBmp.get().getWidth(), processedBmp.get().getHeight());
+        overlay.setOptions(displaySkeletons, displayBBox, false);
+        overlay.setPoses(downlinkDetections);
+        display.setFrame(processedBmp, returned.captureTimestampNs);
+        decodeToDisplay.record(SystemClock.elapsedRealtimeNanos() - decodeStartNs);
+    }
+
+    private class DownlinkListener implements FrameTransport.Listener {
+        private final InferenceEndpoint owner;
+        // one listener per connection, each on its own receive thread
+        private final FrameProtocol.DownlinkHeader downlinkHeader = new FrameProtocol.DownlinkHeader();
+
+        DownlinkListener(InferenceEndpoint owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public void onFrame(ByteBuffer frame) {
+            long receivedNs = SystemClock.elapsedRealtimeNanos();
+            returnedFrames.incrementAndGet();
+            ReturnedFrame returned = acquireReturned();
+            if (FrameProtocol.hasHeader(frame)) {
+                try {
+                    downlinkHeader.read(frame);
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Bad downlink header", e);
+                    recycleReturned(returned);
+                    return;
+                }
+                serverEchoesHeaders = true;
+                long rttNs = receivedNs - downlinkHeader.sendTimeNs - downlinkHeader.serverProcessingUs * 1000L;
+                networkRoundTrip.record(rttNs);
+                if (rttNs >= 0) {
+                    rttSumNs.addAndGet(rttNs);
+                    rttSamples.incrementAndGet();
+                }
+                logLatencies();
+
+                owner.onReturned(downlinkHeader.sequence, receivedNs);
+                returned.payloadType = downlinkHeader.payloadType;
+                returned.sequence = downlinkHeader.sequence;
+                returned.captureTimestampNs = downlinkHeader.captureTimestampNs;
+            } else {
+                // legacy server: plain JPEG, answers in order
+                returned.payloadType = FrameProtocol.PAYLOAD_JPEG;
+                returned.sequence = owner.onReturnedUnsequenced(receivedNs);
+                returned.captureTimestampNs = 0;
+                if (returned.sequence == InferenceEndpoint.NO_SEQUENCE) {
+                    // answers a frame already expired; newer ones may have been shown since
+                    unmatchedFrames.incrementAndGet();
+                    recycleReturned(returned);
+                    return;
+                }
+            }
+
+            int length = frame.remaining();
+            if (returned.data.length < length)
+                returned.data = new byte[length];
+            frame.get(returned.data, 0, length);
+            returned.length = length;
+
+            reorderBuffer.offer(returned.sequence, returned, receivedNs, endpointPool.getOldestOutstanding(),
+                    CameraStream.this::display);
+        }
+
+        @Override
+        public void onClosed(Exception cause) {
+            if (cause != null)
+                Log.e(TAG, "receiveFrames error from " + owner.host, cause);
+            // the pool has already forgotten this connection's in-flight frames
+            drainReturned();
+        }
+    }
+
+    private void ensureConnected() {
+        EndpointPool pool = endpointPool;
+        if (pool != null)
+            pool.ensureConnected(System.currentTimeMillis());
+    }
+
+    private FrameTransport createTransport() {
+        switch (transportType) {
+            case SOCKET:
+                return new SocketFrameTransport();
+            case UDP:
+                return new UdpFrameTransport();
+            case UDP_FEC:
+                return new UdpFrameTransport(UdpFrameTransport.DEFAULT_MAX_DATAGRAM_BYTES, UDP_PARITY_GROUP,
+                        UDP_DEADLINE_MS);
+            case CHANNEL:
+            default:
+                return new ChannelFrameTransport();
+        }
+    }
+
+    // Null unless a UDP endpoint is connected; with several, the first one's stats.
+    public UdpStats getUdpStats() {
+        for (InferenceEndpoint endpoint : endpoints) {
+            FrameTransport current = endpoint.getTransport();
+            if (current instanceof UdpFrameTransport)
+                return ((UdpFrameTransport) current).getStats();
         }
-        socket = null;
-        output = null;
-        input = null;
+        return null;
     }
-}
\ No newline at end of file
+}
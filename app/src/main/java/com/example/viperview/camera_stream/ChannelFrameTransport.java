@@ -0,0 +1,171 @@
+package com.example.viperview.camera_stream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking SocketChannel transport. Each uplink frame is a single
+ * gathering write of header + payload, and the receive loop reads into
+ * reusable direct buffers, so fragmented TCP reads are reassembled without
+ * per-frame allocation.
+ */
+public class ChannelFrameTransport implements FrameTransport {
+
+    private static final int SEND_BUFFER_BYTES = 512 * 1024;
+    private static final int RECEIVE_BUFFER_BYTES = 256 * 1024;
+    private static final int INITIAL_FRAME_BYTES = 64 * 1024;
+    private static final int WRITE_TIMEOUT_MS = 2000;
+
+    private volatile SocketChannel channel;
+    private Selector writeSelector;
+    private volatile Selector readSelector;
+
+    // only touched by the sending thread
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    private byte[] wrappedPayload;
+    private ByteBuffer payloadView;
+
+    @Override
+    public void connect(String host, int port, int timeoutMs) throws IOException {
+        SocketChannel newChannel = SocketChannel.open();
+        try {
+            newChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            newChannel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER_BYTES);
+            newChannel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_BYTES);
+            // blocking connect so the timeout applies, then switch to selector mode
+            newChannel.socket().connect(new InetSocketAddress(host, port), timeoutMs);
+            newChannel.configureBlocking(false);
+
+            writeSelector = Selector.open();
+            newChannel.register(writeSelector, SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            newChannel.close();
+            throw e;
+        }
+        channel = newChannel;
+    }
+
+    @Override
+    public boolean isConnected() {
+        SocketChannel current = channel;
+        return current != null && current.isConnected();
+    }
+
+    @Override
+    public boolean isReliable() {
+        return true;
+    }
+
+    @Override
+    public void send(ByteBuffer header, byte[] payload, int offset, int length) throws IOException {
+        SocketChannel current = channel;
+        if (current == null)
+            throw new IOException("not connected");
+
+        if (payload != wrappedPayload) {
+            wrappedPayload = payload;
+            payloadView = ByteBuffer.wrap(payload);
+        }
+        payloadView.limit(offset + length);
+        payloadView.position(offset);
+
+        gather[0] = header;
+        gather[1] = payloadView;
+        long deadline = System.currentTimeMillis() + WRITE_TIMEOUT_MS;
+        while (header.hasRemaining() || payloadView.hasRemaining()) {
+            if (current.write(gather) > 0)
+                continue;
+            // socket buffer full, wait until the kernel drains it
+            long waitMs = deadline - System.currentTimeMillis();
+            if (waitMs <= 0)
+                throw new SocketTimeoutException("uplink write stalled");
+            writeSelector.select(waitMs);
+            writeSelector.selectedKeys().clear();
+        }
+    }
+
+    @Override
+    public void startReceiving(Listener listener) {
+        SocketChannel current = channel;
+        new Thread(() -> {
+            Exception cause = null;
+            try (Selector selector = Selector.open()) {
+                readSelector = selector;
+                current.register(selector, SelectionKey.OP_READ);
+                receiveLoop(current, selector, listener);
+            } catch (Exception e) {
+                cause = e;
+            }
+            listener.onClosed(cause);
+        }, "ChannelFrameTransport-rx").start();
+    }
+
+    private void receiveLoop(SocketChannel current, Selector selector, Listener listener) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocateDirect(4);
+        ByteBuffer frameBuffer = ByteBuffer.allocateDirect(INITIAL_FRAME_BYTES);
+        boolean readingLength = true;
+
+        while (current.isOpen()) {
+            selector.select();
+            selector.selectedKeys().clear();
+
+            // drain everything that is readable before selecting again
+            while (true) {
+                ByteBuffer target = readingLength ? lengthBuffer : frameBuffer;
+                int n = current.read(target);
+                if (n < 0)
+                    throw new EOFException("server closed connection");
+                if (target.hasRemaining()) {
+                    if (n == 0)
+                        break;
+                    continue;
+                }
+
+                if (readingLength) {
+                    lengthBuffer.flip();
+                    int frameLen = lengthBuffer.getInt();
+                    lengthBuffer.clear();
+                    if (frameLen < 0 || frameLen > MAX_FRAME_BYTES)
+                        throw new IOException("Bad frame length " + frameLen);
+                    if (frameBuffer.capacity() < frameLen)
+                        frameBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(frameLen - 1) << 1);
+                    frameBuffer.clear();
+                    frameBuffer.limit(frameLen);
+                    readingLength = false;
+                    if (frameLen > 0)
+                        continue;
+                }
+
+                frameBuffer.flip();
+                listener.onFrame(frameBuffer);
+                readingLength = true;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        SocketChannel current = channel;
+        channel = null;
+        try {
+            if (current != null)
+                current.close();
+        } catch (IOException ignored) {
+        }
+        try {
+            if (writeSelector != null)
+                writeSelector.close();
+        } catch (IOException ignored) {
+        }
+        Selector selector = readSelector;
+        if (selector != null)
+            selector.wakeup();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.viperview.camera_stream;
+
+import com.example.viperview.yolo.PoseDetections;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary form of pose detections for the downlink, sent instead of a
+ * re-encoded JPEG. Coordinates are quantized to 1/65535 of the frame and
+ * confidences to 1/255, which is far below a display pixel.
+ *
+ * Layout (big-endian): u8 count, then per detection u16 cx, cy, w, h,
+ * u8 score, and 17 x (u16 x, u16 y, u8 confidence) = 94 bytes per person.
+ */
+public final class DetectionCodec {
+
+    public static final int BYTES_PER_DETECTION = 4 * 2 + 1 + PoseDetections.NUM_KEYPOINTS * 5;
+    public static final int MAX_DETECTIONS = 255;
+
+    private DetectionCodec() {
+    }
+
+    public static int encodedSize(int count) {
+        return 1 + Math.min(count, MAX_DETECTIONS) * BYTES_PER_DETECTION;
+    }
+
+    public static void encode(PoseDetections detections, ByteBuffer out) {
+        int count = Math.min(detections.count, MAX_DETECTIONS);
+        out.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < 4; j++)
+                out.putShort(toUnit16(detections.boxes[i * 4 + j]));
+            out.put(toUnit8(detections.scores[i]));
+            int base = i * PoseDetections.KEYPOINT_STRIDE;
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+                out.putShort(toUnit16(detections.keypoints[base + k * 3]));
+                out.putShort(toUnit16(detections.keypoints[base + k * 3 + 1]));
+                out.put(toUnit8(detections.keypoints[base + k * 3 + 2]));
+            }
+        }
+    }
+
+    /** Decodes into {@code out}, reusing its arrays. */
+    public static void decode(ByteBuffer in, PoseDetections out) {
+        int count = in.get() & 0xFF;
+        if (in.remaining() < count * BYTES_PER_DETECTION)
+            throw new IllegalArgumentException("Truncated detections: " + count + " records, "
+                    + in.remaining() + " bytes");
+        out.clear();
+        out.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            float cx = fromUnit16(in.getShort());
+            float cy = fromUnit16(in.getShort());
+            float w = fromUnit16(in.getShort());
+            float h = fromUnit16(in.getShort());
+            int index = out.add(cx, cy, w, h, fromUnit8(in.get()));
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+                float x = fromUnit16(in.getShort());
+                float y = fromUnit16(in.getShort());
+                out.setKeypoint(index, k, x, y, fromUnit8(in.get()));
+            }
+        }
+    }
+
+    private static short toUnit16(float value) {
+        return (short) Math.round(clamp(value) * 65535f);
+    }
+
+    private static byte toUnit8(float value) {
+        return (byte) Math.round(clamp(value) * 255f);
+    }
+
+    private static float fromUnit16(short value) {
+        return (value & 0xFFFF) / 65535f;
+    }
+
+    private static float fromUnit8(byte value) {
+        return (value & 0xFF) / 255f;
+    }
+
+    private static float clamp(float value) {
+        return value < 0f ? 0f : (value > 1f ? 1f : value);
+    }
+}
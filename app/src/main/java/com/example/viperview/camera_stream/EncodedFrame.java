@@ -0,0 +1,76 @@
+package com.example.viperview.camera_stream;
+
+import java.io.OutputStream;
+
+/**
+ * One encoded uplink frame. Instances are recycled: whoever ends up holding a
+ * frame (normally the send queue) must call {@link #release()} exactly once.
+ */
+public class EncodedFrame {
+
+    public interface Recycler {
+        void recycle(EncodedFrame frame);
+    }
+
+    public byte[] data;
+    public int length;
+    public FrameCodec codec;
+    public int width;
+    public int height;
+    public long timestampNs;
+    public boolean keyFrame;
+    public long sequence;
+
+    private Recycler recycler;
+
+    private final OutputStream output = new OutputStream() {
+        @Override
+        public void write(int b) {
+            ensureCapacity(length + 1);
+            data[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(length + len);
+            System.arraycopy(b, off, data, length, len);
+            length += len;
+        }
+    };
+
+    public EncodedFrame(int initialCapacity) {
+        this.data = new byte[initialCapacity];
+    }
+
+    void setRecycler(Recycler recycler) {
+        this.recycler = recycler;
+    }
+
+    public void set(FrameCodec codec, int width, int height, long timestampNs, boolean keyFrame) {
+        this.codec = codec;
+        this.width = width;
+        this.height = height;
+        this.timestampNs = timestampNs;
+        this.keyFrame = keyFrame;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (data == null || data.length < capacity) {
+            byte[] grown = new byte[Math.max(capacity, data == null ? 0 : data.length * 2)];
+            if (data != null && length > 0)
+                System.arraycopy(data, 0, grown, 0, length);
+            data = grown;
+        }
+    }
+
+    /** Resets the frame and returns a stream that appends to {@link #data}. */
+    public OutputStream reset() {
+        length = 0;
+        return output;
+    }
+
+    public void release() {
+        if (recycler != null)
+            recycler.recycle(this);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.viperview.camera_stream;
+
+import java.util.ArrayDeque;
+
+/** Small free list of {@link EncodedFrame}s so encoders can reuse output arrays. */
+public class EncodedFramePool {
+
+    private final ArrayDeque<EncodedFrame> free = new ArrayDeque<>();
+    private final int capacity;
+    private final int initialFrameBytes;
+    private final EncodedFrame.Recycler onRecycle;
+    private final EncodedFrame.Recycler recycler = this::recycle;
+
+    public EncodedFramePool(int capacity, int initialFrameBytes) {
+        this(capacity, initialFrameBytes, null);
+    }
+
+    /** {@code onRecycle} runs before a frame goes back on the free list. */
+    public EncodedFramePool(int capacity, int initialFrameBytes, EncodedFrame.Recycler onRecycle) {
+        this.capacity = capacity;
+        this.initialFrameBytes = initialFrameBytes;
+        this.onRecycle = onRecycle;
+    }
+
+    public EncodedFrame acquire() {
+        EncodedFrame frame;
+        synchronized (free) {
+            frame = free.pollFirst();
+        }
+        if (frame == null) {
+            frame = new EncodedFrame(initialFrameBytes);
+            frame.setRecycler(recycler);
+        }
+        frame.length = 0;
+        return frame;
+    }
+
+    private void recycle(EncodedFrame frame) {
+        if (onRecycle != null)
+            onRecycle.recycle(frame);
+        synchronized (free) {
+            if (free.size() < capacity)
+                free.addLast(frame);
+        }
+    }
+
+    public int available() {
+        synchronized (free) {
+            return free.size();
+        }
+    }
+}
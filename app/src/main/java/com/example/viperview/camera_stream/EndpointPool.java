@@ -0,0 +1,161 @@
+package com.example.viperview.camera_stream;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps connections to a set of inference servers and picks one per frame.
+ * Frames go to the connected endpoint with the lowest latency x (1 + frames
+ * in flight), so a busy or slow laptop gets fewer frames and a dead one gets
+ * none. Dropped connections are retried in the background with backoff.
+ */
+public class EndpointPool {
+
+    // used for endpoints that have not returned a frame yet, so they get tried
+    private static final double UNKNOWN_LATENCY_MS = 30;
+
+    private final List<InferenceEndpoint> endpoints;
+    private final Supplier<FrameTransport> transportFactory;
+    private final Function<InferenceEndpoint, FrameTransport.Listener> listenerFactory;
+    private final Executor connectExecutor;
+    private final int connectTimeoutMs;
+    private final long reconnectIntervalMs;
+    private final long maxReconnectIntervalMs;
+
+    private final Object connectLock = new Object();
+    private final List<InferenceEndpoint> connecting = new ArrayList<>(); // guarded by connectLock
+    private volatile InferenceEndpoint sticky;
+
+    public EndpointPool(List<InferenceEndpoint> endpoints, Supplier<FrameTransport> transportFactory,
+            Function<InferenceEndpoint, FrameTransport.Listener> listenerFactory, Executor connectExecutor,
+            int connectTimeoutMs, long reconnectIntervalMs, long maxReconnectIntervalMs) {
+        if (endpoints.isEmpty())
+            throw new IllegalArgumentException("no endpoints");
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+        this.transportFactory = transportFactory;
+        this.listenerFactory = listenerFactory;
+        this.connectExecutor = connectExecutor;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.reconnectIntervalMs = reconnectIntervalMs;
+        this.maxReconnectIntervalMs = maxReconnectIntervalMs;
+    }
+
+    public List<InferenceEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /** Starts a connection attempt for every endpoint that is down and due for a retry. */
+    public void ensureConnected(long nowMs) {
+        for (InferenceEndpoint endpoint : endpoints) {
+            if (endpoint.getTransport() != null)
+                continue;
+            synchronized (connectLock) {
+                if (connecting.contains(endpoint)
+                        || !endpoint.shouldAttemptConnect(nowMs, reconnectIntervalMs, maxReconnectIntervalMs))
+                    continue;
+                connecting.add(endpoint);
+            }
+            connectExecutor.execute(() -> connect(endpoint));
+        }
+    }
+
+    private void connect(InferenceEndpoint endpoint) {
+        FrameTransport transport = transportFactory.get();
+        try {
+            transport.connect(endpoint.host, endpoint.port, connectTimeoutMs);
+            endpoint.onConnected(transport, System.currentTimeMillis());
+            FrameTransport.Listener listener = listenerFactory.apply(endpoint);
+            transport.startReceiving(new FrameTransport.Listener() {
+                @Override
+                public void onFrame(ByteBuffer frame) {
+                    listener.onFrame(frame);
+                }
+
+                @Override
+                public void onClosed(Exception cause) {
+                    disconnect(endpoint, transport);
+                    listener.onClosed(cause);
+                }
+            });
+        } catch (Exception e) {
+            transport.close();
+            endpoint.onConnectFailed();
+        } finally {
+            synchronized (connectLock) {
+                connecting.remove(endpoint);
+            }
+        }
+    }
+
+    /** Drops {@code failed} from its endpoint if it is still the active connection. */
+    public void disconnect(InferenceEndpoint endpoint, FrameTransport failed) {
+        if (endpoint.onDisconnected(failed))
+            failed.close();
+    }
+
+    /**
+     * Picks the endpoint for the next frame, or null if none is connected.
+     * With {@code sticky} the previous choice is kept while it stays up, which
+     * inter-frame codecs need since each server decodes its own stream.
+     */
+    public InferenceEndpoint select(boolean sticky) {
+        InferenceEndpoint previous = this.sticky;
+        if (sticky && previous != null && previous.isConnected())
+            return previous;
+
+        InferenceEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (InferenceEndpoint endpoint : endpoints) {
+            if (!endpoint.isConnected())
+                continue;
+            double score = endpoint.score(UNKNOWN_LATENCY_MS);
+            if (score < bestScore) {
+                bestScore = score;
+                best = endpoint;
+            }
+        }
+        this.sticky = best;
+        return best;
+    }
+
+    public boolean hasConnected() {
+        for (InferenceEndpoint endpoint : endpoints) {
+            if (endpoint.isConnected())
+                return true;
+        }
+        return false;
+    }
+
+    /** Oldest sequence still in flight anywhere, or Long.MAX_VALUE if none. */
+    public long getOldestOutstanding() {
+        long oldest = Long.MAX_VALUE;
+        for (InferenceEndpoint endpoint : endpoints)
+            oldest = Math.min(oldest, endpoint.getOldestOutstanding());
+        return oldest;
+    }
+
+    public void expire(long nowNs, long timeoutNs) {
+        for (InferenceEndpoint endpoint : endpoints)
+            endpoint.expire(nowNs, timeoutNs);
+    }
+
+    public void closeAll() {
+        for (InferenceEndpoint endpoint : endpoints)
+            disconnect(endpoint, endpoint.getTransport());
+    }
+
+    public String summary(long nowMs) {
+        StringBuilder sb = new StringBuilder();
+        for (InferenceEndpoint endpoint : endpoints) {
+            if (sb.length() > 0)
+                sb.append(" | ");
+            sb.append(endpoint.summary(nowMs));
+        }
+        return sb.toString();
+    }
+}
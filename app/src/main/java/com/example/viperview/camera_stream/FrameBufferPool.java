@@ -0,0 +1,45 @@
+package com.example.viperview.camera_stream;
+
+import java.util.ArrayDeque;
+
+/**
+ * Recycles fixed-size frame buffers so the analyzer does not allocate a new
+ * byte[] per camera frame. Buffers are handed back with {@link #release} once
+ * the network thread is done with them.
+ */
+public class FrameBufferPool {
+
+    private final ArrayDeque<byte[]> free = new ArrayDeque<>();
+    private int capacity;
+    private int bufferSize;
+
+    public FrameBufferPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized byte[] acquire(int size) {
+        if (size != bufferSize) {
+            // resolution changed, old buffers are useless now
+            bufferSize = size;
+            free.clear();
+        }
+        byte[] buffer = free.pollFirst();
+        return buffer != null ? buffer : new byte[size];
+    }
+
+    public synchronized void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize || free.size() >= capacity)
+            return;
+        free.addLast(buffer);
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        while (free.size() > capacity)
+            free.pollFirst();
+    }
+
+    public synchronized int available() {
+        return free.size();
+    }
+}
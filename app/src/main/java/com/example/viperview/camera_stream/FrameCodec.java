@@ -0,0 +1,30 @@
+package com.example.viperview.camera_stream;
+
+/** Uplink payload formats. The id goes on the wire, so never renumber. */
+public enum FrameCodec {
+    RAW_NV21(0, null),
+    JPEG(1, "image/jpeg"),
+    H264(2, "video/avc"),
+    HEVC(3, "video/hevc");
+
+    public final int id;
+    public final String mimeType;
+
+    FrameCodec(int id, String mimeType) {
+        this.id = id;
+        this.mimeType = mimeType;
+    }
+
+    // Inter-coded streams cannot skip frames without a fresh key frame.
+    public boolean isInterFrame() {
+        return this == H264 || this == HEVC;
+    }
+
+    public static FrameCodec fromId(int id) {
+        for (FrameCodec codec : values()) {
+            if (codec.id == id)
+                return codec;
+        }
+        throw new IllegalArgumentException("Unknown codec id " + id);
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.viperview.camera_stream;
+
+/**
+ * Turns converted camera frames into uplink payloads. Encoders take ownership
+ * of the NV21 buffer passed to {@link #encode} and hand finished frames to
+ * their {@link Sink}, which then owns them until {@link EncodedFrame#release()}.
+ */
+public interface FrameEncoder {
+
+    interface Sink {
+        void onEncoded(EncodedFrame frame);
+    }
+
+    FrameCodec getCodec();
+
+    /** Fills in the codec and its parameters; width and height come from the frames. */
+    void describe(StreamHeader header);
+
+    void encode(byte[] nv21, int width, int height, long timestampNs);
+
+    /** Asks inter-frame codecs for a key frame, e.g. after frames were dropped. */
+    void requestKeyFrame();
+
+    void close();
+}
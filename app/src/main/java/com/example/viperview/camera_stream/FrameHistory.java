@@ -0,0 +1,68 @@
+package com.example.viperview.camera_stream;
+
+/**
+ * Small ring of recently captured frames keyed by capture timestamp, so a
+ * result that comes back from the server can be matched to the exact frame
+ * it was computed on. Frames that are overwritten or discarded without being
+ * taken go to the recycler, if there is one.
+ */
+public class FrameHistory<T> {
+
+    private final long[] timestamps;
+    private final Object[] frames;
+    private final LatestFrameQueue.Recycler<T> recycler;
+    private int next = 0;
+
+    public FrameHistory(int capacity) {
+        this(capacity, null);
+    }
+
+    public FrameHistory(int capacity, LatestFrameQueue.Recycler<T> recycler) {
+        timestamps = new long[capacity];
+        frames = new Object[capacity];
+        this.recycler = recycler;
+    }
+
+    public synchronized void put(long timestampNs, T frame) {
+        recycle(next);
+        timestamps[next] = timestampNs;
+        frames[next] = frame;
+        next = (next + 1) % frames.length;
+    }
+
+    /**
+     * Removes and returns the frame captured at {@code timestampNs}. Older
+     * frames are discarded too, since results arrive in capture order.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T take(long timestampNs) {
+        T match = null;
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] == null || timestamps[i] > timestampNs)
+                continue;
+            if (timestamps[i] == timestampNs) {
+                match = (T) frames[i];
+                frames[i] = null;
+            } else {
+                recycle(i);
+            }
+        }
+        return match;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recycle(int index) {
+        if (frames[index] != null && recycler != null)
+            recycler.recycle((T) frames[index]);
+        frames[index] = null;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Object frame : frames) {
+            if (frame != null)
+                size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.viperview.camera_stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-frame wire headers, all big-endian.
+ *
+ * Uplink, written before every payload:
+ * u8 magic, u8 version, u16 header length, u8 flags, u8 codec id,
+ * u16 width, u16 height, u32 sequence, u64 capture timestamp (ns),
+ * u64 send time (ns), u32 payload length, then the digital zoom crop as
+ * u16 x, y, width, height in pixels of the frame. The server runs inference
+ * on that region only but still reports detections normalized to the whole
+ * frame. Headers without the crop (34 bytes) mean the whole frame.
+ *
+ * Downlink, at the start of each length-prefixed message:
+ * u8 magic, u8 version, u16 header length, u8 payload type, u8 flags,
+ * u32 echoed sequence, u64 echoed capture timestamp, u64 echoed send time,
+ * u32 server processing time (us), then the payload.
+ *
+ * The header length lets either side skip fields added by newer versions,
+ * so readers accept any version from {@link #FIRST_VERSION} up; a bump only
+ * has to append fields.
+ *
+ * Versioned uplink headers replaced the old 4-byte length and ML flag byte,
+ * so servers need this reader to take phone frames. Downlink replies
+ * without the magic byte are still read as bare JPEGs.
+ */
+public final class FrameProtocol {
+
+    public static final int MAGIC = 0xA5;
+    public static final int VERSION = 2;
+    // the first versioned header; older servers sent no header at all
+    public static final int FIRST_VERSION = 2;
+
+    public static final int UPLINK_HEADER_BYTES = 42;
+    // before the crop was added
+    static final int UPLINK_HEADER_BYTES_NO_CROP = 34;
+    public static final int DOWNLINK_HEADER_BYTES = 30;
+
+    public static final int FLAG_ML_ENABLED = 1;
+    public static final int FLAG_KEY_FRAME = 1 << 1;
+    // ask the server for DetectionCodec records instead of an annotated JPEG
+    public static final int FLAG_WANT_DETECTIONS = 1 << 2;
+
+    public static final int PAYLOAD_JPEG = 0;
+    public static final int PAYLOAD_DETECTIONS = 1;
+
+    private FrameProtocol() {
+    }
+
+    public static class UplinkHeader {
+        public int flags;
+        public FrameCodec codec = FrameCodec.RAW_NV21;
+        public int width;
+        public int height;
+        public long sequence;
+        public long captureTimestampNs;
+        public long sendTimeNs;
+        public int payloadLength;
+        // the crop; width 0 after reading a header without one
+        public int cropX;
+        public int cropY;
+        public int cropWidth;
+        public int cropHeight;
+
+        public void write(ByteBuffer out) {
+            out.put((byte) MAGIC);
+            out.put((byte) VERSION);
+            out.putShort((short) UPLINK_HEADER_BYTES);
+            out.put((byte) flags);
+            out.put((byte) codec.id);
+            out.putShort((short) width);
+            out.putShort((short) height);
+            out.putInt((int) sequence);
+            out.putLong(captureTimestampNs);
+            out.putLong(sendTimeNs);
+            out.putInt(payloadLength);
+            out.putShort((short) cropX);
+            out.putShort((short) cropY);
+            out.putShort((short) cropWidth);
+            out.putShort((short) cropHeight);
+        }
+
+        public void read(ByteBuffer in) {
+            int start = in.position();
+            int headerLength = readPreamble(in, UPLINK_HEADER_BYTES_NO_CROP);
+            flags = in.get() & 0xFF;
+            codec = FrameCodec.fromId(in.get() & 0xFF);
+            width = in.getShort() & 0xFFFF;
+            height = in.getShort() & 0xFFFF;
+            sequence = in.getInt() & 0xFFFFFFFFL;
+            captureTimestampNs = in.getLong();
+            sendTimeNs = in.getLong();
+            payloadLength = in.getInt();
+            if (headerLength >= UPLINK_HEADER_BYTES) {
+                cropX = in.getShort() & 0xFFFF;
+                cropY = in.getShort() & 0xFFFF;
+                cropWidth = in.getShort() & 0xFFFF;
+                cropHeight = in.getShort() & 0xFFFF;
+            } else {
+                cropX = cropY = cropWidth = cropHeight = 0;
+            }
+            in.position(start + headerLength);
+        }
+    }
+
+    public static class DownlinkHeader {
+        public int payloadType = PAYLOAD_JPEG;
+        public int flags;
+        public long sequence;
+        public long captureTimestampNs;
+        public long sendTimeNs;
+        public int serverProcessingUs;
+
+        public void write(ByteBuffer out) {
+            out.put((byte) MAGIC);
+            out.put((byte) VERSION);
+            out.putShort((short) DOWNLINK_HEADER_BYTES);
+            out.put((byte) payloadType);
+            out.put((byte) flags);
+            out.putInt((int) sequence);
+            out.putLong(captureTimestampNs);
+            out.putLong(sendTimeNs);
+            out.putInt(serverProcessingUs);
+        }
+
+        /** Reads the header and leaves the buffer positioned at the payload. */
+        public void read(ByteBuffer in) {
+            int start = in.position();
+            int headerLength = readPreamble(in, DOWNLINK_HEADER_BYTES);
+            payloadType = in.get() & 0xFF;
+            flags = in.get() & 0xFF;
+            sequence = in.getInt() & 0xFFFFFFFFL;
+            captureTimestampNs = in.getLong();
+            sendTimeNs = in.getLong();
+            serverProcessingUs = in.getInt();
+            in.position(start + headerLength);
+        }
+    }
+
+    /** True if the message starts with a versioned header rather than a bare legacy JPEG. */
+    public static boolean hasHeader(ByteBuffer in) {
+        return in.remaining() >= 2 && (in.get(in.position()) & 0xFF) == MAGIC
+                && (in.get(in.position() + 1) & 0xFF) >= FIRST_VERSION;
+    }
+
+    private static int readPreamble(ByteBuffer in, int minimumLength) {
+        int magic = in.get() & 0xFF;
+        if (magic != MAGIC)
+            throw new IllegalArgumentException("Bad frame magic " + magic);
+        int version = in.get() & 0xFF;
+        if (version < FIRST_VERSION)
+            throw new IllegalArgumentException("Unsupported frame version " + version);
+        int headerLength = in.getShort() & 0xFFFF;
+        if (headerLength < minimumLength || headerLength > in.remaining() + 4)
+            throw new IllegalArgumentException("Bad header length " + headerLength);
+        return headerLength;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.viperview.camera_stream;
+
+/**
+ * Thins a camera stream down to a target frame rate by accepting a frame once
+ * its timestamp reaches the next due time. Due times advance by the target
+ * interval rather than snapping to the last accepted frame, so 30 fps input
+ * at a 20 fps target keeps two frames out of three instead of one in two.
+ */
+public class FrameRateLimiter {
+
+    // absorbs timestamp jitter between frames that are nominally on time
+    private static final long SLACK_NS = 2_000_000L;
+
+    private volatile long intervalNs;
+    private long nextDueNs = Long.MIN_VALUE; // analyzer thread only
+
+    public FrameRateLimiter(int frameRate) {
+        setFrameRate(frameRate);
+    }
+
+    public void setFrameRate(int frameRate) {
+        intervalNs = frameRate > 0 ? 1_000_000_000L / frameRate : 0;
+    }
+
+    /** Whether {@link #accept} would take this frame, without moving the schedule on. */
+    public boolean isDue(long timestampNs) {
+        return intervalNs == 0 || nextDueNs == Long.MIN_VALUE || timestampNs >= nextDueNs - SLACK_NS;
+    }
+
+    public boolean accept(long timestampNs) {
+        long interval = intervalNs;
+        if (interval == 0)
+            return true;
+        if (!isDue(timestampNs))
+            return false;
+        // after a gap (or the first frame) restart the schedule from this frame
+        if (nextDueNs == Long.MIN_VALUE || timestampNs - nextDueNs > interval)
+            nextDueNs = timestampNs;
+        nextDueNs += interval;
+        return true;
+    }
+}
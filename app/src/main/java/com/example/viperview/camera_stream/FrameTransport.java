@@ -0,0 +1,35 @@
+package com.example.viperview.camera_stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Connection to the inference server. Uplink frames are written as a caller
+ * supplied header followed by the payload; downlink frames arrive as a 4-byte
+ * big-endian length followed by that many bytes.
+ */
+public interface FrameTransport {
+
+    int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    interface Listener {
+        // The buffer is only valid for the duration of the call.
+        void onFrame(ByteBuffer frame);
+
+        void onClosed(Exception cause);
+    }
+
+    void connect(String host, int port, int timeoutMs) throws IOException;
+
+    boolean isConnected();
+
+    /** False if a message can be lost without the connection failing, as over UDP. */
+    boolean isReliable();
+
+    void send(ByteBuffer header, byte[] payload, int offset, int length) throws IOException;
+
+    /** Starts a receive thread that delivers downlink frames until the connection closes. */
+    void startReceiving(Listener listener);
+
+    void close();
+}
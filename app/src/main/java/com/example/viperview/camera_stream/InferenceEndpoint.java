@@ -0,0 +1,250 @@
+package com.example.viperview.camera_stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One inference server and what we know about it: its current connection,
+ * the frames sent to it that have not come back yet, a smoothed round-trip
+ * latency and health counters. Outstanding frames are kept in send order;
+ * servers answer in order per connection, so anything older than a returned
+ * sequence is a frame the server skipped.
+ */
+public class InferenceEndpoint {
+
+    /** What {@link #onReturnedUnsequenced} answers when there is nothing to match. */
+    public static final long NO_SEQUENCE = -1;
+
+    private static final int MAX_OUTSTANDING = 64;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    // how often an unreliable transport repeats the stream header even without a key frame
+    static final long STREAM_HEADER_REPEAT_NS = TimeUnit.SECONDS.toNanos(1);
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    public final String host;
+    public final int port;
+
+    private volatile FrameTransport transport;
+
+    // ring of frames sent but not yet returned, guarded by this
+    private final long[] outstandingSequence = new long[MAX_OUTSTANDING];
+    private final long[] outstandingSentNs = new long[MAX_OUTSTANDING];
+    private int head = 0;
+    private int size = 0;
+
+    private double latencyMs = Double.NaN;
+    private long sent = 0;
+    private long returned = 0;
+    private long lost = 0;
+    private long failures = 0;
+    private int consecutiveFailures = 0;
+    private long lastConnectAttemptMs = Long.MIN_VALUE / 2;
+    private long connectedSinceMs = 0;
+
+    // sender thread only: the stream header this connection has seen
+    private final StreamHeader sentStreamHeader = new StreamHeader();
+    private FrameTransport streamHeaderTransport;
+    private long streamHeaderSentNs;
+
+    public InferenceEndpoint(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /** Parses "host:port". */
+    public static InferenceEndpoint parse(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0 || colon == address.length() - 1)
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        return new InferenceEndpoint(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    public FrameTransport getTransport() {
+        return transport;
+    }
+
+    public boolean isConnected() {
+        FrameTransport current = transport;
+        return current != null && current.isConnected();
+    }
+
+    /** True once {@code transport} has been sent {@code header}'s format. Sender thread only. */
+    boolean hasStreamHeader(FrameTransport transport, StreamHeader header) {
+        return transport == streamHeaderTransport && header.sameFormat(sentStreamHeader);
+    }
+
+    /**
+     * True if {@code header} should go out before the next frame: the
+     * connection has not had this format yet, or the transport may have lost
+     * it (or the server restarted since) and a key frame is next or
+     * {@link #STREAM_HEADER_REPEAT_NS} has passed. Sender thread only.
+     */
+    boolean isStreamHeaderDue(FrameTransport transport, StreamHeader header, boolean keyFrame, long nowNs) {
+        if (!hasStreamHeader(transport, header))
+            return true;
+        return !transport.isReliable() && (keyFrame || nowNs - streamHeaderSentNs >= STREAM_HEADER_REPEAT_NS);
+    }
+
+    /** Writes {@code header} through {@code scratch} and sends it on its own. Sender thread only. */
+    void sendStreamHeader(FrameTransport transport, StreamHeader header, ByteBuffer scratch, long nowNs)
+            throws IOException {
+        scratch.clear();
+        header.write(scratch);
+        scratch.flip();
+        transport.send(scratch, NO_PAYLOAD, 0, 0);
+        sentStreamHeader.copyFrom(header);
+        streamHeaderTransport = transport;
+        streamHeaderSentNs = nowNs;
+    }
+
+    synchronized void onConnected(FrameTransport transport, long nowMs) {
+        this.transport = transport;
+        consecutiveFailures = 0;
+        connectedSinceMs = nowMs;
+    }
+
+    /** Forgets the connection if it is still {@code failed}; returns true if it was. */
+    synchronized boolean onDisconnected(FrameTransport failed) {
+        if (failed == null || transport != failed)
+            return false;
+        transport = null;
+        failures++;
+        consecutiveFailures++;
+        size = 0; // those frames are never coming back
+        return true;
+    }
+
+    synchronized void onConnectFailed() {
+        failures++;
+        consecutiveFailures++;
+    }
+
+    synchronized boolean shouldAttemptConnect(long nowMs, long baseIntervalMs, long maxIntervalMs) {
+        // exponential backoff so a dead host is not hammered
+        long interval = baseIntervalMs << Math.min(consecutiveFailures, 10);
+        if (nowMs - lastConnectAttemptMs < Math.min(interval, maxIntervalMs))
+            return false;
+        lastConnectAttemptMs = nowMs;
+        return true;
+    }
+
+    public synchronized void onSent(long sequence, long nowNs) {
+        if (size == MAX_OUTSTANDING) {
+            head = (head + 1) % MAX_OUTSTANDING;
+            size--;
+            lost++;
+        }
+        int tail = (head + size) % MAX_OUTSTANDING;
+        outstandingSequence[tail] = sequence;
+        outstandingSentNs[tail] = nowNs;
+        size++;
+        sent++;
+    }
+
+    /**
+     * Takes back an {@link #onSent} whose write then failed, so the frame is
+     * not waited for. Only the most recent send can be rolled back.
+     */
+    public synchronized void onSendFailed(long sequence) {
+        if (size == 0)
+            return;
+        int tail = (head + size - 1) % MAX_OUTSTANDING;
+        if (outstandingSequence[tail] != sequence)
+            return;
+        size--;
+        sent--;
+    }
+
+    /**
+     * Matches a returned frame against the outstanding list and updates the
+     * latency estimate. Returns false if the sequence was not outstanding.
+     */
+    public synchronized boolean onReturned(long sequence, long nowNs) {
+        while (size > 0) {
+            long oldest = outstandingSequence[head];
+            long sentNs = outstandingSentNs[head];
+            if (oldest > sequence)
+                return false;
+            head = (head + 1) % MAX_OUTSTANDING;
+            size--;
+            if (oldest == sequence) {
+                returned++;
+                recordLatency((nowNs - sentNs) / 1e6);
+                return true;
+            }
+            lost++; // the server skipped this one
+        }
+        return false;
+    }
+
+    /**
+     * For replies without a header: assume they answer the oldest outstanding
+     * frame. {@link #NO_SEQUENCE} if nothing is outstanding, i.e. the frame
+     * it answers was already given up on.
+     */
+    public synchronized long onReturnedUnsequenced(long nowNs) {
+        if (size == 0)
+            return NO_SEQUENCE;
+        long sequence = outstandingSequence[head];
+        onReturned(sequence, nowNs);
+        return sequence;
+    }
+
+    /** Gives up on frames the server has held longer than {@code timeoutNs}. */
+    public synchronized void expire(long nowNs, long timeoutNs) {
+        while (size > 0 && nowNs - outstandingSentNs[head] > timeoutNs) {
+            head = (head + 1) % MAX_OUTSTANDING;
+            size--;
+            lost++;
+        }
+    }
+
+    private void recordLatency(double ms) {
+        if (ms < 0)
+            return;
+        latencyMs = Double.isNaN(latencyMs) ? ms : latencyMs + LATENCY_SMOOTHING * (ms - latencyMs);
+    }
+
+    /** Lower is better: expected wait for a new frame given what is already queued there. */
+    synchronized double score(double unknownLatencyMs) {
+        double latency = Double.isNaN(latencyMs) ? unknownLatencyMs : latencyMs;
+        return latency * (1 + size);
+    }
+
+    public synchronized int getInFlight() {
+        return size;
+    }
+
+    public synchronized long getOldestOutstanding() {
+        return size > 0 ? outstandingSequence[head] : Long.MAX_VALUE;
+    }
+
+    public synchronized double getLatencyMs() {
+        return latencyMs;
+    }
+
+    public synchronized long getSentCount() {
+        return sent;
+    }
+
+    public synchronized long getReturnedCount() {
+        return returned;
+    }
+
+    public synchronized long getLostCount() {
+        return lost;
+    }
+
+    public synchronized long getFailureCount() {
+        return failures;
+    }
+
+    public synchronized String summary(long nowMs) {
+        String state = transport != null ? "up " + (nowMs - connectedSinceMs) / 1000 + "s" : "down";
+        return host + ":" + port + " " + state + " lat=" + (Double.isNaN(latencyMs) ? "?" : Math.round(latencyMs))
+                + "ms inflight=" + size + " sent=" + sent + " returned=" + returned + " lost=" + lost
+                + " failures=" + failures;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.viperview.camera_stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses frames to JPEG on a small worker pool. At most one frame per
+ * worker is in flight; extra frames are skipped rather than queued, and a
+ * frame that finishes after a newer one has already been delivered is dropped
+ * so the uplink never goes backwards in time.
+ */
+public class JpegFrameEncoder implements FrameEncoder {
+
+    public interface Compressor {
+        void compress(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException;
+    }
+
+    private final FrameBufferPool inputPool;
+    private final Sink sink;
+    private final Compressor compressor;
+    private final ExecutorService workers;
+    private final Semaphore inFlight;
+    private final EncodedFramePool framePool;
+
+    private volatile int quality;
+    private long nextSequence = 0; // analyzer thread only
+    private long lastDelivered = -1; // guarded by this
+
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public JpegFrameEncoder(FrameBufferPool inputPool, Sink sink, Compressor compressor, int quality,
+            int workerCount) {
+        this.inputPool = inputPool;
+        this.sink = sink;
+        this.compressor = compressor;
+        this.quality = quality;
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        this.inFlight = new Semaphore(workerCount);
+        this.framePool = new EncodedFramePool(workerCount + 2, 64 * 1024);
+    }
+
+    public void setQuality(int quality) {
+        this.quality = Math.max(1, Math.min(100, quality));
+    }
+
+    @Override
+    public FrameCodec getCodec() {
+        return FrameCodec.JPEG;
+    }
+
+    @Override
+    public void describe(StreamHeader header) {
+        header.codec = FrameCodec.JPEG;
+        header.bitrate = 0;
+        header.quality = quality;
+    }
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, long timestampNs) {
+        if (!inFlight.tryAcquire()) {
+            skipped.incrementAndGet();
+            inputPool.release(nv21);
+            return;
+        }
+
+        long sequence = nextSequence++;
+        int frameQuality = quality;
+        workers.execute(() -> {
+            EncodedFrame frame = framePool.acquire();
+            boolean ok = false;
+            try {
+                compressor.compress(nv21, width, height, frameQuality, frame.reset());
+                frame.set(FrameCodec.JPEG, width, height, timestampNs, true);
+                ok = true;
+            } catch (Exception e) {
+                failed.incrementAndGet();
+            } finally {
+                inputPool.release(nv21);
+                inFlight.release();
+            }
+
+            if (ok)
+                deliver(sequence, frame);
+            else
+                frame.release();
+        });
+    }
+
+    private void deliver(long sequence, EncodedFrame frame) {
+        synchronized (this) {
+            if (sequence > lastDelivered) {
+                lastDelivered = sequence;
+                sink.onEncoded(frame);
+                return;
+            }
+        }
+        stale.incrementAndGet();
+        frame.release();
+    }
+
+    @Override
+    public void requestKeyFrame() {
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getStaleCount() {
+        return stale.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.viperview.camera_stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free rolling latency histogram. Samples land in log-spaced buckets
+ * (about 9% wide, 10 us to ~20 s) inside one of a few time windows; windows
+ * older than the rolling period are cleared as time moves on, so percentiles
+ * always describe roughly the last {@code windowMs * windows} of traffic.
+ */
+public class LatencyHistogram {
+
+    private static final double MIN_US = 10;
+    private static final double GROWTH = 1.09;
+    private static final int BUCKETS = 170;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+
+    private final String name;
+    private final long windowMs;
+    private final AtomicLongArray[] windows;
+    private final AtomicLong[] windowEpochs;
+
+    public LatencyHistogram(String name, long windowMs, int windowCount) {
+        this.name = name;
+        this.windowMs = windowMs;
+        this.windows = new AtomicLongArray[windowCount];
+        this.windowEpochs = new AtomicLong[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            windows[i] = new AtomicLongArray(BUCKETS);
+            windowEpochs[i] = new AtomicLong(-1);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long latencyNanos, long nowMs) {
+        if (latencyNanos < 0)
+            return; // clocks disagree, not a real sample
+        long epoch = nowMs / windowMs;
+        int slot = (int) (epoch % windows.length);
+        AtomicLong slotEpoch = windowEpochs[slot];
+        long seen = slotEpoch.get();
+        if (seen != epoch && slotEpoch.compareAndSet(seen, epoch)) {
+            AtomicLongArray window = windows[slot];
+            for (int i = 0; i < BUCKETS; i++)
+                window.set(i, 0);
+        }
+        windows[slot].incrementAndGet(bucketFor(latencyNanos / 1000.0));
+    }
+
+    public void record(long latencyNanos) {
+        record(latencyNanos, System.currentTimeMillis());
+    }
+
+    public long count(long nowMs) {
+        long total = 0;
+        long[] merged = merge(nowMs);
+        for (long c : merged)
+            total += c;
+        return total;
+    }
+
+    /** Upper bound of the bucket holding the given percentile, in milliseconds; 0 if empty. */
+    public double percentileMs(double percentile, long nowMs) {
+        long[] merged = merge(nowMs);
+        long total = 0;
+        for (long c : merged)
+            total += c;
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(percentile / 100.0 * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += merged[i];
+            if (seen >= Math.max(1, rank))
+                return bucketUpperUs(i) / 1000.0;
+        }
+        return bucketUpperUs(BUCKETS - 1) / 1000.0;
+    }
+
+    public double percentileMs(double percentile) {
+        return percentileMs(percentile, System.currentTimeMillis());
+    }
+
+    public String summary() {
+        long now = System.currentTimeMillis();
+        return String.format("%s n=%d p50=%.1fms p90=%.1fms p99=%.1fms", name, count(now),
+                percentileMs(50, now), percentileMs(90, now), percentileMs(99, now));
+    }
+
+    private long[] merge(long nowMs) {
+        long epoch = nowMs / windowMs;
+        long[] merged = new long[BUCKETS];
+        for (int w = 0; w < windows.length; w++) {
+            long windowEpoch = windowEpochs[w].get();
+            if (windowEpoch < 0 || epoch - windowEpoch >= windows.length)
+                continue;
+            for (int i = 0; i < BUCKETS; i++)
+                merged[i] += windows[w].get(i);
+        }
+        return merged;
+    }
+
+    static int bucketFor(double micros) {
+        if (micros <= MIN_US)
+            return 0;
+        int bucket = (int) Math.ceil(Math.log(micros / MIN_US) / LOG_GROWTH);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    static double bucketUpperUs(int bucket) {
+        return MIN_US * Math.pow(GROWTH, bucket);
+    }
+}
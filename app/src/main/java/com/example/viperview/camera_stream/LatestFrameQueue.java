@@ -0,0 +1,167 @@
+package com.example.viperview.camera_stream;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded hand-off between the camera analyzer and the uplink sender. When the
+ * queue is full the oldest queued frame is replaced by the newest one, so a
+ * slow link costs frames instead of memory and latency.
+ */
+public class LatestFrameQueue<T> {
+
+    public interface Recycler<T> {
+        void recycle(T frame);
+    }
+
+    private final ArrayDeque<T> frames = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Recycler<T> recycler;
+
+    private volatile int depth;
+    private boolean closed = false;
+
+    private final AtomicLong replaced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    public LatestFrameQueue(int depth, Recycler<T> recycler) {
+        if (depth < 1)
+            throw new IllegalArgumentException("depth must be >= 1");
+        this.depth = depth;
+        this.recycler = recycler;
+    }
+
+    public void setDepth(int depth) {
+        if (depth < 1)
+            throw new IllegalArgumentException("depth must be >= 1");
+        this.depth = depth;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /** Queues a frame, evicting the oldest one if the queue is full. */
+    public void offer(T frame) {
+        T evicted = null;
+        boolean rejected = false;
+        lock.lock();
+        try {
+            if (closed) {
+                rejected = true;
+            } else {
+                while (frames.size() >= depth) {
+                    T stale = frames.pollFirst();
+                    replaced.incrementAndGet();
+                    if (evicted != null)
+                        recycle(evicted);
+                    evicted = stale;
+                }
+                frames.addLast(frame);
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // recycle outside the lock so the analyzer never waits on the pool
+        if (evicted != null)
+            recycle(evicted);
+        if (rejected)
+            drop(frame);
+    }
+
+    /** Blocks until a frame is available. Returns null once the queue is closed. */
+    public T take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (frames.isEmpty() && !closed)
+                notEmpty.await();
+            return frames.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (frames.isEmpty() && !closed) {
+                if (nanos <= 0)
+                    return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return frames.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Records a frame taken from the queue as sent and recycles it. */
+    public void markSent(T frame) {
+        sent.incrementAndGet();
+        recycle(frame);
+    }
+
+    /** Records a frame that was discarded without being sent and recycles it. */
+    public void drop(T frame) {
+        dropped.incrementAndGet();
+        recycle(frame);
+    }
+
+    /** Drops everything still queued, e.g. after the connection went away. */
+    public void clear() {
+        ArrayDeque<T> stale;
+        lock.lock();
+        try {
+            stale = new ArrayDeque<>(frames);
+            frames.clear();
+        } finally {
+            lock.unlock();
+        }
+        for (T frame : stale)
+            drop(frame);
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        clear();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return frames.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getReplacedCount() {
+        return replaced.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    private void recycle(T frame) {
+        if (recycler != null && frame != null)
+            recycler.recycle(frame);
+    }
+}
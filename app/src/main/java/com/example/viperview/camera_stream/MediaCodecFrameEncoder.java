@@ -0,0 +1,220 @@
+package com.example.viperview.camera_stream;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Hardware H.264/HEVC encoder fed straight from the camera through an input
+ * Surface, so frames never pass through the NV21 path. Configured for low
+ * latency: no B-frames, realtime priority, and codec config prepended to
+ * every key frame so the server can join mid-stream.
+ */
+public class MediaCodecFrameEncoder implements FrameEncoder {
+
+    private static final String TAG = "MediaCodecFrameEncoder";
+
+    private final FrameCodec codec;
+    private final FrameBufferPool inputPool;
+    private final Sink sink;
+    private final EncodedFramePool framePool = new EncodedFramePool(6, 64 * 1024);
+
+    private volatile int bitrate;
+    private final int frameRate;
+    private final int keyFrameIntervalSec;
+
+    private MediaCodec mediaCodec;
+    private Surface inputSurface;
+    private HandlerThread callbackThread;
+    private int width;
+    private int height;
+
+    // only touched on callbackThread
+    private byte[] codecConfig = new byte[0];
+    private int codecConfigLength = 0;
+
+    public MediaCodecFrameEncoder(FrameCodec codec, FrameBufferPool inputPool, Sink sink,
+            int bitrate, int frameRate, int keyFrameIntervalSec) {
+        if (!codec.isInterFrame())
+            throw new IllegalArgumentException("MediaCodec encoder needs H264 or HEVC, got " + codec);
+        this.codec = codec;
+        this.inputPool = inputPool;
+        this.sink = sink;
+        this.bitrate = bitrate;
+        this.frameRate = frameRate;
+        this.keyFrameIntervalSec = keyFrameIntervalSec;
+    }
+
+    /**
+     * (Re)configures the codec for the given size and returns the Surface the
+     * camera should render into. Returns the existing surface if the size is
+     * unchanged.
+     */
+    public synchronized Surface start(int width, int height) throws IOException {
+        if (mediaCodec != null && width == this.width && height == this.height)
+            return inputSurface;
+        stopCodec();
+
+        MediaFormat format = MediaFormat.createVideoFormat(codec.mimeType, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
+        format.setInteger(MediaFormat.KEY_BITRATE_MODE, MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CBR);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, keyFrameIntervalSec);
+        format.setInteger(MediaFormat.KEY_MAX_B_FRAMES, 0);
+        format.setInteger(MediaFormat.KEY_LATENCY, 1);
+        format.setInteger(MediaFormat.KEY_PRIORITY, 0); // realtime
+        format.setInteger(MediaFormat.KEY_PREPEND_HEADER_TO_SYNC_FRAMES, 1);
+
+        callbackThread = new HandlerThread(TAG);
+        callbackThread.start();
+
+        mediaCodec = MediaCodec.createEncoderByType(codec.mimeType);
+        mediaCodec.setCallback(callback, new Handler(callbackThread.getLooper()));
+        mediaCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        inputSurface = mediaCodec.createInputSurface();
+        mediaCodec.start();
+
+        this.width = width;
+        this.height = height;
+        Log.d(TAG, "Started " + codec + " " + width + "x" + height + " @ " + bitrate + " bps");
+        return inputSurface;
+    }
+
+    private final MediaCodec.Callback callback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec mc, int index) {
+            // input comes from the Surface
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec mc, int index,
+                @NonNull MediaCodec.BufferInfo info) {
+            try {
+                ByteBuffer out = mc.getOutputBuffer(index);
+                if (out == null || info.size == 0)
+                    return;
+                out.position(info.offset);
+                out.limit(info.offset + info.size);
+
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    if (codecConfig.length < info.size)
+                        codecConfig = new byte[info.size];
+                    out.get(codecConfig, 0, info.size);
+                    codecConfigLength = info.size;
+                    return;
+                }
+
+                boolean keyFrame = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+                EncodedFrame frame = framePool.acquire();
+                // Some encoders ignore KEY_PREPEND_HEADER_TO_SYNC_FRAMES, so add SPS/PPS ourselves.
+                int prefix = keyFrame && !startsWith(out, codecConfig, codecConfigLength) ? codecConfigLength : 0;
+                frame.ensureCapacity(prefix + info.size);
+                System.arraycopy(codecConfig, 0, frame.data, 0, prefix);
+                out.get(frame.data, prefix, info.size);
+                frame.length = prefix + info.size;
+                frame.set(codec, width, height, info.presentationTimeUs * 1000L, keyFrame);
+                sink.onEncoded(frame);
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Output after codec stopped", e);
+            } finally {
+                try {
+                    mc.releaseOutputBuffer(index, false);
+                } catch (IllegalStateException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec mc, @NonNull MediaCodec.CodecException e) {
+            Log.e(TAG, "Encoder error", e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec mc, @NonNull MediaFormat format) {
+            Log.d(TAG, "Output format " + format);
+        }
+    };
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] prefix, int prefixLength) {
+        if (prefixLength == 0 || buffer.remaining() < prefixLength)
+            return prefixLength == 0;
+        int base = buffer.position();
+        for (int i = 0; i < prefixLength; i++) {
+            if (buffer.get(base + i) != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    public synchronized void setBitrate(int bitrate) {
+        this.bitrate = bitrate;
+        if (mediaCodec == null)
+            return;
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitrate);
+        mediaCodec.setParameters(params);
+    }
+
+    @Override
+    public FrameCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public void describe(StreamHeader header) {
+        header.codec = codec;
+        header.frameRate = frameRate;
+        header.bitrate = bitrate;
+        header.quality = 0;
+    }
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, long timestampNs) {
+        // frames arrive through the input Surface instead
+        inputPool.release(nv21);
+    }
+
+    @Override
+    public synchronized void requestKeyFrame() {
+        if (mediaCodec == null)
+            return;
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        mediaCodec.setParameters(params);
+    }
+
+    @Override
+    public synchronized void close() {
+        stopCodec();
+    }
+
+    private void stopCodec() {
+        if (mediaCodec != null) {
+            try {
+                mediaCodec.stop();
+            } catch (IllegalStateException ignored) {
+            }
+            mediaCodec.release();
+            mediaCodec = null;
+        }
+        if (inputSurface != null) {
+            inputSurface.release();
+            inputSurface = null;
+        }
+        if (callbackThread != null) {
+            callbackThread.quitSafely();
+            callbackThread = null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.viperview.camera_stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs YUV_420_888 planes into an NV21 byte array while respecting row and
+ * pixel strides. Kept free of Android types so it can be unit tested with
+ * plain ByteBuffers.
+ */
+public final class Nv21Converter {
+
+    private Nv21Converter() {
+    }
+
+    public static int frameSize(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * {@code chromaScratch} holds one chroma row on its way into
+     * {@code out} and needs at least {@code width} bytes; keep it between
+     * frames.
+     */
+    public static void convert(int width, int height,
+            ByteBuffer yBuffer, int yRowStride,
+            ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+            byte[] out, byte[] chromaScratch) {
+        copyLuma(width, height, yBuffer, yRowStride, out);
+
+        int offset = width * height;
+        if (isInterleavedVU(uBuffer, vBuffer, uvPixelStride)) {
+            copyInterleavedChroma(width, height, uBuffer, vBuffer, uvRowStride, out, offset);
+        } else if (uvPixelStride == 2) {
+            copySemiPlanarChroma(width, height, uBuffer, vBuffer, uvRowStride, out, offset, chromaScratch);
+        } else {
+            copyChromaPerPixel(width, height, uBuffer, vBuffer, uvRowStride, uvPixelStride, out, offset);
+        }
+    }
+
+    private static void copyLuma(int width, int height, ByteBuffer yBuffer, int yRowStride, byte[] out) {
+        if (yRowStride == width) {
+            yBuffer.position(0);
+            yBuffer.get(out, 0, width * height);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            yBuffer.position(row * yRowStride);
+            yBuffer.get(out, row * width, width);
+        }
+    }
+
+    // With pixelStride == 2 most devices back U and V with one NV21-ordered
+    // buffer, so the V plane already reads VUVU... That is only provable for
+    // heap buffers, by comparing their arrays; direct camera planes take
+    // copySemiPlanarChroma, which is right whether or not they alias. The
+    // planes belong to the camera and are never written.
+    static boolean isInterleavedVU(ByteBuffer uBuffer, ByteBuffer vBuffer, int uvPixelStride) {
+        if (uvPixelStride != 2 || vBuffer.limit() < 2 || uBuffer.limit() < 1)
+            return false;
+        return uBuffer.hasArray() && vBuffer.hasArray() && uBuffer.array() == vBuffer.array()
+                && uBuffer.arrayOffset() == vBuffer.arrayOffset() + 1;
+    }
+
+    private static void copyInterleavedChroma(int width, int height, ByteBuffer uBuffer, ByteBuffer vBuffer,
+            int uvRowStride, byte[] out, int offset) {
+        int chromaRows = height / 2;
+
+        if (uvRowStride == width) {
+            // whole plane is contiguous: one bulk copy, V plane stops one byte short
+            int total = width * chromaRows;
+            int len = Math.min(total, vBuffer.limit());
+            vBuffer.position(0);
+            vBuffer.get(out, offset, len);
+            if (len < total)
+                out[offset + total - 1] = uBuffer.get(total - 2);
+            return;
+        }
+
+        for (int row = 0; row < chromaRows; row++) {
+            int src = row * uvRowStride;
+            int len = Math.min(width, vBuffer.limit() - src);
+            vBuffer.position(src);
+            vBuffer.get(out, offset, len);
+            if (len < width)
+                out[offset + width - 1] = uBuffer.get(src + width - 2);
+            offset += width;
+        }
+    }
+
+    // Each V row is bulk-copied, which puts V right and leaves its neighbour in
+    // the U slots; then the U row is bulk-read into scratch and its samples
+    // written over those. Two bulk reads per row, whatever the layout.
+    private static void copySemiPlanarChroma(int width, int height, ByteBuffer uBuffer, ByteBuffer vBuffer,
+            int uvRowStride, byte[] out, int offset, byte[] scratch) {
+        if (scratch.length < width)
+            throw new IllegalArgumentException("chroma scratch needs " + width + " bytes, has " + scratch.length);
+        // up to the last sample of a row, which the planes' last row may end on
+        int rowBytes = width - 1;
+        for (int row = 0; row < height / 2; row++) {
+            int src = row * uvRowStride;
+            vBuffer.position(src);
+            vBuffer.get(out, offset, rowBytes);
+            uBuffer.position(src);
+            uBuffer.get(scratch, 0, rowBytes);
+            for (int col = 0; col < rowBytes; col += 2)
+                out[offset + col + 1] = scratch[col];
+            offset += width;
+        }
+    }
+
+    private static void copyChromaPerPixel(int width, int height, ByteBuffer uBuffer, ByteBuffer vBuffer,
+            int uvRowStride, int uvPixelStride, byte[] out, int offset) {
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                out[offset++] = vBuffer.get(row * uvRowStride + col * uvPixelStride);
+                out[offset++] = uBuffer.get(row * uvRowStride + col * uvPixelStride);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.viperview.camera_stream;
+
+/** Sends the NV21 bytes as-is; the frame buffer goes back to the pool once sent. */
+public class RawNv21Encoder implements FrameEncoder {
+
+    private final Sink sink;
+    private final EncodedFramePool framePool;
+
+    public RawNv21Encoder(FrameBufferPool inputPool, Sink sink) {
+        this.sink = sink;
+        this.framePool = new EncodedFramePool(4, 0, frame -> {
+            inputPool.release(frame.data);
+            frame.data = null;
+        });
+    }
+
+    @Override
+    public FrameCodec getCodec() {
+        return FrameCodec.RAW_NV21;
+    }
+
+    @Override
+    public void describe(StreamHeader header) {
+        header.codec = FrameCodec.RAW_NV21;
+        header.bitrate = 0;
+        header.quality = 0;
+    }
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, long timestampNs) {
+        EncodedFrame frame = framePool.acquire();
+        frame.data = nv21;
+        frame.length = Nv21Converter.frameSize(width, height);
+        frame.set(FrameCodec.RAW_NV21, width, height, timestampNs, true);
+        sink.onEncoded(frame);
+    }
+
+    @Override
+    public void requestKeyFrame() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
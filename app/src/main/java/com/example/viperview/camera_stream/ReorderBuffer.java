@@ -0,0 +1,120 @@
+package com.example.viperview.camera_stream;
+
+import java.util.function.Consumer;
+
+/**
+ * Puts frames returned by several servers back into capture order. A held
+ * frame is released once no older frame is still in flight anywhere, once it
+ * has waited {@code maxWaitNs}, or when the buffer is full. Anything that
+ * arrives after a newer frame has been released is stale and recycled.
+ */
+public class ReorderBuffer<T> {
+
+    private final long[] sequences;
+    private final long[] arrivalNs;
+    private final Object[] items;
+    private final long maxWaitNs;
+    private final LatestFrameQueue.Recycler<T> recycler;
+
+    private int size = 0; // held items, sorted by sequence
+    private long lastReleased = -1;
+    private long highestSeen = -1;
+
+    private long reordered = 0;
+    private long stale = 0;
+
+    public ReorderBuffer(int capacity, long maxWaitNs, LatestFrameQueue.Recycler<T> recycler) {
+        this.sequences = new long[capacity];
+        this.arrivalNs = new long[capacity];
+        this.items = new Object[capacity];
+        this.maxWaitNs = maxWaitNs;
+        this.recycler = recycler;
+    }
+
+    /**
+     * Adds a returned frame and releases whatever is ready, in order.
+     * {@code oldestOutstanding} is the oldest sequence still in flight.
+     */
+    public synchronized void offer(long sequence, T item, long nowNs, long oldestOutstanding, Consumer<T> out) {
+        if (sequence <= lastReleased) {
+            stale++;
+            recycle(item);
+        } else {
+            if (sequence < highestSeen)
+                reordered++;
+            highestSeen = Math.max(highestSeen, sequence);
+            if (size == items.length) {
+                // full: the oldest has to go now, and that may be the new one
+                if (sequence < sequences[0]) {
+                    lastReleased = sequence;
+                    out.accept(item);
+                    drain(nowNs, oldestOutstanding, out);
+                    return;
+                }
+                release(0, out);
+            }
+            int at = size;
+            while (at > 0 && sequences[at - 1] > sequence)
+                at--;
+            System.arraycopy(sequences, at, sequences, at + 1, size - at);
+            System.arraycopy(arrivalNs, at, arrivalNs, at + 1, size - at);
+            System.arraycopy(items, at, items, at + 1, size - at);
+            sequences[at] = sequence;
+            arrivalNs[at] = nowNs;
+            items[at] = item;
+            size++;
+        }
+        drain(nowNs, oldestOutstanding, out);
+    }
+
+    /** Releases held frames that no longer need to wait. */
+    public synchronized void drain(long nowNs, long oldestOutstanding, Consumer<T> out) {
+        // a frame that timed out releases everything before it too
+        int timedOut = -1;
+        for (int i = 0; i < size; i++) {
+            if (nowNs - arrivalNs[i] >= maxWaitNs)
+                timedOut = i;
+        }
+        while (size > 0 && (timedOut >= 0 || sequences[0] < oldestOutstanding
+                || oldestOutstanding <= lastReleased)) {
+            // an outstanding frame older than one already shown would be stale anyway
+            release(0, out);
+            timedOut--;
+        }
+    }
+
+    /** Hands every held frame over in order, e.g. on shutdown. */
+    public synchronized void flush(Consumer<T> out) {
+        while (size > 0)
+            release(0, out);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void release(int index, Consumer<T> out) {
+        T item = (T) items[index];
+        lastReleased = sequences[index];
+        System.arraycopy(sequences, index + 1, sequences, index, size - index - 1);
+        System.arraycopy(arrivalNs, index + 1, arrivalNs, index, size - index - 1);
+        System.arraycopy(items, index + 1, items, index, size - index - 1);
+        size--;
+        items[size] = null;
+        out.accept(item);
+    }
+
+    private void recycle(T item) {
+        if (recycler != null && item != null)
+            recycler.recycle(item);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getReorderedCount() {
+        return reordered;
+    }
+
+    public synchronized long getStaleCount() {
+        return stale;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.viperview.camera_stream;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/** The original blocking stream transport. */
+public class SocketFrameTransport implements FrameTransport {
+
+    private volatile Socket socket;
+    private OutputStream output;
+    private InputStream input;
+
+    private byte[] headerScratch = new byte[16];
+
+    @Override
+    public void connect(String host, int port, int timeoutMs) throws IOException {
+        Socket newSocket = new Socket();
+        newSocket.connect(new InetSocketAddress(host, port), timeoutMs);
+        output = newSocket.getOutputStream();
+        input = newSocket.getInputStream();
+        socket = newSocket;
+    }
+
+    @Override
+    public boolean isConnected() {
+        Socket current = socket;
+        return current != null && current.isConnected() && !current.isClosed();
+    }
+
+    @Override
+    public boolean isReliable() {
+        return true;
+    }
+
+    @Override
+    public void send(ByteBuffer header, byte[] payload, int offset, int length) throws IOException {
+        if (output == null)
+            throw new IOException("not connected");
+
+        int headerLength = header.remaining();
+        if (header.hasArray()) {
+            output.write(header.array(), header.arrayOffset() + header.position(), headerLength);
+        } else {
+            if (headerScratch.length < headerLength)
+                headerScratch = new byte[headerLength];
+            header.duplicate().get(headerScratch, 0, headerLength);
+            output.write(headerScratch, 0, headerLength);
+        }
+        output.write(payload, offset, length);
+        output.flush();
+    }
+
+    @Override
+    public void startReceiving(Listener listener) {
+        new Thread(() -> {
+            Exception cause = null;
+            try {
+                DataInputStream in = new DataInputStream(input);
+                byte[] frame = new byte[0];
+                ByteBuffer view = ByteBuffer.wrap(frame);
+                while (true) {
+                    int frameLen = in.readInt();
+                    if (frameLen < 0 || frameLen > MAX_FRAME_BYTES)
+                        throw new IOException("Bad frame length " + frameLen);
+                    if (frame.length < frameLen) {
+                        frame = new byte[frameLen];
+                        view = ByteBuffer.wrap(frame);
+                    }
+                    in.readFully(frame, 0, frameLen);
+                    view.clear();
+                    view.limit(frameLen);
+                    listener.onFrame(view);
+                }
+            } catch (Exception e) {
+                cause = e;
+            }
+            listener.onClosed(cause);
+        }, "SocketFrameTransport-rx").start();
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (socket != null)
+                socket.close();
+        } catch (Exception ignored) {
+        }
+        socket = null;
+        output = null;
+        input = null;
+    }
+}
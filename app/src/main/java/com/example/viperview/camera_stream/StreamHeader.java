@@ -0,0 +1,67 @@
+package com.example.viperview.camera_stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sent once per connection, and again whenever the format changes, before
+ * any frame so the server can pick the matching decoder. Over UDP, where it
+ * can be lost, it is also repeated before every key frame and at least once
+ * a second; a server should ignore a repeat of the format it already has.
+ *
+ * Layout (big-endian): magic "VVS1", u8 version, u8 codec id, u16 width,
+ * u16 height, u16 frame rate, u32 bitrate (bps, 0 if n/a), u8 quality (0 if n/a).
+ */
+public class StreamHeader {
+
+    public static final int MAGIC = 0x56565331; // "VVS1"
+    public static final int VERSION = 1;
+    public static final int SIZE = 17;
+
+    public FrameCodec codec = FrameCodec.RAW_NV21;
+    public int width;
+    public int height;
+    public int frameRate;
+    public int bitrate;
+    public int quality;
+
+    public void write(ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) codec.id);
+        out.putShort((short) width);
+        out.putShort((short) height);
+        out.putShort((short) frameRate);
+        out.putInt(bitrate);
+        out.put((byte) quality);
+    }
+
+    public static StreamHeader read(ByteBuffer in) {
+        if (in.getInt() != MAGIC)
+            throw new IllegalArgumentException("Not a stream header");
+        int version = in.get() & 0xFF;
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported stream header version " + version);
+        StreamHeader header = new StreamHeader();
+        header.codec = FrameCodec.fromId(in.get() & 0xFF);
+        header.width = in.getShort() & 0xFFFF;
+        header.height = in.getShort() & 0xFFFF;
+        header.frameRate = in.getShort() & 0xFFFF;
+        header.bitrate = in.getInt();
+        header.quality = in.get() & 0xFF;
+        return header;
+    }
+
+    public boolean sameFormat(StreamHeader other) {
+        return other != null && codec == other.codec && width == other.width && height == other.height
+                && frameRate == other.frameRate && bitrate == other.bitrate && quality == other.quality;
+    }
+
+    public void copyFrom(StreamHeader other) {
+        codec = other.codec;
+        width = other.width;
+        height = other.height;
+        frameRate = other.frameRate;
+        bitrate = other.bitrate;
+        quality = other.quality;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.viperview.camera_stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits one frame into MTU-sized datagrams. Every datagram carries
+ * (big-endian):
+ *
+ * u8 flags, u8 parity group size (0 = no parity), u32 frame id,
+ * u16 index, u16 data fragment count, u32 frame length, then payload.
+ *
+ * For parity datagrams (flag bit 0) the index is the group number and the
+ * payload is the XOR of that group's data fragments, zero padded.
+ */
+public class UdpFragmenter {
+
+    public static final int HEADER_BYTES = 14;
+    public static final int FLAG_PARITY = 1;
+
+    public interface DatagramSink {
+        void send(ByteBuffer datagram) throws IOException;
+    }
+
+    private final int maxPayload;
+    private final int parityGroupSize;
+    private final ByteBuffer datagram;
+    private final byte[] parity;
+    private int nextFrameId = 0;
+
+    public UdpFragmenter(int maxDatagramBytes, int parityGroupSize) {
+        if (maxDatagramBytes <= HEADER_BYTES)
+            throw new IllegalArgumentException("datagram too small");
+        this.maxPayload = maxDatagramBytes - HEADER_BYTES;
+        this.parityGroupSize = parityGroupSize;
+        this.datagram = ByteBuffer.allocate(maxDatagramBytes);
+        this.parity = new byte[parityGroupSize > 0 ? maxPayload : 0];
+    }
+
+    public int getMaxPayload() {
+        return maxPayload;
+    }
+
+    /** Sends header followed by payload as a single fragmented frame. Returns the frame id. */
+    public int send(ByteBuffer header, byte[] payload, int offset, int length, DatagramSink sink)
+            throws IOException {
+        int headerLength = header == null ? 0 : header.remaining();
+        int frameLength = headerLength + length;
+        int fragmentCount = Math.max(1, (frameLength + maxPayload - 1) / maxPayload);
+        if (fragmentCount > 0xFFFF)
+            throw new IOException("frame too large for UDP: " + frameLength);
+
+        int frameId = nextFrameId++;
+        int headerBase = headerLength == 0 ? 0 : header.position();
+        byte[] datagramBytes = datagram.array();
+
+        for (int index = 0; index < fragmentCount; index++) {
+            int start = index * maxPayload;
+            int end = Math.min(frameLength, start + maxPayload);
+
+            writeHeader(0, frameId, index, fragmentCount, frameLength);
+            int pos = HEADER_BYTES;
+            for (int i = start; i < end; ) {
+                if (i < headerLength) {
+                    int n = Math.min(end, headerLength) - i;
+                    for (int k = 0; k < n; k++)
+                        datagramBytes[pos + k] = header.get(headerBase + i + k);
+                    i += n;
+                    pos += n;
+                } else {
+                    int n = end - i;
+                    System.arraycopy(payload, offset + i - headerLength, datagramBytes, pos, n);
+                    i += n;
+                    pos += n;
+                }
+            }
+            datagram.limit(pos);
+            datagram.position(0);
+
+            if (parityGroupSize > 0) {
+                if (index % parityGroupSize == 0)
+                    Arrays.fill(parity, (byte) 0);
+                for (int k = 0; k < pos - HEADER_BYTES; k++)
+                    parity[k] ^= datagramBytes[HEADER_BYTES + k];
+            }
+            sink.send(datagram);
+
+            if (parityGroupSize > 0
+                    && ((index + 1) % parityGroupSize == 0 || index == fragmentCount - 1))
+                sendParity(frameId, index / parityGroupSize, fragmentCount, frameLength, sink);
+        }
+        if (header != null)
+            header.position(headerBase + headerLength);
+        return frameId;
+    }
+
+    private void sendParity(int frameId, int group, int fragmentCount, int frameLength, DatagramSink sink)
+            throws IOException {
+        writeHeader(FLAG_PARITY, frameId, group, fragmentCount, frameLength);
+        System.arraycopy(parity, 0, datagram.array(), HEADER_BYTES, maxPayload);
+        datagram.limit(HEADER_BYTES + maxPayload);
+        datagram.position(0);
+        sink.send(datagram);
+    }
+
+    private void writeHeader(int flags, int frameId, int index, int fragmentCount, int frameLength) {
+        datagram.clear();
+        datagram.put((byte) flags);
+        datagram.put((byte) parityGroupSize);
+        datagram.putInt(frameId);
+        datagram.putShort((short) index);
+        datagram.putShort((short) fragmentCount);
+        datagram.putInt(frameLength);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.viperview.camera_stream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UDP transport: no head-of-line blocking, a lost datagram only costs the
+ * frame it belongs to. Frames are split by {@link UdpFragmenter} and rebuilt
+ * by {@link UdpReassembler} on both ends; the server uses the same format.
+ */
+public class UdpFrameTransport implements FrameTransport {
+
+    // Stays under the 1280-byte Tailscale MTU once IP and UDP headers are added.
+    public static final int DEFAULT_MAX_DATAGRAM_BYTES = 1200;
+    private static final int REASSEMBLY_SLOTS = 4;
+    private static final long DEFAULT_DEADLINE_MS = 150;
+    private static final int SOCKET_BUFFER_BYTES = 1024 * 1024;
+    // consecutive port-unreachable errors, with backoff between them, before the server counts as down
+    private static final int MAX_PORT_UNREACHABLE = 5;
+    private static final long MAX_UNREACHABLE_BACKOFF_MS = 1000;
+
+    private final int maxDatagramBytes;
+    private final long deadlineNanos;
+    private final UdpFragmenter fragmenter;
+    private final UdpStats stats = new UdpStats();
+
+    private volatile DatagramChannel channel;
+    private volatile Selector readSelector;
+
+    public UdpFrameTransport() {
+        this(DEFAULT_MAX_DATAGRAM_BYTES, 0, DEFAULT_DEADLINE_MS);
+    }
+
+    /** @param parityGroupSize data fragments per XOR parity datagram, 0 to disable */
+    public UdpFrameTransport(int maxDatagramBytes, int parityGroupSize, long deadlineMs) {
+        this.maxDatagramBytes = maxDatagramBytes;
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        this.fragmenter = new UdpFragmenter(maxDatagramBytes, parityGroupSize);
+    }
+
+    public UdpStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void connect(String host, int port, int timeoutMs) throws IOException {
+        DatagramChannel newChannel = DatagramChannel.open();
+        try {
+            newChannel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_BYTES);
+            newChannel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_BYTES);
+            newChannel.connect(new InetSocketAddress(host, port));
+            newChannel.configureBlocking(false);
+        } catch (IOException e) {
+            newChannel.close();
+            throw e;
+        }
+        channel = newChannel;
+    }
+
+    @Override
+    public boolean isConnected() {
+        DatagramChannel current = channel;
+        return current != null && current.isConnected();
+    }
+
+    @Override
+    public boolean isReliable() {
+        return false;
+    }
+
+    @Override
+    public void send(ByteBuffer header, byte[] payload, int offset, int length) throws IOException {
+        DatagramChannel current = channel;
+        if (current == null)
+            throw new IOException("not connected");
+        fragmenter.send(header, payload, offset, length, datagram -> {
+            // a full socket buffer loses the datagram, same as the network would
+            if (current.write(datagram) > 0)
+                stats.datagramsSent.incrementAndGet();
+            else
+                stats.datagramsNotSent.incrementAndGet();
+        });
+        stats.framesSent.incrementAndGet();
+    }
+
+    @Override
+    public void startReceiving(Listener listener) {
+        DatagramChannel current = channel;
+        new Thread(() -> {
+            Exception cause = null;
+            try (Selector selector = Selector.open()) {
+                readSelector = selector;
+                current.register(selector, SelectionKey.OP_READ);
+                receiveLoop(current, selector, listener);
+            } catch (Exception e) {
+                cause = e;
+            }
+            listener.onClosed(cause);
+        }, "UdpFrameTransport-rx").start();
+    }
+
+    private void receiveLoop(DatagramChannel current, Selector selector, Listener listener) throws IOException {
+        UdpReassembler reassembler = new UdpReassembler(maxDatagramBytes, REASSEMBLY_SLOTS, deadlineNanos, stats);
+        ByteBuffer datagram = ByteBuffer.allocateDirect(maxDatagramBytes);
+        long selectTimeoutMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos) / 2);
+        UdpReassembler.FrameSink sink = listener::onFrame;
+        int unreachable = 0;
+
+        while (current.isOpen()) {
+            selector.select(selectTimeoutMs);
+            selector.selectedKeys().clear();
+
+            while (true) {
+                datagram.clear();
+                int n;
+                try {
+                    n = current.read(datagram);
+                } catch (PortUnreachableException e) {
+                    // nothing listening; give the server a moment, then report it down
+                    stats.portUnreachable.incrementAndGet();
+                    if (++unreachable >= MAX_PORT_UNREACHABLE)
+                        throw e;
+                    sleep(Math.min(MAX_UNREACHABLE_BACKOFF_MS, selectTimeoutMs << (unreachable - 1)));
+                    break;
+                }
+                if (n <= 0)
+                    break;
+                unreachable = 0;
+                datagram.flip();
+                reassembler.onDatagram(datagram, System.nanoTime(), sink);
+            }
+            reassembler.expire(System.nanoTime());
+        }
+    }
+
+    private static void sleep(long ms) throws IOException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public void close() {
+        DatagramChannel current = channel;
+        channel = null;
+        try {
+            if (current != null)
+                current.close();
+        } catch (IOException ignored) {
+        }
+        Selector selector = readSelector;
+        if (selector != null)
+            selector.wakeup();
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.viperview.camera_stream;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Rebuilds frames from {@link UdpFragmenter} datagrams. A few frames can be in
+ * flight at once; a frame is abandoned when its deadline passes or when a
+ * newer frame completes first, since the viewer only wants the latest frame.
+ * A single missing fragment per parity group is rebuilt from the XOR packet.
+ * Frame ids that jump back by more than {@link #RESTART_WINDOW}, or that are
+ * behind after a deadline with nothing delivered, mean the sender restarted
+ * its numbering; the reassembler then starts over from the new ids.
+ */
+public class UdpReassembler {
+
+    static final int RESTART_WINDOW = 1024; // frames; a late fragment is never this far behind
+
+    public interface FrameSink {
+        // The buffer is only valid for the duration of the call.
+        void onFrame(ByteBuffer frame);
+    }
+
+    private final int maxPayload;
+    private final long deadlineNanos;
+    private final UdpStats stats;
+    private final Slot[] slots;
+
+    private boolean deliveredAny = false;
+    private int lastDeliveredId;
+    private long lastDeliveredNanos;
+
+    public UdpReassembler(int maxDatagramBytes, int slotCount, long deadlineNanos, UdpStats stats) {
+        this.maxPayload = maxDatagramBytes - UdpFragmenter.HEADER_BYTES;
+        this.deadlineNanos = deadlineNanos;
+        this.stats = stats;
+        this.slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++)
+            slots[i] = new Slot();
+    }
+
+    public void onDatagram(ByteBuffer datagram, long nowNanos, FrameSink sink) {
+        if (datagram.remaining() < UdpFragmenter.HEADER_BYTES) {
+            stats.malformedDatagrams.incrementAndGet();
+            return;
+        }
+        int base = datagram.position();
+        int flags = datagram.get(base) & 0xFF;
+        int groupSize = datagram.get(base + 1) & 0xFF;
+        int frameId = datagram.getInt(base + 2);
+        int index = datagram.getShort(base + 6) & 0xFFFF;
+        int fragmentCount = datagram.getShort(base + 8) & 0xFFFF;
+        int frameLength = datagram.getInt(base + 10);
+        int payloadLength = datagram.remaining() - UdpFragmenter.HEADER_BYTES;
+        boolean isParity = (flags & UdpFragmenter.FLAG_PARITY) != 0;
+
+        if (frameLength < 0 || frameLength > FrameTransport.MAX_FRAME_BYTES || fragmentCount == 0
+                || fragmentCount != Math.max(1, (frameLength + maxPayload - 1) / maxPayload)) {
+            stats.malformedDatagrams.incrementAndGet();
+            return;
+        }
+
+        if (deliveredAny && frameId - lastDeliveredId <= 0) {
+            if (lastDeliveredId - frameId <= RESTART_WINDOW && nowNanos - lastDeliveredNanos <= deadlineNanos) {
+                stats.lateFragments.incrementAndGet();
+                return;
+            }
+            restart();
+        }
+
+        Slot slot = findOrAllocate(frameId, frameLength, fragmentCount, groupSize, nowNanos);
+
+        if (isParity) {
+            if (groupSize == 0 || index >= slot.groupCount() || payloadLength != maxPayload) {
+                stats.malformedDatagrams.incrementAndGet();
+                return;
+            }
+            if (slot.parityReceived[index]) {
+                stats.duplicateFragments.incrementAndGet();
+                return;
+            }
+            datagram.position(base + UdpFragmenter.HEADER_BYTES);
+            datagram.get(slot.parity, index * maxPayload, maxPayload);
+            datagram.position(base);
+            slot.parityReceived[index] = true;
+            tryRecover(slot, index);
+        } else {
+            if (index >= fragmentCount || payloadLength != slot.fragmentLength(index)) {
+                stats.malformedDatagrams.incrementAndGet();
+                return;
+            }
+            if (slot.received[index]) {
+                stats.duplicateFragments.incrementAndGet();
+                return;
+            }
+            datagram.position(base + UdpFragmenter.HEADER_BYTES);
+            datagram.get(slot.data, index * maxPayload, payloadLength);
+            datagram.position(base);
+            slot.markReceived(index);
+            if (slot.groupSize > 0)
+                tryRecover(slot, index / slot.groupSize);
+        }
+
+        if (slot.receivedCount == slot.fragmentCount)
+            complete(slot, nowNanos, sink);
+    }
+
+    /** Abandons incomplete frames whose first fragment arrived more than the deadline ago. */
+    public void expire(long nowNanos) {
+        for (Slot slot : slots) {
+            if (slot.active && nowNanos - slot.firstArrivalNanos > deadlineNanos) {
+                slot.active = false;
+                stats.framesLost.incrementAndGet();
+            }
+        }
+    }
+
+    // whatever is in flight is numbered in the old sequence and would never complete
+    private void restart() {
+        for (Slot slot : slots) {
+            if (slot.active) {
+                slot.active = false;
+                stats.framesLost.incrementAndGet();
+            }
+        }
+        deliveredAny = false;
+        stats.senderRestarts.incrementAndGet();
+    }
+
+    private Slot findOrAllocate(int frameId, int frameLength, int fragmentCount, int groupSize, long nowNanos) {
+        Slot free = null;
+        Slot oldest = null;
+        for (Slot slot : slots) {
+            if (slot.active && slot.frameId == frameId)
+                return slot;
+            if (!slot.active) {
+                if (free == null)
+                    free = slot;
+            } else if (oldest == null || slot.frameId - oldest.frameId < 0) {
+                oldest = slot;
+            }
+        }
+        if (free == null) {
+            free = oldest;
+            stats.framesLost.incrementAndGet();
+        }
+        free.reset(frameId, frameLength, fragmentCount, groupSize, maxPayload, nowNanos);
+        return free;
+    }
+
+    private void tryRecover(Slot slot, int group) {
+        if (!slot.parityReceived[group])
+            return;
+        int first = group * slot.groupSize;
+        int last = Math.min(first + slot.groupSize, slot.fragmentCount);
+        int missing = -1;
+        for (int i = first; i < last; i++) {
+            if (!slot.received[i]) {
+                if (missing >= 0)
+                    return; // XOR can only rebuild one fragment per group
+                missing = i;
+            }
+        }
+        if (missing < 0)
+            return;
+
+        int target = missing * maxPayload;
+        int length = slot.fragmentLength(missing);
+        System.arraycopy(slot.parity, group * maxPayload, slot.data, target, length);
+        for (int i = first; i < last; i++) {
+            if (i == missing)
+                continue;
+            int source = i * maxPayload;
+            int n = Math.min(length, slot.fragmentLength(i));
+            for (int k = 0; k < n; k++)
+                slot.data[target + k] ^= slot.data[source + k];
+        }
+        slot.markReceived(missing);
+        stats.fragmentsRecovered.incrementAndGet();
+    }
+
+    private void complete(Slot slot, long nowNanos, FrameSink sink) {
+        // anything older that is still incomplete would arrive out of order
+        for (Slot other : slots) {
+            if (other != slot && other.active && other.frameId - slot.frameId < 0) {
+                other.active = false;
+                stats.framesLost.incrementAndGet();
+            }
+        }
+        slot.active = false;
+        deliveredAny = true;
+        lastDeliveredId = slot.frameId;
+        lastDeliveredNanos = nowNanos;
+        stats.framesReceived.incrementAndGet();
+        stats.recordReassembly(nowNanos - slot.firstArrivalNanos);
+
+        slot.view.clear();
+        slot.view.limit(slot.frameLength);
+        sink.onFrame(slot.view);
+    }
+
+    private static class Slot {
+        boolean active;
+        int frameId;
+        int frameLength;
+        int fragmentCount;
+        int groupSize;
+        int maxPayload;
+        int receivedCount;
+        long firstArrivalNanos;
+
+        byte[] data = new byte[0];
+        ByteBuffer view = ByteBuffer.wrap(data);
+        boolean[] received = new boolean[0];
+        byte[] parity = new byte[0];
+        boolean[] parityReceived = new boolean[0];
+
+        void reset(int frameId, int frameLength, int fragmentCount, int groupSize, int maxPayload, long now) {
+            this.active = true;
+            this.frameId = frameId;
+            this.frameLength = frameLength;
+            this.fragmentCount = fragmentCount;
+            this.groupSize = groupSize;
+            this.maxPayload = maxPayload;
+            this.receivedCount = 0;
+            this.firstArrivalNanos = now;
+
+            // sized to whole fragments so recovery can XOR past the frame end
+            int dataBytes = fragmentCount * maxPayload;
+            if (data.length < dataBytes) {
+                data = new byte[dataBytes];
+                view = ByteBuffer.wrap(data);
+            }
+            if (received.length < fragmentCount)
+                received = new boolean[fragmentCount];
+            else
+                Arrays.fill(received, 0, fragmentCount, false);
+
+            int groups = groupCount();
+            if (parity.length < groups * maxPayload)
+                parity = new byte[groups * maxPayload];
+            if (parityReceived.length < groups)
+                parityReceived = new boolean[groups];
+            else
+                Arrays.fill(parityReceived, 0, groups, false);
+        }
+
+        int groupCount() {
+            return groupSize == 0 ? 0 : (fragmentCount + groupSize - 1) / groupSize;
+        }
+
+        int fragmentLength(int index) {
+            return Math.min(maxPayload, frameLength - index * maxPayload);
+        }
+
+        void markReceived(int index) {
+            received[index] = true;
+            receivedCount++;
+        }
+    }
+}
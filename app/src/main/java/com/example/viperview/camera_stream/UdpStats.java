@@ -0,0 +1,100 @@
+package com.example.viperview.camera_stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Counters for the UDP transport; safe to read from any thread. */
+public class UdpStats {
+
+    final AtomicLong framesSent = new AtomicLong();
+    final AtomicLong datagramsSent = new AtomicLong();
+    final AtomicLong datagramsNotSent = new AtomicLong();
+    final AtomicLong portUnreachable = new AtomicLong();
+
+    final AtomicLong framesReceived = new AtomicLong();
+    final AtomicLong framesLost = new AtomicLong();
+    final AtomicLong fragmentsRecovered = new AtomicLong();
+    final AtomicLong lateFragments = new AtomicLong();
+    final AtomicLong duplicateFragments = new AtomicLong();
+    final AtomicLong malformedDatagrams = new AtomicLong();
+    final AtomicLong senderRestarts = new AtomicLong();
+
+    private final AtomicLong reassemblyNanosTotal = new AtomicLong();
+    private final AtomicLong reassemblyNanosMax = new AtomicLong();
+
+    void recordReassembly(long nanos) {
+        reassemblyNanosTotal.addAndGet(nanos);
+        reassemblyNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getDatagramsSent() {
+        return datagramsSent.get();
+    }
+
+    // Datagrams the socket refused because its send buffer was full.
+    public long getDatagramsNotSent() {
+        return datagramsNotSent.get();
+    }
+
+    // ICMP port unreachable replies, i.e. nothing listening on the server port.
+    public long getPortUnreachable() {
+        return portUnreachable.get();
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    // Frames abandoned incomplete, either past the deadline or overtaken by a newer frame.
+    public long getFramesLost() {
+        return framesLost.get();
+    }
+
+    public long getFragmentsRecovered() {
+        return fragmentsRecovered.get();
+    }
+
+    public long getLateFragments() {
+        return lateFragments.get();
+    }
+
+    public long getDuplicateFragments() {
+        return duplicateFragments.get();
+    }
+
+    public long getMalformedDatagrams() {
+        return malformedDatagrams.get();
+    }
+
+    // Times the peer's frame ids started over, e.g. after a server restart.
+    public long getSenderRestarts() {
+        return senderRestarts.get();
+    }
+
+    public double getLossRate() {
+        long received = framesReceived.get();
+        long lost = framesLost.get();
+        return received + lost == 0 ? 0 : (double) lost / (received + lost);
+    }
+
+    public double getAverageReassemblyMs() {
+        long frames = framesReceived.get();
+        return frames == 0 ? 0 : reassemblyNanosTotal.get() / 1e6 / frames;
+    }
+
+    public double getMaxReassemblyMs() {
+        return reassemblyNanosMax.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sent=%d rx=%d lost=%d (%.1f%%) recovered=%d late=%d unreachable=%d"
+                        + " reassembly avg=%.2fms max=%.2fms",
+                getFramesSent(), getFramesReceived(), getFramesLost(), getLossRate() * 100,
+                getFragmentsRecovered(), getLateFragments(), getPortUnreachable(),
+                getAverageReassemblyMs(), getMaxReassemblyMs());
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.viperview.camera_stream;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class YuvJpegCompressor implements JpegFrameEncoder.Compressor {
+
+    @Override
+    public void compress(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        YuvImage image = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+        if (!image.compressToJpeg(new Rect(0, 0, width, height), quality, out))
+            throw new IOException("compressToJpeg failed");
+    }
+}
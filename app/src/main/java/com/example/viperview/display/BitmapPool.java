@@ -0,0 +1,123 @@
+package com.example.viperview.display;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.viperview.pipeline.RefCountedPool;
+
+/**
+ * Full-frame bitmaps shared by the receive and display paths, keyed by size
+ * and config. JPEGs are decoded straight into a pooled bitmap, so in steady
+ * state no stage allocates a frame.
+ * See {@link RefCountedPool} for who releases what.
+ */
+public class BitmapPool {
+
+    private static final Bitmap.Config[] CONFIGS = Bitmap.Config.values();
+
+    private final RefCountedPool<Bitmap> pool;
+    private final ThreadLocal<DecodeState> decodeState = ThreadLocal.withInitial(DecodeState::new);
+
+    /** Keeps up to {@code maxIdlePerSize} spare bitmaps of each size. */
+    public BitmapPool(int maxIdlePerSize) {
+        pool = new RefCountedPool<>(BitmapPool::create, Bitmap::recycle, maxIdlePerSize);
+    }
+
+    static long key(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+
+    private static Bitmap create(long key) {
+        return Bitmap.createBitmap((int) (key >>> 32), (int) (key >>> 8) & 0xFFFFFF, CONFIGS[(int) (key & 0xFF)]);
+    }
+
+    public RefCountedPool.Ref<Bitmap> acquire(int width, int height, Bitmap.Config config) {
+        return pool.acquire(key(width, height, config));
+    }
+
+    /**
+     * Decodes a JPEG (or any format BitmapFactory reads) into a pooled bitmap
+     * of its size. Returns null if the data does not decode.
+     *
+     * Each decoding thread keeps its options and the last size it decoded.
+     * A frame is decoded straight into a bitmap of that size, and the bounds
+     * are only read again when the bitmap is refused or the frame turns out
+     * to be another size, so a steady stream costs one decode per frame.
+     */
+    public RefCountedPool.Ref<Bitmap> decode(byte[] data, int offset, int length) {
+        DecodeState state = decodeState.get();
+        BitmapFactory.Options options = state.options;
+        if (state.width > 0) {
+            RefCountedPool.Ref<Bitmap> ref = decodeInto(options, state.width, state.height, data, offset, length);
+            if (ref != null)
+                return ref;
+        }
+
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, offset, length, options);
+        options.inJustDecodeBounds = false;
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+        state.width = options.outWidth;
+        state.height = options.outHeight;
+        RefCountedPool.Ref<Bitmap> ref = decodeInto(options, state.width, state.height, data, offset, length);
+        if (ref != null)
+            return ref;
+        Bitmap decoded = BitmapFactory.decodeByteArray(data, offset, length);
+        return decoded != null ? RefCountedPool.unpooled(decoded) : null;
+    }
+
+    // null if the frame is not width x height or the pooled bitmap is refused
+    private RefCountedPool.Ref<Bitmap> decodeInto(BitmapFactory.Options options, int width, int height,
+            byte[] data, int offset, int length) {
+        RefCountedPool.Ref<Bitmap> ref = acquire(width, height, Bitmap.Config.ARGB_8888);
+        Bitmap bitmap = ref.get();
+        options.inBitmap = bitmap;
+        try {
+            Bitmap decoded = BitmapFactory.decodeByteArray(data, offset, length, options);
+            if (decoded == bitmap && bitmap.getWidth() == width && bitmap.getHeight() == height)
+                return ref;
+        } catch (IllegalArgumentException e) {
+            // inBitmap refused, e.g. a larger frame than it holds
+        } finally {
+            options.inBitmap = null;
+        }
+        // a smaller frame is decoded into the bitmap by resizing it; put it back to its pool size
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height)
+            bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        ref.release();
+        return null;
+    }
+
+    /** One decoding thread's reusable options and the size of its last frame. */
+    private static final class DecodeState {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        int width;
+        int height;
+
+        DecodeState() {
+            options.inMutable = true;
+        }
+    }
+
+    public long getHits() {
+        return pool.getHits();
+    }
+
+    public long getMisses() {
+        return pool.getMisses();
+    }
+
+    /** Bitmaps handed out and not yet released; should stay at a handful per stage. */
+    public long getOutstanding() {
+        return pool.getOutstanding();
+    }
+
+    public void clear() {
+        pool.clear();
+    }
+
+    public String summary() {
+        return "bitmaps " + pool.summary();
+    }
+}
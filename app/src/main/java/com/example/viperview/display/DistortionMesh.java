@@ -0,0 +1,126 @@
+package com.example.viperview.display;
+
+/**
+ * Lens pre-distortion for one eye of a Cardboard-style viewer. The lens
+ * magnifies radially, r' = r (1 + k1 r^2 + k2 r^4) with r the distance from
+ * the lens centre in units of {@code radiusPx} (the screen-to-lens distance,
+ * so r is the tangent of the viewing angle). Drawing the frame through the
+ * inverse, barrel-shaped mapping makes it look straight through the lens.
+ *
+ * The inverse has no closed form, so it is solved once per layout for a
+ * (cols + 1) x (rows + 1) vertex grid in the layout Canvas.drawBitmapMesh
+ * takes; per frame the GPU only interpolates between the vertices. Overlay
+ * geometry drawn on top goes through {@link #warp} to land on the same spot.
+ * Not thread safe.
+ */
+public class DistortionMesh {
+
+    // Cardboard v2 viewer profile
+    public static final float DEFAULT_K1 = 0.34f;
+    public static final float DEFAULT_K2 = 0.55f;
+
+    private static final int MAX_ITERATIONS = 20;
+    private static final float EPSILON = 1e-6f;
+
+    private final int cols;
+    private final int rows;
+    private final float[] vertices;
+    private float k1 = DEFAULT_K1;
+    private float k2 = DEFAULT_K2;
+    // from the last build, for warp()
+    private float centerX;
+    private float centerY;
+    private float radiusPx = 1;
+
+    public DistortionMesh(int cols, int rows) {
+        if (cols < 1 || rows < 1)
+            throw new IllegalArgumentException("Mesh needs at least one cell, got " + cols + "x" + rows);
+        this.cols = cols;
+        this.rows = rows;
+        this.vertices = new float[(cols + 1) * (rows + 1) * 2];
+    }
+
+    /** Radial coefficients of the lens; both 0 turns the mesh into a plain scale. */
+    public void setCoefficients(float k1, float k2) {
+        this.k1 = k1;
+        this.k2 = k2;
+    }
+
+    public int getMeshWidth() {
+        return cols;
+    }
+
+    public int getMeshHeight() {
+        return rows;
+    }
+
+    /** The vertex grid, row by row as x, y pairs; valid after {@link #build}. */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /** Where the lens shows a point drawn at normalized radius {@code r}. */
+    public float distort(float r) {
+        float r2 = r * r;
+        return r * (1 + k1 * r2 + k2 * r2 * r2);
+    }
+
+    /** Where to draw a point for the lens to show it at normalized radius {@code r}; inverse of {@link #distort}. */
+    public float undistort(float r) {
+        // Newton's method from the identity; distort() is monotonic for the coefficients viewers ship with
+        float x = r;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            float x2 = x * x;
+            float f = x * (1 + k1 * x2 + k2 * x2 * x2) - r;
+            float slope = 1 + 3 * k1 * x2 + 5 * k2 * x2 * x2;
+            float step = f / slope;
+            x -= step;
+            if (Math.abs(step) < EPSILON)
+                break;
+        }
+        return x;
+    }
+
+    /**
+     * Lays the grid out so the bitmap, which should appear to cover
+     * (contentLeft, contentTop, contentWidth, contentHeight) through the lens,
+     * is drawn pre-distorted around the lens centre (centerX, centerY).
+     */
+    public void build(float contentLeft, float contentTop, float contentWidth, float contentHeight,
+            float centerX, float centerY, float radiusPx) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.radiusPx = radiusPx;
+        int v = 0;
+        for (int row = 0; row <= rows; row++) {
+            float y = contentTop + contentHeight * row / rows;
+            for (int col = 0; col <= cols; col++) {
+                vertices[v] = contentLeft + contentWidth * col / cols;
+                vertices[v + 1] = y;
+                v += 2;
+            }
+        }
+        warp(vertices, 0, vertices.length);
+    }
+
+    /** Moves {@code count} floats of x, y pairs from {@code offset} the way the frame under them was moved. */
+    public void warp(float[] xy, int offset, int count) {
+        for (int i = offset; i < offset + count; i += 2) {
+            float dx = (xy[i] - centerX) / radiusPx, dy = (xy[i + 1] - centerY) / radiusPx;
+            float r = (float) Math.sqrt(dx * dx + dy * dy);
+            if (r < EPSILON)
+                continue;
+            float scale = undistort(r) / r;
+            xy[i] = centerX + dx * scale * radiusPx;
+            xy[i + 1] = centerY + dy * scale * radiusPx;
+        }
+    }
+
+    /**
+     * Horizontal position of an eye's lens centre inside its half of the
+     * screen: the lenses sit {@code ipdPx} apart around the screen's middle.
+     */
+    public static float lensCenterX(boolean leftEye, float eyeWidth, float ipdPx) {
+        return leftEye ? eyeWidth - ipdPx / 2 : ipdPx / 2;
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.viperview.display;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import com.example.viperview.pipeline.CropRect;
+import com.example.viperview.yolo.PoseDetections;
+import com.example.viperview.yolo.SegmentationDetections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws boxes, skeletons and segmentation masks as vector primitives over
+ * the untouched camera frame, so a new set of detections costs a small
+ * overlay redraw instead of a full-frame copy and upload.
+ *
+ * Setters may be called from any thread; they copy the detections and call
+ * the change callback so the owner can schedule a redraw. The drawing thread
+ * calls {@link #latch} once per frame and then {@link #draw} once per
+ * viewport. Masks are turned into small bitmaps at prototype resolution only
+ * when new ones arrive, and the canvas scales them into place.
+ */
+public class OverlayRenderer {
+
+    private static final int[] MASK_PALETTE = { 0x00FF00, 0x00A0FF, 0xFF6000, 0xFF00C0, 0xFFE000, 0x00FFE0 };
+    private static final int MASK_ALPHA = 100;
+
+    private final Runnable onChanged;
+    private final Paint boxPaint = new Paint();
+    private final Paint jointPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint bonePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint maskPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final Object lock = new Object();
+    // written by the setters, read in latch() under lock
+    private final PoseDetections pendingPoses = new PoseDetections();
+    private final SegmentationDetections pendingSegments = new SegmentationDetections();
+    private boolean posesChanged;
+    private boolean segmentsChanged;
+    private int pendingFrameWidth;
+    private int pendingFrameHeight;
+    private boolean pendingSkeletons = true;
+    private boolean pendingBoxes = true;
+    private boolean pendingMasks = true;
+    private CropRect pendingCrop = CropRect.FULL;
+    private CropRect pendingSegmentRegion = CropRect.FULL;
+
+    // drawing thread only
+    private final PoseDetections poses = new PoseDetections();
+    private final SegmentationDetections segments = new SegmentationDetections();
+    private final SkeletonGeometry geometry = new SkeletonGeometry();
+    private final List<Bitmap> maskBitmaps = new ArrayList<>();
+    private final RectF maskRect = new RectF();
+    private final float[] corners = new float[4];
+    private float[] boxLines = new float[16 * 4];
+    private int[] maskPixels = new int[0];
+    private boolean masksStale;
+    private int frameWidth;
+    private int frameHeight;
+    private boolean showSkeletons = true;
+    private boolean showBoxes = true;
+    private boolean showMasks = true;
+    private CropRect crop = CropRect.FULL;
+    private CropRect segmentRegion = CropRect.FULL;
+
+    public OverlayRenderer(Runnable onChanged) {
+        this.onChanged = onChanged;
+        boxPaint.setColor(Color.rgb(0, 255, 0));
+        boxPaint.setStyle(Paint.Style.STROKE);
+        boxPaint.setStrokeWidth(3f);
+        jointPaint.setColor(Color.rgb(0, 255, 0));
+        jointPaint.setStrokeWidth(8f);
+        jointPaint.setStrokeCap(Paint.Cap.ROUND);
+        bonePaint.setColor(Color.rgb(0, 255, 0));
+        bonePaint.setStrokeWidth(2f);
+    }
+
+    /** Size of the frame the detections are normalized to, as shown below the overlay. */
+    public void setFrameSize(int width, int height) {
+        synchronized (lock) {
+            if (width == pendingFrameWidth && height == pendingFrameHeight)
+                return;
+            pendingFrameWidth = width;
+            pendingFrameHeight = height;
+        }
+        onChanged.run();
+    }
+
+    /** The region of the frame on screen; see {@link SkeletonGeometry#setCrop}. */
+    public void setCrop(CropRect crop) {
+        synchronized (lock) {
+            if (crop.equals(pendingCrop))
+                return;
+            pendingCrop = crop;
+        }
+        onChanged.run();
+    }
+
+    public void setOptions(boolean skeletons, boolean boxes, boolean masks) {
+        synchronized (lock) {
+            if (skeletons == pendingSkeletons && boxes == pendingBoxes && masks == pendingMasks)
+                return;
+            pendingSkeletons = skeletons;
+            pendingBoxes = boxes;
+            pendingMasks = masks;
+        }
+        onChanged.run();
+    }
+
+    public void setPoses(PoseDetections detections) {
+        synchronized (lock) {
+            pendingPoses.copyFrom(detections);
+            posesChanged = true;
+        }
+        onChanged.run();
+    }
+
+    public void setSegments(SegmentationDetections detections) {
+        setSegments(detections, CropRect.FULL);
+    }
+
+    /**
+     * Segments from a model that ran on {@code region} of the frame; unlike
+     * poses their masks stay in that region's coordinates.
+     */
+    public void setSegments(SegmentationDetections detections, CropRect region) {
+        synchronized (lock) {
+            pendingSegments.copyFrom(detections);
+            pendingSegmentRegion = region;
+            segmentsChanged = true;
+        }
+        onChanged.run();
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            pendingPoses.clear();
+            pendingSegments.clear();
+            posesChanged = true;
+            segmentsChanged = true;
+        }
+        onChanged.run();
+    }
+
+    /** Takes the latest detections and options for the frame about to be drawn. */
+    public void latch() {
+        synchronized (lock) {
+            if (posesChanged)
+                poses.copyFrom(pendingPoses);
+            if (segmentsChanged) {
+                segments.copyFrom(pendingSegments);
+                masksStale = true;
+            }
+            posesChanged = false;
+            segmentsChanged = false;
+            frameWidth = pendingFrameWidth;
+            frameHeight = pendingFrameHeight;
+            showSkeletons = pendingSkeletons;
+            showBoxes = pendingBoxes;
+            showMasks = pendingMasks;
+            crop = pendingCrop;
+            segmentRegion = pendingSegmentRegion;
+        }
+        if (showMasks && masksStale) {
+            rebuildMaskBitmaps();
+            masksStale = false;
+        }
+    }
+
+    /**
+     * Draws the latched detections over a viewWidth x viewHeight viewport
+     * showing the frame centerCrop. With a mesh, every vertex is moved the
+     * way the frame under it was; lines stay straight between their moved
+     * ends, which is close enough for bones and box edges.
+     */
+    public void draw(Canvas canvas, int viewWidth, int viewHeight, DistortionMesh mesh) {
+        geometry.setCenterCrop(frameWidth, frameHeight, viewWidth, viewHeight);
+        geometry.setCrop(crop);
+        if (showMasks)
+            drawMasks(canvas, mesh);
+        geometry.build(poses, showSkeletons, showBoxes);
+        if (mesh == null) {
+            for (int i = 0; i < geometry.rectCount; i += 4)
+                canvas.drawRect(geometry.rects[i], geometry.rects[i + 1], geometry.rects[i + 2],
+                        geometry.rects[i + 3], boxPaint);
+        } else {
+            drawWarpedBoxes(canvas, mesh);
+            mesh.warp(geometry.lines, 0, geometry.lineCount);
+            mesh.warp(geometry.points, 0, geometry.pointCount);
+        }
+        if (geometry.lineCount > 0)
+            canvas.drawLines(geometry.lines, 0, geometry.lineCount, bonePaint);
+        if (geometry.pointCount > 0)
+            canvas.drawPoints(geometry.points, 0, geometry.pointCount, jointPaint);
+    }
+
+    // a warped rect is no longer a rect, so its four edges go out as lines
+    private void drawWarpedBoxes(Canvas canvas, DistortionMesh mesh) {
+        int count = geometry.rectCount / 4 * 16;
+        if (count == 0)
+            return;
+        if (boxLines.length < count)
+            boxLines = new float[count * 2];
+        float[] r = geometry.rects;
+        for (int i = 0, o = 0; i < geometry.rectCount; i += 4, o += 16) {
+            float left = r[i], top = r[i + 1], right = r[i + 2], bottom = r[i + 3];
+            setLine(boxLines, o, left, top, right, top);
+            setLine(boxLines, o + 4, right, top, right, bottom);
+            setLine(boxLines, o + 8, right, bottom, left, bottom);
+            setLine(boxLines, o + 12, left, bottom, left, top);
+        }
+        mesh.warp(boxLines, 0, count);
+        canvas.drawLines(boxLines, 0, count, boxPaint);
+    }
+
+    private static void setLine(float[] lines, int at, float x0, float y0, float x1, float y1) {
+        lines[at] = x0;
+        lines[at + 1] = y0;
+        lines[at + 2] = x1;
+        lines[at + 3] = y1;
+    }
+
+    // one tinted bitmap per mask region, reused while it is big enough
+    private void rebuildMaskBitmaps() {
+        for (int d = 0; d < segments.count; d++) {
+            int width = segments.maskRects[d * 4 + 2], height = segments.maskRects[d * 4 + 3];
+            if (width == 0 || height == 0)
+                continue;
+            if (maskPixels.length < width * height)
+                maskPixels = new int[width * height];
+            int color = (MASK_ALPHA << 24) | MASK_PALETTE[segments.classes[d] % MASK_PALETTE.length];
+            int start = segments.maskOffsets[d];
+            for (int i = 0; i < width * height; i++)
+                maskPixels[i] = segments.maskLogits[start + i] > 0 ? color : 0;
+
+            while (maskBitmaps.size() <= d)
+                maskBitmaps.add(null);
+            Bitmap bitmap = maskBitmaps.get(d);
+            if (bitmap != null && bitmap.getAllocationByteCount() >= width * height * 4) {
+                bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            } else {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                maskBitmaps.set(d, bitmap);
+            }
+            bitmap.setPixels(maskPixels, 0, width, 0, 0, width, height);
+        }
+    }
+
+    private void drawMasks(Canvas canvas, DistortionMesh mesh) {
+        if (segments.protoWidth == 0 || segments.protoHeight == 0)
+            return;
+        for (int d = 0; d < segments.count && d < maskBitmaps.size(); d++) {
+            int x = segments.maskRects[d * 4], y = segments.maskRects[d * 4 + 1];
+            int width = segments.maskRects[d * 4 + 2], height = segments.maskRects[d * 4 + 3];
+            if (width == 0 || height == 0)
+                continue;
+            corners[0] = geometry.mapX(segmentRegion.toFrameX((float) x / segments.protoWidth));
+            corners[1] = geometry.mapY(segmentRegion.toFrameY((float) y / segments.protoHeight));
+            corners[2] = geometry.mapX(segmentRegion.toFrameX((float) (x + width) / segments.protoWidth));
+            corners[3] = geometry.mapY(segmentRegion.toFrameY((float) (y + height) / segments.protoHeight));
+            // masks are coarse already; moving their corners keeps them on the warped frame
+            if (mesh != null)
+                mesh.warp(corners, 0, 4);
+            maskRect.set(corners[0], corners[1], corners[2], corners[3]);
+            canvas.drawBitmap(maskBitmaps.get(d), null, maskRect, maskPaint);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.viperview.display;
+
+/**
+ * Late reprojection: how far to move a frame captured at one head
+ * orientation so it lines up with the orientation at display time. The head
+ * turn in between is taken as a small rotation of the phone (and so of the
+ * back camera, which looks along the device's -Z); turning towards a side
+ * drags the world the other way across the screen.
+ *
+ * Orientations are unit quaternions (w, x, y, z) from the rotation vector
+ * sensor, device to world. The result is a shift in screen pixels plus a
+ * roll in degrees clockwise, for a Canvas translate and rotate about the
+ * view centre.
+ */
+public class Reprojection {
+
+    /** Larger turns are clamped; the frame would be mostly off screen anyway. */
+    public static final float MAX_ANGLE = 0.5f;
+
+    public float shiftX;
+    public float shiftY;
+    public float rollDegrees;
+
+    private int screenRotation;
+    private final float[] delta = new float[4];
+
+    /** Quarter turns of the screen from the device's natural orientation, as Display.getRotation() reports. */
+    public void setScreenRotation(int quarterTurns) {
+        this.screenRotation = quarterTurns & 3;
+    }
+
+    public void reset() {
+        shiftX = 0;
+        shiftY = 0;
+        rollDegrees = 0;
+    }
+
+    /**
+     * Fills the shift and roll for a frame captured at {@code capture} and
+     * shown at {@code display}; {@code focalPx} is the camera's focal length
+     * in screen pixels at the size the frame is drawn.
+     */
+    public void compute(float[] capture, float[] display, float focalPx) {
+        relativeRotation(capture, display, delta);
+        // rotation vector of the delta, in the capture-time device frame
+        float w = delta[0], x = delta[1], y = delta[2], z = delta[3];
+        if (w < 0) {
+            w = -w;
+            x = -x;
+            y = -y;
+            z = -z;
+        }
+        float sin = (float) Math.sqrt(x * x + y * y + z * z);
+        float scale = sin > 1e-7f ? (float) (2 * Math.atan2(sin, w)) / sin : 2;
+        float pitch = clamp(x * scale), yaw = clamp(y * scale), roll = clamp(z * scale);
+
+        // turning about +Y points the camera towards -X, so the old frame moves towards +X;
+        // turning about +X points it up, so the frame moves down (device Y points up)
+        float deviceX = focalPx * (float) Math.tan(yaw);
+        float deviceUp = -focalPx * (float) Math.tan(pitch);
+        switch (screenRotation) {
+            case 0:
+                shiftX = deviceX;
+                shiftY = -deviceUp;
+                break;
+            case 1: // device top to the left
+                shiftX = -deviceUp;
+                shiftY = -deviceX;
+                break;
+            case 2:
+                shiftX = -deviceX;
+                shiftY = deviceUp;
+                break;
+            default: // device top to the right
+                shiftX = deviceUp;
+                shiftY = deviceX;
+                break;
+        }
+        // a counter-clockwise roll of the phone turns the world clockwise on its screen
+        rollDegrees = (float) Math.toDegrees(roll);
+    }
+
+    /** {@code out} = from^-1 * to: the rotation from {@code from} to {@code to} in from's own frame. */
+    static void relativeRotation(float[] from, float[] to, float[] out) {
+        float aw = from[0], ax = -from[1], ay = -from[2], az = -from[3];
+        float bw = to[0], bx = to[1], by = to[2], bz = to[3];
+        out[0] = aw * bw - ax * bx - ay * by - az * bz;
+        out[1] = aw * bx + ax * bw + ay * bz - az * by;
+        out[2] = aw * by - ax * bz + ay * bw + az * bx;
+        out[3] = aw * bz + ax * by - ay * bx + az * bw;
+    }
+
+    private static float clamp(float angle) {
+        return Math.max(-MAX_ANGLE, Math.min(MAX_ANGLE, angle));
+    }
+}
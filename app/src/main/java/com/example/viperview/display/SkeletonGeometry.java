@@ -0,0 +1,122 @@
+package com.example.viperview.display;
+
+import com.example.viperview.pipeline.CropRect;
+import com.example.viperview.yolo.PoseDetections;
+
+import java.util.Arrays;
+
+/**
+ * Turns pose detections into the flat point, line and rect arrays that
+ * Canvas.drawPoints / drawLines / drawRect take, already mapped from
+ * normalized frame coordinates into a view showing the frame centerCrop.
+ * The arrays only grow, so steady-state frames do not allocate.
+ */
+public class SkeletonGeometry {
+
+    public static final float MIN_CONFIDENCE = 0.3f;
+
+    public float[] points = new float[PoseDetections.NUM_KEYPOINTS * 2 * 4];
+    public int pointCount; // floats used, two per point
+    public float[] lines = new float[PoseDetections.SKELETON_PAIRS.length * 4 * 4];
+    public int lineCount; // floats used, four per line
+    public float[] rects = new float[4 * 4];
+    public int rectCount; // floats used, four per rect (left, top, right, bottom)
+
+    private int frameWidth = 1;
+    private int frameHeight = 1;
+    private int viewWidth = 1;
+    private int viewHeight = 1;
+    private CropRect crop = CropRect.FULL;
+    private float scale = 1;
+    private float offsetX = 0;
+    private float offsetY = 0;
+
+    /** Maps like ImageView's centerCrop: scale to cover the view, centre, crop the overflow. */
+    public void setCenterCrop(int frameWidth, int frameHeight, int viewWidth, int viewHeight) {
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        update();
+    }
+
+    /**
+     * The region of the frame the view shows, centerCrop; detections stay in
+     * whole-frame coordinates.
+     */
+    public void setCrop(CropRect crop) {
+        this.crop = crop;
+        update();
+    }
+
+    /**
+     * For frames that were centre-cropped by {@code zoom} and scaled back up
+     * after the detections were made on the full frame.
+     */
+    public void setCenterZoom(float zoom) {
+        setCrop(CropRect.centerZoom(zoom));
+    }
+
+    private void update() {
+        if (frameWidth <= 0 || frameHeight <= 0) {
+            scale = 1;
+            offsetX = offsetY = 0;
+            return;
+        }
+        float regionWidth = frameWidth * crop.width(), regionHeight = frameHeight * crop.height();
+        scale = Math.max(viewWidth / regionWidth, viewHeight / regionHeight);
+        offsetX = (viewWidth - regionWidth * scale) / 2 - crop.left * frameWidth * scale;
+        offsetY = (viewHeight - regionHeight * scale) / 2 - crop.top * frameHeight * scale;
+    }
+
+    public float mapX(float normalizedX) {
+        return normalizedX * frameWidth * scale + offsetX;
+    }
+
+    public float mapY(float normalizedY) {
+        return normalizedY * frameHeight * scale + offsetY;
+    }
+
+    public void build(PoseDetections detections, boolean skeletons, boolean boxes) {
+        pointCount = 0;
+        lineCount = 0;
+        rectCount = 0;
+        int count = detections.count;
+        if (boxes) {
+            rects = ensure(rects, count * 4);
+            for (int d = 0; d < count; d++) {
+                float cx = detections.boxes[d * 4], cy = detections.boxes[d * 4 + 1];
+                float hw = detections.boxes[d * 4 + 2] / 2, hh = detections.boxes[d * 4 + 3] / 2;
+                rects[rectCount++] = mapX(cx - hw);
+                rects[rectCount++] = mapY(cy - hh);
+                rects[rectCount++] = mapX(cx + hw);
+                rects[rectCount++] = mapY(cy + hh);
+            }
+        }
+        if (!skeletons)
+            return;
+        points = ensure(points, count * PoseDetections.NUM_KEYPOINTS * 2);
+        lines = ensure(lines, count * PoseDetections.SKELETON_PAIRS.length * 4);
+        for (int d = 0; d < count; d++) {
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+                if (detections.keypointConfidence(d, k) <= MIN_CONFIDENCE)
+                    continue;
+                points[pointCount++] = mapX(detections.keypointX(d, k));
+                points[pointCount++] = mapY(detections.keypointY(d, k));
+            }
+            for (int[] pair : PoseDetections.SKELETON_PAIRS) {
+                if (detections.keypointConfidence(d, pair[0]) <= MIN_CONFIDENCE
+                        || detections.keypointConfidence(d, pair[1]) <= MIN_CONFIDENCE)
+                    continue;
+                lines[lineCount++] = mapX(detections.keypointX(d, pair[0]));
+                lines[lineCount++] = mapY(detections.keypointY(d, pair[0]));
+                lines[lineCount++] = mapX(detections.keypointX(d, pair[1]));
+                lines[lineCount++] = mapY(detections.keypointY(d, pair[1]));
+            }
+        }
+    }
+
+    private static float[] ensure(float[] array, int size) {
+        return array.length >= size ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+}
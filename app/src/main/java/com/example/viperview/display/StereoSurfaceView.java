@@ -0,0 +1,349 @@
+package com.example.viperview.display;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.example.viperview.pipeline.CropRect;
+import com.example.viperview.pipeline.RefCountedPool;
+import com.example.viperview.tracking.OrientationRingBuffer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Side-by-side stereo output for a Cardboard-style viewer: one surface,
+ * split into two eye viewports, both drawn from the same frame on a render
+ * thread of their own. Each eye's image is centred on its lens and drawn
+ * through a {@link DistortionMesh} that cancels the lens distortion; the
+ * mesh is rebuilt only when the frame size, surface size or lens change.
+ *
+ * {@link #setFrame} and the {@link #getDetectionOverlay overlay} setters may
+ * be called from any thread. They only request a frame: drawing happens on
+ * the next vsync via Choreographer, so frames arriving faster than the
+ * display collapse to the newest and a frame is never drawn twice per vsync.
+ * Frames come as references: the view releases one when a newer frame
+ * replaces it, so a pooled bitmap is reused only once it is off screen.
+ * Digital zoom is a {@link CropRect}: the mesh is laid out so only the crop
+ * covers the eyes, and the frame itself is never cut or scaled.
+ *
+ * With {@link #setReprojection} each frame is shifted and rolled just before
+ * it is drawn by the head turn since its capture, so a frame that spent a
+ * network round trip in flight still lines up with where the viewer looks.
+ */
+public class StereoSurfaceView extends SurfaceView implements SurfaceHolder.Callback, Choreographer.FrameCallback {
+
+    private static final String TAG = "StereoSurfaceView";
+
+    // Cardboard v2 viewer profile, in millimetres
+    public static final float DEFAULT_IPD_MM = 63.9f;
+    public static final float DEFAULT_SCREEN_TO_LENS_MM = 39.3f;
+    private static final int MESH_CELLS = 40;
+    // from doFrame until the frame is on the glass; samples newer than the sensor's last clamp to it
+    private static final long PRESENT_LATENCY_NS = 25_000_000L;
+    // reprojection changes smaller than this are not worth a redraw; sensor noise alone exceeds zero
+    static final float MIN_REDRAW_SHIFT_PX = 1f;
+    static final float MIN_REDRAW_ROLL_DEGREES = 0.2f;
+
+    private final OverlayRenderer overlay = new OverlayRenderer(this::requestRender);
+    private final Object pendingLock = new Object();
+    private RefCountedPool.Ref<Bitmap> pendingFrame; // guarded by pendingLock
+    private long pendingTimestampNs;
+    private final AtomicBoolean renderRequested = new AtomicBoolean();
+    private final AtomicBoolean contentChanged = new AtomicBoolean(true); // more than the head moved
+    private final float pixelsPerMm;
+
+    private volatile float ipdMm = DEFAULT_IPD_MM;
+    private volatile float screenToLensMm = DEFAULT_SCREEN_TO_LENS_MM;
+    private volatile float k1 = DistortionMesh.DEFAULT_K1;
+    private volatile float k2 = DistortionMesh.DEFAULT_K2;
+    private volatile boolean lensChanged = true;
+    private volatile OrientationRingBuffer orientations;
+    private volatile float cameraFovRadians;
+    private volatile CropRect crop = CropRect.FULL;
+    private volatile long framesDrawn;
+
+    private HandlerThread renderThread;
+    private volatile Handler renderHandler;
+
+    // render thread only
+    private final DistortionMesh mesh = new DistortionMesh(MESH_CELLS, MESH_CELLS);
+    private final Paint framePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Choreographer choreographer;
+    private Surface surface;
+    private int surfaceWidth;
+    private int surfaceHeight;
+    private RefCountedPool.Ref<Bitmap> shownFrame;
+    private Bitmap frame; // shownFrame's bitmap
+    private long frameTimestampNs;
+    private float contentWidth;
+    private final Reprojection reprojection = new Reprojection();
+    private final float[] captureOrientation = new float[4];
+    private final float[] displayOrientation = new float[4];
+    private float drawnShiftX;
+    private float drawnShiftY;
+    private float drawnRollDegrees;
+    private int meshFrameWidth;
+    private int meshFrameHeight;
+    private CropRect meshCrop;
+
+    public StereoSurfaceView(Context context) {
+        this(context, null);
+    }
+
+    public StereoSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        pixelsPerMm = context.getResources().getDisplayMetrics().xdpi / 25.4f;
+        getHolder().addCallback(this);
+    }
+
+    /** Detections drawn over both eyes, distorted with the frame. */
+    public OverlayRenderer getDetectionOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Shows {@code frame} in both eyes from the next vsync on, taking over the
+     * caller's reference; the bitmap must not be changed afterwards.
+     * {@code captureTimestampNs} is on the elapsedRealtimeNanos clock, 0 if
+     * unknown, which leaves the frame out of reprojection.
+     */
+    public void setFrame(RefCountedPool.Ref<Bitmap> frame, long captureTimestampNs) {
+        RefCountedPool.Ref<Bitmap> skipped;
+        synchronized (pendingLock) {
+            skipped = pendingFrame;
+            pendingFrame = frame;
+            pendingTimestampNs = captureTimestampNs;
+        }
+        // replaced before it was ever drawn
+        if (skipped != null)
+            skipped.release();
+        requestRender();
+    }
+
+    /** Head orientations to reproject frames with, or null to show them where they were captured. */
+    public void setReprojection(OrientationRingBuffer orientations) {
+        this.orientations = orientations;
+        requestRender();
+    }
+
+    /** Horizontal field of view of the camera the frames come from, before any digital zoom. */
+    public void setCameraFieldOfView(float horizontalRadians) {
+        this.cameraFovRadians = horizontalRadians;
+    }
+
+    /** The region of every frame to show, which also narrows the field of view. */
+    public void setCrop(CropRect crop) {
+        this.crop = crop;
+        overlay.setCrop(crop);
+        requestRender();
+    }
+
+    /**
+     * Viewer geometry: distance between the lens centres, from the screen to
+     * the lenses, and the lens' radial coefficients (see {@link DistortionMesh}).
+     * Coefficients of 0 turn the correction off.
+     */
+    public void setLensParameters(float ipdMm, float screenToLensMm, float k1, float k2) {
+        this.ipdMm = ipdMm;
+        this.screenToLensMm = screenToLensMm;
+        this.k1 = k1;
+        this.k2 = k2;
+        lensChanged = true;
+        requestRender();
+    }
+
+    public long getFramesDrawn() {
+        return framesDrawn;
+    }
+
+    private void requestRender() {
+        contentChanged.set(true);
+        scheduleFrame();
+    }
+
+    private void scheduleFrame() {
+        Handler handler = renderHandler;
+        if (handler == null || !renderRequested.compareAndSet(false, true))
+            return;
+        handler.post(() -> {
+            if (choreographer != null)
+                choreographer.postFrameCallback(this);
+        });
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        renderThread = new HandlerThread("stereo-render");
+        renderThread.start();
+        Handler handler = new Handler(renderThread.getLooper());
+        // Choreographer.getInstance() is per looper, so it has to be called on the render thread
+        handler.post(() -> choreographer = Choreographer.getInstance());
+        renderHandler = handler;
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        Handler handler = renderHandler;
+        if (handler == null)
+            return;
+        Surface newSurface = holder.getSurface();
+        int rotation = getDisplay() != null ? getDisplay().getRotation() : 0;
+        handler.post(() -> {
+            surface = newSurface;
+            surfaceWidth = width;
+            surfaceHeight = height;
+            meshFrameWidth = 0; // forces a rebuild
+            reprojection.setScreenRotation(rotation);
+            contentChanged.set(true);
+            renderRequested.set(true);
+            choreographer.removeFrameCallback(this);
+            choreographer.postFrameCallback(this);
+        });
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        Handler handler = renderHandler;
+        renderHandler = null;
+        if (handler == null)
+            return;
+        handler.post(() -> {
+            if (choreographer != null)
+                choreographer.removeFrameCallback(this);
+            surface = null;
+            // nothing is on screen any more; the next frame will come soon enough
+            if (shownFrame != null) {
+                shownFrame.release();
+                shownFrame = null;
+                frame = null;
+            }
+        });
+        // the surface is gone once this returns, so the render thread has to be done with it
+        renderThread.quitSafely();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderThread = null;
+        renderRequested.set(false);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        renderRequested.set(false);
+        synchronized (pendingLock) {
+            if (pendingFrame != null) {
+                if (shownFrame != null)
+                    shownFrame.release();
+                shownFrame = pendingFrame;
+                frame = shownFrame.get();
+                frameTimestampNs = pendingTimestampNs;
+                pendingFrame = null;
+            }
+        }
+        if (surface == null || frame == null || surfaceWidth == 0)
+            return;
+
+        int eyeWidth = surfaceWidth / 2;
+        if (lensChanged || frame.getWidth() != meshFrameWidth || frame.getHeight() != meshFrameHeight
+                || crop != meshCrop)
+            rebuildMesh(eyeWidth);
+        overlay.latch();
+        updateReprojection();
+        boolean reprojected = reprojection.shiftX != 0 || reprojection.shiftY != 0
+                || reprojection.rollDegrees != 0;
+        if (!contentChanged.getAndSet(false) && !movedSinceDrawn()) {
+            // the head keeps moving between frames, so keep watching it without redrawing
+            if (reprojected)
+                scheduleFrame();
+            return;
+        }
+
+        Canvas canvas;
+        try {
+            canvas = surface.lockHardwareCanvas();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Log.w(TAG, "Surface not ready", e);
+            contentChanged.set(true);
+            return;
+        }
+        try {
+            canvas.drawColor(Color.BLACK);
+            float ipdPx = ipdMm * pixelsPerMm;
+            for (int eye = 0; eye < 2; eye++) {
+                float eyeLeft = eye * eyeWidth;
+                float lensX = DistortionMesh.lensCenterX(eye == 0, eyeWidth, ipdPx);
+                canvas.save();
+                canvas.clipRect(eyeLeft, 0, eyeLeft + eyeWidth, surfaceHeight);
+                // the mesh is laid out around the viewport's centre; slide it under the lens
+                canvas.translate(eyeLeft + lensX - eyeWidth / 2f, 0);
+                canvas.translate(reprojection.shiftX, reprojection.shiftY);
+                canvas.rotate(reprojection.rollDegrees, eyeWidth / 2f, surfaceHeight / 2f);
+                canvas.drawBitmapMesh(frame, mesh.getMeshWidth(), mesh.getMeshHeight(), mesh.getVertices(), 0,
+                        null, 0, framePaint);
+                overlay.draw(canvas, eyeWidth, surfaceHeight, mesh);
+                canvas.restore();
+            }
+        } finally {
+            surface.unlockCanvasAndPost(canvas);
+        }
+        framesDrawn++;
+        drawnShiftX = reprojection.shiftX;
+        drawnShiftY = reprojection.shiftY;
+        drawnRollDegrees = reprojection.rollDegrees;
+        if (reprojected)
+            scheduleFrame();
+    }
+
+    private boolean movedSinceDrawn() {
+        return Math.abs(reprojection.shiftX - drawnShiftX) >= MIN_REDRAW_SHIFT_PX
+                || Math.abs(reprojection.shiftY - drawnShiftY) >= MIN_REDRAW_SHIFT_PX
+                || Math.abs(reprojection.rollDegrees - drawnRollDegrees) >= MIN_REDRAW_ROLL_DEGREES;
+    }
+
+    // both eyes share one mesh: each is centred on its own lens by the translation in doFrame
+    private void rebuildMesh(int eyeWidth) {
+        lensChanged = false;
+        meshFrameWidth = frame.getWidth();
+        meshFrameHeight = frame.getHeight();
+        meshCrop = crop;
+        // the crop goes centerCrop into the eye, like the overlay's SkeletonGeometry; the rest of the frame
+        // lands outside the viewport and is clipped
+        float regionWidth = meshFrameWidth * meshCrop.width(), regionHeight = meshFrameHeight * meshCrop.height();
+        float scale = Math.max(eyeWidth / regionWidth, surfaceHeight / regionHeight);
+        contentWidth = meshFrameWidth * scale;
+        float contentHeight = meshFrameHeight * scale;
+        float left = (eyeWidth - regionWidth * scale) / 2 - meshCrop.left * contentWidth;
+        float top = (surfaceHeight - regionHeight * scale) / 2 - meshCrop.top * contentHeight;
+        mesh.setCoefficients(k1, k2);
+        mesh.build(left, top, contentWidth, contentHeight, eyeWidth / 2f, surfaceHeight / 2f,
+                screenToLensMm * pixelsPerMm);
+    }
+
+    // both orientations on the sensor's clock; a capture time outside the ring (or from another clock) skips it
+    private void updateReprojection() {
+        reprojection.reset();
+        OrientationRingBuffer buffer = orientations;
+        float fov = cameraFovRadians;
+        if (buffer == null || fov <= 0 || frameTimestampNs == 0)
+            return;
+        long displayNs = SystemClock.elapsedRealtimeNanos() + PRESENT_LATENCY_NS;
+        if (!buffer.sample(frameTimestampNs, captureOrientation) || !buffer.sample(displayNs, displayOrientation))
+            return;
+        // contentWidth is the whole frame at its on-screen scale, so the zoom is already in it
+        float focalPx = contentWidth / 2 / (float) Math.tan(fov / 2);
+        reprojection.compute(captureOrientation, displayOrientation, focalPx);
+    }
+}
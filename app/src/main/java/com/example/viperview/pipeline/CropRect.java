@@ -0,0 +1,104 @@
+package com.example.viperview.pipeline;
+
+/**
+ * A region of the camera frame in normalized [0, 1] coordinates, used for
+ * digital zoom. Instead of cutting a zoomed copy out of every frame, the
+ * rect travels with the frame: the renderer shows only this region, the
+ * preprocessor reads only these pixels and the uplink header tells the
+ * server which part to run on. Immutable; a new one per zoom step.
+ */
+public final class CropRect {
+
+    public static final CropRect FULL = new CropRect(0, 0, 1, 1);
+
+    public final float left;
+    public final float top;
+    public final float right;
+    public final float bottom;
+
+    public CropRect(float left, float top, float right, float bottom) {
+        if (!(left >= 0 && top >= 0 && right <= 1 && bottom <= 1 && left < right && top < bottom))
+            throw new IllegalArgumentException("Bad crop " + left + "," + top + " - " + right + "," + bottom);
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /** The centre 1/zoom of the frame; {@link #FULL} for zoom at or below 1. */
+    public static CropRect centerZoom(float zoom) {
+        if (zoom <= 1)
+            return FULL;
+        float half = 0.5f / zoom;
+        return new CropRect(0.5f - half, 0.5f - half, 0.5f + half, 0.5f + half);
+    }
+
+    public float width() {
+        return right - left;
+    }
+
+    public float height() {
+        return bottom - top;
+    }
+
+    public boolean isFull() {
+        return left == 0 && top == 0 && right == 1 && bottom == 1;
+    }
+
+    /** A normalized x inside the crop to a normalized x in the whole frame. */
+    public float toFrameX(float cropX) {
+        return left + cropX * (right - left);
+    }
+
+    public float toFrameY(float cropY) {
+        return top + cropY * (bottom - top);
+    }
+
+    /** A normalized x in the whole frame to a normalized x inside the crop. */
+    public float toCropX(float frameX) {
+        return (frameX - left) / (right - left);
+    }
+
+    public float toCropY(float frameY) {
+        return (frameY - top) / (bottom - top);
+    }
+
+    /**
+     * The crop in pixels of a frameWidth x frameHeight frame, as x, y, width,
+     * height into {@code out}, at least one pixel and inside the frame. With
+     * {@code alignment} 2 the origin and size are even, as 4:2:0 chroma needs.
+     */
+    public void toPixels(int frameWidth, int frameHeight, int alignment, int[] out) {
+        int x = align(Math.round(left * frameWidth), alignment);
+        int y = align(Math.round(top * frameHeight), alignment);
+        int width = align(Math.round(right * frameWidth), alignment) - x;
+        int height = align(Math.round(bottom * frameHeight), alignment) - y;
+        out[0] = x;
+        out[1] = y;
+        out[2] = Math.max(Math.min(width, frameWidth - x), Math.min(alignment, frameWidth - x));
+        out[3] = Math.max(Math.min(height, frameHeight - y), Math.min(alignment, frameHeight - y));
+    }
+
+    private static int align(int value, int alignment) {
+        return value / alignment * alignment;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CropRect))
+            return false;
+        CropRect crop = (CropRect) other;
+        return left == crop.left && top == crop.top && right == crop.right && bottom == crop.bottom;
+    }
+
+    @Override
+    public int hashCode() {
+        return Float.floatToIntBits(left) * 31 * 31 * 31 + Float.floatToIntBits(top) * 31 * 31
+                + Float.floatToIntBits(right) * 31 + Float.floatToIntBits(bottom);
+    }
+
+    @Override
+    public String toString() {
+        return "CropRect(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+    }
+}
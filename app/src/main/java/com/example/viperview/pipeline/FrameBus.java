@@ -0,0 +1,235 @@
+package com.example.viperview.pipeline;
+
+import com.example.viperview.camera_stream.LatestFrameQueue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Fans one stream of frames out to any number of subscribers, each on a
+ * thread of its own with its own backpressure policy. Frames travel as
+ * {@link RefCountedPool.Ref}s: every subscription holding a frame has a
+ * reference to it, and the frame goes back to its owner (for camera frames,
+ * the camera) only when the last one is released. One camera image can so
+ * feed local inference, the uplink and a recorder with a single binding and
+ * a single conversion.
+ *
+ * A subscriber's reference is released when {@link Subscriber#onFrame}
+ * returns; one that keeps the frame longer retains it.
+ */
+public class FrameBus<T> {
+
+    private static final long BLOCK_POLL_MS = 50;
+
+    public interface Subscriber<T> {
+        void onFrame(RefCountedPool.Ref<T> frame) throws Exception;
+    }
+
+    public enum Backpressure {
+        /** Up to depth frames wait; a new one replaces the oldest. For consumers that only want fresh frames. */
+        LATEST,
+        /** Up to depth frames wait; publishing then blocks, holding the camera back. For consumers that want every frame. */
+        BLOCK
+    }
+
+    public final class Subscription {
+        private final String name;
+        private final Backpressure backpressure;
+        private final Subscriber<T> subscriber;
+        private final LatestFrameQueue<RefCountedPool.Ref<T>> latest;
+        private final BlockingQueue<RefCountedPool.Ref<T>> blocking;
+        private final Thread thread;
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong blockedNs = new AtomicLong();
+        private volatile boolean running = true;
+
+        Subscription(String name, Backpressure backpressure, int depth, Subscriber<T> subscriber) {
+            if (depth < 1)
+                throw new IllegalArgumentException("depth must be >= 1");
+            this.name = name;
+            this.backpressure = backpressure;
+            this.subscriber = subscriber;
+            if (backpressure == Backpressure.LATEST) {
+                latest = new LatestFrameQueue<>(depth, RefCountedPool.Ref::release);
+                blocking = null;
+            } else {
+                latest = null;
+                blocking = new ArrayBlockingQueue<>(depth);
+            }
+            thread = new Thread(this::run, FrameBus.this.name + "-" + name);
+            thread.setDaemon(true);
+        }
+
+        // takes over one reference to the frame
+        void offer(RefCountedPool.Ref<T> frame) throws InterruptedException {
+            if (latest != null) {
+                latest.offer(frame);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                while (!blocking.offer(frame, BLOCK_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    if (!running) {
+                        frame.release();
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                frame.release();
+                throw e;
+            }
+            blockedNs.addAndGet(System.nanoTime() - start);
+            if (!running)
+                drain(); // cancelled while we waited; nobody will take it
+        }
+
+        private RefCountedPool.Ref<T> take() throws InterruptedException {
+            return latest != null ? latest.take() : blocking.take();
+        }
+
+        private void run() {
+            while (running) {
+                RefCountedPool.Ref<T> frame;
+                try {
+                    frame = take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (frame == null)
+                    break; // cancelled
+                try {
+                    subscriber.onFrame(frame);
+                    delivered.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    BiConsumer<Subscription, Exception> handler = failureHandler;
+                    if (handler != null)
+                        handler.accept(this, e);
+                } finally {
+                    frame.release();
+                }
+            }
+        }
+
+        private void drain() {
+            RefCountedPool.Ref<T> frame;
+            while (blocking != null && (frame = blocking.poll()) != null)
+                frame.release();
+        }
+
+        /** Stops delivery and releases whatever was still waiting. */
+        public void cancel() {
+            if (!subscriptions.remove(this))
+                return;
+            running = false;
+            if (latest != null)
+                latest.close();
+            thread.interrupt();
+            if (thread != Thread.currentThread()) {
+                try {
+                    thread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            drain();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Backpressure getBackpressure() {
+            return backpressure;
+        }
+
+        public long getDeliveredCount() {
+            return delivered.get();
+        }
+
+        /** Frames replaced by a newer one before this subscriber got to them; always 0 for BLOCK. */
+        public long getReplacedCount() {
+            return latest != null ? latest.getReplacedCount() : 0;
+        }
+
+        public long getFailedCount() {
+            return failed.get();
+        }
+
+        /** Total time publishing waited for this subscriber; always 0 for LATEST. */
+        public long getBlockedNs() {
+            return blockedNs.get();
+        }
+    }
+
+    private final String name;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong published = new AtomicLong();
+    private volatile BiConsumer<Subscription, Exception> failureHandler;
+
+    public FrameBus(String name) {
+        this.name = name;
+    }
+
+    /** Starts delivering frames published from now on to {@code subscriber}. */
+    public Subscription subscribe(String subscriptionName, Backpressure backpressure, int depth,
+            Subscriber<T> subscriber) {
+        Subscription subscription = new Subscription(subscriptionName, backpressure, depth, subscriber);
+        subscription.thread.start();
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /** Called on the failing subscriber's thread; the frame is released afterwards as usual. */
+    public void setFailureHandler(BiConsumer<Subscription, Exception> handler) {
+        this.failureHandler = handler;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Hands the frame to every subscription and takes over the caller's
+     * reference. With nobody subscribed the frame is released right away.
+     */
+    public void publish(RefCountedPool.Ref<T> frame) {
+        published.incrementAndGet();
+        try {
+            for (Subscription subscription : subscriptions) {
+                frame.retain();
+                subscription.offer(frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            frame.release();
+        }
+    }
+
+    /** Cancels every subscription. */
+    public void close() {
+        for (Subscription subscription : subscriptions)
+            subscription.cancel();
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder(name);
+        sb.append(" published=").append(published.get());
+        for (Subscription subscription : subscriptions) {
+            sb.append(String.format(" | %s delivered=%d replaced=%d failed=%d blocked=%dms", subscription.name,
+                    subscription.getDeliveredCount(), subscription.getReplacedCount(),
+                    subscription.getFailedCount(), subscription.getBlockedNs() / 1_000_000));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.viperview.pipeline;
+
+import com.example.viperview.camera_stream.FrameRateLimiter;
+import com.example.viperview.camera_stream.LatencyHistogram;
+import com.example.viperview.yolo.Quantization;
+import com.example.viperview.yolo.TensorPreprocessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Decides which registered models run on each frame and feeds them one
+ * shared input tensor per distinct input size. A frame goes through three
+ * calls that may sit on different pipeline stages:
+ * {@link #plan} picks the models, {@link #prepare} resizes and normalizes the
+ * frame once per input size the picked models need, and {@link #dispatch}
+ * runs them in priority order. Several plans exist so the next frame can be
+ * prepared while the current one is dispatched.
+ *
+ * Each model has a target rate. When a frame budget is set, models whose
+ * estimated cost no longer fits are deferred to a later frame; every
+ * deferral raises the model's priority by one until it gets to run, so a
+ * slow low-priority model is delayed rather than starved.
+ *
+ * A model with several input sizes gets a tensor for each; the size it
+ * reports when a frame is planned is the one prepared and passed to it.
+ * Float and quantized inputs of one size are separate tensors, each filled
+ * straight from the frame.
+ */
+public class ModelScheduler<C> {
+
+    private static final double LATENCY_SMOOTHING = 0.2;
+    // a model that keeps failing is reported once, then at most this often (frame time)
+    static final long FAILURE_REPORT_INTERVAL_NS = 10_000_000_000L;
+
+    /** Per-model counters. Rate skips are frames the model was not due on. */
+    public static final class ModelStats {
+        private final String name;
+        private final LatencyHistogram latency;
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong rateSkips = new AtomicLong();
+        private final AtomicLong budgetSkips = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private volatile double estimatedMs = 0;
+
+        ModelStats(String name) {
+            this.name = name;
+            this.latency = new LatencyHistogram(name, 1000, 5);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getRunCount() {
+            return runs.get();
+        }
+
+        public long getRateSkipCount() {
+            return rateSkips.get();
+        }
+
+        /** Frames the model was due on but deferred because the budget was used up. */
+        public long getBudgetSkipCount() {
+            return budgetSkips.get();
+        }
+
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /** Smoothed run time, what the budget check charges for this model. */
+        public double getEstimatedMs() {
+            return estimatedMs;
+        }
+    }
+
+    private final class Entry {
+        final ScheduledModel<C> model;
+        final int priority;
+        final int[] shapes; // one per input size the model supports
+        final FrameRateLimiter limiter;
+        final ModelStats stats;
+        volatile boolean enabled = true;
+        int deferrals = 0; // plan() only
+        int shape; // plan() only, the size the model reported last
+        long lastFailureReportNs = Long.MIN_VALUE; // dispatch() only
+
+        Entry(ScheduledModel<C> model, int frameRate, int priority, int[] shapes) {
+            this.model = model;
+            this.priority = priority;
+            this.shapes = shapes;
+            this.limiter = new FrameRateLimiter(frameRate);
+            this.stats = new ModelStats(model.getName());
+        }
+
+        int effectivePriority() {
+            return priority + deferrals;
+        }
+
+        int currentShape() {
+            int width = model.getInputWidth(), height = model.getInputHeight();
+            for (int shape : shapes) {
+                if (shapeWidths.get(shape) == width && shapeHeights.get(shape) == height)
+                    return shape;
+            }
+            throw new IllegalStateException(model.getName() + " asked for an unlisted input size "
+                    + width + "x" + height);
+        }
+    }
+
+    /** The models picked for one frame and the tensors prepared for them. */
+    public final class Plan {
+        private final List<Entry> selected = new ArrayList<>();
+        private final int[] selectedShapes; // parallel to selected
+        private final int[] widths;
+        private final int[] heights;
+        private final ByteBuffer[] tensors;
+        private final FloatBuffer[] floats;
+        private final TensorPreprocessor[] preprocessors;
+        private final boolean[] prepared;
+        private long timestampNs;
+
+        Plan() {
+            int shapes = shapeWidths.size();
+            selectedShapes = new int[entries.size()];
+            widths = new int[shapes];
+            heights = new int[shapes];
+            tensors = new ByteBuffer[shapes];
+            floats = new FloatBuffer[shapes];
+            preprocessors = new TensorPreprocessor[shapes];
+            prepared = new boolean[shapes];
+            for (int i = 0; i < shapes; i++) {
+                int width = shapeWidths.get(i), height = shapeHeights.get(i);
+                Quantization quantization = shapeQuantizations.get(i);
+                widths[i] = width;
+                heights[i] = height;
+                tensors[i] = ByteBuffer.allocateDirect(width * height * 3 * (quantization == null ? 4 : 1));
+                tensors[i].order(ByteOrder.nativeOrder());
+                floats[i] = quantization == null ? tensors[i].asFloatBuffer() : null;
+                preprocessors[i] = new TensorPreprocessor(width, height, quantization);
+            }
+        }
+
+        public long getTimestampNs() {
+            return timestampNs;
+        }
+
+        public int getModelCount() {
+            return selected.size();
+        }
+
+        public String getModelName(int index) {
+            return selected.get(index).model.getName();
+        }
+    }
+
+    private final int planCount;
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Integer> shapeWidths = new ArrayList<>();
+    private final List<Integer> shapeHeights = new ArrayList<>();
+    private final List<Quantization> shapeQuantizations = new ArrayList<>(); // null for float
+    private volatile ArrayBlockingQueue<Plan> idlePlans; // created on the first plan()
+
+    private final List<Entry> candidates = new ArrayList<>();
+    private volatile double frameBudgetMs = 0;
+    private final AtomicLong preprocessed = new AtomicLong();
+    private volatile BiConsumer<ModelStats, Exception> failureHandler;
+
+    public ModelScheduler(int planCount) {
+        if (planCount < 1)
+            throw new IllegalArgumentException("planCount must be >= 1");
+        this.planCount = planCount;
+    }
+
+    /**
+     * Adds a model that should run at up to {@code frameRate} Hz (0 for every
+     * frame). Higher priorities run first. Register everything before the
+     * first frame.
+     */
+    public synchronized void register(ScheduledModel<C> model, int frameRate, int priority) {
+        if (idlePlans != null)
+            throw new IllegalStateException("Models must be registered before the first plan()");
+        int[][] sizes = model.getInputSizes();
+        int[] shapes = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++)
+            shapes[i] = shapeFor(sizes[i][0], sizes[i][1], model.getInputQuantization());
+        entries.add(new Entry(model, frameRate, priority, shapes));
+    }
+
+    private int shapeFor(int width, int height, Quantization quantization) {
+        int shape = 0;
+        while (shape < shapeWidths.size() && (shapeWidths.get(shape) != width
+                || shapeHeights.get(shape) != height
+                || !Objects.equals(shapeQuantizations.get(shape), quantization)))
+            shape++;
+        if (shape == shapeWidths.size()) {
+            shapeWidths.add(width);
+            shapeHeights.add(height);
+            shapeQuantizations.add(quantization);
+        }
+        return shape;
+    }
+
+    /** Inference time allowed per frame across all models; 0 or less means unlimited. */
+    public void setFrameBudgetMs(double budgetMs) {
+        this.frameBudgetMs = budgetMs;
+    }
+
+    /** A disabled model is neither run nor counted as skipped, e.g. while its overlay is hidden. */
+    public void setEnabled(ScheduledModel<C> model, boolean enabled) {
+        entry(model).enabled = enabled;
+    }
+
+    public void setFrameRate(ScheduledModel<C> model, int frameRate) {
+        entry(model).limiter.setFrameRate(frameRate);
+    }
+
+    /**
+     * Picks the models to run on the frame at {@code timestampNs}, or returns
+     * null if none is due. Blocks while every plan is still in use. Call from
+     * one thread.
+     */
+    public Plan plan(long timestampNs) throws InterruptedException {
+        ArrayBlockingQueue<Plan> plans = createPlans();
+        candidates.clear();
+        for (Entry entry : entries) {
+            if (!entry.enabled)
+                continue;
+            if (entry.limiter.isDue(timestampNs)) {
+                entry.shape = entry.currentShape();
+                candidates.add(entry);
+            }
+            else
+                entry.stats.rateSkips.incrementAndGet();
+        }
+        if (candidates.isEmpty())
+            return null;
+        // stable, so equal priorities keep registration order
+        candidates.sort((a, b) -> Integer.compare(b.effectivePriority(), a.effectivePriority()));
+
+        Plan plan = plans.take();
+        plan.selected.clear();
+        plan.timestampNs = timestampNs;
+        double budget = frameBudgetMs;
+        double remaining = budget;
+        for (Entry entry : candidates) {
+            double cost = entry.stats.estimatedMs;
+            // the most urgent model always runs, even over budget
+            if (budget > 0 && !plan.selected.isEmpty() && cost > remaining) {
+                entry.deferrals++;
+                entry.stats.budgetSkips.incrementAndGet();
+                continue;
+            }
+            entry.deferrals = 0;
+            entry.limiter.accept(timestampNs);
+            remaining -= cost;
+            plan.selectedShapes[plan.selected.size()] = entry.shape;
+            plan.selected.add(entry);
+        }
+        return plan;
+    }
+
+    // registration is closed from here on, so entries can be read without the lock
+    private synchronized ArrayBlockingQueue<Plan> createPlans() {
+        if (idlePlans == null) {
+            idlePlans = new ArrayBlockingQueue<>(planCount);
+            for (int i = 0; i < planCount; i++)
+                idlePlans.add(new Plan());
+        }
+        return idlePlans;
+    }
+
+    /** Fills one tensor per input size the plan's models need. */
+    public void prepare(Plan plan, TensorSource source) {
+        for (int i = 0; i < plan.prepared.length; i++)
+            plan.prepared[i] = false;
+        for (int i = 0; i < plan.selected.size(); i++) {
+            int shape = plan.selectedShapes[i];
+            if (plan.prepared[shape])
+                continue;
+            if (plan.floats[shape] != null)
+                source.writeTo(plan.preprocessors[shape], plan.floats[shape]);
+            else
+                source.writeTo(plan.preprocessors[shape], plan.tensors[shape]);
+            plan.prepared[shape] = true;
+            preprocessed.incrementAndGet();
+        }
+    }
+
+    /** Runs the plan's models in priority order. A failing model does not stop the others. */
+    public void dispatch(Plan plan, C context) {
+        for (int i = 0; i < plan.selected.size(); i++) {
+            Entry entry = plan.selected.get(i);
+            int shape = plan.selectedShapes[i];
+            ByteBuffer input = plan.tensors[shape];
+            input.rewind();
+            long start = System.nanoTime();
+            try {
+                entry.model.run(input, plan.widths[shape], plan.heights[shape], plan.timestampNs, context);
+            } catch (Exception e) {
+                entry.stats.failures.incrementAndGet();
+                reportFailure(entry, plan.timestampNs, e);
+                continue;
+            }
+            long elapsed = System.nanoTime() - start;
+            ModelStats stats = entry.stats;
+            stats.latency.record(elapsed);
+            stats.runs.incrementAndGet();
+            double ms = elapsed / 1e6;
+            stats.estimatedMs = stats.runs.get() == 1 ? ms
+                    : stats.estimatedMs + LATENCY_SMOOTHING * (ms - stats.estimatedMs);
+        }
+    }
+
+    private void reportFailure(Entry entry, long timestampNs, Exception e) {
+        BiConsumer<ModelStats, Exception> handler = failureHandler;
+        if (handler == null || (entry.lastFailureReportNs != Long.MIN_VALUE
+                && timestampNs - entry.lastFailureReportNs < FAILURE_REPORT_INTERVAL_NS))
+            return;
+        entry.lastFailureReportNs = timestampNs;
+        handler.accept(entry.stats, e);
+    }
+
+    /**
+     * Called on the dispatching thread with a model's first failure, then at
+     * most once per {@link #FAILURE_REPORT_INTERVAL_NS} per model; every
+     * failure is still counted in its stats.
+     */
+    public void setFailureHandler(BiConsumer<ModelStats, Exception> handler) {
+        this.failureHandler = handler;
+    }
+
+    public void release(Plan plan) {
+        plan.selected.clear();
+        idlePlans.offer(plan);
+    }
+
+    /** plan, prepare and dispatch on the calling thread; false if nothing was due. */
+    public boolean process(TensorSource source, long timestampNs, C context) throws InterruptedException {
+        Plan plan = plan(timestampNs);
+        if (plan == null)
+            return false;
+        try {
+            prepare(plan, source);
+            dispatch(plan, context);
+        } finally {
+            release(plan);
+        }
+        return true;
+    }
+
+    public synchronized ModelStats getStats(ScheduledModel<C> model) {
+        return entry(model).stats;
+    }
+
+    /** Distinct input sizes and types over all models, each with a tensor in every plan. */
+    public synchronized int getInputShapeCount() {
+        return shapeWidths.size();
+    }
+
+    public long getPreprocessCount() {
+        return preprocessed.get();
+    }
+
+    public synchronized String summary() {
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder("models");
+        for (Entry entry : entries) {
+            ModelStats stats = entry.stats;
+            sb.append(String.format(" | %s runs=%d p50=%.1fms rateSkip=%d budgetSkip=%d failed=%d",
+                    stats.name, stats.runs.get(), stats.latency.percentileMs(50, now), stats.rateSkips.get(),
+                    stats.budgetSkips.get(), stats.failures.get()));
+        }
+        return sb.toString();
+    }
+
+    private Entry entry(ScheduledModel<C> model) {
+        for (Entry entry : entries) {
+            if (entry.model == model)
+                return entry;
+        }
+        throw new IllegalArgumentException("Unknown model " + model.getName());
+    }
+}
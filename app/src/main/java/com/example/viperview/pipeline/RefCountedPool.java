@@ -0,0 +1,187 @@
+package com.example.viperview.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of reusable objects (bitmaps, mostly) keyed by shape, handed out as
+ * reference-counted {@link Ref}s. Every stage that keeps an object past the
+ * call that gave it one takes its own reference, and the object goes back to
+ * the pool only when the last one is released, so a frame still on screen is
+ * never overwritten by the next decode.
+ *
+ * Hit, miss and outstanding counters are kept so a leaked reference shows
+ * up as an outstanding count that only grows.
+ */
+public class RefCountedPool<T> {
+
+    public interface Factory<T> {
+        T create(long key);
+    }
+
+    public interface Disposer<T> {
+        void dispose(T value);
+    }
+
+    /** One object and its reference count. Starts with a single reference held by whoever acquired it. */
+    public static final class Ref<T> {
+        private final RefCountedPool<T> pool;
+        private final Disposer<T> onLastRelease; // only for refs without a pool
+        private final T value;
+        private final long key;
+        private final AtomicInteger refs = new AtomicInteger();
+
+        Ref(RefCountedPool<T> pool, T value, long key) {
+            this(pool, null, value, key);
+        }
+
+        Ref(RefCountedPool<T> pool, Disposer<T> onLastRelease, T value, long key) {
+            this.pool = pool;
+            this.onLastRelease = onLastRelease;
+            this.value = value;
+            this.key = key;
+        }
+
+        public T get() {
+            return value;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        /** Takes another reference; the caller must {@link #release} it too. */
+        public Ref<T> retain() {
+            int count;
+            do {
+                count = refs.get();
+                if (count <= 0)
+                    throw new IllegalStateException("Retained after its last release");
+            } while (!refs.compareAndSet(count, count + 1));
+            return this;
+        }
+
+        public void release() {
+            int left = refs.decrementAndGet();
+            if (left < 0)
+                throw new IllegalStateException("Released more often than retained");
+            if (left == 0 && pool != null)
+                pool.recycle(this);
+            else if (left == 0 && onLastRelease != null)
+                onLastRelease.dispose(value);
+        }
+
+        public int getRefCount() {
+            return refs.get();
+        }
+    }
+
+    /** A reference to an object that does not come from a pool; releasing it only drops the count. */
+    public static <T> Ref<T> unpooled(T value) {
+        return wrap(value, null);
+    }
+
+    /**
+     * A reference to an object owned elsewhere, e.g. a camera image, that
+     * hands it to {@code onLastRelease} once every holder is done with it.
+     */
+    public static <T> Ref<T> wrap(T value, Disposer<T> onLastRelease) {
+        Ref<T> ref = new Ref<>(null, onLastRelease, value, 0);
+        ref.refs.set(1);
+        return ref;
+    }
+
+    private final Factory<T> factory;
+    private final Disposer<T> disposer;
+    private final int maxIdlePerKey;
+    private final Map<Long, ArrayDeque<Ref<T>>> idle = new HashMap<>(); // guarded by itself
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final AtomicLong disposed = new AtomicLong();
+
+    /** Keeps up to {@code maxIdlePerKey} released objects per key; extra ones go to {@code disposer}. */
+    public RefCountedPool(Factory<T> factory, Disposer<T> disposer, int maxIdlePerKey) {
+        this.factory = factory;
+        this.disposer = disposer;
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    public Ref<T> acquire(long key) {
+        Ref<T> ref;
+        synchronized (idle) {
+            ArrayDeque<Ref<T>> free = idle.get(key);
+            ref = free != null ? free.pollLast() : null;
+        }
+        if (ref != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            ref = new Ref<>(this, factory.create(key), key);
+        }
+        ref.refs.set(1);
+        outstanding.incrementAndGet();
+        return ref;
+    }
+
+    private void recycle(Ref<T> ref) {
+        outstanding.decrementAndGet();
+        synchronized (idle) {
+            ArrayDeque<Ref<T>> free = idle.get(ref.key);
+            if (free == null) {
+                free = new ArrayDeque<>();
+                idle.put(ref.key, free);
+            }
+            if (free.size() < maxIdlePerKey) {
+                free.addLast(ref);
+                return;
+            }
+        }
+        disposed.incrementAndGet();
+        disposer.dispose(ref.value);
+    }
+
+    /** Disposes every idle object, e.g. after a resolution change left a key unused. */
+    public void clear() {
+        synchronized (idle) {
+            for (ArrayDeque<Ref<T>> free : idle.values()) {
+                for (Ref<T> ref : free) {
+                    disposed.incrementAndGet();
+                    disposer.dispose(ref.value);
+                }
+            }
+            idle.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Objects acquired and not yet released by their last holder. */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    public int getIdleCount() {
+        synchronized (idle) {
+            int count = 0;
+            for (ArrayDeque<Ref<T>> free : idle.values())
+                count += free.size();
+            return count;
+        }
+    }
+
+    public String summary() {
+        long h = hits.get(), m = misses.get();
+        return String.format("hits=%d misses=%d (%.1f%% hit) outstanding=%d idle=%d disposed=%d", h, m,
+                h + m == 0 ? 0.0 : 100.0 * h / (h + m), outstanding.get(), getIdleCount(), disposed.get());
+    }
+}
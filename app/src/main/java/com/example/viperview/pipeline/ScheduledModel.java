@@ -0,0 +1,46 @@
+package com.example.viperview.pipeline;
+
+import com.example.viperview.yolo.Quantization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A model the {@link ModelScheduler} can run. It only declares the NHWC
+ * input it wants (RGB, float normalized to [0, 1] or the bytes of a
+ * quantized model); the scheduler prepares that tensor once per frame and
+ * shares it with every model of that size and type, so a model must not
+ * write to it. {@code context} is whatever the caller
+ * passed to dispatch, e.g. the frame the results belong to.
+ *
+ * A model may switch between several input sizes. It lists them all up
+ * front so the scheduler can keep a tensor for each; getInputWidth/Height
+ * then name the current one and are read when a frame is planned.
+ */
+public interface ScheduledModel<C> {
+
+    String getName();
+
+    int getInputWidth();
+
+    int getInputHeight();
+
+    void run(ByteBuffer input, long timestampNs, C context) throws Exception;
+
+    /** How a quantized input stores [0, 1]; null, the default, for a float input. */
+    default Quantization getInputQuantization() {
+        return null;
+    }
+
+    /** Every input size as {width, height}; by default just the current one. */
+    default int[][] getInputSizes() {
+        return new int[][] { { getInputWidth(), getInputHeight() } };
+    }
+
+    /**
+     * What the scheduler calls: {@code input} is width x height, the size
+     * that was current when the frame was planned, which may no longer be.
+     */
+    default void run(ByteBuffer input, int width, int height, long timestampNs, C context) throws Exception {
+        run(input, timestampNs, context);
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.viperview.pipeline;
+
+import com.example.viperview.camera_stream.LatencyHistogram;
+import com.example.viperview.camera_stream.LatestFrameQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs each job through a fixed chain of stages, one thread per stage, so
+ * stage N+1 of one frame overlaps stage N of the next. Stages are joined by
+ * depth-1 hand-offs: a finished job waits there until the next stage is free,
+ * which holds the upstream stage back. Only the entry slot drops work, and
+ * there the newest frame replaces the one still waiting, so the pipeline
+ * never falls behind the camera.
+ *
+ * Every job leaves through the recycler exactly once, whether it completed,
+ * was replaced at the entry, failed, or was still queued on {@link #close}.
+ */
+public class StagedPipeline<T> {
+
+    public interface Stage<T> {
+        void process(T job) throws Exception;
+    }
+
+    /** Timings for one stage. Busy time against wall time shows which stage limits throughput. */
+    public static final class StageStats {
+        private final String name;
+        private final LatencyHistogram latency;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong busyNs = new AtomicLong();
+        private final AtomicLong blockedNs = new AtomicLong();
+
+        StageStats(String name) {
+            this.name = name;
+            this.latency = new LatencyHistogram(name, 1000, 5);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getProcessedCount() {
+            return processed.get();
+        }
+
+        /** Total time spent inside the stage. */
+        public long getBusyNs() {
+            return busyNs.get();
+        }
+
+        /** Total time a finished job waited for the next stage to take it. */
+        public long getBlockedNs() {
+            return blockedNs.get();
+        }
+    }
+
+    private final String name;
+    private final LatestFrameQueue.Recycler<T> recycler;
+    private final List<Stage<T>> stages = new ArrayList<>();
+    private final List<StageStats> stats = new ArrayList<>();
+    private final List<BlockingQueue<T>> handoffs = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final LatestFrameQueue<T> entry;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile BiConsumer<T, Exception> failureHandler;
+    private volatile boolean running = false;
+    private long startNs;
+
+    public StagedPipeline(String name, LatestFrameQueue.Recycler<T> recycler) {
+        this.name = name;
+        this.recycler = recycler;
+        this.entry = new LatestFrameQueue<>(1, this::recycle);
+    }
+
+    public StagedPipeline<T> addStage(String stageName, Stage<T> stage) {
+        if (running || !threads.isEmpty())
+            throw new IllegalStateException("Stages must be added before start()");
+        stages.add(stage);
+        stats.add(new StageStats(stageName));
+        handoffs.add(stages.size() == 1 ? null : new ArrayBlockingQueue<>(1));
+        return this;
+    }
+
+    /** Called on the failing stage's thread before the job is recycled. */
+    public void setFailureHandler(BiConsumer<T, Exception> handler) {
+        this.failureHandler = handler;
+    }
+
+    public synchronized void start() {
+        if (stages.isEmpty())
+            throw new IllegalStateException("No stages");
+        if (!threads.isEmpty())
+            throw new IllegalStateException("Already started");
+        running = true;
+        startNs = System.nanoTime();
+        for (int i = 0; i < stages.size(); i++) {
+            final int index = i;
+            Thread thread = new Thread(() -> runStage(index), name + "-" + stats.get(i).name);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /** Hands a job to the first stage, replacing one that is still waiting there. */
+    public void offer(T job) {
+        entry.offer(job);
+    }
+
+    /** Stops every stage and recycles whatever was in flight. */
+    public synchronized void close() {
+        running = false;
+        entry.close();
+        for (Thread thread : threads)
+            thread.interrupt();
+        for (Thread thread : threads) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (BlockingQueue<T> handoff : handoffs) {
+            T job;
+            while (handoff != null && (job = handoff.poll()) != null)
+                recycle(job);
+        }
+    }
+
+    private void runStage(int index) {
+        Stage<T> stage = stages.get(index);
+        StageStats stageStats = stats.get(index);
+        BlockingQueue<T> next = index + 1 < handoffs.size() ? handoffs.get(index + 1) : null;
+        while (running) {
+            T job;
+            try {
+                job = index == 0 ? entry.take() : handoffs.get(index).take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (job == null)
+                break; // entry closed
+
+            long start = System.nanoTime();
+            try {
+                stage.process(job);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                BiConsumer<T, Exception> handler = failureHandler;
+                if (handler != null)
+                    handler.accept(job, e);
+                recycle(job);
+                continue;
+            }
+            long end = System.nanoTime();
+            stageStats.latency.record(end - start);
+            stageStats.busyNs.addAndGet(end - start);
+            stageStats.processed.incrementAndGet();
+
+            if (next == null) {
+                completed.incrementAndGet();
+                recycle(job);
+                continue;
+            }
+            try {
+                next.put(job);
+            } catch (InterruptedException e) {
+                recycle(job);
+                break;
+            }
+            stageStats.blockedNs.addAndGet(System.nanoTime() - end);
+        }
+    }
+
+    private void recycle(T job) {
+        if (recycler != null && job != null)
+            recycler.recycle(job);
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public StageStats getStageStats(int index) {
+        return stats.get(index);
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /** Jobs replaced at the entry by a newer one, i.e. frames the pipeline could not keep up with. */
+    public long getDroppedCount() {
+        return entry.getReplacedCount();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /** The stage with the highest busy share, which is what caps throughput. */
+    public StageStats getBottleneck() {
+        StageStats busiest = stats.get(0);
+        for (StageStats stageStats : stats) {
+            if (stageStats.getBusyNs() > busiest.getBusyNs())
+                busiest = stageStats;
+        }
+        return busiest;
+    }
+
+    public String summary() {
+        long now = System.currentTimeMillis();
+        double elapsedNs = Math.max(1, System.nanoTime() - startNs);
+        StringBuilder sb = new StringBuilder(name);
+        sb.append(String.format(" done=%d dropped=%d failed=%d", completed.get(), getDroppedCount(), failed.get()));
+        for (StageStats stageStats : stats) {
+            sb.append(String.format(" | %s p50=%.1fms p90=%.1fms busy=%.0f%% blocked=%.0f%%", stageStats.name,
+                    stageStats.latency.percentileMs(50, now), stageStats.latency.percentileMs(90, now),
+                    100 * stageStats.getBusyNs() / elapsedNs, 100 * stageStats.getBlockedNs() / elapsedNs));
+        }
+        sb.append(" | bottleneck=").append(getBottleneck().name);
+        return sb.toString();
+    }
+}
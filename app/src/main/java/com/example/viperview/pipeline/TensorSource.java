@@ -0,0 +1,15 @@
+package com.example.viperview.pipeline;
+
+import com.example.viperview.yolo.TensorPreprocessor;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/** A camera frame that can be resized and normalized into an input tensor. */
+public interface TensorSource {
+
+    void writeTo(TensorPreprocessor preprocessor, FloatBuffer out);
+
+    /** Into a quantized tensor; {@code preprocessor} was built with its quantization. */
+    void writeTo(TensorPreprocessor preprocessor, ByteBuffer out);
+}
@@ -0,0 +1,76 @@
+package com.example.viperview.tracking;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+/**
+ * Samples the phone's orientation into an {@link OrientationRingBuffer} on a
+ * thread of its own. Prefers the game rotation vector, which leaves out the
+ * magnetometer: it drifts slowly in yaw but does not jump, and only the
+ * change over a few hundred milliseconds matters here. Sensor timestamps are
+ * on the elapsedRealtimeNanos clock.
+ */
+public class HeadOrientationSensor implements SensorEventListener {
+
+    private static final String TAG = "HeadOrientationSensor";
+    private static final int SAMPLING_PERIOD_US = 5000; // 200 Hz, the most apps get without extra permissions
+    private static final int BUFFER_SIZE = 512;
+
+    private final SensorManager sensorManager;
+    private final Sensor sensor;
+    private final OrientationRingBuffer orientations = new OrientationRingBuffer(BUFFER_SIZE);
+    private final float[] quaternion = new float[4];
+    private HandlerThread thread;
+
+    public HeadOrientationSensor(Context context) {
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        Sensor best = sensorManager.getDefaultSensor(Sensor.TYPE_GAME_ROTATION_VECTOR);
+        if (best == null)
+            best = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        sensor = best;
+    }
+
+    public boolean isAvailable() {
+        return sensor != null;
+    }
+
+    public OrientationRingBuffer getOrientations() {
+        return orientations;
+    }
+
+    public void start() {
+        if (sensor == null) {
+            Log.w(TAG, "No rotation vector sensor, reprojection stays off");
+            return;
+        }
+        if (thread != null)
+            return;
+        thread = new HandlerThread("head-orientation");
+        thread.start();
+        sensorManager.registerListener(this, sensor, SAMPLING_PERIOD_US, new Handler(thread.getLooper()));
+    }
+
+    public void stop() {
+        if (thread == null)
+            return;
+        sensorManager.unregisterListener(this);
+        thread.quitSafely();
+        thread = null;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        SensorManager.getQuaternionFromVector(quaternion, event.values);
+        orientations.add(event.timestamp, quaternion[0], quaternion[1], quaternion[2], quaternion[3]);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.viperview.tracking;
+
+/**
+ * One Euro filter (Casiez et al., CHI 2012): a low-pass filter whose cutoff
+ * rises with speed, so a still keypoint stops jittering while a moving one
+ * does not lag. Also keeps the smoothed derivative, which the tracker uses to
+ * extrapolate between inference frames. The derivative is taken between raw
+ * samples rather than against the filtered value, so the filter's own lag
+ * does not inflate the speed estimate.
+ */
+public class OneEuroFilter {
+
+    private final double minCutoff;
+    private final double beta;
+    private final double derivativeCutoff;
+
+    private boolean initialized = false;
+    private double value;
+    private double lastRaw;
+    private double lagSeconds; // time constant of the last smoothing step
+    private double derivative; // units per second
+    private long lastTimestampNs;
+
+    public OneEuroFilter(double minCutoff, double beta, double derivativeCutoff) {
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoff;
+    }
+
+    public double filter(double raw, long timestampNs) {
+        if (!initialized) {
+            initialized = true;
+            value = raw;
+            lastRaw = raw;
+            derivative = 0;
+            lagSeconds = 0;
+            lastTimestampNs = timestampNs;
+            return value;
+        }
+        double dt = (timestampNs - lastTimestampNs) / 1e9;
+        if (dt <= 0)
+            return value; // same or older frame, nothing to learn from
+        lastTimestampNs = timestampNs;
+
+        double rawDerivative = (raw - lastRaw) / dt;
+        lastRaw = raw;
+        derivative += alpha(dt, derivativeCutoff) * (rawDerivative - derivative);
+        double cutoff = minCutoff + beta * Math.abs(derivative);
+        value += alpha(dt, cutoff) * (raw - value);
+        lagSeconds = 1.0 / (2 * Math.PI * cutoff);
+        return value;
+    }
+
+    /**
+     * Where the signal is expected to be at {@code timestampNs}, assuming
+     * constant speed. At steady speed a first-order low-pass trails the input
+     * by speed x time constant, so that lag is added back too.
+     */
+    public double predict(long timestampNs) {
+        return value + derivative * ((timestampNs - lastTimestampNs) / 1e9 + lagSeconds);
+    }
+
+    public void reset() {
+        initialized = false;
+    }
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public double value() {
+        return value;
+    }
+
+    public double derivative() {
+        return derivative;
+    }
+
+    public long lastTimestampNs() {
+        return lastTimestampNs;
+    }
+
+    private static double alpha(double dt, double cutoff) {
+        double tau = 1.0 / (2 * Math.PI * cutoff);
+        return 1.0 / (1.0 + tau / dt);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.viperview.tracking;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The last few seconds of head orientation as unit quaternions (w, x, y, z),
+ * written by one sensor thread and read from any thread without locks.
+ *
+ * The writer fills a slot and then publishes it by bumping the sample count.
+ * Readers work on a snapshot of the count and check it again afterwards: if
+ * the writer lapped the oldest slot they looked at, the read is retried, so
+ * a reader never blocks the sensor thread and never uses a torn sample.
+ */
+public class OrientationRingBuffer {
+
+    private static final int MAX_RETRIES = 4;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] timestamps;
+    private final float[] quaternions;
+    private final AtomicLong written = new AtomicLong();
+
+    /** {@code capacity} is rounded up to a power of two; 512 holds 2.5 s at 200 Hz. */
+    public OrientationRingBuffer(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("Capacity must be at least 2, got " + capacity);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.timestamps = new long[size];
+        this.quaternions = new float[size * 4];
+    }
+
+    /** Appends a sample. Single writer; timestamps must not go backwards. */
+    public void add(long timestampNs, float w, float x, float y, float z) {
+        long n = written.get();
+        int slot = (int) (n & mask);
+        timestamps[slot] = timestampNs;
+        quaternions[slot * 4] = w;
+        quaternions[slot * 4 + 1] = x;
+        quaternions[slot * 4 + 2] = y;
+        quaternions[slot * 4 + 3] = z;
+        written.set(n + 1);
+    }
+
+    public long getSampleCount() {
+        return written.get();
+    }
+
+    /**
+     * Orientation at {@code timestampNs} into {@code out} (w, x, y, z),
+     * interpolated between the samples around it. Times after the newest
+     * sample get the newest one. Returns false when the buffer is empty or
+     * the time is older than the oldest sample still held, e.g. because it
+     * comes from a different clock.
+     */
+    public boolean sample(long timestampNs, float[] out) {
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            long end = written.get();
+            if (end == 0)
+                return false;
+            // the slot after the newest may be half overwritten already
+            long start = Math.max(0, end - capacity + 1);
+            boolean found = read(timestampNs, start, end, out);
+            VarHandle.acquireFence();
+            if (written.get() - capacity + 1 <= start)
+                return found;
+        }
+        return false;
+    }
+
+    private boolean read(long timestampNs, long start, long end, float[] out) {
+        long newest = end - 1;
+        if (timestampNs >= timestamps[(int) (newest & mask)]) {
+            copy((int) (newest & mask), out);
+            return true;
+        }
+        if (timestampNs < timestamps[(int) (start & mask)])
+            return false;
+        // last sample at or before the timestamp
+        long lo = start, hi = newest;
+        while (hi - lo > 1) {
+            long mid = (lo + hi) >>> 1;
+            if (timestamps[(int) (mid & mask)] <= timestampNs)
+                lo = mid;
+            else
+                hi = mid;
+        }
+        int a = (int) (lo & mask), b = (int) (hi & mask);
+        long span = timestamps[b] - timestamps[a];
+        float t = span > 0 ? (float) (timestampNs - timestamps[a]) / span : 0;
+        interpolate(quaternions, a * 4, b * 4, t, out);
+        return true;
+    }
+
+    private void copy(int slot, float[] out) {
+        System.arraycopy(quaternions, slot * 4, out, 0, 4);
+    }
+
+    /**
+     * Normalized lerp from q[a] to q[b], taking the short way round. Samples
+     * are milliseconds apart, where it matches slerp to well under a pixel.
+     */
+    static void interpolate(float[] q, int a, int b, float t, float[] out) {
+        float dot = q[a] * q[b] + q[a + 1] * q[b + 1] + q[a + 2] * q[b + 2] + q[a + 3] * q[b + 3];
+        float sign = dot < 0 ? -1 : 1;
+        float norm = 0;
+        for (int i = 0; i < 4; i++) {
+            out[i] = q[a + i] * (1 - t) + sign * q[b + i] * t;
+            norm += out[i] * out[i];
+        }
+        norm = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < 4; i++)
+            out[i] *= norm;
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.viperview.tracking;
+
+import com.example.viperview.yolo.PoseDetections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Follows people across frames so pose inference does not have to run on
+ * every one of them. Detections are associated to tracks ByteTrack-style:
+ * confident detections are matched first against every track, then the
+ * low-score leftovers may only extend tracks that are still unmatched, so a
+ * briefly blurred person keeps their id without weak boxes spawning new
+ * tracks. Matching is greedy by IoU against each track's predicted box.
+ *
+ * Box and keypoints are smoothed with One Euro filters; between updates
+ * {@link #predict} extrapolates them with the filters' velocity estimates.
+ * Not thread safe.
+ */
+public class PoseTracker {
+
+    static final float HIGH_SCORE = 0.5f;
+    static final float MATCH_IOU = 0.3f;
+    static final float KEYPOINT_MIN_CONFIDENCE = 0.3f;
+    static final int MIN_HITS = 2;
+    static final long MAX_AGE_NS = 500_000_000L;
+    static final long MAX_PREDICTION_NS = 200_000_000L;
+
+    // tuned for coordinates normalized to the frame
+    private static final double MIN_CUTOFF = 1.0;
+    private static final double BETA = 10.0;
+    private static final double DERIVATIVE_CUTOFF = 1.0;
+
+    private static final class Track {
+        int id;
+        int hits;
+        int missed;
+        float score;
+        long lastUpdateNs;
+        final OneEuroFilter[] box = new OneEuroFilter[4];
+        final OneEuroFilter[] keypoints = new OneEuroFilter[PoseDetections.NUM_KEYPOINTS * 2];
+        final float[] confidence = new float[PoseDetections.NUM_KEYPOINTS];
+
+        Track() {
+            for (int i = 0; i < box.length; i++)
+                box[i] = new OneEuroFilter(MIN_CUTOFF, BETA, DERIVATIVE_CUTOFF);
+            for (int i = 0; i < keypoints.length; i++)
+                keypoints[i] = new OneEuroFilter(MIN_CUTOFF, BETA, DERIVATIVE_CUTOFF);
+        }
+
+        void reset(int id) {
+            this.id = id;
+            hits = 0;
+            missed = 0;
+            for (OneEuroFilter filter : box)
+                filter.reset();
+            for (OneEuroFilter filter : keypoints)
+                filter.reset();
+        }
+
+        void update(PoseDetections detections, int d, long timestampNs) {
+            for (int j = 0; j < 4; j++)
+                box[j].filter(detections.boxes[d * 4 + j], timestampNs);
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+                float c = detections.keypointConfidence(d, k);
+                confidence[k] = c;
+                // an occluded keypoint's position is noise, keep the last good estimate
+                if (c < KEYPOINT_MIN_CONFIDENCE && keypoints[k * 2].isInitialized())
+                    continue;
+                keypoints[k * 2].filter(detections.keypointX(d, k), timestampNs);
+                keypoints[k * 2 + 1].filter(detections.keypointY(d, k), timestampNs);
+            }
+            score = detections.scores[d];
+            lastUpdateNs = timestampNs;
+            hits++;
+            missed = 0;
+        }
+
+        // occluded keypoints stop updating, so extrapolate from each filter's own last sample
+        float predict(OneEuroFilter filter, long timestampNs) {
+            long last = filter.lastTimestampNs();
+            long dt = Math.max(-MAX_PREDICTION_NS, Math.min(MAX_PREDICTION_NS, timestampNs - last));
+            return (float) filter.predict(last + dt);
+        }
+    }
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final ArrayDeque<Track> spare = new ArrayDeque<>();
+    private int nextId = 1;
+
+    private volatile int inferenceInterval = 1;
+    private long frameCounter = 0;
+
+    // association scratch
+    private float[] predictedBoxes = new float[32];
+    private boolean[] trackUsed = new boolean[8];
+    private boolean[] detectionUsed = new boolean[8];
+    private long[] pairs = new long[64];
+
+    /** Run inference on every {@code n}th frame and predict the others. Safe to change at any time. */
+    public void setInferenceInterval(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("interval must be >= 1");
+        this.inferenceInterval = n;
+    }
+
+    public int getInferenceInterval() {
+        return inferenceInterval;
+    }
+
+    /** Call once per camera frame; true if this frame should go through the detector. */
+    public boolean shouldInfer() {
+        return frameCounter++ % inferenceInterval == 0;
+    }
+
+    public int getTrackCount() {
+        return tracks.size();
+    }
+
+    public void update(PoseDetections detections, long timestampNs) {
+        int trackCount = tracks.size();
+        int detectionCount = detections.count;
+        ensureScratch(trackCount, detectionCount);
+        for (int t = 0; t < trackCount; t++) {
+            Track track = tracks.get(t);
+            for (int j = 0; j < 4; j++)
+                predictedBoxes[t * 4 + j] = track.predict(track.box[j], timestampNs);
+        }
+        Arrays.fill(trackUsed, 0, trackCount, false);
+        Arrays.fill(detectionUsed, 0, detectionCount, false);
+
+        match(detections, timestampNs, true);
+        match(detections, timestampNs, false);
+
+        for (int t = 0; t < trackCount; t++) {
+            if (!trackUsed[t])
+                tracks.get(t).missed++;
+        }
+        for (int d = 0; d < detectionCount; d++) {
+            if (detectionUsed[d] || detections.scores[d] < HIGH_SCORE)
+                continue;
+            Track track = spare.isEmpty() ? new Track() : spare.pollFirst();
+            track.reset(nextId++);
+            track.update(detections, d, timestampNs);
+            tracks.add(track);
+        }
+        for (int t = tracks.size() - 1; t >= 0; t--) {
+            Track track = tracks.get(t);
+            if (timestampNs - track.lastUpdateNs > MAX_AGE_NS)
+                spare.addLast(tracks.remove(t));
+        }
+    }
+
+    // Greedy IoU matching of one score tier against the tracks still free.
+    private void match(PoseDetections detections, long timestampNs, boolean highTier) {
+        int pairCount = 0;
+        for (int d = 0; d < detections.count; d++) {
+            if (detectionUsed[d] || (detections.scores[d] >= HIGH_SCORE) != highTier)
+                continue;
+            for (int t = 0; t < tracks.size(); t++) {
+                if (trackUsed[t])
+                    continue;
+                float iou = iou(predictedBoxes, t * 4, detections.boxes, d * 4);
+                if (iou < MATCH_IOU)
+                    continue;
+                if (pairCount == pairs.length)
+                    pairs = Arrays.copyOf(pairs, pairCount * 2);
+                // IoU is non-negative, so its float bits sort like the value
+                pairs[pairCount++] = ((long) Float.floatToRawIntBits(iou) << 32) | ((long) t << 16) | d;
+            }
+        }
+        Arrays.sort(pairs, 0, pairCount);
+        for (int p = pairCount - 1; p >= 0; p--) {
+            int t = (int) (pairs[p] >>> 16) & 0xFFFF;
+            int d = (int) pairs[p] & 0xFFFF;
+            if (trackUsed[t] || detectionUsed[d])
+                continue;
+            trackUsed[t] = true;
+            detectionUsed[d] = true;
+            tracks.get(t).update(detections, d, timestampNs);
+        }
+    }
+
+    /**
+     * Writes every live track as it should look at {@code timestampNs}.
+     * Tracks seen only once are shown while they are current; confirmed
+     * tracks coast on their velocity until they age out.
+     */
+    public void predict(long timestampNs, TrackedPoses out) {
+        out.clear();
+        for (Track track : tracks) {
+            if (track.hits < MIN_HITS && track.missed > 0)
+                continue;
+            int index = out.add(track.predict(track.box[0], timestampNs), track.predict(track.box[1], timestampNs),
+                    track.predict(track.box[2], timestampNs), track.predict(track.box[3], timestampNs),
+                    track.score);
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+                out.setKeypoint(index, k, track.predict(track.keypoints[k * 2], timestampNs),
+                        track.predict(track.keypoints[k * 2 + 1], timestampNs), track.confidence[k]);
+            }
+            out.ids[index] = track.id;
+        }
+    }
+
+    public void clear() {
+        spare.addAll(tracks);
+        tracks.clear();
+    }
+
+    private void ensureScratch(int trackCount, int detectionCount) {
+        if (predictedBoxes.length < trackCount * 4)
+            predictedBoxes = new float[trackCount * 8];
+        if (trackUsed.length < trackCount)
+            trackUsed = new boolean[trackCount * 2];
+        if (detectionUsed.length < detectionCount)
+            detectionUsed = new boolean[detectionCount * 2];
+    }
+
+    private static float iou(float[] a, int ai, float[] b, int bi) {
+        float aw = a[ai + 2] / 2, ah = a[ai + 3] / 2, bw = b[bi + 2] / 2, bh = b[bi + 3] / 2;
+        float iw = Math.min(a[ai] + aw, b[bi] + bw) - Math.max(a[ai] - aw, b[bi] - bw);
+        float ih = Math.min(a[ai + 1] + ah, b[bi + 1] + bh) - Math.max(a[ai + 1] - ah, b[bi + 1] - bh);
+        if (iw <= 0 || ih <= 0)
+            return 0;
+        float inter = iw * ih;
+        return inter / (a[ai + 2] * a[ai + 3] + b[bi + 2] * b[bi + 3] - inter + 1e-6f);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.viperview.tracking;
+
+import com.example.viperview.yolo.PoseDetections;
+
+import java.util.Arrays;
+
+/** Pose detections with the stable track id of each one. */
+public class TrackedPoses extends PoseDetections {
+
+    public int[] ids;
+
+    public TrackedPoses() {
+        this(8);
+    }
+
+    public TrackedPoses(int capacity) {
+        super(capacity);
+        ids = new int[capacity];
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        super.ensureCapacity(capacity);
+        if (ids.length < scores.length)
+            ids = Arrays.copyOf(ids, scores.length);
+    }
+}
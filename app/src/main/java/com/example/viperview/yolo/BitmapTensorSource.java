@@ -0,0 +1,47 @@
+package com.example.viperview.yolo;
+
+import android.graphics.Bitmap;
+
+import com.example.viperview.pipeline.CropRect;
+import com.example.viperview.pipeline.TensorSource;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * A Bitmap as a {@link TensorSource}. The pixels are read out once per frame
+ * however many input sizes are filled from them, and only those inside the
+ * crop, so a zoomed view feeds the models without a zoomed copy of the frame.
+ * Not thread safe.
+ */
+public class BitmapTensorSource implements TensorSource {
+
+    private int[] pixels = new int[0];
+    private int width;
+    private int height;
+    private final int[] region = new int[4];
+
+    public BitmapTensorSource set(Bitmap bitmap) {
+        return set(bitmap, CropRect.FULL);
+    }
+
+    public BitmapTensorSource set(Bitmap bitmap, CropRect crop) {
+        crop.toPixels(bitmap.getWidth(), bitmap.getHeight(), 1, region);
+        width = region[2];
+        height = region[3];
+        if (pixels.length < width * height)
+            pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, region[0], region[1], width, height);
+        return this;
+    }
+
+    @Override
+    public void writeTo(TensorPreprocessor preprocessor, FloatBuffer out) {
+        preprocessor.fromArgb(pixels, width, height, width, out);
+    }
+
+    @Override
+    public void writeTo(TensorPreprocessor preprocessor, ByteBuffer out) {
+        preprocessor.fromArgb(pixels, width, height, width, out);
+    }
+}
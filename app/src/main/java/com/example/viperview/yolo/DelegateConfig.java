@@ -0,0 +1,68 @@
+package com.example.viperview.yolo;
+
+import java.util.Locale;
+
+/**
+ * How a TFLite interpreter runs: on the CPU through XNNPACK, or through the
+ * GPU or NNAPI delegate, plus the CPU thread count (for the delegates, what
+ * runs ops they leave behind). Written as e.g. "cpu:4" or "gpu:4".
+ */
+public final class DelegateConfig {
+
+    public enum Accelerator {
+        CPU, GPU, NNAPI
+    }
+
+    /** What every model used before delegates were tuned. */
+    public static final DelegateConfig NNAPI_DEFAULT = new DelegateConfig(Accelerator.NNAPI, 4);
+
+    public final Accelerator accelerator;
+    public final int threads;
+
+    public DelegateConfig(Accelerator accelerator, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be >= 1");
+        this.accelerator = accelerator;
+        this.threads = threads;
+    }
+
+    /** Parses the {@link #toString} form; the thread count may be left out and defaults to 4. */
+    public static DelegateConfig parse(String text) {
+        String[] parts = text.trim().split(":");
+        if (parts.length > 2)
+            throw new IllegalArgumentException("Bad delegate config " + text);
+        Accelerator accelerator;
+        try {
+            accelerator = Accelerator.valueOf(parts[0].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown accelerator in " + text);
+        }
+        int threads = 4;
+        if (parts.length == 2) {
+            try {
+                threads = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad thread count in " + text);
+            }
+        }
+        return new DelegateConfig(accelerator, threads);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof DelegateConfig))
+            return false;
+        DelegateConfig config = (DelegateConfig) other;
+        return accelerator == config.accelerator && threads == config.threads;
+    }
+
+    @Override
+    public int hashCode() {
+        return accelerator.hashCode() * 31 + threads;
+    }
+
+    @Override
+    public String toString() {
+        return accelerator.name().toLowerCase(Locale.ROOT) + ":" + threads;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.viperview.yolo;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/** Keeps {@link DelegateTuner} choices in the app's shared preferences, so they survive restarts. */
+public class DelegatePreferences implements DelegateTuner.Store {
+
+    private static final String NAME = "delegate_tuning";
+
+    private final SharedPreferences preferences;
+
+    public DelegatePreferences(Context context) {
+        preferences = context.getSharedPreferences(NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public String get(String fingerprint) {
+        return preferences.getString(fingerprint, null);
+    }
+
+    @Override
+    public void put(String fingerprint, String config) {
+        preferences.edit().putString(fingerprint, config).apply();
+    }
+
+    @Override
+    public void remove(String fingerprint) {
+        preferences.edit().remove(fingerprint).apply();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.viperview.yolo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the fastest way to run a model on this device. The first time a
+ * device/model fingerprint is seen every candidate is timed and the winner
+ * is stored under the fingerprint; later launches reuse it without timing
+ * anything. A candidate whose delegate fails to initialize or run is
+ * skipped. For testing, a config can be forced, and {@link #reset} forgets a
+ * stored choice so the next launch measures again.
+ */
+public class DelegateTuner {
+
+    public interface Store {
+        /** The stored config text, or null. */
+        String get(String fingerprint);
+
+        void put(String fingerprint, String config);
+
+        void remove(String fingerprint);
+    }
+
+    public interface Benchmark {
+        /** Typical inference time in ms with {@code config}; throws if it cannot run at all. */
+        double measure(DelegateConfig config) throws Exception;
+    }
+
+    private final Store store;
+    private volatile DelegateConfig forced;
+    private volatile boolean remeasure;
+    private final StringBuilder report = new StringBuilder(); // guarded by this
+
+    public DelegateTuner(Store store) {
+        this.store = store;
+    }
+
+    /** Skips both the store and the benchmark; null goes back to tuning. */
+    public void setForced(DelegateConfig config) {
+        this.forced = config;
+    }
+
+    public void reset(String fingerprint) {
+        store.remove(fingerprint);
+    }
+
+    /** Ignores stored choices and measures again, storing the new winners. */
+    public void setRemeasure(boolean remeasure) {
+        this.remeasure = remeasure;
+    }
+
+    /**
+     * The config to use for {@code fingerprint}: the forced one, the stored
+     * one if it is still a candidate, or the fastest candidate, which is then
+     * stored. Null if no candidate runs.
+     */
+    public synchronized DelegateConfig choose(String fingerprint, List<DelegateConfig> candidates,
+            Benchmark benchmark) {
+        report.setLength(0);
+        if (forced != null) {
+            report.append("forced ").append(forced);
+            return forced;
+        }
+        String stored = remeasure ? null : store.get(fingerprint);
+        if (stored != null) {
+            try {
+                DelegateConfig config = DelegateConfig.parse(stored);
+                if (candidates.contains(config)) {
+                    report.append("stored ").append(config);
+                    return config;
+                }
+            } catch (IllegalArgumentException e) {
+                // written by another version; measure again
+            }
+        }
+
+        DelegateConfig best = null;
+        double bestMs = Double.MAX_VALUE;
+        List<String> results = new ArrayList<>();
+        for (DelegateConfig config : candidates) {
+            try {
+                double ms = benchmark.measure(config);
+                results.add(String.format("%s=%.1fms", config, ms));
+                if (ms < bestMs) {
+                    bestMs = ms;
+                    best = config;
+                }
+            } catch (Exception e) {
+                results.add(config + " failed (" + e.getMessage() + ")");
+            }
+        }
+        report.append("measured ").append(String.join(" ", results));
+        if (best != null) {
+            store.put(fingerprint, best.toString());
+            report.append(" -> ").append(best);
+        }
+        return best;
+    }
+
+    /** How the last choice was made, with timings if it was measured. */
+    public synchronized String getReport() {
+        return report.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.viperview.yolo;
+
+import java.util.Arrays;
+
+/**
+ * Picks the pose model's input size from a ladder of sizes, smallest first.
+ * Two things pull on it: inference latency against the time a frame may
+ * take, and how many input pixels the smallest person gets. Decisions are
+ * made once per window of {@link #WINDOW_FRAMES} inferences:
+ *
+ * - over budget, step down;
+ * - someone too small to place keypoints on, or nobody found at all, step
+ *   up if the next size is expected to fit the budget with headroom;
+ * - everyone large enough to stay well resolved at the next size down,
+ *   step down and save the time.
+ *
+ * The gap between the two subject thresholds keeps a person at a steady
+ * distance from bouncing between sizes. Latency is smoothed per size, so a
+ * size already tried is judged by its own measurements and one never tried
+ * by the current size scaled by pixel count. The first few inferences at a
+ * size are left out of its average; interpreters are slow to warm up.
+ *
+ * Pure Java and allocation free per frame.
+ */
+public class InputSizeController {
+
+    static final int WINDOW_FRAMES = 30;
+    static final int WARMUP_FRAMES = 3;
+    static final double LATENCY_SMOOTHING = 0.2;
+    static final double HEADROOM = 0.8; // a step up has to fit in this share of the budget
+    static final float MIN_SUBJECT_PIXELS = 48; // person height below which keypoints fall apart
+    static final float LARGE_SUBJECT_PIXELS = 96; // person height the smaller size must still give
+
+    private final int[] sizes;
+    private final double[] latencyMs; // smoothed per size, NaN until measured
+    private int index;
+    private volatile double budgetMs = 0;
+    private long switches = 0;
+
+    // the current window
+    private int frames = 0;
+    private int emptyFrames = 0;
+    private float smallestSubject = Float.MAX_VALUE; // normalized height
+
+    /** {@code sizes} ascending, as the pose detector lists them. */
+    public InputSizeController(int[] sizes, int startIndex) {
+        if (sizes.length == 0)
+            throw new IllegalArgumentException("no sizes");
+        for (int i = 1; i < sizes.length; i++) {
+            if (sizes[i] <= sizes[i - 1])
+                throw new IllegalArgumentException("sizes must be ascending: " + Arrays.toString(sizes));
+        }
+        this.sizes = sizes.clone();
+        this.latencyMs = new double[sizes.length];
+        Arrays.fill(latencyMs, Double.NaN);
+        this.index = Math.max(0, Math.min(sizes.length - 1, startIndex));
+    }
+
+    /** Inference time one frame may take; 0 or less lets only subject size decide. */
+    public void setFrameBudgetMs(double budgetMs) {
+        this.budgetMs = budgetMs;
+    }
+
+    public int getSize() {
+        return sizes[index];
+    }
+
+    public int getSizeIndex() {
+        return index;
+    }
+
+    public long getSwitchCount() {
+        return switches;
+    }
+
+    /** Smoothed inference time at {@code sizeIndex}, NaN if it never ran. */
+    public double getLatencyMs(int sizeIndex) {
+        return latencyMs[sizeIndex];
+    }
+
+    /**
+     * Feeds one inference at the current size and its detections, still in
+     * input coordinates. Returns true if the size changed; the next frame
+     * should then be prepared at {@link #getSize}.
+     */
+    public boolean update(double inferenceMs, PoseDetections detections) {
+        frames++;
+        if (frames > WARMUP_FRAMES || !Double.isNaN(latencyMs[index])) {
+            double smoothed = latencyMs[index];
+            latencyMs[index] = Double.isNaN(smoothed) ? inferenceMs
+                    : smoothed + LATENCY_SMOOTHING * (inferenceMs - smoothed);
+        }
+        if (detections.count == 0)
+            emptyFrames++;
+        for (int d = 0; d < detections.count; d++)
+            smallestSubject = Math.min(smallestSubject, detections.boxes[d * 4 + 3]);
+        if (frames < WINDOW_FRAMES)
+            return false;
+
+        int next = decide();
+        frames = 0;
+        emptyFrames = 0;
+        smallestSubject = Float.MAX_VALUE;
+        if (next == index)
+            return false;
+        index = next;
+        switches++;
+        return true;
+    }
+
+    private int decide() {
+        double budget = budgetMs;
+        double latency = latencyMs[index];
+        if (budget > 0 && !Double.isNaN(latency) && latency > budget)
+            return Math.max(0, index - 1);
+
+        // a person seen on a minority of frames still counts; a mostly empty window does not
+        boolean nobody = emptyFrames * 2 > frames;
+        if (nobody || smallestSubject * sizes[index] < MIN_SUBJECT_PIXELS)
+            return index + 1 < sizes.length && fits(index + 1) ? index + 1 : index;
+        if (index > 0 && smallestSubject * sizes[index - 1] >= LARGE_SUBJECT_PIXELS)
+            return index - 1;
+        return index;
+    }
+
+    private boolean fits(int candidate) {
+        double budget = budgetMs;
+        if (budget <= 0)
+            return true;
+        double predicted = latencyMs[candidate];
+        if (Double.isNaN(predicted)) {
+            if (Double.isNaN(latencyMs[index]))
+                return false;
+            double scale = (double) sizes[candidate] / sizes[index];
+            predicted = latencyMs[index] * scale * scale;
+        }
+        return predicted <= budget * HEADROOM;
+    }
+}
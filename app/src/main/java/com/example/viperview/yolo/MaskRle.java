@@ -0,0 +1,101 @@
+package com.example.viperview.yolo;
+
+/**
+ * Run-length encoding for 0/1 masks, row by row. Runs alternate starting with
+ * background (so a mask that starts inside begins with a zero-length run) and
+ * each run length is an unsigned LEB128 varint, one byte for runs under 128.
+ *
+ * {@link #encodeMask} prefixes a detection's mask with its region, four
+ * big-endian u16s (x, y, width, height in prototype pixels), so the mask can
+ * be logged or sent without the rest of the detection.
+ */
+public final class MaskRle {
+
+    public static final int REGION_HEADER_BYTES = 8;
+
+    private MaskRle() {
+    }
+
+    /** Upper bound of {@link #encode}'s output for a mask of {@code length} pixels. */
+    public static int maxEncodedSize(int length) {
+        // every pixel a one-byte run, plus a leading empty run and one long run's extra bytes
+        return length + 6;
+    }
+
+    /** Encodes {@code mask[0..length)} into {@code out} from {@code offset}; returns the bytes written. */
+    public static int encode(byte[] mask, int length, byte[] out, int offset) {
+        int at = offset;
+        byte current = 0;
+        int run = 0;
+        for (int i = 0; i < length; i++) {
+            byte value = mask[i] != 0 ? (byte) 1 : 0;
+            if (value != current) {
+                at = writeVarint(run, out, at);
+                current = value;
+                run = 0;
+            }
+            run++;
+        }
+        if (run > 0)
+            at = writeVarint(run, out, at);
+        return at - offset;
+    }
+
+    /**
+     * Decodes {@code encodedLength} bytes from {@code in} into {@code mask},
+     * which must hold {@code length} pixels. Returns the number of pixels written.
+     */
+    public static int decode(byte[] in, int offset, int encodedLength, byte[] mask, int length) {
+        int at = offset, end = offset + encodedLength;
+        int pixel = 0;
+        byte value = 0;
+        while (at < end) {
+            int run = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (at >= end)
+                    throw new IllegalArgumentException("Truncated run at byte " + (at - offset));
+                b = in[at++] & 0xFF;
+                run |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (pixel + run > length)
+                throw new IllegalArgumentException("Runs cover more than " + length + " pixels");
+            for (int i = 0; i < run; i++)
+                mask[pixel++] = value;
+            value ^= 1;
+        }
+        return pixel;
+    }
+
+    /**
+     * Writes detection {@code d}'s region header and encoded mask. {@code scratch}
+     * must hold the region's pixels. Returns the bytes written.
+     */
+    public static int encodeMask(SegmentationDetections detections, int d, byte[] scratch, byte[] out, int offset) {
+        int at = offset;
+        for (int i = 0; i < 4; i++) {
+            int value = detections.maskRects[d * 4 + i];
+            out[at++] = (byte) (value >>> 8);
+            out[at++] = (byte) value;
+        }
+        int size = detections.binaryMask(d, scratch);
+        return REGION_HEADER_BYTES + encode(scratch, size, out, at);
+    }
+
+    /** Reads a region header written by {@link #encodeMask} into {@code rect}. */
+    public static void readRegion(byte[] in, int offset, int[] rect) {
+        for (int i = 0; i < 4; i++)
+            rect[i] = ((in[offset + i * 2] & 0xFF) << 8) | (in[offset + i * 2 + 1] & 0xFF);
+    }
+
+    private static int writeVarint(int value, byte[] out, int at) {
+        while ((value & ~0x7F) != 0) {
+            out[at++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[at++] = (byte) value;
+        return at;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.viperview.yolo;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * How closely pose detections agree with reference detections of the same
+ * frames, accumulated over many frames; e.g. a quantized model against its
+ * float export on a fixed image set. Each reference person, best score
+ * first, takes the unmatched candidate it overlaps most, if that overlap
+ * reaches {@link #MATCH_IOU}. Keypoint error is the distance between
+ * matched keypoints the reference is confident about, in units of the
+ * reference person's size (the square root of the box area), so it reads
+ * the same for near and distant people.
+ */
+public class PoseAgreement {
+
+    public static final float MATCH_IOU = 0.5f;
+    static final float VISIBLE = 0.5f;
+
+    private int frames;
+    private long referencePeople;
+    private long candidatePeople;
+    private long matched;
+    private double iouSum;
+    private double keypointErrorSum;
+    private long keypoints;
+    private boolean[] taken = new boolean[16];
+
+    public void add(PoseDetections reference, PoseDetections candidate) {
+        frames++;
+        referencePeople += reference.count;
+        candidatePeople += candidate.count;
+        if (taken.length < candidate.count)
+            taken = new boolean[candidate.count * 2];
+        Arrays.fill(taken, 0, candidate.count, false);
+
+        for (int r = 0; r < reference.count; r++) {
+            int best = -1;
+            float bestIou = MATCH_IOU;
+            for (int c = 0; c < candidate.count; c++) {
+                if (taken[c])
+                    continue;
+                float iou = iou(reference.boxes, r, candidate.boxes, c);
+                if (iou >= bestIou) {
+                    best = c;
+                    bestIou = iou;
+                }
+            }
+            if (best < 0)
+                continue;
+            taken[best] = true;
+            matched++;
+            iouSum += bestIou;
+            addKeypointError(reference, r, candidate, best);
+        }
+    }
+
+    private void addKeypointError(PoseDetections reference, int r, PoseDetections candidate, int c) {
+        double size = Math.sqrt(reference.boxes[r * 4 + 2] * reference.boxes[r * 4 + 3]);
+        if (size <= 0)
+            return;
+        for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+            if (reference.keypointConfidence(r, k) < VISIBLE)
+                continue;
+            double dx = candidate.keypointX(c, k) - reference.keypointX(r, k);
+            double dy = candidate.keypointY(c, k) - reference.keypointY(r, k);
+            keypointErrorSum += Math.sqrt(dx * dx + dy * dy) / size;
+            keypoints++;
+        }
+    }
+
+    private static float iou(float[] a, int i, float[] b, int j) {
+        float ax1 = a[i * 4] - a[i * 4 + 2] / 2, ay1 = a[i * 4 + 1] - a[i * 4 + 3] / 2;
+        float ax2 = a[i * 4] + a[i * 4 + 2] / 2, ay2 = a[i * 4 + 1] + a[i * 4 + 3] / 2;
+        float bx1 = b[j * 4] - b[j * 4 + 2] / 2, by1 = b[j * 4 + 1] - b[j * 4 + 3] / 2;
+        float bx2 = b[j * 4] + b[j * 4 + 2] / 2, by2 = b[j * 4 + 1] + b[j * 4 + 3] / 2;
+        float iw = Math.min(ax2, bx2) - Math.max(ax1, bx1);
+        float ih = Math.min(ay2, by2) - Math.max(ay1, by1);
+        if (iw <= 0 || ih <= 0)
+            return 0;
+        float inter = iw * ih;
+        return inter / (a[i * 4 + 2] * a[i * 4 + 3] + b[j * 4 + 2] * b[j * 4 + 3] - inter + 1e-6f);
+    }
+
+    public int getFrameCount() {
+        return frames;
+    }
+
+    /** Share of reference people the candidate found; 1 when there were none. */
+    public double getRecall() {
+        return referencePeople == 0 ? 1 : (double) matched / referencePeople;
+    }
+
+    /** Share of candidate people the reference has too; 1 when there were none. */
+    public double getPrecision() {
+        return candidatePeople == 0 ? 1 : (double) matched / candidatePeople;
+    }
+
+    /** Mean box IoU over matched people, NaN if none matched. */
+    public double getMeanIou() {
+        return matched == 0 ? Double.NaN : iouSum / matched;
+    }
+
+    /** Mean keypoint distance in person sizes, NaN if no keypoint was compared. */
+    public double getMeanKeypointError() {
+        return keypoints == 0 ? Double.NaN : keypointErrorSum / keypoints;
+    }
+
+    public String summary() {
+        return String.format(Locale.ROOT, "frames=%d people=%d/%d recall=%.3f precision=%.3f iou=%.3f kpErr=%.4f",
+                frames, candidatePeople, referencePeople, getRecall(), getPrecision(), getMeanIou(),
+                getMeanKeypointError());
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.viperview.yolo;
+
+import java.util.Arrays;
+
+/**
+ * Turns the raw YOLO pose output into {@link PoseDetections}. The output is
+ * read as one flat channel-major array ([channels][anchors], channel 4 being
+ * the score), so the score row is scanned on its own and the other 55
+ * channels are only touched for anchors that pass the threshold.
+ *
+ * A quantized output is read the same way as raw bytes: the score row is
+ * compared against the threshold in raw units, and only the anchors that
+ * pass are dequantized, so most of the tensor is never converted.
+ *
+ * Candidates live in primitive parallel arrays sorted by score. NMS keeps
+ * accepted boxes in a coarse grid, so each candidate is only compared with
+ * kept boxes in the cells it overlaps rather than with every earlier one.
+ * All scratch space grows on demand and is reused; not thread safe.
+ */
+public class PoseDecoder {
+
+    public static final float DEFAULT_SCORE_THRESHOLD = 0.3f;
+    public static final float DEFAULT_IOU_THRESHOLD = 0.45f;
+
+    private static final int SCORE_CHANNEL = 4;
+    private static final int KEYPOINT_CHANNEL = 5;
+    private static final int GRID = 8;
+
+    private final int anchors;
+    private final int channels;
+    private float scoreThreshold = DEFAULT_SCORE_THRESHOLD;
+    private float iouThreshold = DEFAULT_IOU_THRESHOLD;
+    private int maxDetections = 100;
+
+    // the output being decoded: floats, or bytes with their quantization
+    private float[] floats;
+    private byte[] bytes;
+    private Quantization quantization;
+
+    // candidates: (score bits << 32 | anchor), sorted ascending so the best is last
+    private long[] order = new long[64];
+    private float[] x1 = new float[64];
+    private float[] y1 = new float[64];
+    private float[] x2 = new float[64];
+    private float[] y2 = new float[64];
+    private float[] area = new float[64];
+
+    // kept boxes per grid cell as linked lists: cellHead -> entryNext -> ...
+    private final int[] cellHead = new int[GRID * GRID];
+    private int[] entryBox = new int[64];
+    private int[] entryNext = new int[64];
+    private int entries;
+
+    public PoseDecoder(int anchors, int channels) {
+        if (channels != KEYPOINT_CHANNEL + PoseDetections.KEYPOINT_STRIDE)
+            throw new IllegalArgumentException("Expected " + (KEYPOINT_CHANNEL + PoseDetections.KEYPOINT_STRIDE)
+                    + " channels, got " + channels);
+        this.anchors = anchors;
+        this.channels = channels;
+    }
+
+    public void setScoreThreshold(float threshold) {
+        this.scoreThreshold = threshold;
+    }
+
+    public void setIouThreshold(float threshold) {
+        this.iouThreshold = threshold;
+    }
+
+    public void setMaxDetections(int maxDetections) {
+        this.maxDetections = maxDetections;
+    }
+
+    public int getAnchors() {
+        return anchors;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /** Decodes {@code output} (length channels * anchors) into {@code out}, replacing its contents. */
+    public void decode(float[] output, PoseDetections out) {
+        floats = output;
+        bytes = null;
+        quantization = null;
+        decode(out);
+    }
+
+    /** Decodes a quantized {@code output} (length channels * anchors), dequantizing only what passes. */
+    public void decode(byte[] output, Quantization quantization, PoseDetections out) {
+        floats = null;
+        bytes = output;
+        this.quantization = quantization;
+        decode(out);
+    }
+
+    private void decode(PoseDetections out) {
+        out.clear();
+        int count = bytes != null ? collectQuantizedScores() : collectScores();
+        if (count == 0)
+            return;
+
+        Arrays.fill(cellHead, -1);
+        entries = 0;
+        // walk from the highest score down
+        for (int c = count - 1; c >= 0 && out.count < maxDetections; c--) {
+            int anchor = (int) order[c];
+            float bx1 = x1[c], by1 = y1[c], bx2 = x2[c], by2 = y2[c];
+            int gx1 = cell(bx1), gy1 = cell(by1), gx2 = cell(bx2), gy2 = cell(by2);
+
+            if (overlapsKept(bx1, by1, bx2, by2, area[c], gx1, gy1, gx2, gy2))
+                continue;
+
+            addToGrid(c, gx1, gy1, gx2, gy2);
+            emit(anchor, out);
+        }
+    }
+
+    private int collectScores() {
+        int count = 0;
+        int scoreRow = SCORE_CHANNEL * anchors;
+        for (int i = 0; i < anchors; i++) {
+            float score = floats[scoreRow + i];
+            if (score < scoreThreshold)
+                continue;
+            count = addCandidate(count, score, i);
+        }
+        return sortCandidates(count);
+    }
+
+    private int collectQuantizedScores() {
+        int count = 0;
+        int scoreRow = SCORE_CHANNEL * anchors;
+        int threshold = quantization.rawAtLeast(scoreThreshold);
+        for (int i = 0; i < anchors; i++) {
+            int raw = quantization.raw(bytes[scoreRow + i]);
+            if (raw < threshold)
+                continue;
+            count = addCandidate(count, quantization.dequantize(raw), i);
+        }
+        return sortCandidates(count);
+    }
+
+    private int addCandidate(int count, float score, int anchor) {
+        if (count == order.length)
+            grow(count * 2);
+        // scores are non-negative, so their float bits sort like the values
+        order[count] = ((long) Float.floatToRawIntBits(score) << 32) | anchor;
+        return count + 1;
+    }
+
+    private int sortCandidates(int count) {
+        if (count == 0)
+            return 0;
+
+        Arrays.sort(order, 0, count);
+        for (int c = 0; c < count; c++) {
+            int anchor = (int) order[c];
+            float cx = value(anchor);
+            float cy = value(anchors + anchor);
+            float hw = value(2 * anchors + anchor) / 2;
+            float hh = value(3 * anchors + anchor) / 2;
+            x1[c] = cx - hw;
+            y1[c] = cy - hh;
+            x2[c] = cx + hw;
+            y2[c] = cy + hh;
+            area[c] = (x2[c] - x1[c]) * (y2[c] - y1[c]);
+        }
+        return count;
+    }
+
+    private boolean overlapsKept(float bx1, float by1, float bx2, float by2, float boxArea,
+            int gx1, int gy1, int gx2, int gy2) {
+        for (int gy = gy1; gy <= gy2; gy++) {
+            for (int gx = gx1; gx <= gx2; gx++) {
+                for (int e = cellHead[gy * GRID + gx]; e >= 0; e = entryNext[e]) {
+                    int k = entryBox[e];
+                    float iw = Math.min(bx2, x2[k]) - Math.max(bx1, x1[k]);
+                    float ih = Math.min(by2, y2[k]) - Math.max(by1, y1[k]);
+                    if (iw <= 0 || ih <= 0)
+                        continue;
+                    float inter = iw * ih;
+                    if (inter / (boxArea + area[k] - inter + 1e-6f) > iouThreshold)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void addToGrid(int candidate, int gx1, int gy1, int gx2, int gy2) {
+        for (int gy = gy1; gy <= gy2; gy++) {
+            for (int gx = gx1; gx <= gx2; gx++) {
+                if (entries == entryBox.length) {
+                    entryBox = Arrays.copyOf(entryBox, entries * 2);
+                    entryNext = Arrays.copyOf(entryNext, entries * 2);
+                }
+                int cell = gy * GRID + gx;
+                entryBox[entries] = candidate;
+                entryNext[entries] = cellHead[cell];
+                cellHead[cell] = entries++;
+            }
+        }
+    }
+
+    private void emit(int anchor, PoseDetections out) {
+        int index = out.add(value(anchor), value(anchors + anchor), value(2 * anchors + anchor),
+                value(3 * anchors + anchor), value(SCORE_CHANNEL * anchors + anchor));
+        int base = index * PoseDetections.KEYPOINT_STRIDE;
+        float[] keypoints = out.keypoints;
+        for (int k = 0; k < PoseDetections.KEYPOINT_STRIDE; k++)
+            keypoints[base + k] = value((KEYPOINT_CHANNEL + k) * anchors + anchor);
+    }
+
+    private float value(int index) {
+        return bytes != null ? quantization.dequantize(bytes[index]) : floats[index];
+    }
+
+    // Boxes are normalized; anything outside [0, 1] lands in the edge cells.
+    private static int cell(float coordinate) {
+        int cell = (int) (coordinate * GRID);
+        return cell < 0 ? 0 : (cell >= GRID ? GRID - 1 : cell);
+    }
+
+    private void grow(int capacity) {
+        order = Arrays.copyOf(order, capacity);
+        x1 = Arrays.copyOf(x1, capacity);
+        y1 = Arrays.copyOf(y1, capacity);
+        x2 = Arrays.copyOf(x2, capacity);
+        y2 = Arrays.copyOf(y2, capacity);
+        area = Arrays.copyOf(area, capacity);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.viperview.yolo;
+
+import com.example.viperview.pipeline.CropRect;
+
+import java.util.Arrays;
+
+/**
+ * Decoded pose detections stored in flat primitive arrays so they can be
+ * reused frame to frame. Coordinates are normalized to [0, 1] of the frame.
+ *
+ * Per detection i: box (cx, cy, w, h) at boxes[4i], score at scores[i], and
+ * 17 COCO keypoints as (x, y, confidence) at keypoints[51i + 3k].
+ */
+public class PoseDetections {
+
+    public static final int NUM_KEYPOINTS = 17;
+    public static final int KEYPOINT_STRIDE = NUM_KEYPOINTS * 3;
+
+    // COCO keypoint connection pairs
+    public static final int[][] SKELETON_PAIRS = {
+            { 5, 6 }, // shoulders
+            { 5, 7 }, { 7, 9 }, // left arm
+            { 6, 8 }, { 8, 10 }, // right arm
+            { 5, 11 }, { 6, 12 }, // torso sides
+            { 11, 12 }, // hips
+            { 11, 13 }, { 13, 15 }, // left leg
+            { 12, 14 }, { 14, 16 }, // right leg
+            { 0, 1 }, { 0, 2 }, { 1, 3 }, { 2, 4 } // face connections
+    };
+
+    public int count;
+    public float[] boxes;
+    public float[] scores;
+    public float[] keypoints;
+
+    public PoseDetections() {
+        this(8);
+    }
+
+    public PoseDetections(int capacity) {
+        boxes = new float[capacity * 4];
+        scores = new float[capacity];
+        keypoints = new float[capacity * KEYPOINT_STRIDE];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /** Appends a detection and returns its index; keypoints must be filled in separately. */
+    public int add(float cx, float cy, float w, float h, float score) {
+        ensureCapacity(count + 1);
+        int i = count++;
+        boxes[i * 4] = cx;
+        boxes[i * 4 + 1] = cy;
+        boxes[i * 4 + 2] = w;
+        boxes[i * 4 + 3] = h;
+        scores[i] = score;
+        return i;
+    }
+
+    public void setKeypoint(int detection, int keypoint, float x, float y, float confidence) {
+        int base = detection * KEYPOINT_STRIDE + keypoint * 3;
+        keypoints[base] = x;
+        keypoints[base + 1] = y;
+        keypoints[base + 2] = confidence;
+    }
+
+    public float keypointX(int detection, int keypoint) {
+        return keypoints[detection * KEYPOINT_STRIDE + keypoint * 3];
+    }
+
+    public float keypointY(int detection, int keypoint) {
+        return keypoints[detection * KEYPOINT_STRIDE + keypoint * 3 + 1];
+    }
+
+    public float keypointConfidence(int detection, int keypoint) {
+        return keypoints[detection * KEYPOINT_STRIDE + keypoint * 3 + 2];
+    }
+
+    public void copyFrom(PoseDetections other) {
+        ensureCapacity(other.count);
+        count = other.count;
+        System.arraycopy(other.boxes, 0, boxes, 0, count * 4);
+        System.arraycopy(other.scores, 0, scores, 0, count);
+        System.arraycopy(other.keypoints, 0, keypoints, 0, count * KEYPOINT_STRIDE);
+    }
+
+    /**
+     * For detections made on {@code crop} of a frame: moves boxes and
+     * keypoints into normalized coordinates of the whole frame, so tracks
+     * stay put while the zoom changes.
+     */
+    public void mapFromCrop(CropRect crop) {
+        if (crop.isFull())
+            return;
+        float sx = crop.width(), sy = crop.height();
+        for (int i = 0; i < count; i++) {
+            boxes[i * 4] = crop.toFrameX(boxes[i * 4]);
+            boxes[i * 4 + 1] = crop.toFrameY(boxes[i * 4 + 1]);
+            boxes[i * 4 + 2] *= sx;
+            boxes[i * 4 + 3] *= sy;
+            for (int k = 0, base = i * KEYPOINT_STRIDE; k < NUM_KEYPOINTS; k++, base += 3) {
+                keypoints[base] = crop.toFrameX(keypoints[base]);
+                keypoints[base + 1] = crop.toFrameY(keypoints[base + 1]);
+            }
+        }
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (scores.length >= capacity)
+            return;
+        int grown = Math.max(capacity, scores.length * 2);
+        boxes = Arrays.copyOf(boxes, grown * 4);
+        scores = Arrays.copyOf(scores, grown);
+        keypoints = Arrays.copyOf(keypoints, grown * KEYPOINT_STRIDE);
+    }
+}
@@ -3,34 +3,353 @@ package com.example.viperview.yolo;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
+import android.util.Log;
 
+import com.example.viperview.pipeline.CropRect;
+
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.gpu.GpuDelegate;
-import org.tensorflow.lite.nnapi.NnApiDelegate;
+import org.tensorflow.lite.Tensor;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
 
 public class PoseDetector {
-    private Interpreter interpreter;
+    private static final String TAG = "PoseDetector";
+
+    private final Session[] sessions;
+    private final ArrayBlockingQueue<Session> idleSessions;
+    private final int[] inputSizes; // ascending; what Variant index i runs at
+    private final int nativeIndex; // the model's own size among them
+    private final int nativeHeight; // the others are square
+    private volatile int sizeIndex;
+    // only used by the run() shortcut
+    private final PoseDetections detections = new PoseDetections();
 
     public PoseDetector(AssetManager assetManager, String modelPath) throws IOException {
-        Interpreter.Options options = new Interpreter.Options();
-        options.setNumThreads(4);
-        options.addDelegate(new NnApiDelegate());
-        interpreter = new Interpreter(loadModelFile(assetManager, modelPath), options);
+        this(assetManager, modelPath, 1);
+    }
+
+    /**
+     * Creates {@code sessionCount} interpreters over the same model. With more
+     * than one, a pipeline can fill the next frame's input while the previous
+     * frame is still being inferred or decoded.
+     */
+    public PoseDetector(AssetManager assetManager, String modelPath, int sessionCount) throws IOException {
+        this(assetManager, modelPath, sessionCount, DelegateConfig.NNAPI_DEFAULT);
+    }
+
+    /**
+     * As above, running on {@code config}, e.g. as picked by a
+     * {@link DelegateTuner}. A delegate that does not initialize falls back
+     * to the CPU; {@link #getDelegateConfig} tells what actually runs.
+     */
+    public PoseDetector(AssetManager assetManager, String modelPath, int sessionCount, DelegateConfig config)
+            throws IOException {
+        this(assetManager, modelPath, sessionCount, config, new int[0]);
+    }
+
+    /**
+     * As above, able to run at each of the square {@code inputSizes} (e.g.
+     * 160, 224, 320) besides the model's own. Which sizes the model can be
+     * resized to is checked here on a throwaway CPU interpreter; a size that
+     * does not work is left out with a warning, and {@link #getInputSizes}
+     * lists what is left. It starts at the model's own size.
+     *
+     * Only the model's own size gets interpreters up front. Each session
+     * builds another size's interpreter, with its own delegate instance, the
+     * first time it runs at that size and on the thread that runs it, then
+     * keeps it; sizes never switched to cost nothing. The other sizes run on
+     * the delegate tuned at the model's own size, untimed.
+     */
+    public PoseDetector(AssetManager assetManager, String modelPath, int sessionCount, DelegateConfig config,
+            int[] inputSizes) throws IOException {
+        if (sessionCount < 1)
+            throw new IllegalArgumentException("sessionCount must be >= 1");
+        MappedByteBuffer model = loadModelFile(assetManager, modelPath);
+        sessions = new Session[sessionCount];
+        idleSessions = new ArrayBlockingQueue<>(sessionCount);
+        Variant own = new Variant(TfliteInterpreters.create(model, config));
+        try {
+            this.inputSizes = supportedSizes(model, own, inputSizes);
+        } catch (RuntimeException e) {
+            own.handle.close();
+            throw e;
+        }
+        nativeIndex = Arrays.binarySearch(this.inputSizes, own.width);
+        nativeHeight = own.height;
+        sizeIndex = nativeIndex;
+        // the others take what the first one ended up on, after any fallback
+        for (int i = 0; i < sessionCount; i++) {
+            sessions[i] = new Session(model, i == 0 ? own
+                    : new Variant(TfliteInterpreters.create(model, own.handle.config)));
+            idleSessions.add(sessions[i]);
+        }
+    }
+
+    // the native width plus every extra size the model resizes to, ascending
+    private static int[] supportedSizes(MappedByteBuffer model, Variant own, int[] requested) {
+        int[] extra = Arrays.stream(requested).filter(size -> size != own.width).distinct().sorted().toArray();
+        if (extra.length == 0)
+            return new int[] { own.width };
+        if (own.width != own.height)
+            throw new IllegalArgumentException("Only square models can be resized, got "
+                    + own.width + "x" + own.height);
+        int[] sizes = new int[extra.length + 1];
+        int count = 0;
+        sizes[count++] = own.width;
+        Interpreter probe = new Interpreter(model, new Interpreter.Options().setNumThreads(1));
+        try {
+            for (int size : extra) {
+                try {
+                    probe.resizeInput(0, new int[] { 1, size, size, 3 });
+                    probe.allocateTensors();
+                    sizes[count++] = size;
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Input size " + size + " not supported, skipping it", e);
+                }
+            }
+        } finally {
+            probe.close();
+        }
+        int[] supported = Arrays.copyOf(sizes, count);
+        Arrays.sort(supported);
+        return supported;
+    }
+
+    /**
+     * An interpreter at one input size with the buffers for it, sized once
+     * and reused for every frame. Input and output are each float or
+     * quantized, as the model's tensors are typed; a quantized input takes
+     * a quarter of the bytes and is filled without float normalizing.
+     */
+    private static final class Variant {
+        final TfliteInterpreters.Handle handle;
+        final Interpreter interpreter;
+        final int width;
+        final int height;
+        final Quantization inputQuantization; // null for float
+        final ByteBuffer inputBuffer;
+        final FloatBuffer inputFloats; // null when quantized
+        final TensorPreprocessor preprocessor;
+        final Quantization outputQuantization; // null for float
+        final ByteBuffer outputBuffer;
+        final FloatBuffer outputFloats; // null when quantized
+        final byte[] rawOutput; // null for float
+        final float[] output; // channel-major [56][anchors]; null when quantized
+        final PoseDecoder decoder;
+
+        Variant(TfliteInterpreters.Handle handle) {
+            this.handle = handle;
+            interpreter = handle.interpreter;
+
+            Tensor input = interpreter.getInputTensor(0);
+            int[] inShape = input.shape(); // [1, H, W, 3]
+            width = inShape[2];
+            height = inShape[1];
+            inputQuantization = quantizationOf(input);
+            preprocessor = new TensorPreprocessor(width, height, inputQuantization);
+            inputBuffer = ByteBuffer.allocateDirect(width * height * 3 * (inputQuantization == null ? 4 : 1));
+            inputBuffer.order(ByteOrder.nativeOrder());
+            inputFloats = inputQuantization == null ? inputBuffer.asFloatBuffer() : null;
+
+            // anchors follow the input size, e.g. [1, 56, 1029] at 224 and [1, 56, 2100] at 320
+            Tensor outputTensor = interpreter.getOutputTensor(0);
+            int[] outShape = outputTensor.shape();
+            int outputSize = outShape[1] * outShape[2];
+            outputQuantization = quantizationOf(outputTensor);
+            outputBuffer = ByteBuffer.allocateDirect(outputSize * (outputQuantization == null ? 4 : 1));
+            outputBuffer.order(ByteOrder.nativeOrder());
+            outputFloats = outputQuantization == null ? outputBuffer.asFloatBuffer() : null;
+            rawOutput = outputQuantization == null ? null : new byte[outputSize];
+            output = outputQuantization == null ? new float[outputSize] : null;
+            decoder = new PoseDecoder(outShape[2], outShape[1]);
+        }
+
+        // null for a float tensor
+        private static Quantization quantizationOf(Tensor tensor) {
+            DataType type = tensor.dataType();
+            if (type == DataType.FLOAT32)
+                return null;
+            if (type != DataType.UINT8 && type != DataType.INT8)
+                throw new IllegalArgumentException("Unsupported tensor type " + type + " for " + tensor.name());
+            boolean signed = type == DataType.INT8;
+            Tensor.QuantizationParams params = tensor.quantizationParams();
+            if (params.getScale() > 0)
+                return new Quantization(params.getScale(), params.getZeroPoint(), signed);
+            // no parameters: raw 8-bit pixels, the whole range spanning [0, 1]
+            return new Quantization(1 / 255f, signed ? Byte.MIN_VALUE : 0, signed);
+        }
     }
 
-    private MappedByteBuffer loadModelFile(AssetManager assetManager, String modelPath) throws IOException {
+    /**
+     * Interpreters for one frame at a time, one per input size, with their
+     * own input and output buffers. The steps of a frame can run on
+     * different threads, one after the other; a session is never used by two
+     * frames at once. The size is picked when the session is acquired.
+     */
+    public final class Session {
+        private final MappedByteBuffer model;
+        private final DelegateConfig config; // what the model's own size actually runs on
+        private final Variant[] variants; // by index into inputSizes; built on first use, then kept
+        private Variant active;
+        private int[] pixels = new int[0];
+        private final int[] region = new int[4];
+
+        private Session(MappedByteBuffer model, Variant own) {
+            this.model = model;
+            this.config = own.handle.config;
+            variants = new Variant[inputSizes.length];
+            variants[nativeIndex] = own;
+            active = own;
+        }
+
+        // the interpreter for inputSizes[index], created here on first use
+        private Variant variant(int index) {
+            Variant variant = variants[index];
+            if (variant == null) {
+                int size = inputSizes[index];
+                variant = resized(config, size);
+                if (variant == null) {
+                    // the sizes were checked on the CPU, so it is the delegate that does not take this one
+                    variant = resized(new DelegateConfig(DelegateConfig.Accelerator.CPU, config.threads), size);
+                    if (variant == null)
+                        throw new IllegalStateException("Input size " + size + " stopped working");
+                }
+                variants[index] = variant;
+            }
+            return variant;
+        }
+
+        // the model resized to size x size, or null if that does not work on this config
+        private Variant resized(DelegateConfig delegate, int size) {
+            TfliteInterpreters.Handle handle = TfliteInterpreters.create(model, delegate);
+            try {
+                handle.interpreter.resizeInput(0, new int[] { 1, size, size, 3 });
+                handle.interpreter.allocateTensors();
+                return new Variant(handle);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Input size " + size + " failed on " + handle.config, e);
+                handle.close();
+                return null;
+            }
+        }
+
+        /**
+         * Runs the next frame at a width x height input, one of the detector's
+         * sizes; for tensors prepared elsewhere at a size picked earlier.
+         */
+        public void useInputSize(int width, int height) {
+            for (int i = 0; i < inputSizes.length; i++) {
+                if (inputSizes[i] == width && inputHeight(i) == height) {
+                    active = variant(i);
+                    return;
+                }
+            }
+            throw new IllegalArgumentException("No " + width + "x" + height + " input");
+        }
+
+        public int getInputWidth() {
+            return active.width;
+        }
+
+        public int getInputHeight() {
+            return active.height;
+        }
+
+        public void preprocess(Bitmap bitmap) {
+            preprocess(bitmap, CropRect.FULL);
+        }
+
+        /** Fills the input from the {@code crop} region of {@code bitmap}; only those pixels are read. */
+        public void preprocess(Bitmap bitmap, CropRect crop) {
+            crop.toPixels(bitmap.getWidth(), bitmap.getHeight(), 1, region);
+            int width = region[2];
+            int height = region[3];
+            if (pixels.length < width * height)
+                pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, region[0], region[1], width, height);
+            // resize + normalize straight into the tensor, no scaled Bitmap
+            if (active.inputQuantization != null)
+                active.preprocessor.fromArgb(pixels, width, height, width, active.inputBuffer);
+            else
+                active.preprocessor.fromArgb(pixels, width, height, width, active.inputFloats);
+        }
+
+        /** Fills the input from a packed NV21 frame without going through a Bitmap. */
+        public void preprocess(byte[] nv21, int width, int height) {
+            if (active.inputQuantization != null)
+                active.preprocessor.fromNv21(nv21, width, height, active.inputBuffer);
+            else
+                active.preprocessor.fromNv21(nv21, width, height, active.inputFloats);
+        }
+
+        /** Fills the input from YUV_420_888 planes (e.g. from an ImageProxy) without going through a Bitmap. */
+        public void preprocess(ByteBuffer yPlane, int yRowStride, ByteBuffer uPlane, ByteBuffer vPlane,
+                int uvRowStride, int uvPixelStride, int width, int height) {
+            preprocessYuv(yPlane, 0, yRowStride, uPlane, 0, vPlane, 0, uvRowStride, uvPixelStride, width, height);
+        }
+
+        /** As above for the {@code crop} region only: the planes are read from an offset, nothing is copied. */
+        public void preprocess(ByteBuffer yPlane, int yRowStride, ByteBuffer uPlane, ByteBuffer vPlane,
+                int uvRowStride, int uvPixelStride, int width, int height, CropRect crop) {
+            // chroma is subsampled 2x2, so the crop starts on an even pixel
+            crop.toPixels(width, height, 2, region);
+            int yOffset = region[1] * yRowStride + region[0];
+            int uvOffset = region[1] / 2 * uvRowStride + region[0] / 2 * uvPixelStride;
+            preprocessYuv(yPlane, yOffset, yRowStride, uPlane, uvOffset, vPlane, uvOffset, uvRowStride,
+                    uvPixelStride, region[2], region[3]);
+        }
+
+        private void preprocessYuv(ByteBuffer yPlane, int yOffset, int yRowStride, ByteBuffer uPlane, int uOffset,
+                ByteBuffer vPlane, int vOffset, int uvRowStride, int uvPixelStride, int width, int height) {
+            if (active.inputQuantization != null)
+                active.preprocessor.fromYuv(yPlane, yOffset, yRowStride, uPlane, uOffset, vPlane, vOffset,
+                        uvRowStride, uvPixelStride, width, height, active.inputBuffer);
+            else
+                active.preprocessor.fromYuv(yPlane, yOffset, yRowStride, uPlane, uOffset, vPlane, vOffset,
+                        uvRowStride, uvPixelStride, width, height, active.inputFloats);
+        }
+
+        public void infer() {
+            active.inputBuffer.rewind();
+            infer(active.inputBuffer);
+        }
+
+        /** Runs on a tensor prepared elsewhere, e.g. one shared by several models. */
+        public void infer(ByteBuffer input) {
+            active.outputBuffer.rewind();
+            active.interpreter.run(input, active.outputBuffer);
+        }
+
+        /**
+         * Decodes the last inference into {@code out} and returns it. A
+         * quantized output is decoded from its bytes; only anchors that pass
+         * the score threshold are dequantized.
+         */
+        public PoseDetections decode(PoseDetections out) {
+            Variant variant = active;
+            if (variant.outputQuantization != null) {
+                variant.outputBuffer.rewind();
+                variant.outputBuffer.get(variant.rawOutput);
+                variant.decoder.decode(variant.rawOutput, variant.outputQuantization, out);
+                return out;
+            }
+            variant.outputFloats.rewind();
+            variant.outputFloats.get(variant.output);
+            variant.decoder.decode(variant.output, out);
+            return out;
+        }
+    }
+
+    static MappedByteBuffer loadModelFile(AssetManager assetManager, String modelPath) throws IOException {
         AssetFileDescriptor fileDescriptor = assetManager.openFd(modelPath);
         FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
         FileChannel fileChannel = inputStream.getChannel();
@@ -39,162 +358,107 @@ public class PoseDetector {
         return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
     }
 
-    public float[][][] run(Bitmap bitmap) {
-        Bitmap resized = Bitmap.createScaledBitmap(bitmap, 224, 224, true);
-
-        ByteBuffer inputBuffer = ByteBuffer.allocateDirect(1 * 224 * 224 * 3 * 4);
-        inputBuffer.order(ByteOrder.nativeOrder());
-
-        int[] pixels = new int[224 * 224];
-        resized.getPixels(pixels, 0, 224, 0, 0, 224, 224);
-        for (int p : pixels) {
-            // RGB normalized [0,1]
-            inputBuffer.putFloat(((p >> 16) & 0xFF) / 255f);
-            inputBuffer.putFloat(((p >> 8) & 0xFF) / 255f);
-            inputBuffer.putFloat((p & 0xFF) / 255f);
-        }
-        inputBuffer.rewind(); // ✅ important
-
-        // ✅ query actual output shape
-        int[] outShape = interpreter.getOutputTensor(0).shape(); // e.g. [1, 8400, 56]
-        float[][][] output = new float[outShape[0]][outShape[1]][outShape[2]];
-        interpreter.run(inputBuffer, output);
-        return output;
-    }
-
-    public Bitmap drawSkeleton(Bitmap frame, float[][][] detections, boolean displaySkeletons, boolean displayBBox) {
-        Bitmap mutable = frame.copy(Bitmap.Config.ARGB_8888, true);
-        Canvas canvas = new Canvas(mutable);
-        Paint paint = new Paint();
-        paint.setStrokeWidth(3f);
-        paint.setStyle(Paint.Style.FILL);
-
-        int width = frame.getWidth();
-        int height = frame.getHeight();
-
-        // Step 1: Collect all detections above confidence threshold
-        List<float[]> allDetections = new ArrayList<>();
-        for (int i = 0; i < detections[0][0].length; i++) {
-            float conf = detections[0][4][i];
-            if (conf < 0.3f)
-                continue; // skip weak detections
-
-            float[] det = new float[56];
-            for (int j = 0; j < 56; j++)
-                det[j] = detections[0][j][i];
-            allDetections.add(det);
-        }
-
-        // Step 2: Apply NMS to merge overlapping detections
-        List<float[]> filtered = nonMaxSuppression(allDetections, 0.45f);
-
-        // Step 3: Define COCO keypoint connection pairs
-        int[][] skeletonPairs = {
-                { 5, 6 }, // shoulders
-                { 5, 7 }, { 7, 9 }, // left arm
-                { 6, 8 }, { 8, 10 }, // right arm
-                { 5, 11 }, { 6, 12 }, // torso sides
-                { 11, 12 }, // hips
-                { 11, 13 }, { 13, 15 }, // left leg
-                { 12, 14 }, { 14, 16 }, // right leg
-                { 0, 1 }, { 0, 2 }, { 1, 3 }, { 2, 4 } // face connections
-        };
-
-        // Step 4: Draw all filtered detections
-        for (float[] det : filtered) {
-            // random color per person
-            paint.setColor(Color.rgb(
-                    (int) (0),
-                    (int) (255),
-                    (int) (0)));
-
-            // extract bbox
-            float cx = det[0], cy = det[1], w = det[2], h = det[3];
-            float left = (cx - w / 2) * width;
-            float top = (cy - h / 2) * height;
-            float right = (cx + w / 2) * width;
-            float bottom = (cy + h / 2) * height;
-
-            // draw bounding box
-            if (displayBBox) {
-                paint.setStyle(Paint.Style.STROKE);
-                canvas.drawRect(left, top, right, bottom, paint);
-            }
+    /**
+     * Blocks until a session is free, set to the current input size. Hand it
+     * back with {@link #releaseSession}.
+     */
+    public Session acquireSession() throws InterruptedException {
+        Session session = idleSessions.take();
+        session.active = session.variant(sizeIndex);
+        return session;
+    }
 
+    public void releaseSession(Session session) {
+        idleSessions.offer(session);
+    }
 
-            // draw keypoints
-            if (displaySkeletons) {
-                paint.setStyle(Paint.Style.FILL);
-                for (int k = 0; k < 17; k++) {
-                    float x = det[5 + k * 3] * width;
-                    float y = det[5 + k * 3 + 1] * height;
-                    float c = det[5 + k * 3 + 2];
-                    if (c > 0.3f) {
-                        canvas.drawCircle(x, y, 4, paint);
-                    }
-                }
+    public int getSessionCount() {
+        return sessions.length;
+    }
 
-                // connect keypoints
-                paint.setStrokeWidth(2f);
-                for (int[] pair : skeletonPairs) {
-                    int i1 = pair[0];
-                    int i2 = pair[1];
-                    float x1 = det[5 + i1 * 3] * width;
-                    float y1 = det[5 + i1 * 3 + 1] * height;
-                    float x2 = det[5 + i2 * 3] * width;
-                    float y2 = det[5 + i2 * 3 + 1] * height;
-                    float c1 = det[5 + i1 * 3 + 2];
-                    float c2 = det[5 + i2 * 3 + 2];
-                    if (c1 > 0.3f && c2 > 0.3f)
-                        canvas.drawLine(x1, y1, x2, y2, paint);
-                }
-            }
+    /** What the model's own size runs on; another size falls back to the CPU if the delegate rejects it. */
+    public DelegateConfig getDelegateConfig() {
+        return sessions[0].config;
+    }
 
+    /** How the input stores [0, 1] for a quantized model; null for a float one. */
+    public Quantization getInputQuantization() {
+        return sessions[0].variants[nativeIndex].inputQuantization;
+    }
 
-        }
+    /** Null for a float output. */
+    public Quantization getOutputQuantization() {
+        return sessions[0].variants[nativeIndex].outputQuantization;
+    }
 
-        return mutable;
+    /** Sides of the square input sizes this detector can run at, ascending; a non-square model has one. */
+    public int[] getInputSizes() {
+        return inputSizes.clone();
     }
 
-    private float iou(float[] a, float[] b) {
-        float ax1 = a[0] - a[2] / 2, ay1 = a[1] - a[3] / 2;
-        float ax2 = a[0] + a[2] / 2, ay2 = a[1] + a[3] / 2;
-        float bx1 = b[0] - b[2] / 2, by1 = b[1] - b[3] / 2;
-        float bx2 = b[0] + b[2] / 2, by2 = b[1] + b[3] / 2;
+    public int getInputSizeIndex() {
+        return sizeIndex;
+    }
 
-        float interX1 = Math.max(ax1, bx1);
-        float interY1 = Math.max(ay1, by1);
-        float interX2 = Math.min(ax2, bx2);
-        float interY2 = Math.min(ay2, by2);
-        float interArea = Math.max(0, interX2 - interX1) * Math.max(0, interY2 - interY1);
+    /** Sessions acquired from now on run at {@code getInputSizes()[index]}. */
+    public void setInputSizeIndex(int index) {
+        if (index < 0 || index >= inputSizes.length)
+            throw new IndexOutOfBoundsException("No input size " + index);
+        sizeIndex = index;
+    }
 
-        float areaA = (ax2 - ax1) * (ay2 - ay1);
-        float areaB = (bx2 - bx1) * (by2 - by1);
+    /** Current input size. */
+    public int getInputWidth() {
+        return inputSizes[sizeIndex];
+    }
 
-        return interArea / (areaA + areaB - interArea + 1e-6f);
+    public int getInputHeight() {
+        return inputHeight(sizeIndex);
     }
 
-    private List<float[]> nonMaxSuppression(List<float[]> detections, float iouThreshold) {
-        List<float[]> results = new ArrayList<>();
-        detections.sort((a, b) -> Float.compare(b[4], a[4])); // sort by confidence
+    private int inputHeight(int index) {
+        return index == nativeIndex ? nativeHeight : inputSizes[index];
+    }
 
-        boolean[] removed = new boolean[detections.size()];
-        for (int i = 0; i < detections.size(); i++) {
-            if (removed[i])
-                continue;
-            results.add(detections.get(i));
-            for (int j = i + 1; j < detections.size(); j++) {
-                if (removed[j])
-                    continue;
-                if (iou(detections.get(i), detections.get(j)) > iouThreshold) {
-                    removed[j] = true;
+    // The run() shortcut does all three steps on the calling thread. It reuses
+    // one result object, so it is not thread safe and the result is only
+    // valid until the next call.
+
+    public PoseDetections run(Bitmap bitmap) {
+        Session session = acquireUninterruptibly();
+        try {
+            session.preprocess(bitmap);
+            session.infer();
+            return session.decode(detections);
+        } finally {
+            releaseSession(session);
+        }
+    }
+
+    private Session acquireUninterruptibly() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    Session session = idleSessions.take();
+                    session.active = session.variant(sizeIndex);
+                    return session;
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
             }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
         }
-        return results;
     }
 
     public void close() {
-        interpreter.close();
+        for (Session session : sessions) {
+            for (Variant variant : session.variants) {
+                if (variant != null)
+                    variant.handle.close();
+            }
+        }
     }
 }
@@ -0,0 +1,93 @@
+package com.example.viperview.yolo;
+
+import com.example.viperview.pipeline.ScheduledModel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Runs a {@link PoseDetector} under the model scheduler and hands each frame's
+ * detections on. With an {@link InputSizeController} the detector's input
+ * size follows the controller; the scheduler picks the change up on the next
+ * frame it plans.
+ */
+public class PoseModel<C> implements ScheduledModel<C> {
+
+    public interface Listener<C> {
+        /** {@code detections} are reused for the next frame; copy what has to outlive the call. */
+        void onPoses(C context, PoseDetections detections, long timestampNs);
+    }
+
+    private final PoseDetector detector;
+    private final Listener<C> listener;
+    private final PoseDetections detections = new PoseDetections();
+    private volatile InputSizeController sizeController;
+
+    public PoseModel(PoseDetector detector, Listener<C> listener) {
+        this.detector = detector;
+        this.listener = listener;
+    }
+
+    /** Lets {@code controller}, built over {@link PoseDetector#getInputSizes}, pick the input size; null to stop. */
+    public void setInputSizeController(InputSizeController controller) {
+        this.sizeController = controller;
+    }
+
+    @Override
+    public String getName() {
+        return "pose";
+    }
+
+    @Override
+    public int getInputWidth() {
+        return detector.getInputWidth();
+    }
+
+    @Override
+    public int getInputHeight() {
+        return detector.getInputHeight();
+    }
+
+    @Override
+    public Quantization getInputQuantization() {
+        return detector.getInputQuantization();
+    }
+
+    @Override
+    public int[][] getInputSizes() {
+        int[] sizes = detector.getInputSizes();
+        if (sizes.length == 1)
+            return ScheduledModel.super.getInputSizes();
+        int[][] pairs = new int[sizes.length][];
+        for (int i = 0; i < sizes.length; i++)
+            pairs[i] = new int[] { sizes[i], sizes[i] };
+        return pairs;
+    }
+
+    @Override
+    public void run(ByteBuffer input, long timestampNs, C context) throws InterruptedException {
+        run(input, getInputWidth(), getInputHeight(), timestampNs, context);
+    }
+
+    @Override
+    public void run(ByteBuffer input, int width, int height, long timestampNs, C context)
+            throws InterruptedException {
+        PoseDetector.Session session = detector.acquireSession();
+        long inferenceNs;
+        try {
+            session.useInputSize(width, height);
+            long start = System.nanoTime();
+            session.infer(input);
+            inferenceNs = System.nanoTime() - start;
+            session.decode(detections);
+        } finally {
+            detector.releaseSession(session);
+        }
+        // detections are still in input coordinates, which is what the controller measures people in;
+        // a frame planned before the last switch ran at the old size and is left out
+        InputSizeController controller = sizeController;
+        if (controller != null && detector.getInputWidth() == width
+                && controller.update(inferenceNs / 1e6, detections))
+            detector.setInputSizeIndex(controller.getSizeIndex());
+        listener.onPoses(context, detections, timestampNs);
+    }
+}
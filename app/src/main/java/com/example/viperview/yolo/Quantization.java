@@ -0,0 +1,82 @@
+package com.example.viperview.yolo;
+
+/**
+ * Affine quantization of a uint8 or int8 tensor, as TFLite stores it:
+ * {@code real = scale * (raw - zeroPoint)}, with {@code raw} read as
+ * unsigned for uint8 and signed for int8. Per-tensor only, which is what
+ * the YOLO exports use.
+ */
+public final class Quantization {
+
+    public final float scale;
+    public final int zeroPoint;
+    public final boolean signed; // int8 rather than uint8
+
+    public Quantization(float scale, int zeroPoint, boolean signed) {
+        if (!(scale > 0))
+            throw new IllegalArgumentException("scale must be > 0, got " + scale);
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+        this.signed = signed;
+    }
+
+    /** Smallest raw value, in its signed or unsigned range. */
+    public int minRaw() {
+        return signed ? Byte.MIN_VALUE : 0;
+    }
+
+    public int maxRaw() {
+        return signed ? Byte.MAX_VALUE : 255;
+    }
+
+    /** A stored byte as its signed or unsigned raw value. */
+    public int raw(byte value) {
+        return signed ? value : value & 0xFF;
+    }
+
+    public float dequantize(int raw) {
+        return scale * (raw - zeroPoint);
+    }
+
+    public float dequantize(byte value) {
+        return dequantize(raw(value));
+    }
+
+    /** The nearest raw value to {@code real}, clamped to the range, as the byte to store. */
+    public byte quantize(float real) {
+        int raw = Math.round(real / scale) + zeroPoint;
+        return (byte) Math.max(minRaw(), Math.min(maxRaw(), raw));
+    }
+
+    /**
+     * The smallest raw value that dequantizes to at least {@code real}, or
+     * maxRaw() + 1 if none does, so a threshold can be checked on the raw
+     * bytes without dequantizing them.
+     */
+    public int rawAtLeast(float real) {
+        for (int raw = minRaw(); raw <= maxRaw(); raw++) {
+            if (dequantize(raw) >= real)
+                return raw;
+        }
+        return maxRaw() + 1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Quantization))
+            return false;
+        Quantization quantization = (Quantization) other;
+        return scale == quantization.scale && zeroPoint == quantization.zeroPoint
+                && signed == quantization.signed;
+    }
+
+    @Override
+    public int hashCode() {
+        return (Float.floatToIntBits(scale) * 31 + zeroPoint) * 31 + (signed ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return (signed ? "int8" : "uint8") + " scale=" + scale + " zero=" + zeroPoint;
+    }
+}
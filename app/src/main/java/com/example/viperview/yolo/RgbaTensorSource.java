@@ -0,0 +1,44 @@
+package com.example.viperview.yolo;
+
+import com.example.viperview.pipeline.CropRect;
+import com.example.viperview.pipeline.TensorSource;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * An RGBA_8888 camera plane as a {@link TensorSource}. Unlike
+ * {@link BitmapTensorSource} nothing is copied out first: every input size is
+ * filled straight from the plane, so the plane has to stay valid (its image
+ * open) until the last model due on the frame has been prepared.
+ * Not thread safe.
+ */
+public class RgbaTensorSource implements TensorSource {
+
+    private ByteBuffer plane;
+    private int offset;
+    private int rowStride;
+    private int width;
+    private int height;
+    private final int[] region = new int[4];
+
+    public RgbaTensorSource set(ByteBuffer plane, int rowStride, int frameWidth, int frameHeight, CropRect crop) {
+        crop.toPixels(frameWidth, frameHeight, 1, region);
+        this.plane = plane;
+        this.rowStride = rowStride;
+        offset = region[1] * rowStride + region[0] * 4;
+        width = region[2];
+        height = region[3];
+        return this;
+    }
+
+    @Override
+    public void writeTo(TensorPreprocessor preprocessor, FloatBuffer out) {
+        preprocessor.fromRgba(plane, offset, rowStride, width, height, out);
+    }
+
+    @Override
+    public void writeTo(TensorPreprocessor preprocessor, ByteBuffer out) {
+        preprocessor.fromRgba(plane, offset, rowStride, width, height, out);
+    }
+}
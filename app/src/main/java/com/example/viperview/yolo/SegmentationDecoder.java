@@ -0,0 +1,167 @@
+package com.example.viperview.yolo;
+
+import java.util.Arrays;
+
+/**
+ * Turns the two outputs of a YOLO-seg model into {@link SegmentationDetections}.
+ * The detection output is channel-major [4 + classes + maskDim][anchors]; the
+ * prototypes are NHWC [protoHeight][protoWidth][maskDim] as TFLite exports them.
+ *
+ * Boxes go through a class-aware NMS first, so masks are only built for the
+ * detections that survive, and each one only inside its own box: a pixel's
+ * logit is the dot product of the detection's coefficients with that pixel's
+ * prototype vector. A person filling a fifth of the frame costs a fifth of
+ * the full-frame product, and the sigmoid is dropped because thresholding
+ * the logit at 0 is the same test. Scratch space grows on demand and is
+ * reused; not thread safe.
+ */
+public class SegmentationDecoder {
+
+    public static final float DEFAULT_SCORE_THRESHOLD = 0.3f;
+    public static final float DEFAULT_IOU_THRESHOLD = 0.45f;
+
+    private final int anchors;
+    private final int classCount;
+    private final int maskDim;
+    private final int protoWidth;
+    private final int protoHeight;
+    private float scoreThreshold = DEFAULT_SCORE_THRESHOLD;
+    private float iouThreshold = DEFAULT_IOU_THRESHOLD;
+    private int maxDetections = 100;
+
+    // best class per anchor
+    private final float[] bestScore;
+    private final int[] bestClass;
+    // candidates: (score bits << 32 | anchor), sorted ascending so the best is last
+    private long[] order = new long[64];
+    private final float[] coefficients;
+
+    public SegmentationDecoder(int anchors, int channels, int protoWidth, int protoHeight, int maskDim) {
+        if (channels <= 4 + maskDim)
+            throw new IllegalArgumentException("Expected more than " + (4 + maskDim) + " channels, got " + channels);
+        this.anchors = anchors;
+        this.classCount = channels - 4 - maskDim;
+        this.maskDim = maskDim;
+        this.protoWidth = protoWidth;
+        this.protoHeight = protoHeight;
+        this.bestScore = new float[anchors];
+        this.bestClass = new int[anchors];
+        this.coefficients = new float[maskDim];
+    }
+
+    public void setScoreThreshold(float threshold) {
+        this.scoreThreshold = threshold;
+    }
+
+    public void setIouThreshold(float threshold) {
+        this.iouThreshold = threshold;
+    }
+
+    public void setMaxDetections(int maxDetections) {
+        this.maxDetections = maxDetections;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /** Decodes boxes and their masks into {@code out}, replacing its contents. */
+    public void decode(float[] output, float[] protos, SegmentationDetections out) {
+        out.clear();
+        out.protoWidth = protoWidth;
+        out.protoHeight = protoHeight;
+        int count = collectCandidates(output);
+
+        // walk from the highest score down, comparing only with what was kept
+        for (int c = count - 1; c >= 0 && out.count < maxDetections; c--) {
+            int anchor = (int) order[c];
+            float cx = output[anchor], cy = output[anchors + anchor];
+            float w = output[2 * anchors + anchor], h = output[3 * anchors + anchor];
+            if (overlapsKept(out, cx, cy, w, h, bestClass[anchor]))
+                continue;
+            out.add(cx, cy, w, h, bestScore[anchor], bestClass[anchor]);
+            int coefficientRow = (4 + classCount) * anchors + anchor;
+            for (int k = 0; k < maskDim; k++)
+                coefficients[k] = output[coefficientRow + k * anchors];
+            assembleMask(out, protos);
+        }
+    }
+
+    private int collectCandidates(float[] output) {
+        // class rows are contiguous, so scan them row by row instead of anchor by anchor
+        System.arraycopy(output, 4 * anchors, bestScore, 0, anchors);
+        Arrays.fill(bestClass, 0);
+        for (int cls = 1; cls < classCount; cls++) {
+            int row = (4 + cls) * anchors;
+            for (int i = 0; i < anchors; i++) {
+                float score = output[row + i];
+                if (score > bestScore[i]) {
+                    bestScore[i] = score;
+                    bestClass[i] = cls;
+                }
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < anchors; i++) {
+            float score = bestScore[i];
+            if (score < scoreThreshold)
+                continue;
+            if (count == order.length)
+                order = Arrays.copyOf(order, count * 2);
+            // scores are non-negative, so their float bits sort like the values
+            order[count++] = ((long) Float.floatToRawIntBits(score) << 32) | i;
+        }
+        Arrays.sort(order, 0, count);
+        return count;
+    }
+
+    private boolean overlapsKept(SegmentationDetections kept, float cx, float cy, float w, float h, int cls) {
+        float x1 = cx - w / 2, y1 = cy - h / 2, x2 = cx + w / 2, y2 = cy + h / 2;
+        float area = w * h;
+        for (int k = 0; k < kept.count; k++) {
+            if (kept.classes[k] != cls)
+                continue;
+            float kw = kept.boxes[k * 4 + 2] / 2, kh = kept.boxes[k * 4 + 3] / 2;
+            float kx = kept.boxes[k * 4], ky = kept.boxes[k * 4 + 1];
+            float iw = Math.min(x2, kx + kw) - Math.max(x1, kx - kw);
+            float ih = Math.min(y2, ky + kh) - Math.max(y1, ky - kh);
+            if (iw <= 0 || ih <= 0)
+                continue;
+            float inter = iw * ih;
+            if (inter / (area + 4 * kw * kh - inter + 1e-6f) > iouThreshold)
+                return true;
+        }
+        return false;
+    }
+
+    // logits of the last added detection, only inside its box at prototype resolution
+    private void assembleMask(SegmentationDetections out, float[] protos) {
+        int d = out.count - 1;
+        float cx = out.boxes[d * 4], cy = out.boxes[d * 4 + 1];
+        float hw = out.boxes[d * 4 + 2] / 2, hh = out.boxes[d * 4 + 3] / 2;
+        int x0 = clamp((int) Math.floor((cx - hw) * protoWidth), protoWidth);
+        int y0 = clamp((int) Math.floor((cy - hh) * protoHeight), protoHeight);
+        int x1 = clamp((int) Math.ceil((cx + hw) * protoWidth), protoWidth);
+        int y1 = clamp((int) Math.ceil((cy + hh) * protoHeight), protoHeight);
+        int width = x1 - x0, height = y1 - y0;
+
+        int at = out.allocateMask(x0, y0, width, height);
+        float[] logits = out.maskLogits;
+        float[] coeff = coefficients;
+        int dim = maskDim;
+        for (int y = y0; y < y1; y++) {
+            int p = (y * protoWidth + x0) * dim;
+            for (int x = x0; x < x1; x++, p += dim) {
+                float sum = 0;
+                for (int k = 0; k < dim; k++)
+                    sum += coeff[k] * protos[p + k];
+                logits[at++] = sum;
+            }
+        }
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
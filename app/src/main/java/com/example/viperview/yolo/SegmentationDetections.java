@@ -0,0 +1,164 @@
+package com.example.viperview.yolo;
+
+import java.util.Arrays;
+
+/**
+ * Decoded segmentation detections in flat primitive arrays, reused frame to
+ * frame. Boxes are normalized to [0, 1] of the frame like PoseDetections.
+ *
+ * Each mask only covers its detection's box, at prototype resolution: the
+ * region is maskRects[4i..4i+3] (x, y, width, height in prototype pixels)
+ * and its mask logits are stored row by row from maskLogits[maskOffsets[i]].
+ * A pixel is inside the mask where its logit is above 0, i.e. where the
+ * sigmoid would be above 0.5, so the sigmoid is never evaluated.
+ */
+public class SegmentationDetections {
+
+    public int count;
+    public float[] boxes;
+    public float[] scores;
+    public int[] classes;
+    public int[] maskRects;
+    public int[] maskOffsets;
+    public float[] maskLogits = new float[0];
+    public int protoWidth;
+    public int protoHeight;
+
+    public SegmentationDetections() {
+        this(8);
+    }
+
+    public SegmentationDetections(int capacity) {
+        boxes = new float[capacity * 4];
+        scores = new float[capacity];
+        classes = new int[capacity];
+        maskRects = new int[capacity * 4];
+        maskOffsets = new int[capacity + 1];
+    }
+
+    public void clear() {
+        count = 0;
+        maskOffsets[0] = 0;
+    }
+
+    /** Appends a detection with an empty mask and returns its index. */
+    public int add(float cx, float cy, float w, float h, float score, int classId) {
+        ensureCapacity(count + 1);
+        int i = count++;
+        boxes[i * 4] = cx;
+        boxes[i * 4 + 1] = cy;
+        boxes[i * 4 + 2] = w;
+        boxes[i * 4 + 3] = h;
+        scores[i] = score;
+        classes[i] = classId;
+        maskOffsets[i + 1] = maskOffsets[i];
+        return i;
+    }
+
+    /** Reserves the mask region of the last added detection and returns where its logits start. */
+    int allocateMask(int x, int y, int width, int height) {
+        int i = count - 1;
+        maskRects[i * 4] = x;
+        maskRects[i * 4 + 1] = y;
+        maskRects[i * 4 + 2] = width;
+        maskRects[i * 4 + 3] = height;
+        int start = maskOffsets[i];
+        int end = start + width * height;
+        if (maskLogits.length < end)
+            maskLogits = Arrays.copyOf(maskLogits, Math.max(end, maskLogits.length * 2));
+        maskOffsets[i + 1] = end;
+        return start;
+    }
+
+    /** Whether prototype pixel (px, py) belongs to detection {@code d}'s mask. */
+    public boolean contains(int d, int px, int py) {
+        int x = px - maskRects[d * 4], y = py - maskRects[d * 4 + 1];
+        int width = maskRects[d * 4 + 2];
+        if (x < 0 || y < 0 || x >= width || y >= maskRects[d * 4 + 3])
+            return false;
+        return maskLogits[maskOffsets[d] + y * width + x] > 0;
+    }
+
+    /** The mask region as 0/1 bytes at prototype resolution, row by row; returns its size. */
+    public int binaryMask(int d, byte[] out) {
+        int start = maskOffsets[d], size = maskOffsets[d + 1] - start;
+        for (int i = 0; i < size; i++)
+            out[i] = maskLogits[start + i] > 0 ? (byte) 1 : 0;
+        return size;
+    }
+
+    /**
+     * Scales detection {@code d}'s mask up to a frameWidth x frameHeight frame,
+     * covering only the detection's box. The box in frame pixels goes to
+     * {@code rect} (left, top, width, height) and the mask to {@code out} as
+     * 0/1 bytes, row by row. Logits are interpolated bilinearly before the
+     * threshold so edges stay smooth. Returns the number of mask pixels.
+     */
+    public int upsampleMask(int d, int frameWidth, int frameHeight, byte[] out, int[] rect) {
+        float cx = boxes[d * 4], cy = boxes[d * 4 + 1], hw = boxes[d * 4 + 2] / 2, hh = boxes[d * 4 + 3] / 2;
+        int left = Math.max(0, (int) Math.floor((cx - hw) * frameWidth));
+        int top = Math.max(0, (int) Math.floor((cy - hh) * frameHeight));
+        int right = Math.min(frameWidth, (int) Math.ceil((cx + hw) * frameWidth));
+        int bottom = Math.min(frameHeight, (int) Math.ceil((cy + hh) * frameHeight));
+        int width = Math.max(0, right - left), height = Math.max(0, bottom - top);
+        rect[0] = left;
+        rect[1] = top;
+        rect[2] = width;
+        rect[3] = height;
+
+        int roiX = maskRects[d * 4], roiY = maskRects[d * 4 + 1];
+        int roiW = maskRects[d * 4 + 2], roiH = maskRects[d * 4 + 3];
+        if (width == 0 || height == 0 || roiW == 0 || roiH == 0)
+            return 0;
+        int base = maskOffsets[d];
+        float scaleX = (float) protoWidth / frameWidth, scaleY = (float) protoHeight / frameHeight;
+        int set = 0;
+        for (int y = 0; y < height; y++) {
+            float py = (top + y + 0.5f) * scaleY - 0.5f - roiY;
+            py = py < 0 ? 0 : Math.min(py, roiH - 1);
+            int y0 = (int) py, y1 = Math.min(y0 + 1, roiH - 1);
+            float fy = py - y0;
+            int rowA = base + y0 * roiW, rowB = base + y1 * roiW;
+            for (int x = 0, o = y * width; x < width; x++, o++) {
+                float px = (left + x + 0.5f) * scaleX - 0.5f - roiX;
+                px = px < 0 ? 0 : Math.min(px, roiW - 1);
+                int x0 = (int) px, x1 = Math.min(x0 + 1, roiW - 1);
+                float fx = px - x0;
+                float top0 = maskLogits[rowA + x0] + (maskLogits[rowA + x1] - maskLogits[rowA + x0]) * fx;
+                float bottom0 = maskLogits[rowB + x0] + (maskLogits[rowB + x1] - maskLogits[rowB + x0]) * fx;
+                boolean inside = top0 + (bottom0 - top0) * fy > 0;
+                out[o] = inside ? (byte) 1 : 0;
+                if (inside)
+                    set++;
+            }
+        }
+        return set;
+    }
+
+    public void copyFrom(SegmentationDetections other) {
+        ensureCapacity(other.count);
+        count = other.count;
+        protoWidth = other.protoWidth;
+        protoHeight = other.protoHeight;
+        System.arraycopy(other.boxes, 0, boxes, 0, count * 4);
+        System.arraycopy(other.scores, 0, scores, 0, count);
+        System.arraycopy(other.classes, 0, classes, 0, count);
+        System.arraycopy(other.maskRects, 0, maskRects, 0, count * 4);
+        System.arraycopy(other.maskOffsets, 0, maskOffsets, 0, count + 1);
+        int logits = other.maskOffsets[count];
+        if (maskLogits.length < logits)
+            maskLogits = new float[logits];
+        System.arraycopy(other.maskLogits, 0, maskLogits, 0, logits);
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (scores.length >= capacity)
+            return;
+        int grown = Math.max(capacity, scores.length * 2);
+        boxes = Arrays.copyOf(boxes, grown * 4);
+        scores = Arrays.copyOf(scores, grown);
+        classes = Arrays.copyOf(classes, grown);
+        maskRects = Arrays.copyOf(maskRects, grown * 4);
+        maskOffsets = Arrays.copyOf(maskOffsets, grown + 1);
+    }
+}
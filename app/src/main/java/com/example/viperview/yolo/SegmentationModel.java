@@ -0,0 +1,100 @@
+package com.example.viperview.yolo;
+
+import android.content.res.AssetManager;
+
+import com.example.viperview.pipeline.ScheduledModel;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Runs a YOLO-seg TFLite model under the model scheduler and decodes boxes plus ROI masks. */
+public class SegmentationModel<C> implements ScheduledModel<C> {
+
+    public interface Listener<C> {
+        /** {@code detections} are reused for the next frame; copy what has to outlive the call. */
+        void onSegments(C context, SegmentationDetections detections, long timestampNs);
+    }
+
+    private final Interpreter interpreter;
+    private final Listener<C> listener;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private final ByteBuffer detectionBuffer;
+    private final ByteBuffer protoBuffer;
+    private final float[] detectionOutput;
+    private final float[] protoOutput;
+    private final SegmentationDecoder decoder;
+    private final SegmentationDetections detections = new SegmentationDetections();
+
+    public SegmentationModel(AssetManager assetManager, String modelPath, Listener<C> listener) throws IOException {
+        this.listener = listener;
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(4);
+        options.addDelegate(new NnApiDelegate());
+        interpreter = new Interpreter(PoseDetector.loadModelFile(assetManager, modelPath), options);
+
+        int[] inShape = interpreter.getInputTensor(0).shape(); // [1, H, W, 3]
+        inputHeight = inShape[1];
+        inputWidth = inShape[2];
+
+        // the prototypes are the 4-D output, e.g. [1, 160, 160, 32]; boxes e.g. [1, 116, 8400]
+        int protoIndex = interpreter.getOutputTensor(0).shape().length == 4 ? 0 : 1;
+        int[] protoShape = interpreter.getOutputTensor(protoIndex).shape();
+        int[] detShape = interpreter.getOutputTensor(1 - protoIndex).shape();
+
+        detectionBuffer = ByteBuffer.allocateDirect(detShape[1] * detShape[2] * 4);
+        detectionBuffer.order(ByteOrder.nativeOrder());
+        detectionOutput = new float[detShape[1] * detShape[2]];
+        protoBuffer = ByteBuffer.allocateDirect(protoShape[1] * protoShape[2] * protoShape[3] * 4);
+        protoBuffer.order(ByteOrder.nativeOrder());
+        protoOutput = new float[protoShape[1] * protoShape[2] * protoShape[3]];
+        outputs.put(1 - protoIndex, detectionBuffer);
+        outputs.put(protoIndex, protoBuffer);
+
+        decoder = new SegmentationDecoder(detShape[2], detShape[1], protoShape[2], protoShape[1], protoShape[3]);
+    }
+
+    public SegmentationDecoder getDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public String getName() {
+        return "segmentation";
+    }
+
+    @Override
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    @Override
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    @Override
+    public void run(ByteBuffer input, long timestampNs, C context) {
+        detectionBuffer.rewind();
+        protoBuffer.rewind();
+        interpreter.runForMultipleInputsOutputs(new Object[] { input }, outputs);
+        FloatBuffer floats = detectionBuffer.asFloatBuffer();
+        floats.get(detectionOutput);
+        floats = protoBuffer.asFloatBuffer();
+        floats.get(protoOutput);
+        decoder.decode(detectionOutput, protoOutput, detections);
+        listener.onSegments(context, detections, timestampNs);
+    }
+
+    public void close() {
+        interpreter.close();
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.viperview.yolo;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Fills an NHWC input tensor from ARGB pixels, an RGBA plane or YUV 4:2:0
+ * planes: float RGB normalized to [0, 1], or for a quantized model the
+ * bytes it expects. The byte path interpolates in fixed point and looks the
+ * 8-bit result up in a 256-entry table, so no float math runs per pixel.
+ * Resizing is bilinear with centre-aligned sampling, like
+ * Bitmap.createScaledBitmap with filtering on.
+ * The YUV path converts, resizes and normalizes in one pass without an
+ * intermediate RGB image. Sampling tables are cached per source size, so
+ * steady-state calls do not allocate. Not thread safe.
+ */
+public class TensorPreprocessor {
+
+    static final int WEIGHT_BITS = 11; // two weights and an 8-bit value still fit an int
+    private static final int ONE = 1 << WEIGHT_BITS;
+    private static final int HALF = 1 << (2 * WEIGHT_BITS - 1);
+    // BT.601 full range in 16.16, as in camera.YuvRows
+    private static final int COLOR_SHIFT = 16;
+    private static final int V_TO_R = 91881; // 1.402
+    private static final int U_TO_G = 22554; // 0.344136
+    private static final int V_TO_G = 46802; // 0.714136
+    private static final int U_TO_B = 116130; // 1.772
+
+    private final int outWidth;
+    private final int outHeight;
+    private final float[] row;
+    private final Quantization quantization;
+    private final byte[] quantized; // quantized byte per 8-bit channel value
+    private final byte[] byteRow;
+
+    // bilinear taps for the current source size
+    private int srcWidth = -1;
+    private int srcHeight = -1;
+    private final int[] x0;
+    private final int[] x1;
+    private final float[] fx;
+    private final int[] wx; // fx in WEIGHT_BITS fixed point
+    private final int[] y0;
+    private final int[] y1;
+    private final float[] fy;
+    private final int[] wy;
+
+    public TensorPreprocessor(int outWidth, int outHeight) {
+        this(outWidth, outHeight, null);
+    }
+
+    /** For a model with a quantized input; null means float, as above. */
+    public TensorPreprocessor(int outWidth, int outHeight, Quantization quantization) {
+        this.outWidth = outWidth;
+        this.outHeight = outHeight;
+        this.row = new float[outWidth * 3];
+        this.x0 = new int[outWidth];
+        this.x1 = new int[outWidth];
+        this.fx = new float[outWidth];
+        this.wx = new int[outWidth];
+        this.y0 = new int[outHeight];
+        this.y1 = new int[outHeight];
+        this.fy = new float[outHeight];
+        this.wy = new int[outHeight];
+        this.quantization = quantization;
+        if (quantization != null) {
+            quantized = new byte[256];
+            for (int value = 0; value < 256; value++)
+                quantized[value] = quantization.quantize(value / 255f);
+            byteRow = new byte[outWidth * 3];
+        } else {
+            quantized = null;
+            byteRow = null;
+        }
+    }
+
+    public int getWidth() {
+        return outWidth;
+    }
+
+    public int getHeight() {
+        return outHeight;
+    }
+
+    /** Null for a float tensor. */
+    public Quantization getQuantization() {
+        return quantization;
+    }
+
+    /** ARGB_8888 pixels (as from Bitmap.getPixels) into the tensor. */
+    public void fromArgb(int[] pixels, int width, int height, int stride, FloatBuffer out) {
+        prepare(width, height);
+        out.clear();
+        for (int oy = 0; oy < outHeight; oy++) {
+            argbRow(pixels, stride, oy);
+            out.put(row);
+        }
+        out.rewind();
+    }
+
+    /** As above into a quantized tensor. */
+    public void fromArgb(int[] pixels, int width, int height, int stride, ByteBuffer out) {
+        requireQuantized();
+        prepare(width, height);
+        out.clear();
+        for (int oy = 0; oy < outHeight; oy++) {
+            argbBytes(pixels, stride, oy);
+            out.put(byteRow);
+        }
+        out.rewind();
+    }
+
+    private void argbRow(int[] pixels, int stride, int oy) {
+        int rowA = y0[oy] * stride;
+        int rowB = y1[oy] * stride;
+        float wy = fy[oy];
+        for (int ox = 0, i = 0; ox < outWidth; ox++, i += 3) {
+            int a = pixels[rowA + x0[ox]];
+            int b = pixels[rowA + x1[ox]];
+            int c = pixels[rowB + x0[ox]];
+            int d = pixels[rowB + x1[ox]];
+            float wx = fx[ox];
+            row[i] = lerp2((a >> 16) & 0xFF, (b >> 16) & 0xFF, (c >> 16) & 0xFF, (d >> 16) & 0xFF, wx, wy)
+                    / 255f;
+            row[i + 1] = lerp2((a >> 8) & 0xFF, (b >> 8) & 0xFF, (c >> 8) & 0xFF, (d >> 8) & 0xFF, wx, wy)
+                    / 255f;
+            row[i + 2] = lerp2(a & 0xFF, b & 0xFF, c & 0xFF, d & 0xFF, wx, wy) / 255f;
+        }
+    }
+
+    private void argbBytes(int[] pixels, int stride, int oy) {
+        int rowA = y0[oy] * stride;
+        int rowB = y1[oy] * stride;
+        int wy = this.wy[oy];
+        for (int ox = 0, i = 0; ox < outWidth; ox++, i += 3) {
+            int a = pixels[rowA + x0[ox]];
+            int b = pixels[rowA + x1[ox]];
+            int c = pixels[rowB + x0[ox]];
+            int d = pixels[rowB + x1[ox]];
+            int wx = this.wx[ox];
+            byteRow[i] = quantized[round(lerp2Fixed((a >> 16) & 0xFF, (b >> 16) & 0xFF, (c >> 16) & 0xFF,
+                    (d >> 16) & 0xFF, wx, wy))];
+            byteRow[i + 1] = quantized[round(lerp2Fixed((a >> 8) & 0xFF, (b >> 8) & 0xFF, (c >> 8) & 0xFF,
+                    (d >> 8) & 0xFF, wx, wy))];
+            byteRow[i + 2] = quantized[round(lerp2Fixed(a & 0xFF, b & 0xFF, c & 0xFF, d & 0xFF, wx, wy))];
+        }
+    }
+
+    /**
+     * An RGBA_8888 plane (as CameraX delivers it) into the tensor, read in
+     * place with absolute gets: rows may be padded, and {@code offset} lets
+     * a crop start anywhere in the plane.
+     */
+    public void fromRgba(ByteBuffer rgba, int offset, int rowStride, int width, int height, FloatBuffer out) {
+        prepare(width, height);
+        out.clear();
+        for (int oy = 0; oy < outHeight; oy++) {
+            rgbaRow(rgba, offset, rowStride, oy);
+            out.put(row);
+        }
+        out.rewind();
+    }
+
+    /** As above into a quantized tensor. */
+    public void fromRgba(ByteBuffer rgba, int offset, int rowStride, int width, int height, ByteBuffer out) {
+        requireQuantized();
+        prepare(width, height);
+        out.clear();
+        for (int oy = 0; oy < outHeight; oy++) {
+            rgbaBytes(rgba, offset, rowStride, oy);
+            out.put(byteRow);
+        }
+        out.rewind();
+    }
+
+    private void rgbaRow(ByteBuffer rgba, int offset, int rowStride, int oy) {
+        int rowA = offset + y0[oy] * rowStride;
+        int rowB = offset + y1[oy] * rowStride;
+        float wy = fy[oy];
+        for (int ox = 0, i = 0; ox < outWidth; ox++, i += 3) {
+            int a = rowA + x0[ox] * 4, b = rowA + x1[ox] * 4;
+            int c = rowB + x0[ox] * 4, d = rowB + x1[ox] * 4;
+            float wx = fx[ox];
+            for (int channel = 0; channel < 3; channel++) {
+                row[i + channel] = lerp2(rgba.get(a + channel) & 0xFF, rgba.get(b + channel) & 0xFF,
+                        rgba.get(c + channel) & 0xFF, rgba.get(d + channel) & 0xFF, wx, wy) / 255f;
+            }
+        }
+    }
+
+    private void rgbaBytes(ByteBuffer rgba, int offset, int rowStride, int oy) {
+        int rowA = offset + y0[oy] * rowStride;
+        int rowB = offset + y1[oy] * rowStride;
+        int wy = this.wy[oy];
+        for (int ox = 0, i = 0; ox < outWidth; ox++, i += 3) {
+            int a = rowA + x0[ox] * 4, b = rowA + x1[ox] * 4;
+            int c = rowB + x0[ox] * 4, d = rowB + x1[ox] * 4;
+            int wx = this.wx[ox];
+            for (int channel = 0; channel < 3; channel++) {
+                byteRow[i + channel] = quantized[round(lerp2Fixed(rgba.get(a + channel) & 0xFF,
+                        rgba.get(b + channel) & 0xFF, rgba.get(c + channel) & 0xFF, rgba.get(d + channel) & 0xFF,
+                        wx, wy))];
+            }
+        }
+    }
+
+    /** A packed NV21 frame (Y plane then interleaved VU) into the tensor. */
+    public void fromNv21(byte[] nv21, int width, int height, FloatBuffer out) {
+        ByteBuffer frame = ByteBuffer.wrap(nv21);
+        int chroma = width * height;
+        // in NV21 V comes first, so U starts one byte later
+        fromYuv(frame, 0, width, frame, chroma + 1, frame, chroma, width, 2, width, height, out);
+    }
+
+    /** As above into a quantized tensor. */
+    public void fromNv21(byte[] nv21, int width, int height, ByteBuffer out) {
+        ByteBuffer frame = ByteBuffer.wrap(nv21);
+        int chroma = width * height;
+        fromYuv(frame, 0, width, frame, chroma + 1, frame, chroma, width, 2, width, height, out);
+    }
+
+    /**
+     * YUV_420_888 planes into the tensor. Offsets index into the buffers with
+     * absolute gets, so the buffers' positions are left alone.
+     */
+    public void fromYuv(ByteBuffer yPlane, int yOffset, int yRowStride,
+            ByteBuffer uPlane, int uOffset, ByteBuffer vPlane, int vOffset,
+            int uvRowStride, int uvPixelStride, int width, int height, FloatBuffer out) {
+        prepare(width, height);
+        out.clear();
+        for (int oy = 0; oy < outHeight; oy++) {
+            yuvRow(yPlane, yOffset, yRowStride, uPlane, uOffset, vPlane, vOffset, uvRowStride, uvPixelStride, oy);
+            out.put(row);
+        }
+        out.rewind();
+    }
+
+    /** As above into a quantized tensor. */
+    public void fromYuv(ByteBuffer yPlane, int yOffset, int yRowStride,
+            ByteBuffer uPlane, int uOffset, ByteBuffer vPlane, int vOffset,
+            int uvRowStride, int uvPixelStride, int width, int height, ByteBuffer out) {
+        requireQuantized();
+        prepare(width, height);
+        out.clear();
+        for (int oy = 0; oy < outHeight; oy++) {
+            yuvBytes(yPlane, yOffset, yRowStride, uPlane, uOffset, vPlane, vOffset, uvRowStride, uvPixelStride, oy);
+            out.put(byteRow);
+        }
+        out.rewind();
+    }
+
+    private void yuvRow(ByteBuffer yPlane, int yOffset, int yRowStride, ByteBuffer uPlane, int uOffset,
+            ByteBuffer vPlane, int vOffset, int uvRowStride, int uvPixelStride, int oy) {
+        int rowA = yOffset + y0[oy] * yRowStride;
+        int rowB = yOffset + y1[oy] * yRowStride;
+        float wy = fy[oy];
+        // chroma is sampled at the nearest 2x2 block, which is what the camera delivered anyway
+        int uvRow = ((y0[oy] + (wy >= 0.5f ? 1 : 0)) >> 1) * uvRowStride;
+        for (int ox = 0, i = 0; ox < outWidth; ox++, i += 3) {
+            float wx = fx[ox];
+            float luma = lerp2(yPlane.get(rowA + x0[ox]) & 0xFF, yPlane.get(rowA + x1[ox]) & 0xFF,
+                    yPlane.get(rowB + x0[ox]) & 0xFF, yPlane.get(rowB + x1[ox]) & 0xFF, wx, wy);
+            int uv = uvRow + ((x0[ox] + (wx >= 0.5f ? 1 : 0)) >> 1) * uvPixelStride;
+            float u = (uPlane.get(uOffset + uv) & 0xFF) - 128f;
+            float v = (vPlane.get(vOffset + uv) & 0xFF) - 128f;
+
+            // BT.601 full range, as used for camera JPEG/JFIF
+            row[i] = clamp01((luma + 1.402f * v) / 255f);
+            row[i + 1] = clamp01((luma - 0.344136f * u - 0.714136f * v) / 255f);
+            row[i + 2] = clamp01((luma + 1.772f * u) / 255f);
+        }
+    }
+
+    private void yuvBytes(ByteBuffer yPlane, int yOffset, int yRowStride, ByteBuffer uPlane, int uOffset,
+            ByteBuffer vPlane, int vOffset, int uvRowStride, int uvPixelStride, int oy) {
+        int rowA = yOffset + y0[oy] * yRowStride;
+        int rowB = yOffset + y1[oy] * yRowStride;
+        int wy = this.wy[oy];
+        int uvRow = ((y0[oy] + (wy >= ONE / 2 ? 1 : 0)) >> 1) * uvRowStride;
+        for (int ox = 0, i = 0; ox < outWidth; ox++, i += 3) {
+            int wx = this.wx[ox];
+            // luma brought down to the colour coefficients' fraction bits
+            int luma = lerp2Fixed(yPlane.get(rowA + x0[ox]) & 0xFF, yPlane.get(rowA + x1[ox]) & 0xFF,
+                    yPlane.get(rowB + x0[ox]) & 0xFF, yPlane.get(rowB + x1[ox]) & 0xFF, wx, wy)
+                    >> (2 * WEIGHT_BITS - COLOR_SHIFT);
+            int uv = uvRow + ((x0[ox] + (wx >= ONE / 2 ? 1 : 0)) >> 1) * uvPixelStride;
+            int u = (uPlane.get(uOffset + uv) & 0xFF) - 128;
+            int v = (vPlane.get(vOffset + uv) & 0xFF) - 128;
+
+            byteRow[i] = quantized[color(luma + V_TO_R * v)];
+            byteRow[i + 1] = quantized[color(luma - U_TO_G * u - V_TO_G * v)];
+            byteRow[i + 2] = quantized[color(luma + U_TO_B * u)];
+        }
+    }
+
+    private void requireQuantized() {
+        if (quantized == null)
+            throw new IllegalStateException("Not a quantized preprocessor");
+    }
+
+    private void prepare(int width, int height) {
+        if (width == srcWidth && height == srcHeight)
+            return;
+        srcWidth = width;
+        srcHeight = height;
+        fillTaps(width, outWidth, x0, x1, fx);
+        fillTaps(height, outHeight, y0, y1, fy);
+        for (int i = 0; i < outWidth; i++)
+            wx[i] = Math.round(fx[i] * ONE);
+        for (int i = 0; i < outHeight; i++)
+            wy[i] = Math.round(fy[i] * ONE);
+    }
+
+    private static void fillTaps(int src, int dst, int[] lo, int[] hi, float[] frac) {
+        float scale = (float) src / dst;
+        for (int i = 0; i < dst; i++) {
+            float pos = (i + 0.5f) * scale - 0.5f;
+            if (pos < 0)
+                pos = 0;
+            int base = (int) pos;
+            if (base > src - 1)
+                base = src - 1;
+            lo[i] = base;
+            hi[i] = Math.min(base + 1, src - 1);
+            frac[i] = pos - base;
+        }
+    }
+
+    private static float lerp2(int a, int b, int c, int d, float wx, float wy) {
+        float top = a + (b - a) * wx;
+        float bottom = c + (d - c) * wx;
+        return top + (bottom - top) * wy;
+    }
+
+    // the interpolated value scaled by ONE * ONE
+    private static int lerp2Fixed(int a, int b, int c, int d, int wx, int wy) {
+        int top = a * (ONE - wx) + b * wx;
+        int bottom = c * (ONE - wx) + d * wx;
+        return top * (ONE - wy) + bottom * wy;
+    }
+
+    private static int round(int fixed) {
+        return (fixed + HALF) >> (2 * WEIGHT_BITS);
+    }
+
+    // a 16.16 colour value to 0..255
+    private static int color(int fixed) {
+        int value = (fixed + (1 << (COLOR_SHIFT - 1))) >> COLOR_SHIFT;
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static float clamp01(float value) {
+        return value < 0f ? 0f : (value > 1f ? 1f : value);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.viperview.yolo;
+
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.util.Log;
+
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.TensorFlowLite;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.gpu.GpuDelegateFactory;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds TFLite interpreters for a {@link DelegateConfig} and times them for
+ * the {@link DelegateTuner}. A delegate that fails to initialize falls back
+ * to XNNPACK on the CPU with the same thread count, so a model always loads.
+ *
+ * The GPU delegate is pinned to OpenCL. On OpenGL it may only run on the
+ * thread that created it, and interpreters are built on a loader thread
+ * but run on the pipeline's; where OpenCL is missing the delegate fails to
+ * initialize, so the GPU is never picked there.
+ */
+public final class TfliteInterpreters {
+
+    private static final String TAG = "TfliteInterpreters";
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 10;
+    private static final int[] CPU_THREADS = { 1, 2, 4 };
+
+    /** An interpreter and the delegate it owns, closed together. */
+    public static final class Handle {
+        public final Interpreter interpreter;
+        public final DelegateConfig config; // what actually runs, after any fallback
+        private final Delegate delegate;
+
+        Handle(Interpreter interpreter, DelegateConfig config, Delegate delegate) {
+            this.interpreter = interpreter;
+            this.config = config;
+            this.delegate = delegate;
+        }
+
+        public void close() {
+            interpreter.close();
+            if (delegate != null)
+                delegate.close();
+        }
+    }
+
+    private TfliteInterpreters() {
+    }
+
+    public static Handle create(ByteBuffer model, DelegateConfig config) {
+        if (config.accelerator != DelegateConfig.Accelerator.CPU) {
+            Delegate delegate = null;
+            try {
+                delegate = config.accelerator == DelegateConfig.Accelerator.GPU ? openClDelegate()
+                        : new NnApiDelegate();
+                Interpreter.Options options = new Interpreter.Options();
+                options.setNumThreads(config.threads);
+                options.addDelegate(delegate);
+                return new Handle(new Interpreter(model, options), config, delegate);
+            } catch (RuntimeException e) {
+                Log.w(TAG, config + " failed to initialize, falling back to the CPU", e);
+                if (delegate != null)
+                    delegate.close();
+            }
+        }
+        DelegateConfig cpu = new DelegateConfig(DelegateConfig.Accelerator.CPU, config.threads);
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(cpu.threads);
+        options.setUseXNNPACK(true);
+        return new Handle(new Interpreter(model, options), cpu, null);
+    }
+
+    private static GpuDelegate openClDelegate() {
+        GpuDelegate.Options options = new GpuDelegate.Options();
+        options.setForceBackend(GpuDelegateFactory.Options.GpuBackend.OPENCL);
+        return new GpuDelegate(options);
+    }
+
+    /** Every config worth timing on this device. */
+    public static List<DelegateConfig> candidates() {
+        List<DelegateConfig> candidates = new ArrayList<>();
+        for (int threads : CPU_THREADS)
+            candidates.add(new DelegateConfig(DelegateConfig.Accelerator.CPU, threads));
+        try (CompatibilityList compatibility = new CompatibilityList()) {
+            if (compatibility.isDelegateSupportedOnThisDevice())
+                candidates.add(new DelegateConfig(DelegateConfig.Accelerator.GPU, 4));
+        } catch (RuntimeException e) {
+            Log.i(TAG, "No GPU delegate on this device", e);
+        }
+        candidates.add(DelegateConfig.NNAPI_DEFAULT);
+        return candidates;
+    }
+
+    /**
+     * Median time of a few inferences on a zero input after warm-up, which
+     * also covers the delegates' first-run compilation. Throws if the
+     * delegate does not initialize, rather than timing the CPU fallback.
+     */
+    public static double benchmark(ByteBuffer model, DelegateConfig config) {
+        Handle handle = create(model, config);
+        try {
+            if (!handle.config.equals(config))
+                throw new IllegalStateException("delegate unavailable");
+            Interpreter interpreter = handle.interpreter;
+            ByteBuffer input = ByteBuffer.allocateDirect(interpreter.getInputTensor(0).numBytes());
+            input.order(ByteOrder.nativeOrder());
+            Map<Integer, Object> outputs = new HashMap<>();
+            for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+                ByteBuffer output = ByteBuffer.allocateDirect(interpreter.getOutputTensor(i).numBytes());
+                output.order(ByteOrder.nativeOrder());
+                outputs.put(i, output);
+            }
+            Object[] inputs = { input };
+
+            double[] times = new double[TIMED_RUNS];
+            for (int run = -WARMUP_RUNS; run < TIMED_RUNS; run++) {
+                input.rewind();
+                for (Object output : outputs.values())
+                    ((ByteBuffer) output).rewind();
+                long start = System.nanoTime();
+                interpreter.runForMultipleInputsOutputs(inputs, outputs);
+                if (run >= 0)
+                    times[run] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(times);
+            return times[TIMED_RUNS / 2];
+        } finally {
+            handle.close();
+        }
+    }
+
+    /** Changes whenever a stored timing may no longer hold: other device, OS build, runtime or model. */
+    public static String fingerprint(String modelPath, ByteBuffer model) {
+        return Build.MANUFACTURER + "/" + Build.MODEL + "/" + Build.FINGERPRINT + "/"
+                + TensorFlowLite.runtimeVersion() + "/" + modelPath + "/" + model.capacity();
+    }
+
+    /**
+     * The config to run {@code modelPath} with, measured on first use and
+     * stored by {@code tuner} after that. Call off the main thread: the
+     * first run takes a few seconds.
+     */
+    public static DelegateConfig tune(AssetManager assetManager, String modelPath, DelegateTuner tuner)
+            throws IOException {
+        MappedByteBuffer model = PoseDetector.loadModelFile(assetManager, modelPath);
+        DelegateConfig config = tuner.choose(fingerprint(modelPath, model), candidates(),
+                candidate -> benchmark(model, candidate));
+        Log.i(TAG, modelPath + ": " + tuner.getReport());
+        return config != null ? config : new DelegateConfig(DelegateConfig.Accelerator.CPU, 4);
+    }
+}
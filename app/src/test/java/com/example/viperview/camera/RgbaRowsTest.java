@@ -0,0 +1,37 @@
+package com.example.viperview.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class RgbaRowsTest {
+
+    @Test
+    public void onlyTightRowsArePacked() {
+        assertTrue(RgbaRows.isPacked(640 * 4, 4, 640));
+        assertFalse(RgbaRows.isPacked(656 * 4, 4, 640));
+        assertFalse(RgbaRows.isPacked(640 * 4, 3, 640));
+    }
+
+    @Test
+    public void packDropsRowPadding() {
+        int width = 3, height = 4, rowStride = 16;
+        // the last row has no padding after it, as camera planes often don't
+        ByteBuffer plane = ByteBuffer.allocate(rowStride * (height - 1) + width * 4);
+        for (int y = 0; y < height; y++)
+            for (int i = 0; i < width * 4; i++)
+                plane.put(y * rowStride + i, (byte) (y * 16 + i));
+        plane.position(5);
+
+        ByteBuffer out = ByteBuffer.allocate(width * height * 4 + 8);
+        RgbaRows.pack(plane, rowStride, width, height, out);
+        assertEquals(5, plane.position());
+        assertEquals(0, out.position());
+        assertEquals(width * height * 4, out.remaining());
+        for (int y = 0; y < height; y++)
+            for (int i = 0; i < width * 4; i++)
+                assertEquals((byte) (y * 16 + i), out.get());
+    }
+}
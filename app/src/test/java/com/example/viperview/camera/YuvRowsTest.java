@@ -0,0 +1,93 @@
+package com.example.viperview.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YuvRowsTest {
+
+    @Test
+    public void greyStaysGreyAndAlphaIsOpaque() {
+        int width = 4, height = 2;
+        ByteBuffer y = ByteBuffer.allocate(width * height);
+        for (int i = 0; i < width * height; i++)
+            y.put(i, (byte) (i * 30));
+        ByteBuffer chroma = ByteBuffer.allocate(width);
+        for (int i = 0; i < width; i++)
+            chroma.put(i, (byte) 128);
+
+        int[] out = new int[width * height];
+        new YuvRows().toArgb(y, width, chroma, chroma, width, 2, width, height, out);
+        for (int i = 0; i < out.length; i++)
+            assertEquals(0xFF000000 | (i * 30) * 0x010101, out[i]);
+    }
+
+    @Test
+    public void chromaIsSharedPerBlockAndStridesAreRespected() {
+        int width = 4, height = 4, yStride = 8, uvStride = 6, pixelStride = 2;
+        ByteBuffer y = ByteBuffer.allocate(yStride * height);
+        for (int i = 0; i < y.capacity(); i++)
+            y.put(i, (byte) 100);
+        // NV21-style: V and U interleaved, U one byte after V
+        ByteBuffer shared = ByteBuffer.allocate(uvStride * 2 + 1);
+        shared.put(0, (byte) 228).put(1, (byte) 128); // block (0,0): red shift
+        shared.put(2, (byte) 128).put(3, (byte) 228); // block (1,0): blue shift
+        for (int i = uvStride; i < shared.capacity(); i++)
+            shared.put(i, (byte) 128);
+        ByteBuffer v = shared.duplicate();
+        shared.position(1);
+        ByteBuffer u = shared.slice();
+
+        int[] out = new int[width * height];
+        new YuvRows().toArgb(y, yStride, u, v, uvStride, pixelStride, width, height, out);
+
+        // R = 100 + 1.402 * 100, clamped; G = 100 - 0.714136 * 100
+        assertEquals(0xFF000000 | 240 << 16 | 29 << 8 | 100, out[0]);
+        assertEquals(out[0], out[1]);
+        assertEquals(out[0], out[width + 1]);
+        // B = 100 + 1.772 * 100, clamped; G = 100 - 0.344136 * 100
+        assertEquals(0xFF000000 | 100 << 16 | 66 << 8 | 255, out[2]);
+        assertEquals(0xFF646464, out[2 * width]);
+        assertEquals(0, y.position());
+    }
+
+    @Test
+    public void tightDirectPlanesAndReuseAcrossSizes() {
+        YuvRows reused = new YuvRows();
+        for (int[] size : new int[][] { { 6, 4 }, { 9, 5 }, { 4, 2 } }) {
+            int width = size[0], height = size[1], chromaWidth = (width + 1) / 2, chromaHeight = (height + 1) / 2;
+            int yStride = width + 3, uvStride = chromaWidth * 2 + 2;
+            Random random = new Random(width);
+            ByteBuffer y = filled(ByteBuffer.allocateDirect((height - 1) * yStride + width), random);
+            // interleaved VU that ends on the last V byte, as the camera's V plane does
+            ByteBuffer vu = filled(ByteBuffer.allocateDirect((chromaHeight - 1) * uvStride + chromaWidth * 2),
+                    random);
+            ByteBuffer v = vu.duplicate();
+            v.limit(vu.capacity() - 1);
+            vu.position(1);
+            ByteBuffer u = vu.slice();
+            // neutral chroma in the last block, so the bottom-right pixel is its luma as grey
+            u.put(u.limit() - 1, (byte) 128);
+            v.put(v.limit() - 1, (byte) 128);
+
+            int[] out = new int[width * height];
+            reused.toArgb(y, yStride, u, v, uvStride, 2, width, height, out);
+            int[] fresh = new int[width * height];
+            new YuvRows().toArgb(y, yStride, u, v, uvStride, 2, width, height, fresh);
+            assertArrayEquals(fresh, out);
+            int grey = y.get(y.limit() - 1) & 0xFF;
+            assertEquals(0xFF000000 | grey * 0x010101, out[out.length - 1]);
+            assertEquals(0, y.position());
+        }
+    }
+
+    private static ByteBuffer filled(ByteBuffer buffer, Random random) {
+        byte[] bytes = new byte[buffer.capacity()];
+        random.nextBytes(bytes);
+        buffer.put(bytes).clear();
+        return buffer;
+    }
+}
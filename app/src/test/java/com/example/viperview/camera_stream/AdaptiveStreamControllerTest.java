@@ -0,0 +1,144 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveStreamControllerTest {
+
+    private static final AdaptiveStreamController.Sample GOOD = new AdaptiveStreamController.Sample()
+            .set(40, 30, 0, 30);
+    private static final AdaptiveStreamController.Sample SLOW_RTT = new AdaptiveStreamController.Sample()
+            .set(400, 30, 0, 30);
+    private static final AdaptiveStreamController.Sample QUEUE_OVERFLOW = new AdaptiveStreamController.Sample()
+            .set(60, 15, 15, 15);
+    private static final AdaptiveStreamController.Sample SERVER_BEHIND = new AdaptiveStreamController.Sample()
+            .set(60, 30, 0, 10);
+    private static final AdaptiveStreamController.Sample BORDERLINE = new AdaptiveStreamController.Sample()
+            .set(110, 30, 0, 30);
+
+    private static AdaptiveStreamController controller(int start) {
+        return new AdaptiveStreamController(AdaptiveStreamController.defaultLadder(), start);
+    }
+
+    @Test
+    public void stepsDownAfterSustainedCongestion() {
+        AdaptiveStreamController controller = controller(1);
+        assertNull(controller.update(1000, SLOW_RTT));
+        AdaptiveStreamController.Level level = controller.update(2000, SLOW_RTT);
+        assertNotNull(level);
+        assertEquals(2, controller.getLevelIndex());
+    }
+
+    @Test
+    public void queueOverflowAndMissingRepliesAlsoCountAsCongestion() {
+        AdaptiveStreamController controller = controller(1);
+        controller.update(1000, QUEUE_OVERFLOW);
+        controller.update(2000, QUEUE_OVERFLOW);
+        assertEquals(2, controller.getLevelIndex());
+
+        controller.update(6000, SERVER_BEHIND);
+        controller.update(7000, SERVER_BEHIND);
+        assertEquals(3, controller.getLevelIndex());
+    }
+
+    @Test
+    public void singleSpikeDoesNotChangeLevel() {
+        AdaptiveStreamController controller = controller(1);
+        controller.update(1000, GOOD);
+        controller.update(2000, SLOW_RTT);
+        controller.update(3000, GOOD);
+        controller.update(4000, SLOW_RTT);
+        assertEquals(1, controller.getLevelIndex());
+    }
+
+    @Test
+    public void stepsUpSlowlyOnHealthyLink() {
+        AdaptiveStreamController controller = controller(4);
+        long now = 0;
+        for (int i = 0; i < AdaptiveStreamController.UPGRADE_AFTER - 1; i++)
+            assertNull(controller.update(now += 1000, GOOD));
+        assertNotNull(controller.update(now += 1000, GOOD));
+        assertEquals(3, controller.getLevelIndex());
+
+        for (int i = 0; i < 100; i++)
+            controller.update(now += 1000, GOOD);
+        assertEquals(0, controller.getLevelIndex());
+    }
+
+    @Test
+    public void borderlineLinkHoldsItsLevel() {
+        AdaptiveStreamController controller = controller(2);
+        long now = 0;
+        for (int i = 0; i < 60; i++)
+            assertNull(controller.update(now += 1000, BORDERLINE));
+        assertEquals(2, controller.getLevelIndex());
+    }
+
+    @Test
+    public void failedProbesBackOff() {
+        // Link that is fine at level 2 but congests as soon as it moves to level 1.
+        AdaptiveStreamController controller = controller(2);
+        long now = 0;
+        int changes = 0;
+        for (int i = 0; i < 120; i++) {
+            AdaptiveStreamController.Sample sample = controller.getLevelIndex() < 2 ? SLOW_RTT : GOOD;
+            if (controller.update(now += 1000, sample) != null)
+                changes++;
+        }
+        // without backoff this would be a probe every ~7 s, i.e. ~34 changes
+        assertTrue("changes: " + changes, changes <= 14);
+        assertTrue(controller.getUpgradeAfter() > AdaptiveStreamController.UPGRADE_AFTER);
+    }
+
+    @Test
+    public void staysWithinLadder() {
+        AdaptiveStreamController controller = controller(4);
+        long now = 0;
+        for (int i = 0; i < 20; i++)
+            controller.update(now += 1000, SLOW_RTT);
+        assertEquals(4, controller.getLevelIndex());
+
+        AdaptiveStreamController top = controller(0);
+        for (int i = 0; i < 20; i++)
+            assertNull(top.update(now += 1000, GOOD));
+        assertEquals(0, top.getLevelIndex());
+    }
+
+    @Test
+    public void serverThatReturnsNothingIsJudgedOnQueueLossAlone() {
+        // ML off or a legacy server: no headers, no replies, no RTT
+        AdaptiveStreamController.Sample silent = new AdaptiveStreamController.Sample()
+                .set(Double.NaN, 30, 0, 0, false);
+        AdaptiveStreamController controller = controller(4);
+        long now = 0;
+        for (int i = 0; i < 100; i++)
+            controller.update(now += 1000, silent);
+        assertEquals(0, controller.getLevelIndex());
+
+        AdaptiveStreamController.Sample overflowing = new AdaptiveStreamController.Sample()
+                .set(Double.NaN, 15, 15, 0, false);
+        controller.update(now += 1000, overflowing);
+        controller.update(now += 1000, overflowing);
+        assertEquals(1, controller.getLevelIndex());
+    }
+
+    @Test
+    public void echoingServerThatStopsReplyingIsCongested() {
+        AdaptiveStreamController.Sample unanswered = new AdaptiveStreamController.Sample()
+                .set(Double.NaN, 30, 0, 0, true);
+        AdaptiveStreamController controller = controller(1);
+        controller.update(1000, unanswered);
+        controller.update(2000, unanswered);
+        assertEquals(2, controller.getLevelIndex());
+    }
+
+    @Test
+    public void idleIntervalsAreIgnored() {
+        AdaptiveStreamController controller = controller(1);
+        AdaptiveStreamController.Sample idle = new AdaptiveStreamController.Sample().set(Double.NaN, 0, 0, 0);
+        for (int i = 0; i < 10; i++)
+            assertNull(controller.update(i * 1000, idle));
+        assertEquals(1, controller.getLevelIndex());
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.viperview.camera_stream;
+
+import com.example.viperview.yolo.PoseDetections;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DetectionCodecTest {
+
+    private static PoseDetections randomDetections(int count, long seed) {
+        Random random = new Random(seed);
+        PoseDetections detections = new PoseDetections(1);
+        for (int i = 0; i < count; i++) {
+            int index = detections.add(random.nextFloat(), random.nextFloat(), random.nextFloat(),
+                    random.nextFloat(), random.nextFloat());
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++)
+                detections.setKeypoint(index, k, random.nextFloat(), random.nextFloat(), random.nextFloat());
+        }
+        return detections;
+    }
+
+    @Test
+    public void roundTripsWithinQuantizationError() {
+        PoseDetections original = randomDetections(5, 42);
+        ByteBuffer buffer = ByteBuffer.allocate(DetectionCodec.encodedSize(original.count));
+        DetectionCodec.encode(original, buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+
+        PoseDetections decoded = new PoseDetections();
+        DetectionCodec.decode(buffer, decoded);
+        assertEquals(5, decoded.count);
+        for (int i = 0; i < original.count * 4; i++)
+            assertEquals(original.boxes[i], decoded.boxes[i], 1f / 65535);
+        for (int i = 0; i < original.count; i++)
+            assertEquals(original.scores[i], decoded.scores[i], 1f / 255);
+        for (int i = 0; i < original.count; i++) {
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+                assertEquals(original.keypointX(i, k), decoded.keypointX(i, k), 1f / 65535);
+                assertEquals(original.keypointY(i, k), decoded.keypointY(i, k), 1f / 65535);
+                assertEquals(original.keypointConfidence(i, k), decoded.keypointConfidence(i, k), 1f / 255);
+            }
+        }
+    }
+
+    @Test
+    public void onePersonFitsInUnderHundredBytes() {
+        assertEquals(94, DetectionCodec.BYTES_PER_DETECTION);
+        assertEquals(1 + 94, DetectionCodec.encodedSize(1));
+        assertEquals(1, DetectionCodec.encodedSize(0));
+    }
+
+    @Test
+    public void decodeReusesAndClearsTarget() {
+        PoseDetections target = randomDetections(3, 1);
+        ByteBuffer buffer = ByteBuffer.allocate(DetectionCodec.encodedSize(0));
+        DetectionCodec.encode(new PoseDetections(), buffer);
+        buffer.flip();
+
+        DetectionCodec.decode(buffer, target);
+        assertEquals(0, target.count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedPayloadIsRejected() {
+        PoseDetections original = randomDetections(2, 7);
+        ByteBuffer buffer = ByteBuffer.allocate(DetectionCodec.encodedSize(2));
+        DetectionCodec.encode(original, buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 10);
+
+        DetectionCodec.decode(buffer, new PoseDetections());
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class EndpointPoolTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final LinkedBlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private ServerSocket serverA;
+    private ServerSocket serverB;
+    private int deadPort;
+    private EndpointPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        serverA = new ServerSocket(0, 4, loopback);
+        serverB = new ServerSocket(0, 4, loopback);
+        ServerSocket dead = new ServerSocket(0, 1, loopback);
+        deadPort = dead.getLocalPort();
+        dead.close();
+
+        String host = loopback.getHostAddress();
+        pool = new EndpointPool(Arrays.asList(
+                new InferenceEndpoint(host, serverA.getLocalPort()),
+                new InferenceEndpoint(host, serverB.getLocalPort()),
+                new InferenceEndpoint(host, deadPort)),
+                ChannelFrameTransport::new,
+                endpoint -> new FrameTransport.Listener() {
+                    @Override
+                    public void onFrame(ByteBuffer frame) {
+                        received.add(endpoint.port + ":" + frame.remaining());
+                    }
+
+                    @Override
+                    public void onClosed(Exception cause) {
+                    }
+                },
+                executor, 2000, 50, 1000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.closeAll();
+        serverA.close();
+        serverB.close();
+        executor.shutdownNow();
+    }
+
+    private InferenceEndpoint endpoint(int index) {
+        return pool.getEndpoints().get(index);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void connectsToLiveServersAndSkipsDeadOne() throws Exception {
+        pool.ensureConnected(System.currentTimeMillis());
+        Socket a = serverA.accept();
+        Socket b = serverB.accept();
+        await(() -> endpoint(0).isConnected() && endpoint(1).isConnected());
+        await(() -> endpoint(2).getFailureCount() > 0);
+        assertFalse(endpoint(2).isConnected());
+        assertTrue(pool.hasConnected());
+
+        // replies are attributed to the connection they came in on
+        new DataOutputStream(b.getOutputStream()).writeInt(3);
+        b.getOutputStream().write(new byte[3]);
+        assertEquals(serverB.getLocalPort() + ":3", received.poll(5, TimeUnit.SECONDS));
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void prefersLowLatencyAndSpreadsByInFlight() throws Exception {
+        pool.ensureConnected(System.currentTimeMillis());
+        Socket a = serverA.accept();
+        Socket b = serverB.accept();
+        await(() -> endpoint(0).isConnected() && endpoint(1).isConnected());
+
+        endpoint(0).onSent(1, 0);
+        endpoint(0).onReturned(1, 10 * MS);
+        endpoint(1).onSent(2, 0);
+        endpoint(1).onReturned(2, 40 * MS);
+        assertSame(endpoint(0), pool.select(false));
+
+        // four frames queued on the fast server cost more than one fresh slot on the slow one
+        for (int seq = 3; seq < 7; seq++)
+            endpoint(0).onSent(seq, 50 * MS);
+        assertSame(endpoint(1), pool.select(false));
+        // unless the stream is pinned
+        assertSame(endpoint(1), pool.select(true));
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void failsOverWhenConnectionDrops() throws Exception {
+        pool.ensureConnected(System.currentTimeMillis());
+        Socket a = serverA.accept();
+        Socket b = serverB.accept();
+        await(() -> endpoint(0).isConnected() && endpoint(1).isConnected());
+
+        endpoint(0).onSent(1, 0);
+        assertSame(endpoint(1), pool.select(true));
+        endpoint(1).onSent(2, 0);
+        assertEquals(1, pool.getOldestOutstanding());
+
+        b.close();
+        await(() -> !endpoint(1).isConnected());
+        assertSame(endpoint(0), pool.select(true));
+        // frames in flight on the dead server are no longer waited for
+        assertEquals(1, pool.getOldestOutstanding());
+        assertEquals(0, endpoint(1).getInFlight());
+
+        // and it comes back once the server is reachable again
+        pool.ensureConnected(System.currentTimeMillis() + 10_000);
+        Socket b2 = serverB.accept();
+        await(() -> endpoint(1).isConnected());
+        a.close();
+        b2.close();
+    }
+
+    @Test
+    public void endpointTracksSkippedAndExpiredFrames() {
+        InferenceEndpoint endpoint = new InferenceEndpoint("localhost", 1);
+        for (int seq = 0; seq < 5; seq++)
+            endpoint.onSent(seq, seq * 10 * MS);
+
+        // server answered 2, so 0 and 1 were skipped
+        assertTrue(endpoint.onReturned(2, 40 * MS));
+        assertEquals(2, endpoint.getLostCount());
+        assertEquals(20, endpoint.getLatencyMs(), 1e-6);
+        assertEquals(3, endpoint.getOldestOutstanding());
+        assertFalse(endpoint.onReturned(2, 50 * MS));
+
+        endpoint.expire(1035 * MS, 1000 * MS);
+        assertEquals(4, endpoint.getOldestOutstanding());
+        assertEquals(3, endpoint.getLostCount());
+        assertEquals(4, endpoint.onReturnedUnsequenced(1100 * MS));
+        assertEquals(Long.MAX_VALUE, endpoint.getOldestOutstanding());
+    }
+
+    @Test
+    public void unsequencedReplyWithNothingOutstandingMatchesNothing() {
+        InferenceEndpoint endpoint = new InferenceEndpoint("a", 1);
+        assertEquals(InferenceEndpoint.NO_SEQUENCE, endpoint.onReturnedUnsequenced(100 * MS));
+
+        endpoint.onSent(0, 0);
+        endpoint.expire(2000 * MS, 1000 * MS);
+        assertEquals(InferenceEndpoint.NO_SEQUENCE, endpoint.onReturnedUnsequenced(2100 * MS));
+        assertEquals(0, endpoint.getReturnedCount());
+        assertEquals(1, endpoint.getLostCount());
+    }
+
+    @Test
+    public void failedSendIsRolledBack() {
+        InferenceEndpoint endpoint = new InferenceEndpoint("a", 1);
+        endpoint.onSent(0, 0);
+        endpoint.onSent(1, 10 * MS);
+        endpoint.onSendFailed(0); // not the latest send, left alone
+        assertEquals(2, endpoint.getInFlight());
+
+        endpoint.onSendFailed(1);
+        assertEquals(1, endpoint.getInFlight());
+        assertEquals(1, endpoint.getSentCount());
+        assertTrue(endpoint.onReturned(0, 50 * MS));
+        assertEquals(0, endpoint.getLostCount());
+    }
+
+    @Test
+    public void parsesHostAndPort() {
+        InferenceEndpoint endpoint = InferenceEndpoint.parse("100.118.244.118:9999");
+        assertEquals("100.118.244.118", endpoint.host);
+        assertEquals(9999, endpoint.port);
+    }
+}
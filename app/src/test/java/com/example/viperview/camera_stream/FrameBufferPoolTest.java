@@ -0,0 +1,40 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    public void releasedBuffersAreReused() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        byte[] first = pool.acquire(16);
+        pool.release(first);
+        assertSame(first, pool.acquire(16));
+    }
+
+    @Test
+    public void capacityIsBounded() {
+        FrameBufferPool pool = new FrameBufferPool(1);
+        byte[] a = pool.acquire(16);
+        byte[] b = pool.acquire(16);
+        pool.release(a);
+        pool.release(b);
+        assertEquals(1, pool.available());
+    }
+
+    @Test
+    public void sizeChangeDiscardsOldBuffers() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        byte[] small = pool.acquire(16);
+        pool.release(small);
+
+        byte[] large = pool.acquire(32);
+        assertEquals(32, large.length);
+        assertEquals(0, pool.available());
+
+        pool.release(small); // stale size, ignored
+        assertEquals(0, pool.available());
+    }
+}
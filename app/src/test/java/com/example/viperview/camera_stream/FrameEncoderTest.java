@@ -0,0 +1,156 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class FrameEncoderTest {
+
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+
+    private final FrameBufferPool inputPool = new FrameBufferPool(4);
+    private final LinkedBlockingQueue<EncodedFrame> encoded = new LinkedBlockingQueue<>();
+
+    @Test
+    public void rawEncoderPassesBufferThroughAndReturnsItOnRelease() {
+        RawNv21Encoder encoder = new RawNv21Encoder(inputPool, encoded::add);
+        byte[] nv21 = inputPool.acquire(Nv21Converter.frameSize(WIDTH, HEIGHT));
+
+        encoder.encode(nv21, WIDTH, HEIGHT, 123L);
+        EncodedFrame frame = encoded.poll();
+        assertNotNull(frame);
+        assertSame(nv21, frame.data);
+        assertEquals(nv21.length, frame.length);
+        assertEquals(FrameCodec.RAW_NV21, frame.codec);
+        assertEquals(123L, frame.timestampNs);
+
+        assertEquals(0, inputPool.available());
+        frame.release();
+        assertEquals(1, inputPool.available());
+        assertSame(nv21, inputPool.acquire(nv21.length));
+    }
+
+    @Test
+    public void jpegEncoderProducesDecodableFrames() throws Exception {
+        JpegFrameEncoder encoder = new JpegFrameEncoder(inputPool, encoded::add, new ImageIoCompressor(), 75, 2);
+        byte[] nv21 = gradient(inputPool.acquire(Nv21Converter.frameSize(WIDTH, HEIGHT)));
+
+        encoder.encode(nv21, WIDTH, HEIGHT, 7L);
+        EncodedFrame frame = encoded.poll(5, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        assertEquals(FrameCodec.JPEG, frame.codec);
+        assertTrue(frame.length < nv21.length);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(frame.data, 0, frame.length));
+        assertEquals(WIDTH, decoded.getWidth());
+        assertEquals(HEIGHT, decoded.getHeight());
+
+        // input goes back to the pool as soon as it is compressed
+        assertEquals(1, inputPool.available());
+        encoder.close();
+    }
+
+    @Test
+    public void jpegEncoderSkipsWhenWorkersBusyAndDropsStaleResults() throws Exception {
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        JpegFrameEncoder.Compressor compressor = (nv21, width, height, quality, out) -> {
+            if (nv21[0] == 1) {
+                try {
+                    releaseFirst.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            out.write(nv21[0]);
+        };
+        JpegFrameEncoder encoder = new JpegFrameEncoder(inputPool, encoded::add, compressor, 75, 2);
+
+        encoder.encode(frameTagged(1), WIDTH, HEIGHT, 1L); // blocks in the compressor
+        encoder.encode(frameTagged(2), WIDTH, HEIGHT, 2L);
+        EncodedFrame second = encoded.poll(5, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals(2, second.data[0]);
+
+        // one worker is still stuck on frame 1, the other is free again
+        encoder.encode(frameTagged(3), WIDTH, HEIGHT, 3L);
+        assertEquals(3, encoded.poll(5, TimeUnit.SECONDS).data[0]);
+
+        releaseFirst.countDown();
+        encoder.close();
+        assertNull(encoded.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, encoder.getStaleCount());
+    }
+
+    @Test
+    public void jpegEncoderSkipsFramesBeyondWorkerCount() throws Exception {
+        CountDownLatch block = new CountDownLatch(1);
+        JpegFrameEncoder encoder = new JpegFrameEncoder(inputPool, encoded::add, (nv21, w, h, q, out) -> {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, 75, 1);
+
+        encoder.encode(frameTagged(1), WIDTH, HEIGHT, 1L);
+        encoder.encode(frameTagged(2), WIDTH, HEIGHT, 2L);
+        assertEquals(1, encoder.getSkippedCount());
+        block.countDown();
+        encoder.close();
+    }
+
+    @Test
+    public void streamHeaderRoundTrips() {
+        StreamHeader header = new StreamHeader();
+        header.codec = FrameCodec.H264;
+        header.width = 1280;
+        header.height = 720;
+        header.frameRate = 30;
+        header.bitrate = 2_500_000;
+
+        ByteBuffer buffer = ByteBuffer.allocate(StreamHeader.SIZE);
+        header.write(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+
+        StreamHeader decoded = StreamHeader.read(buffer);
+        assertTrue(header.sameFormat(decoded));
+    }
+
+    private byte[] frameTagged(int tag) {
+        byte[] nv21 = inputPool.acquire(Nv21Converter.frameSize(WIDTH, HEIGHT));
+        nv21[0] = (byte) tag;
+        return nv21;
+    }
+
+    private static byte[] gradient(byte[] nv21) {
+        for (int i = 0; i < WIDTH * HEIGHT; i++)
+            nv21[i] = (byte) (i % WIDTH * 8);
+        for (int i = WIDTH * HEIGHT; i < nv21.length; i++)
+            nv21[i] = (byte) 128;
+        return nv21;
+    }
+
+    /** JVM stand-in for YuvImage: converts the luma plane to grey and writes it with ImageIO. */
+    private static class ImageIoCompressor implements JpegFrameEncoder.Compressor {
+        @Override
+        public void compress(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            image.getRaster().setDataElements(0, 0, width, height, java.util.Arrays.copyOf(nv21, width * height));
+            if (!ImageIO.write(image, "jpg", out))
+                throw new IOException("no jpeg writer");
+        }
+    }
+}
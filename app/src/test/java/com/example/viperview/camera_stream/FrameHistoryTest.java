@@ -0,0 +1,62 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameHistoryTest {
+
+    @Test
+    public void takeReturnsExactMatchAndDropsOlderFrames() {
+        FrameHistory<String> history = new FrameHistory<>(4);
+        history.put(10, "a");
+        history.put(20, "b");
+        history.put(30, "c");
+
+        assertEquals("b", history.take(20));
+        assertEquals(1, history.size());
+        assertNull(history.take(10));
+        assertEquals("c", history.take(30));
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    public void oldestFrameIsOverwrittenWhenFull() {
+        FrameHistory<String> history = new FrameHistory<>(2);
+        history.put(1, "a");
+        history.put(2, "b");
+        history.put(3, "c");
+
+        assertEquals(2, history.size());
+        assertNull(history.take(1));
+        assertEquals("c", history.take(3));
+    }
+
+    @Test
+    public void missingTimestampStillDiscardsOlderFrames() {
+        FrameHistory<String> history = new FrameHistory<>(4);
+        history.put(10, "a");
+        history.put(30, "c");
+
+        assertNull(history.take(20));
+        assertEquals(1, history.size());
+        assertEquals("c", history.take(30));
+    }
+
+    @Test
+    public void framesThatAreNeverTakenAreRecycled() {
+        List<String> recycled = new ArrayList<>();
+        FrameHistory<String> history = new FrameHistory<>(2, recycled::add);
+        history.put(1, "a");
+        history.put(2, "b");
+        history.put(3, "c"); // overwrites a
+        history.put(4, "d");
+        assertEquals("d", history.take(4)); // discards c
+
+        assertEquals(List.of("a", "b", "c"), recycled);
+        assertEquals(0, history.size());
+    }
+}
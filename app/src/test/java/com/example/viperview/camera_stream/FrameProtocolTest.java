@@ -0,0 +1,151 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class FrameProtocolTest {
+
+    @Test
+    public void uplinkHeaderRoundTrips() {
+        FrameProtocol.UplinkHeader header = new FrameProtocol.UplinkHeader();
+        header.flags = FrameProtocol.FLAG_ML_ENABLED | FrameProtocol.FLAG_KEY_FRAME;
+        header.codec = FrameCodec.HEVC;
+        header.width = 1920;
+        header.height = 1080;
+        header.sequence = 0xFFFFFFF0L;
+        header.captureTimestampNs = 123_456_789_012L;
+        header.sendTimeNs = 123_456_999_000L;
+        header.payloadLength = 40_000;
+
+        ByteBuffer buffer = ByteBuffer.allocate(FrameProtocol.UPLINK_HEADER_BYTES);
+        header.write(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+
+        FrameProtocol.UplinkHeader decoded = new FrameProtocol.UplinkHeader();
+        decoded.read(buffer);
+        assertEquals(header.flags, decoded.flags);
+        assertEquals(FrameCodec.HEVC, decoded.codec);
+        assertEquals(1920, decoded.width);
+        assertEquals(1080, decoded.height);
+        assertEquals(0xFFFFFFF0L, decoded.sequence);
+        assertEquals(header.captureTimestampNs, decoded.captureTimestampNs);
+        assertEquals(header.sendTimeNs, decoded.sendTimeNs);
+        assertEquals(40_000, decoded.payloadLength);
+    }
+
+    @Test
+    public void uplinkCropRoundTripsAndOldHeadersMeanTheWholeFrame() {
+        FrameProtocol.UplinkHeader header = new FrameProtocol.UplinkHeader();
+        header.width = 1920;
+        header.height = 1080;
+        header.cropX = 640;
+        header.cropY = 360;
+        header.cropWidth = 640;
+        header.cropHeight = 360;
+        ByteBuffer buffer = ByteBuffer.allocate(FrameProtocol.UPLINK_HEADER_BYTES);
+        header.write(buffer);
+        buffer.flip();
+
+        FrameProtocol.UplinkHeader decoded = new FrameProtocol.UplinkHeader();
+        decoded.read(buffer);
+        assertEquals(640, decoded.cropX);
+        assertEquals(360, decoded.cropY);
+        assertEquals(640, decoded.cropWidth);
+        assertEquals(360, decoded.cropHeight);
+
+        // a sender from before the crop fields: same bytes, cut short
+        buffer.putShort(2, (short) FrameProtocol.UPLINK_HEADER_BYTES_NO_CROP);
+        buffer.rewind();
+        buffer.limit(FrameProtocol.UPLINK_HEADER_BYTES_NO_CROP);
+        decoded.read(buffer);
+        assertEquals(1920, decoded.width);
+        assertEquals(0, decoded.cropWidth);
+        assertEquals(0, decoded.cropHeight);
+    }
+
+    @Test
+    public void downlinkHeaderRoundTripsAndLeavesPayload() {
+        FrameProtocol.DownlinkHeader header = new FrameProtocol.DownlinkHeader();
+        header.sequence = 42;
+        header.captureTimestampNs = 1_000_000L;
+        header.sendTimeNs = 2_000_000L;
+        header.serverProcessingUs = 18_000;
+
+        ByteBuffer buffer = ByteBuffer.allocate(FrameProtocol.DOWNLINK_HEADER_BYTES + 3);
+        header.write(buffer);
+        buffer.put(new byte[] { (byte) 0xFF, (byte) 0xD8, 7 });
+        buffer.flip();
+
+        assertTrue(FrameProtocol.hasHeader(buffer));
+        FrameProtocol.DownlinkHeader decoded = new FrameProtocol.DownlinkHeader();
+        decoded.read(buffer);
+        assertEquals(FrameProtocol.PAYLOAD_JPEG, decoded.payloadType);
+        assertEquals(42, decoded.sequence);
+        assertEquals(1_000_000L, decoded.captureTimestampNs);
+        assertEquals(2_000_000L, decoded.sendTimeNs);
+        assertEquals(18_000, decoded.serverProcessingUs);
+        assertEquals(3, buffer.remaining());
+        assertEquals((byte) 0xFF, buffer.get());
+    }
+
+    @Test
+    public void newerHeadersWithExtraFieldsAreSkipped() {
+        FrameProtocol.DownlinkHeader header = new FrameProtocol.DownlinkHeader();
+        header.sequence = 9;
+        ByteBuffer buffer = ByteBuffer.allocate(FrameProtocol.DOWNLINK_HEADER_BYTES + 6 + 1);
+        header.write(buffer);
+        buffer.put(1, (byte) (FrameProtocol.VERSION + 1));
+        buffer.putShort(2, (short) (FrameProtocol.DOWNLINK_HEADER_BYTES + 6));
+        buffer.put(new byte[6]); // unknown extension
+        buffer.put((byte) 99);
+        buffer.flip();
+
+        FrameProtocol.DownlinkHeader decoded = new FrameProtocol.DownlinkHeader();
+        decoded.read(buffer);
+        assertEquals(9, decoded.sequence);
+        assertEquals(99, buffer.get());
+    }
+
+    @Test
+    public void headersFromTheFirstVersionOnAreRead() {
+        FrameProtocol.UplinkHeader header = new FrameProtocol.UplinkHeader();
+        header.sequence = 4;
+        ByteBuffer buffer = ByteBuffer.allocate(FrameProtocol.UPLINK_HEADER_BYTES);
+        header.write(buffer);
+        buffer.flip();
+        for (int version = FrameProtocol.FIRST_VERSION; version <= FrameProtocol.VERSION + 1; version++) {
+            buffer.put(1, (byte) version);
+            assertTrue(FrameProtocol.hasHeader(buffer));
+            FrameProtocol.UplinkHeader decoded = new FrameProtocol.UplinkHeader();
+            decoded.read(buffer.duplicate());
+            assertEquals(4, decoded.sequence);
+        }
+
+        buffer.put(1, (byte) (FrameProtocol.FIRST_VERSION - 1));
+        assertFalse(FrameProtocol.hasHeader(buffer));
+        try {
+            new FrameProtocol.UplinkHeader().read(buffer.duplicate());
+            fail("read a header older than the first version");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void legacyJpegHasNoHeader() {
+        ByteBuffer jpeg = ByteBuffer.wrap(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0 });
+        assertFalse(FrameProtocol.hasHeader(jpeg));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedHeaderIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate(FrameProtocol.DOWNLINK_HEADER_BYTES);
+        new FrameProtocol.DownlinkHeader().write(buffer);
+        buffer.flip();
+        buffer.limit(10);
+        new FrameProtocol.DownlinkHeader().read(buffer);
+    }
+}
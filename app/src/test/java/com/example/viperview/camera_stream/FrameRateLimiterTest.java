@@ -0,0 +1,38 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameRateLimiterTest {
+
+    private static final long FRAME_30FPS_NS = 33_333_333L;
+
+    private static int acceptedOutOf(FrameRateLimiter limiter, int frames) {
+        int accepted = 0;
+        for (int i = 0; i < frames; i++) {
+            if (limiter.accept(i * FRAME_30FPS_NS))
+                accepted++;
+        }
+        return accepted;
+    }
+
+    @Test
+    public void keepsEveryFrameAtCameraRate() {
+        assertEquals(90, acceptedOutOf(new FrameRateLimiter(30), 90));
+    }
+
+    @Test
+    public void thinsToTargetRate() {
+        assertEquals(60, acceptedOutOf(new FrameRateLimiter(20), 90), 1);
+        assertEquals(45, acceptedOutOf(new FrameRateLimiter(15), 90), 1);
+    }
+
+    @Test
+    public void restartsScheduleAfterGap() {
+        FrameRateLimiter limiter = new FrameRateLimiter(15);
+        assertTrue(limiter.accept(0));
+        assertTrue(limiter.accept(5_000_000_000L));
+        assertFalse(limiter.accept(5_000_000_000L + FRAME_30FPS_NS));
+    }
+}
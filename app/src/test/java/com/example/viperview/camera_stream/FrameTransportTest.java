@@ -0,0 +1,140 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class FrameTransportTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> transports() {
+        return Arrays.asList(new Object[][] {
+                { "socket", (Supplier<FrameTransport>) SocketFrameTransport::new },
+                { "channel", (Supplier<FrameTransport>) ChannelFrameTransport::new },
+        });
+    }
+
+    private final Supplier<FrameTransport> factory;
+    private ServerSocket server;
+    private FrameTransport transport;
+
+    public FrameTransportTest(String name, Supplier<FrameTransport> factory) {
+        this.factory = factory;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (transport != null)
+            transport.close();
+        server.close();
+    }
+
+    @Test
+    public void uplinkWritesHeaderThenPayload() throws Exception {
+        Socket peer = connect();
+        byte[] payload = randomBytes(100_000, 1);
+
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(payload.length - 10);
+        header.put((byte) 1);
+        header.flip();
+        transport.send(header, payload, 10, payload.length - 10);
+
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+        assertEquals(payload.length - 10, in.readInt());
+        assertEquals(1, in.readByte());
+        byte[] received = new byte[payload.length - 10];
+        in.readFully(received);
+        assertArrayEquals(Arrays.copyOfRange(payload, 10, payload.length), received);
+        peer.close();
+    }
+
+    @Test
+    public void downlinkReassemblesFragmentedFrames() throws Exception {
+        Socket peer = connect();
+        LinkedBlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+        CountDownLatch closed = new CountDownLatch(1);
+        transport.startReceiving(new FrameTransport.Listener() {
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                byte[] copy = new byte[frame.remaining()];
+                frame.get(copy);
+                frames.add(copy);
+            }
+
+            @Override
+            public void onClosed(Exception cause) {
+                closed.countDown();
+            }
+        });
+
+        // Frames larger than the initial receive buffer force it to grow.
+        byte[][] sent = { randomBytes(3, 2), new byte[0], randomBytes(70_000, 3), randomBytes(500, 4) };
+        ByteBuffer wire = ByteBuffer.allocate(4 * sent.length + 70_503);
+        for (byte[] frame : sent) {
+            wire.putInt(frame.length);
+            wire.put(frame);
+        }
+
+        // Dribble the stream out in small chunks so the 4-byte length is split too.
+        OutputStream out = peer.getOutputStream();
+        Random random = new Random(5);
+        int position = 0;
+        while (position < wire.position()) {
+            int chunk = Math.min(1 + random.nextInt(7), wire.position() - position);
+            if (position > 100 && position < 69_000)
+                chunk = Math.min(4096, wire.position() - position);
+            out.write(wire.array(), position, chunk);
+            out.flush();
+            position += chunk;
+            if (random.nextInt(10) == 0)
+                Thread.sleep(1);
+        }
+
+        for (byte[] expected : sent) {
+            byte[] actual = frames.poll(5, TimeUnit.SECONDS);
+            assertNotNull(actual);
+            assertArrayEquals(expected, actual);
+        }
+
+        peer.close();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    private Socket connect() throws Exception {
+        transport = factory.get();
+        transport.connect(InetAddress.getLoopbackAddress().getHostAddress(), server.getLocalPort(), 2000);
+        assertTrue(transport.isConnected());
+        return server.accept();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
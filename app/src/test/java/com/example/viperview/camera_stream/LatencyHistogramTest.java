@@ -0,0 +1,52 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void percentilesAreWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram("test", 1000, 4);
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * MS, 0);
+
+        assertEquals(100, histogram.count(0));
+        assertEquals(50, histogram.percentileMs(50, 0), 50 * 0.1);
+        assertEquals(90, histogram.percentileMs(90, 0), 90 * 0.1);
+        assertEquals(100, histogram.percentileMs(100, 0), 100 * 0.1);
+    }
+
+    @Test
+    public void oldWindowsRollOff() {
+        LatencyHistogram histogram = new LatencyHistogram("test", 1000, 3);
+        histogram.record(500 * MS, 0);
+        histogram.record(5 * MS, 2500);
+
+        assertEquals(2, histogram.count(2500));
+        // at t=3.5s the first window (t=0..1s) is older than three windows
+        assertEquals(1, histogram.count(3500));
+        assertEquals(5, histogram.percentileMs(99, 3500), 0.5);
+
+        // reusing the slot clears what was there before
+        histogram.record(7 * MS, 3000);
+        assertEquals(2, histogram.count(3000));
+    }
+
+    @Test
+    public void emptyAndNegativeSamples() {
+        LatencyHistogram histogram = new LatencyHistogram("test", 1000, 2);
+        assertEquals(0, histogram.percentileMs(50, 0), 0);
+        histogram.record(-5, 0);
+        assertEquals(0, histogram.count(0));
+    }
+
+    @Test
+    public void extremesClampToEndBuckets() {
+        assertEquals(0, LatencyHistogram.bucketFor(1));
+        assertEquals(LatencyHistogram.bucketFor(1e12), LatencyHistogram.bucketFor(1e13));
+    }
+}
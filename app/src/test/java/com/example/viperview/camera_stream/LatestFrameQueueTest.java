@@ -0,0 +1,100 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LatestFrameQueueTest {
+
+    private final List<Integer> recycled = new ArrayList<>();
+
+    private LatestFrameQueue<Integer> queue(int depth) {
+        return new LatestFrameQueue<>(depth, recycled::add);
+    }
+
+    @Test
+    public void newestFrameReplacesStaleOne() throws InterruptedException {
+        LatestFrameQueue<Integer> queue = queue(1);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+
+        assertEquals(1, queue.size());
+        assertEquals(Integer.valueOf(3), queue.take());
+        assertEquals(2, queue.getReplacedCount());
+        assertEquals(List.of(1, 2), recycled);
+    }
+
+    @Test
+    public void deeperQueueKeepsMostRecentFramesInOrder() throws InterruptedException {
+        LatestFrameQueue<Integer> queue = queue(2);
+        for (int i = 1; i <= 5; i++)
+            queue.offer(i);
+
+        assertEquals(Integer.valueOf(4), queue.take());
+        assertEquals(Integer.valueOf(5), queue.take());
+        assertEquals(3, queue.getReplacedCount());
+    }
+
+    @Test
+    public void sentAndDroppedAreCountedAndRecycled() throws InterruptedException {
+        LatestFrameQueue<Integer> queue = queue(2);
+        queue.offer(1);
+        queue.offer(2);
+        queue.markSent(queue.take());
+        queue.drop(queue.take());
+
+        assertEquals(1, queue.getSentCount());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(List.of(1, 2), recycled);
+    }
+
+    @Test
+    public void shrinkingDepthEvictsOnNextOffer() throws InterruptedException {
+        LatestFrameQueue<Integer> queue = queue(3);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        queue.setDepth(1);
+        queue.offer(4);
+
+        assertEquals(1, queue.size());
+        assertEquals(Integer.valueOf(4), queue.take());
+        assertEquals(3, queue.getReplacedCount());
+        assertEquals(3, recycled.size());
+    }
+
+    @Test
+    public void closeWakesConsumerAndDropsLateFrames() throws Exception {
+        LatestFrameQueue<Integer> queue = queue(1);
+        AtomicReference<Integer> taken = new AtomicReference<>(-1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.set(queue.take());
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        consumer.start();
+
+        queue.close();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertNull(taken.get());
+
+        queue.offer(7);
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(List.of(7), recycled);
+    }
+
+    @Test
+    public void pollTimesOutWhenEmpty() throws InterruptedException {
+        assertNull(queue(1).poll(10, TimeUnit.MILLISECONDS));
+    }
+}
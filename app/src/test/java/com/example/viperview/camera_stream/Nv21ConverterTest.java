@@ -0,0 +1,140 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Nv21ConverterTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void interleavedVU_packedRows_bulkCopies() {
+        assertConverts(new Planes(WIDTH, HEIGHT, WIDTH, WIDTH, 2, true));
+    }
+
+    @Test
+    public void interleavedVU_paddedRows_bulkCopies() {
+        assertConverts(new Planes(WIDTH, HEIGHT, WIDTH + 16, WIDTH + 32, 2, true));
+    }
+
+    @Test
+    public void separateSemiPlanar_bulkCopies() {
+        assertConverts(new Planes(WIDTH, HEIGHT, WIDTH, WIDTH + 8, 2, false));
+    }
+
+    @Test
+    public void planar_paddedRows() {
+        assertConverts(new Planes(WIDTH, HEIGHT, WIDTH + 8, WIDTH / 2 + 8, 1, false));
+    }
+
+    @Test
+    public void readOnlyBuffers_stillBulkCopy() {
+        Planes planes = new Planes(WIDTH, HEIGHT, WIDTH, WIDTH, 2, true);
+        planes.u = planes.u.asReadOnlyBuffer();
+        planes.v = planes.v.asReadOnlyBuffer();
+        assertConverts(planes);
+    }
+
+    @Test
+    public void aliasedHeapArrays_detected() {
+        byte[] shared = new byte[16];
+        ByteBuffer v = ByteBuffer.wrap(shared, 0, 15).slice();
+        ByteBuffer u = ByteBuffer.wrap(shared, 1, 15).slice();
+        assertTrue(Nv21Converter.isInterleavedVU(u, v, 2));
+        assertFalse(Nv21Converter.isInterleavedVU(v, u, 2));
+        assertFalse(Nv21Converter.isInterleavedVU(u, ByteBuffer.wrap(new byte[15]), 2));
+    }
+
+    @Test
+    public void aliasedHeapPlanes_bulkCopyV() {
+        for (int uvRowStride : new int[] { WIDTH, WIDTH + 8 }) {
+            Planes planes = new Planes(WIDTH, HEIGHT, WIDTH, uvRowStride, 2, true);
+            // the same bytes, shared through one array instead of direct memory
+            byte[] shared = new byte[planes.v.capacity() + 1];
+            planes.v.duplicate().get(shared, 0, planes.v.capacity());
+            shared[shared.length - 1] = planes.u.get(planes.u.capacity() - 1);
+            planes.v = ByteBuffer.wrap(shared, 0, shared.length - 1).slice();
+            planes.u = ByteBuffer.wrap(shared, 1, shared.length - 1).slice();
+            assertTrue(Nv21Converter.isInterleavedVU(planes.u, planes.v, 2));
+            assertConverts(planes);
+        }
+    }
+
+    private static void assertConverts(Planes planes) {
+        byte[] out = new byte[Nv21Converter.frameSize(WIDTH, HEIGHT)];
+        Nv21Converter.convert(WIDTH, HEIGHT, planes.y, planes.yRowStride,
+                planes.u, planes.v, planes.uvRowStride, planes.uvPixelStride, out, new byte[WIDTH]);
+        assertArrayEquals(planes.expected, out);
+    }
+
+    /** Synthetic YUV_420_888 planes plus the NV21 bytes they should produce. */
+    private static class Planes {
+        ByteBuffer y;
+        ByteBuffer u;
+        ByteBuffer v;
+        final int yRowStride;
+        final int uvRowStride;
+        final int uvPixelStride;
+        final byte[] expected;
+
+        Planes(int width, int height, int yRowStride, int uvRowStride, int uvPixelStride, boolean aliased) {
+            this.yRowStride = yRowStride;
+            this.uvRowStride = uvRowStride;
+            this.uvPixelStride = uvPixelStride;
+            Random random = new Random(width * 31L + yRowStride * 7L + uvRowStride + uvPixelStride);
+
+            int chromaW = width / 2;
+            int chromaH = height / 2;
+            expected = new byte[width * height * 3 / 2];
+
+            // Like camera buffers, the last row stops at the last pixel instead of the stride.
+            y = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    byte value = (byte) random.nextInt(256);
+                    y.put(row * yRowStride + col, value);
+                    expected[row * width + col] = value;
+                }
+            }
+
+            int chromaLimit = uvRowStride * (chromaH - 1) + (chromaW - 1) * uvPixelStride + 1;
+            ByteBuffer uBacking;
+            ByteBuffer vBacking;
+            if (aliased) {
+                ByteBuffer shared = ByteBuffer.allocateDirect(chromaLimit + 1);
+                vBacking = sliceOf(shared, 0, chromaLimit);
+                uBacking = sliceOf(shared, 1, chromaLimit);
+            } else {
+                vBacking = ByteBuffer.allocateDirect(chromaLimit);
+                uBacking = ByteBuffer.allocateDirect(chromaLimit);
+            }
+
+            int offset = width * height;
+            for (int row = 0; row < chromaH; row++) {
+                for (int col = 0; col < chromaW; col++) {
+                    int index = row * uvRowStride + col * uvPixelStride;
+                    byte vValue = (byte) random.nextInt(256);
+                    byte uValue = (byte) random.nextInt(256);
+                    vBacking.put(index, vValue);
+                    uBacking.put(index, uValue);
+                    expected[offset++] = vValue;
+                    expected[offset++] = uValue;
+                }
+            }
+            u = uBacking;
+            v = vBacking;
+        }
+
+        private static ByteBuffer sliceOf(ByteBuffer shared, int start, int length) {
+            ByteBuffer dup = shared.duplicate();
+            dup.position(start);
+            dup.limit(start + length);
+            return dup.slice();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReorderBufferTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final List<Long> released = new ArrayList<>();
+    private final List<Long> recycled = new ArrayList<>();
+    private final ReorderBuffer<Long> buffer = new ReorderBuffer<>(4, 100 * MS, recycled::add);
+
+    private void offer(long sequence, long nowMs, long oldestOutstanding) {
+        buffer.offer(sequence, sequence, nowMs * MS, oldestOutstanding, released::add);
+    }
+
+    @Test
+    public void holdsNewerFrameUntilOlderOneArrives() {
+        // 1 and 2 went to different servers; 2 comes back first
+        offer(2, 0, 1);
+        assertTrue(released.isEmpty());
+        offer(1, 10, Long.MAX_VALUE);
+        assertEquals(Arrays.asList(1L, 2L), released);
+        assertEquals(1, buffer.getReorderedCount());
+    }
+
+    @Test
+    public void gapsThatAreNotInFlightDoNotBlock() {
+        // 5 was replaced in the send queue and never sent, nothing is outstanding
+        offer(4, 0, Long.MAX_VALUE);
+        offer(6, 1, Long.MAX_VALUE);
+        assertEquals(Arrays.asList(4L, 6L), released);
+    }
+
+    @Test
+    public void timesOutWaitingForLostFrame() {
+        offer(3, 0, 2);
+        offer(4, 50, 2);
+        buffer.drain(90 * MS, 2, released::add);
+        assertTrue(released.isEmpty());
+        buffer.drain(100 * MS, 2, released::add);
+        assertEquals(Arrays.asList(3L, 4L), released);
+
+        // the lost frame finally shows up and is thrown away
+        offer(2, 120, Long.MAX_VALUE);
+        assertEquals(Arrays.asList(3L, 4L), released);
+        assertEquals(Arrays.asList(2L), recycled);
+        assertEquals(1, buffer.getStaleCount());
+    }
+
+    @Test
+    public void fullBufferReleasesOldestInOrder() {
+        offer(10, 0, 1);
+        offer(12, 0, 1);
+        offer(11, 0, 1);
+        offer(13, 0, 1);
+        assertTrue(released.isEmpty());
+        // once 10 is forced out, frame 1 could only ever be stale, so the rest follow
+        offer(14, 0, 1);
+        assertEquals(Arrays.asList(10L, 11L, 12L, 13L, 14L), released);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void olderFrameArrivingWhenFullGoesStraightOut() {
+        offer(20, 0, 15);
+        offer(21, 0, 15);
+        offer(22, 0, 15);
+        offer(23, 0, 15);
+        offer(16, 0, 15);
+        assertEquals(Arrays.asList(16L, 20L, 21L, 22L, 23L), released);
+    }
+
+    @Test
+    public void keepsWaitingForOutstandingFrameNewerThanLastShown() {
+        offer(1, 0, Long.MAX_VALUE);
+        offer(3, 0, 2);
+        offer(4, 0, 2);
+        assertEquals(Arrays.asList(1L), released);
+        assertEquals(2, buffer.size());
+    }
+
+    @Test
+    public void flushReleasesEverythingInOrder() {
+        offer(3, 0, 1);
+        offer(2, 0, 1);
+        buffer.flush(released::add);
+        assertEquals(Arrays.asList(2L, 3L), released);
+        assertEquals(0, buffer.size());
+    }
+}
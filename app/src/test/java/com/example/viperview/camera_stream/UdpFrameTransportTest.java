@@ -0,0 +1,158 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class UdpFrameTransportTest {
+
+    private static final String HOST = InetAddress.getLoopbackAddress().getHostAddress();
+
+    private DatagramChannel server;
+    private UdpFrameTransport transport;
+
+    @After
+    public void tearDown() throws Exception {
+        if (transport != null)
+            transport.close();
+        if (server != null)
+            server.close();
+    }
+
+    @Test
+    public void uplinkAndLossyDownlinkOverLoopback() throws Exception {
+        server = DatagramChannel.open();
+        server.bind(new InetSocketAddress(HOST, 0));
+        server.configureBlocking(false);
+        int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+
+        transport = new UdpFrameTransport(UdpFrameTransport.DEFAULT_MAX_DATAGRAM_BYTES, 4, 500);
+        transport.connect(HOST, port, 1000);
+        LinkedBlockingQueue<byte[]> downlink = new LinkedBlockingQueue<>();
+        transport.startReceiving(new FrameTransport.Listener() {
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                byte[] copy = new byte[frame.remaining()];
+                frame.get(copy);
+                downlink.add(copy);
+            }
+
+            @Override
+            public void onClosed(Exception cause) {
+            }
+        });
+
+        // uplink: the server side reassembles what the phone sent (kept under the
+        // default socket receive buffer so loopback itself does not drop anything)
+        byte[] nv21 = UdpReassemblerTest.random(64 * 1024, 11);
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(nv21.length).put((byte) 0).flip();
+        transport.send(header, nv21, 0, nv21.length);
+
+        UdpReassembler serverSide = new UdpReassembler(UdpFrameTransport.DEFAULT_MAX_DATAGRAM_BYTES, 2,
+                TimeUnit.SECONDS.toNanos(1), new UdpStats());
+        ByteBuffer datagram = ByteBuffer.allocate(UdpFrameTransport.DEFAULT_MAX_DATAGRAM_BYTES);
+        byte[][] received = new byte[1][];
+        SocketAddress phone = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received[0] == null && System.currentTimeMillis() < deadline) {
+            datagram.clear();
+            SocketAddress from = server.receive(datagram);
+            if (from == null) {
+                Thread.sleep(1);
+                continue;
+            }
+            phone = from;
+            datagram.flip();
+            serverSide.onDatagram(datagram, System.nanoTime(), frame -> {
+                received[0] = new byte[frame.remaining()];
+                frame.get(received[0]);
+            });
+        }
+        assertNotNull(received[0]);
+        assertEquals(nv21.length + 5, received[0].length);
+        assertEquals(nv21[1234], received[0][5 + 1234]);
+
+        // downlink: every 5th data fragment is lost, parity fills the gaps
+        byte[] jpeg = UdpReassemblerTest.random(40_000, 12);
+        UdpFragmenter serverFragmenter = new UdpFragmenter(UdpFrameTransport.DEFAULT_MAX_DATAGRAM_BYTES, 4);
+        final SocketAddress target = phone;
+        for (byte[] d : UdpReassemblerTest.dropData(
+                UdpReassemblerTest.fragment(serverFragmenter, null, jpeg), i -> i % 5 == 2)) {
+            server.send(ByteBuffer.wrap(d), target);
+        }
+
+        byte[] frame = downlink.poll(5, TimeUnit.SECONDS);
+        assertNotNull(frame);
+        assertArrayEquals(jpeg, frame);
+        assertTrue(transport.getStats().getFragmentsRecovered() > 0);
+        assertEquals(1, transport.getStats().getFramesSent());
+    }
+
+    @Test
+    public void lostStreamHeaderIsRepeatedBeforeTheNextKeyFrame() throws Exception {
+        server = DatagramChannel.open();
+        server.bind(new InetSocketAddress(HOST, 0));
+        server.configureBlocking(false);
+        int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+        transport = new UdpFrameTransport();
+        transport.connect(HOST, port, 1000);
+
+        // what CameraStream does per frame, on a made-up clock: a key frame every 10 frames at 30 fps,
+        // then a stall of over a second before frame 12
+        InferenceEndpoint endpoint = new InferenceEndpoint(HOST, port);
+        StreamHeader format = new StreamHeader();
+        format.width = 640;
+        format.height = 480;
+        ByteBuffer scratch = ByteBuffer.allocate(StreamHeader.SIZE);
+        ByteBuffer header = ByteBuffer.allocate(4);
+        byte[] payload = new byte[100];
+        for (int sequence = 0; sequence < 13; sequence++) {
+            long nowNs = sequence < 12 ? sequence * 33_000_000L : 1_500_000_000L;
+            boolean keyFrame = sequence % 10 == 0;
+            if (endpoint.isStreamHeaderDue(transport, format, keyFrame, nowNs))
+                endpoint.sendStreamHeader(transport, format, scratch, nowNs);
+            header.clear();
+            header.putInt(sequence).flip();
+            transport.send(header, payload, 0, payload.length);
+        }
+
+        // the very first datagram, the only copy of the header so far, never arrives
+        UdpReassembler serverSide = new UdpReassembler(UdpFrameTransport.DEFAULT_MAX_DATAGRAM_BYTES, 2,
+                TimeUnit.SECONDS.toNanos(1), new UdpStats());
+        ByteBuffer datagram = ByteBuffer.allocate(UdpFrameTransport.DEFAULT_MAX_DATAGRAM_BYTES);
+        List<String> messages = new ArrayList<>();
+        boolean dropped = false;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (messages.size() < 15 && System.currentTimeMillis() < deadline) {
+            datagram.clear();
+            if (server.receive(datagram) == null) {
+                Thread.sleep(1);
+                continue;
+            }
+            if (!dropped) {
+                dropped = true;
+                continue;
+            }
+            datagram.flip();
+            serverSide.onDatagram(datagram, System.nanoTime(), frame -> {
+                int first = frame.getInt(frame.position());
+                messages.add(first == StreamHeader.MAGIC ? "header" : Integer.toString(first));
+            });
+        }
+
+        // frames 0-9 are undecodable, but the header is back ahead of key frame 10, and again after the stall
+        assertEquals("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9, header, 10, 11, header, 12]", messages.toString());
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.viperview.camera_stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static org.junit.Assert.*;
+
+public class UdpReassemblerTest {
+
+    private static final int DATAGRAM = 100;
+    private static final long DEADLINE_NS = 50_000_000L;
+
+    private final UdpStats stats = new UdpStats();
+    private final UdpReassembler reassembler = new UdpReassembler(DATAGRAM, 4, DEADLINE_NS, stats);
+    private final List<byte[]> delivered = new ArrayList<>();
+
+    @Test
+    public void reassemblesHeaderAndPayload() throws Exception {
+        UdpFragmenter fragmenter = new UdpFragmenter(DATAGRAM, 0);
+        byte[] payload = random(1000, 1);
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(payload.length).put((byte) 1).flip();
+
+        List<byte[]> datagrams = fragment(fragmenter, header, payload);
+        assertEquals(12, datagrams.size()); // 1005 bytes / 86 per fragment
+        feed(datagrams, 0);
+
+        assertEquals(1, delivered.size());
+        ByteBuffer frame = ByteBuffer.wrap(delivered.get(0));
+        assertEquals(payload.length, frame.getInt());
+        assertEquals(1, frame.get());
+        byte[] body = new byte[payload.length];
+        frame.get(body);
+        assertArrayEquals(payload, body);
+    }
+
+    @Test
+    public void outOfOrderFragmentsStillComplete() throws Exception {
+        byte[] payload = random(700, 2);
+        List<byte[]> datagrams = fragment(new UdpFragmenter(DATAGRAM, 0), null, payload);
+        Collections.shuffle(datagrams, new Random(3));
+        feed(datagrams, 0);
+
+        assertEquals(1, delivered.size());
+        assertArrayEquals(payload, delivered.get(0));
+    }
+
+    @Test
+    public void parityRebuildsOneLostFragmentPerGroup() throws Exception {
+        UdpFragmenter fragmenter = new UdpFragmenter(DATAGRAM, 4);
+        byte[] payload = random(1500, 4); // 18 fragments, last one short
+
+        // drop data fragments 1, 6 and the short last one, one per parity group
+        List<byte[]> datagrams = dropData(fragment(fragmenter, null, payload), i -> i == 1 || i == 6 || i == 17);
+        feed(datagrams, 0);
+
+        assertEquals(1, delivered.size());
+        assertArrayEquals(payload, delivered.get(0));
+        assertEquals(3, stats.getFragmentsRecovered());
+    }
+
+    @Test
+    public void twoLossesInOneGroupExpireAfterDeadline() throws Exception {
+        UdpFragmenter fragmenter = new UdpFragmenter(DATAGRAM, 4);
+        List<byte[]> datagrams = dropData(fragment(fragmenter, null, random(800, 5)), i -> i == 0 || i == 1);
+        feed(datagrams, 0);
+        assertTrue(delivered.isEmpty());
+
+        reassembler.expire(DEADLINE_NS / 2);
+        assertEquals(0, stats.getFramesLost());
+        reassembler.expire(DEADLINE_NS + 1);
+        assertEquals(1, stats.getFramesLost());
+    }
+
+    @Test
+    public void newerFrameOvertakesIncompleteOneAndLateFragmentsAreCounted() throws Exception {
+        UdpFragmenter fragmenter = new UdpFragmenter(DATAGRAM, 0);
+        List<byte[]> first = fragment(fragmenter, null, random(500, 6));
+        List<byte[]> second = fragment(fragmenter, null, random(500, 7));
+
+        feed(first.subList(0, 3), 0);
+        feed(second, 1);
+        assertEquals(1, delivered.size());
+        assertEquals(1, stats.getFramesLost());
+
+        feed(first.subList(3, first.size()), 2);
+        assertEquals(1, delivered.size());
+        assertEquals(first.size() - 3, stats.getLateFragments());
+    }
+
+    @Test
+    public void senderRestartIsPickedUpAfterDeadline() throws Exception {
+        UdpFragmenter sender = new UdpFragmenter(DATAGRAM, 0);
+        for (int i = 0; i < 5; i++)
+            feed(fragment(sender, null, random(300, i)), 0);
+        assertEquals(5, delivered.size());
+
+        // restarted sender numbers from 0 again; inside the deadline it looks late
+        UdpFragmenter restarted = new UdpFragmenter(DATAGRAM, 0);
+        List<byte[]> first = fragment(restarted, null, random(300, 10));
+        feed(first, DEADLINE_NS / 2);
+        assertEquals(5, delivered.size());
+        assertEquals(first.size(), stats.getLateFragments());
+
+        byte[] payload = random(300, 11);
+        feed(fragment(restarted, null, payload), DEADLINE_NS + 1);
+        assertEquals(6, delivered.size());
+        assertArrayEquals(payload, delivered.get(5));
+        assertEquals(1, stats.getSenderRestarts());
+
+        feed(fragment(restarted, null, random(300, 12)), DEADLINE_NS + 2);
+        assertEquals(7, delivered.size());
+    }
+
+    @Test
+    public void largeBackwardJumpRestartsImmediately() throws Exception {
+        UdpFragmenter sender = new UdpFragmenter(DATAGRAM, 0);
+        feed(renumber(fragment(sender, null, random(300, 13)), UdpReassembler.RESTART_WINDOW * 10), 0);
+        assertEquals(1, delivered.size());
+
+        byte[] payload = random(300, 14);
+        feed(fragment(sender, null, payload), 1);
+        assertEquals(2, delivered.size());
+        assertArrayEquals(payload, delivered.get(1));
+        assertEquals(0, stats.getLateFragments());
+        assertEquals(1, stats.getSenderRestarts());
+    }
+
+    @Test
+    public void duplicatesAndGarbageAreIgnored() throws Exception {
+        List<byte[]> datagrams = fragment(new UdpFragmenter(DATAGRAM, 0), null, random(300, 8));
+        feed(datagrams.subList(0, 1), 0);
+        feed(datagrams.subList(0, 1), 0);
+        reassembler.onDatagram(ByteBuffer.wrap(new byte[5]), 0, frame -> fail());
+        feed(datagrams.subList(1, datagrams.size()), 0);
+
+        assertEquals(1, delivered.size());
+        assertEquals(1, stats.getDuplicateFragments());
+        assertEquals(1, stats.getMalformedDatagrams());
+    }
+
+    private void feed(List<byte[]> datagrams, long now) {
+        for (byte[] datagram : datagrams) {
+            reassembler.onDatagram(ByteBuffer.wrap(datagram), now, frame -> {
+                byte[] copy = new byte[frame.remaining()];
+                frame.get(copy);
+                delivered.add(copy);
+            });
+        }
+    }
+
+    static List<byte[]> fragment(UdpFragmenter fragmenter, ByteBuffer header, byte[] payload) throws Exception {
+        List<byte[]> datagrams = new ArrayList<>();
+        fragmenter.send(header, payload, 0, payload.length, datagram -> {
+            byte[] copy = new byte[datagram.remaining()];
+            datagram.get(copy);
+            datagrams.add(copy);
+        });
+        return datagrams;
+    }
+
+    static List<byte[]> dropData(List<byte[]> datagrams, IntPredicate drop) {
+        List<byte[]> kept = new ArrayList<>();
+        for (byte[] datagram : datagrams) {
+            ByteBuffer view = ByteBuffer.wrap(datagram);
+            boolean parity = (view.get(0) & UdpFragmenter.FLAG_PARITY) != 0;
+            int index = view.getShort(6) & 0xFFFF;
+            if (parity || !drop.test(index))
+                kept.add(datagram);
+        }
+        return kept;
+    }
+
+    static List<byte[]> renumber(List<byte[]> datagrams, int frameId) {
+        for (byte[] datagram : datagrams)
+            ByteBuffer.wrap(datagram).putInt(2, frameId);
+        return datagrams;
+    }
+
+    static byte[] random(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
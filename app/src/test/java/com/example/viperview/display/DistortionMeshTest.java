@@ -0,0 +1,90 @@
+package com.example.viperview.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DistortionMeshTest {
+
+    @Test
+    public void undistortInvertsDistort() {
+        DistortionMesh mesh = new DistortionMesh(4, 4);
+        for (float r = 0; r <= 1.5f; r += 0.05f) {
+            assertEquals(r, mesh.undistort(mesh.distort(r)), 1e-4);
+            assertEquals(r, mesh.distort(mesh.undistort(r)), 1e-4);
+        }
+    }
+
+    @Test
+    public void zeroCoefficientsGiveAPlainGrid() {
+        DistortionMesh mesh = new DistortionMesh(2, 2);
+        mesh.setCoefficients(0, 0);
+        mesh.build(10, 20, 100, 50, 60, 45, 100);
+        float[] v = mesh.getVertices();
+        assertEquals(18, v.length);
+        // row 1, col 2
+        assertEquals(110, v[(1 * 3 + 2) * 2], 1e-4);
+        assertEquals(45, v[(1 * 3 + 2) * 2 + 1], 1e-4);
+        assertEquals(10, v[0], 1e-4);
+        assertEquals(70, v[17], 1e-4);
+    }
+
+    @Test
+    public void barrelPullsCornersTowardsTheLens() {
+        DistortionMesh mesh = new DistortionMesh(4, 4);
+        mesh.build(0, 0, 200, 100, 100, 50, 100);
+        float[] v = mesh.getVertices();
+        // the centre vertex sits on the lens and does not move
+        int centre = (2 * 5 + 2) * 2;
+        assertEquals(100, v[centre], 1e-4);
+        assertEquals(50, v[centre + 1], 1e-4);
+        // the top-left corner is pulled in along its own radius
+        float dx = v[0] - 100, dy = v[1] - 50;
+        float r = (float) Math.hypot(dx, dy) / 100;
+        float expected = mesh.undistort((float) Math.hypot(100, 50) / 100);
+        assertEquals(expected, r, 1e-4);
+        assertTrue(r < Math.hypot(100, 50) / 100);
+        assertEquals(2, dx / dy, 1e-4);
+    }
+
+    @Test
+    public void viewingThroughTheLensRestoresTheGrid() {
+        DistortionMesh mesh = new DistortionMesh(8, 8);
+        mesh.build(-40, 0, 280, 160, 100, 80, 120);
+        float[] v = mesh.getVertices();
+        for (int row = 0; row <= 8; row++) {
+            for (int col = 0; col <= 8; col++) {
+                int i = (row * 9 + col) * 2;
+                float dx = (v[i] - 100) / 120, dy = (v[i + 1] - 80) / 120;
+                float r = (float) Math.hypot(dx, dy);
+                float scale = r == 0 ? 1 : mesh.distort(r) / r;
+                assertEquals(-40 + 280 * col / 8f, 100 + dx * scale * 120, 1e-2);
+                assertEquals(160 * row / 8f, 80 + dy * scale * 120, 1e-2);
+            }
+        }
+    }
+
+    @Test
+    public void warpMovesPointsLikeTheMesh() {
+        DistortionMesh mesh = new DistortionMesh(2, 2);
+        mesh.build(0, 0, 100, 100, 50, 50, 60);
+        float[] points = { 0, 0, 100, 50, 50, 50 };
+        mesh.warp(points, 0, points.length);
+        float[] v = mesh.getVertices();
+        assertEquals(v[0], points[0], 1e-5);
+        assertEquals(v[1], points[1], 1e-5);
+        assertEquals(v[(1 * 3 + 2) * 2], points[2], 1e-5);
+        assertEquals(v[(1 * 3 + 2) * 2 + 1], points[3], 1e-5);
+        assertEquals(50, points[4], 1e-5);
+    }
+
+    @Test
+    public void lensCentresAreIpdApartAroundTheMiddle() {
+        float eyeWidth = 1200, ipd = 400;
+        float left = DistortionMesh.lensCenterX(true, eyeWidth, ipd);
+        float right = eyeWidth + DistortionMesh.lensCenterX(false, eyeWidth, ipd);
+        assertEquals(ipd, right - left, 1e-4);
+        assertEquals(eyeWidth, (left + right) / 2, 1e-4);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.viperview.display;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.viperview.tracking.OrientationRingBuffer;
+
+import org.junit.Test;
+
+public class ReprojectionTest {
+
+    private static final long MS = 1_000_000L;
+
+    private static float[] axisAngle(float x, float y, float z, double angle) {
+        float s = (float) Math.sin(angle / 2);
+        return new float[] { (float) Math.cos(angle / 2), x * s, y * s, z * s };
+    }
+
+    // device to world for a phone already turned by base, then by delta in its own frame
+    private static float[] then(float[] base, float[] delta) {
+        float[] out = new float[4];
+        float[] inverse = { base[0], -base[1], -base[2], -base[3] };
+        // relativeRotation(inverse, delta) = base * delta
+        Reprojection.relativeRotation(inverse, delta, out);
+        return out;
+    }
+
+    @Test
+    public void noTurnNoShift() {
+        Reprojection reprojection = new Reprojection();
+        float[] q = axisAngle(0, 0, 1, 0.7);
+        reprojection.compute(q, q, 1000);
+        assertEquals(0, reprojection.shiftX, 1e-3);
+        assertEquals(0, reprojection.shiftY, 1e-3);
+        assertEquals(0, reprojection.rollDegrees, 1e-3);
+    }
+
+    @Test
+    public void turnsMoveTheFrameTheOtherWay() {
+        Reprojection reprojection = new Reprojection();
+        float[] base = axisAngle(1, 0, 0, 1.2); // any starting pose, the delta is in the device frame
+        float[] capture = base;
+
+        // camera swings towards device -X: the old frame slides towards +X
+        reprojection.compute(capture, then(base, axisAngle(0, 1, 0, 0.1)), 800);
+        assertEquals(800 * Math.tan(0.1), reprojection.shiftX, 1e-2);
+        assertEquals(0, reprojection.shiftY, 1e-2);
+
+        // camera tilts up: the frame moves down the screen
+        reprojection.compute(capture, then(base, axisAngle(1, 0, 0, 0.05)), 800);
+        assertEquals(0, reprojection.shiftX, 1e-2);
+        assertEquals(800 * Math.tan(0.05), reprojection.shiftY, 1e-2);
+
+        // counter-clockwise roll: clockwise on screen
+        reprojection.compute(capture, then(base, axisAngle(0, 0, 1, 0.2)), 800);
+        assertEquals(Math.toDegrees(0.2), reprojection.rollDegrees, 1e-2);
+    }
+
+    @Test
+    public void landscapeSwapsTheAxes() {
+        Reprojection reprojection = new Reprojection();
+        float[] capture = { 1, 0, 0, 0 };
+        float[] yaw = axisAngle(0, 1, 0, 0.1);
+        float[] pitch = axisAngle(1, 0, 0, 0.1);
+        float shift = (float) (500 * Math.tan(0.1));
+
+        // ROTATION_90: device top to the left, so device +X points up the screen
+        reprojection.setScreenRotation(1);
+        reprojection.compute(capture, yaw, 500);
+        assertEquals(0, reprojection.shiftX, 1e-2);
+        assertEquals(-shift, reprojection.shiftY, 1e-2);
+        reprojection.compute(capture, pitch, 500);
+        assertEquals(shift, reprojection.shiftX, 1e-2);
+        assertEquals(0, reprojection.shiftY, 1e-2);
+
+        reprojection.setScreenRotation(3);
+        reprojection.compute(capture, yaw, 500);
+        assertEquals(shift, reprojection.shiftY, 1e-2);
+    }
+
+    @Test
+    public void largeTurnsAreClamped() {
+        Reprojection reprojection = new Reprojection();
+        reprojection.compute(new float[] { 1, 0, 0, 0 }, axisAngle(0, 1, 0, 1.4), 100);
+        assertEquals(100 * Math.tan(Reprojection.MAX_ANGLE), reprojection.shiftX, 1e-3);
+    }
+
+    @Test
+    public void followsASyntheticHeadTurnThroughTheRing() {
+        // 200 Hz trace of a 60 deg/s yaw; a frame captured 150 ms before display
+        OrientationRingBuffer buffer = new OrientationRingBuffer(512);
+        double rate = Math.toRadians(60) / 1e9;
+        for (long t = 0; t <= 1000 * MS; t += 5 * MS) {
+            float[] q = axisAngle(0, 1, 0, rate * t);
+            buffer.add(t, q[0], q[1], q[2], q[3]);
+        }
+        float[] capture = new float[4], display = new float[4];
+        buffer.sample(802 * MS, capture);
+        buffer.sample(952 * MS, display);
+
+        Reprojection reprojection = new Reprojection();
+        reprojection.compute(capture, display, 1000);
+        assertEquals(1000 * Math.tan(rate * 150 * MS), reprojection.shiftX, 0.5);
+        assertEquals(0, reprojection.shiftY, 1e-3);
+    }
+}
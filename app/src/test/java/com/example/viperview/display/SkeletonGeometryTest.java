@@ -0,0 +1,92 @@
+package com.example.viperview.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.example.viperview.yolo.PoseDetections;
+
+import org.junit.Test;
+
+public class SkeletonGeometryTest {
+
+    private static PoseDetections onePerson(float confidence) {
+        PoseDetections detections = new PoseDetections();
+        int d = detections.add(0.5f, 0.5f, 0.2f, 0.4f, 0.9f);
+        for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++)
+            detections.setKeypoint(d, k, 0.4f + k * 0.01f, 0.3f + k * 0.02f, confidence);
+        return detections;
+    }
+
+    @Test
+    public void mapsLikeCenterCrop() {
+        SkeletonGeometry geometry = new SkeletonGeometry();
+        // 640x480 frame into a 1000x500 view: scaled to 1000x750, 125 px cut top and bottom
+        geometry.setCenterCrop(640, 480, 1000, 500);
+        assertEquals(0, geometry.mapX(0), 1e-3);
+        assertEquals(1000, geometry.mapX(1), 1e-3);
+        assertEquals(-125, geometry.mapY(0), 1e-3);
+        assertEquals(250, geometry.mapY(0.5f), 1e-3);
+        assertEquals(625, geometry.mapY(1), 1e-3);
+    }
+
+    @Test
+    public void centerZoomFollowsTheCrop() {
+        SkeletonGeometry geometry = new SkeletonGeometry();
+        geometry.setCenterCrop(100, 100, 100, 100);
+        geometry.setCenterZoom(2);
+        assertEquals(50, geometry.mapX(0.5f), 1e-3);
+        // a quarter of the way in is the left edge after a 2x centre crop
+        assertEquals(0, geometry.mapX(0.25f), 1e-3);
+        assertEquals(100, geometry.mapY(0.75f), 1e-3);
+    }
+
+    @Test
+    public void buildsBoxesJointsAndBones() {
+        SkeletonGeometry geometry = new SkeletonGeometry();
+        geometry.setCenterCrop(100, 100, 100, 100);
+        geometry.build(onePerson(0.9f), true, true);
+
+        assertEquals(4, geometry.rectCount);
+        assertEquals(40, geometry.rects[0], 1e-3);
+        assertEquals(30, geometry.rects[1], 1e-3);
+        assertEquals(60, geometry.rects[2], 1e-3);
+        assertEquals(70, geometry.rects[3], 1e-3);
+        assertEquals(PoseDetections.NUM_KEYPOINTS * 2, geometry.pointCount);
+        assertEquals(PoseDetections.SKELETON_PAIRS.length * 4, geometry.lineCount);
+        // first bone is the shoulders, keypoints 5 and 6
+        assertEquals(45, geometry.lines[0], 1e-3);
+        assertEquals(46, geometry.lines[2], 1e-3);
+    }
+
+    @Test
+    public void skipsLowConfidenceKeypointsAndHiddenLayers() {
+        SkeletonGeometry geometry = new SkeletonGeometry();
+        geometry.setCenterCrop(100, 100, 100, 100);
+        geometry.build(onePerson(0.1f), true, false);
+        assertEquals(0, geometry.pointCount);
+        assertEquals(0, geometry.lineCount);
+        assertEquals(0, geometry.rectCount);
+
+        geometry.build(onePerson(0.9f), false, true);
+        assertEquals(0, geometry.pointCount);
+        assertEquals(4, geometry.rectCount);
+    }
+
+    @Test
+    public void arraysAreReusedOnceLargeEnough() {
+        SkeletonGeometry geometry = new SkeletonGeometry();
+        PoseDetections crowd = new PoseDetections();
+        for (int i = 0; i < 10; i++) {
+            PoseDetections person = onePerson(0.9f);
+            int d = crowd.add(0.5f, 0.5f, 0.1f, 0.1f, 0.9f);
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++)
+                crowd.setKeypoint(d, k, person.keypointX(0, k), person.keypointY(0, k), 0.9f);
+        }
+        geometry.build(crowd, true, true);
+        float[] lines = geometry.lines;
+        assertEquals(10 * PoseDetections.SKELETON_PAIRS.length * 4, geometry.lineCount);
+        geometry.build(onePerson(0.9f), true, true);
+        geometry.build(crowd, true, true);
+        assertSame(lines, geometry.lines);
+    }
+}
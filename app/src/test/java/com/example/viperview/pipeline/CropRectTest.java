@@ -0,0 +1,53 @@
+package com.example.viperview.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CropRectTest {
+
+    @Test
+    public void centerZoomKeepsTheMiddle() {
+        assertSame(CropRect.FULL, CropRect.centerZoom(1f));
+        assertSame(CropRect.FULL, CropRect.centerZoom(0.5f));
+        CropRect crop = CropRect.centerZoom(2f);
+        assertEquals(0.25f, crop.left, 1e-6f);
+        assertEquals(0.75f, crop.bottom, 1e-6f);
+        assertEquals(0.5f, crop.width(), 1e-6f);
+        assertTrue(CropRect.FULL.isFull());
+    }
+
+    @Test
+    public void cropAndFrameCoordinatesRoundTrip() {
+        CropRect crop = new CropRect(0.2f, 0.1f, 0.6f, 0.9f);
+        assertEquals(0.2f, crop.toFrameX(0f), 1e-6f);
+        assertEquals(0.9f, crop.toFrameY(1f), 1e-6f);
+        for (float v = 0; v <= 1; v += 0.125f) {
+            assertEquals(v, crop.toCropX(crop.toFrameX(v)), 1e-5f);
+            assertEquals(v, crop.toCropY(crop.toFrameY(v)), 1e-5f);
+        }
+    }
+
+    @Test
+    public void toPixelsAlignsForChroma() {
+        int[] out = new int[4];
+        CropRect crop = CropRect.centerZoom(3f);
+        crop.toPixels(640, 480, 1, out);
+        assertArrayEquals(new int[] { 213, 160, 214, 160 }, out);
+        crop.toPixels(640, 480, 2, out);
+        for (int value : out)
+            assertEquals(0, value % 2);
+        assertTrue(out[0] + out[2] <= 640 && out[1] + out[3] <= 480);
+
+        CropRect.FULL.toPixels(641, 481, 2, out);
+        assertArrayEquals(new int[] { 0, 0, 640, 480 }, out);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyRect() {
+        new CropRect(0.5f, 0.2f, 0.5f, 0.8f);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.viperview.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FrameBusTest {
+
+    private final FrameBus<Integer> bus = new FrameBus<>("test");
+    private final List<Integer> closed = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        bus.close();
+    }
+
+    private RefCountedPool.Ref<Integer> frame(int id) {
+        return RefCountedPool.wrap(id, closed::add);
+    }
+
+    private void awaitClosed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (closed.size() < count && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertEquals(count, closed.size());
+    }
+
+    @Test
+    public void withoutSubscribersFramesGoStraightBack() {
+        assertFalse(bus.hasSubscribers());
+        bus.publish(frame(1));
+        assertEquals(Collections.singletonList(1), closed);
+    }
+
+    @Test
+    public void frameIsClosedOnlyAfterEverySubscriberIsDone() throws Exception {
+        CountDownLatch fastDone = new CountDownLatch(1);
+        CountDownLatch slowGo = new CountDownLatch(1);
+        bus.subscribe("fast", FrameBus.Backpressure.LATEST, 1, frame -> fastDone.countDown());
+        bus.subscribe("slow", FrameBus.Backpressure.LATEST, 1, frame -> slowGo.await());
+
+        bus.publish(frame(1));
+        assertTrue(fastDone.await(2, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        assertTrue(closed.isEmpty());
+        slowGo.countDown();
+        awaitClosed(1);
+    }
+
+    @Test
+    public void latestReplacesWaitingFramesAndReleasesThem() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        FrameBus<Integer>.Subscription subscription = bus.subscribe("infer", FrameBus.Backpressure.LATEST, 1, frame -> {
+            seen.add(frame.get());
+            started.countDown();
+            go.await();
+        });
+
+        bus.publish(frame(1));
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        for (int i = 2; i <= 5; i++)
+            bus.publish(frame(i)); // publishing never waits for a LATEST subscriber
+        go.countDown();
+        awaitClosed(5);
+        assertEquals(List.of(1, 5), seen);
+        assertEquals(3, subscription.getReplacedCount());
+    }
+
+    @Test
+    public void blockDeliversEveryFrameInOrder() throws Exception {
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        bus.subscribe("recorder", FrameBus.Backpressure.BLOCK, 2, frame -> {
+            Thread.sleep(2);
+            seen.add(frame.get());
+        });
+        for (int i = 0; i < 20; i++)
+            bus.publish(frame(i));
+        awaitClosed(20);
+        for (int i = 0; i < 20; i++)
+            assertEquals(i, (int) seen.get(i));
+    }
+
+    @Test
+    public void failingSubscriberStillReleases() throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        bus.setFailureHandler((subscription, e) -> failures.incrementAndGet());
+        bus.subscribe("broken", FrameBus.Backpressure.LATEST, 1, frame -> {
+            throw new IllegalStateException("boom");
+        });
+        bus.publish(frame(1));
+        awaitClosed(1);
+        assertEquals(1, failures.get());
+    }
+
+    @Test
+    public void cancelReleasesWaitingFrames() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        FrameBus<Integer>.Subscription subscription = bus.subscribe("slow", FrameBus.Backpressure.BLOCK, 4, frame -> {
+            started.countDown();
+            Thread.sleep(10_000);
+        });
+        bus.publish(frame(1));
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        bus.publish(frame(2));
+        bus.publish(frame(3));
+        subscription.cancel();
+        awaitClosed(3);
+        assertFalse(bus.hasSubscribers());
+    }
+}
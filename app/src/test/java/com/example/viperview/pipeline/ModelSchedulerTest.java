@@ -0,0 +1,353 @@
+package com.example.viperview.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.viperview.yolo.Quantization;
+import com.example.viperview.yolo.TensorPreprocessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ModelSchedulerTest {
+
+    private static final long FRAME_30FPS_NS = 33_333_333L;
+
+    private static final class FakeModel implements ScheduledModel<List<String>> {
+        final String name;
+        final int width;
+        final int height;
+        Quantization quantization;
+        long costNs;
+        boolean fail;
+        int runs;
+        float firstValue;
+
+        FakeModel(String name, int width, int height) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getInputWidth() {
+            return width;
+        }
+
+        @Override
+        public int getInputHeight() {
+            return height;
+        }
+
+        @Override
+        public Quantization getInputQuantization() {
+            return quantization;
+        }
+
+        @Override
+        public void run(ByteBuffer input, long timestampNs, List<String> context) {
+            if (fail)
+                throw new IllegalStateException("broken");
+            assertEquals(width * height * 3 * (quantization == null ? 4 : 1), input.remaining());
+            firstValue = quantization == null ? input.order(ByteOrder.nativeOrder()).getFloat(0)
+                    : quantization.dequantize(input.get(0));
+            long end = System.nanoTime() + costNs;
+            while (System.nanoTime() < end) {
+                // busy wait, sleeps are too coarse for a few ms
+            }
+            runs++;
+            context.add(name);
+        }
+    }
+
+    // square sizes it can switch between; records the size of every tensor it ran on
+    private static final class ResizableModel implements ScheduledModel<List<String>> {
+        final int[] sizes;
+        int size;
+        final List<Integer> seen = new ArrayList<>();
+
+        ResizableModel(int... sizes) {
+            this.sizes = sizes;
+            this.size = sizes[0];
+        }
+
+        @Override
+        public String getName() {
+            return "resizable";
+        }
+
+        @Override
+        public int getInputWidth() {
+            return size;
+        }
+
+        @Override
+        public int getInputHeight() {
+            return size;
+        }
+
+        @Override
+        public int[][] getInputSizes() {
+            int[][] pairs = new int[sizes.length][];
+            for (int i = 0; i < sizes.length; i++)
+                pairs[i] = new int[] { sizes[i], sizes[i] };
+            return pairs;
+        }
+
+        @Override
+        public void run(ByteBuffer input, long timestampNs, List<String> context) {
+            throw new AssertionError("the scheduler passes the size");
+        }
+
+        @Override
+        public void run(ByteBuffer input, int width, int height, long timestampNs, List<String> context) {
+            assertEquals(width * height * 3 * 4, input.remaining());
+            seen.add(width);
+        }
+    }
+
+    // counts how often the frame had to be resized, and fills every pixel with grey
+    private static final class CountingSource implements TensorSource {
+        int writes;
+
+        @Override
+        public void writeTo(TensorPreprocessor preprocessor, FloatBuffer out) {
+            writes++;
+            int[] pixels = new int[16 * 16];
+            Arrays.fill(pixels, 0xFF808080);
+            preprocessor.fromArgb(pixels, 16, 16, 16, out);
+        }
+
+        @Override
+        public void writeTo(TensorPreprocessor preprocessor, ByteBuffer out) {
+            writes++;
+            int[] pixels = new int[16 * 16];
+            Arrays.fill(pixels, 0xFF808080);
+            preprocessor.fromArgb(pixels, 16, 16, 16, out);
+        }
+    }
+
+    @Test
+    public void modelsRunAtTheirOwnRates() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        FakeModel pose = new FakeModel("pose", 32, 32);
+        FakeModel seg = new FakeModel("seg", 32, 32);
+        scheduler.register(pose, 30, 10);
+        scheduler.register(seg, 5, 5);
+
+        CountingSource source = new CountingSource();
+        for (int i = 0; i < 90; i++)
+            scheduler.process(source, i * FRAME_30FPS_NS, new ArrayList<>());
+
+        assertEquals(90, pose.runs);
+        assertEquals(15, seg.runs, 1);
+        assertEquals(90, scheduler.getStats(pose).getRunCount());
+        assertEquals(90 - seg.runs, scheduler.getStats(seg).getRateSkipCount());
+    }
+
+    @Test
+    public void sameInputSizeIsPreprocessedOncePerFrame() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        FakeModel pose = new FakeModel("pose", 32, 32);
+        FakeModel detect = new FakeModel("detect", 32, 32);
+        FakeModel seg = new FakeModel("seg", 16, 24);
+        scheduler.register(pose, 0, 10);
+        scheduler.register(detect, 0, 5);
+        scheduler.register(seg, 0, 1);
+        assertEquals(2, scheduler.getInputShapeCount());
+
+        CountingSource source = new CountingSource();
+        List<String> order = new ArrayList<>();
+        assertTrue(scheduler.process(source, 0, order));
+
+        assertEquals(2, source.writes);
+        assertEquals(2, scheduler.getPreprocessCount());
+        assertEquals(List.of("pose", "detect", "seg"), order);
+        // both models saw the same prepared grey tensor
+        assertEquals(128 / 255f, pose.firstValue, 1e-6f);
+        assertEquals(128 / 255f, detect.firstValue, 1e-6f);
+    }
+
+    @Test
+    public void quantizedModelGetsItsOwnByteTensor() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        FakeModel pose = new FakeModel("pose", 32, 32);
+        FakeModel quantized = new FakeModel("quantized", 32, 32);
+        quantized.quantization = new Quantization(1 / 255f, -128, true);
+        FakeModel quantizedToo = new FakeModel("quantizedToo", 32, 32);
+        quantizedToo.quantization = new Quantization(1 / 255f, -128, true);
+        scheduler.register(pose, 0, 10);
+        scheduler.register(quantized, 0, 5);
+        scheduler.register(quantizedToo, 0, 1);
+        assertEquals(2, scheduler.getInputShapeCount());
+
+        CountingSource source = new CountingSource();
+        assertTrue(scheduler.process(source, 0, new ArrayList<>()));
+        assertEquals(2, source.writes);
+        assertEquals(128 / 255f, pose.firstValue, 1e-6f);
+        assertEquals(128 / 255f, quantized.firstValue, 1e-6f);
+        assertEquals(128 / 255f, quantizedToo.firstValue, 1e-6f);
+    }
+
+    @Test
+    public void nothingDueMeansNoPlanAndNoPreprocessing() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        FakeModel seg = new FakeModel("seg", 32, 32);
+        scheduler.register(seg, 5, 1);
+        CountingSource source = new CountingSource();
+
+        assertTrue(scheduler.process(source, 0, new ArrayList<>()));
+        assertNull(scheduler.plan(FRAME_30FPS_NS));
+        assertEquals(1, source.writes);
+        assertEquals(1, scheduler.getStats(seg).getRateSkipCount());
+    }
+
+    @Test
+    public void budgetDefersLowPriorityModelsWithoutStarvingThem() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        FakeModel pose = new FakeModel("pose", 32, 32);
+        FakeModel seg = new FakeModel("seg", 32, 32);
+        pose.costNs = 3_000_000;
+        seg.costNs = 3_000_000;
+        scheduler.register(pose, 0, 2);
+        scheduler.register(seg, 0, 1);
+        scheduler.setFrameBudgetMs(4);
+
+        CountingSource source = new CountingSource();
+        List<String> order = new ArrayList<>();
+        // the first frame has no cost estimates yet, so both run and get measured
+        for (int i = 0; i < 20; i++)
+            scheduler.process(source, i * FRAME_30FPS_NS, order);
+
+        ModelScheduler.ModelStats segStats = scheduler.getStats(seg);
+        assertTrue(segStats.getEstimatedMs() >= 3);
+        assertTrue(segStats.getBudgetSkipCount() > 0);
+        assertTrue(scheduler.getStats(pose).getBudgetSkipCount() > 0);
+        // deferrals age seg up until it gets a turn: the two share the frames
+        assertEquals(21, pose.runs + seg.runs, 1);
+        assertTrue("seg ran " + seg.runs, seg.runs >= 5);
+        assertTrue(scheduler.summary().contains("budgetSkip"));
+    }
+
+    @Test
+    public void disabledModelIsNeitherRunNorCountedAsSkipped() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        FakeModel pose = new FakeModel("pose", 32, 32);
+        scheduler.register(pose, 0, 1);
+        scheduler.setEnabled(pose, false);
+
+        assertNull(scheduler.plan(0));
+        scheduler.setEnabled(pose, true);
+        assertTrue(scheduler.process(new CountingSource(), FRAME_30FPS_NS, new ArrayList<>()));
+        assertEquals(1, pose.runs);
+        assertEquals(0, scheduler.getStats(pose).getRateSkipCount());
+    }
+
+    @Test
+    public void failingModelDoesNotStopTheOthers() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        FakeModel broken = new FakeModel("broken", 32, 32);
+        FakeModel pose = new FakeModel("pose", 32, 32);
+        broken.fail = true;
+        scheduler.register(broken, 0, 10);
+        scheduler.register(pose, 0, 1);
+
+        List<String> order = new ArrayList<>();
+        scheduler.process(new CountingSource(), 0, order);
+        assertEquals(List.of("pose"), order);
+        assertEquals(1, scheduler.getStats(broken).getFailureCount());
+    }
+
+    @Test
+    public void repeatedFailuresAreReportedAtARateLimit() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        FakeModel broken = new FakeModel("broken", 32, 32);
+        broken.fail = true;
+        scheduler.register(broken, 0, 10);
+        List<String> reported = new ArrayList<>();
+        scheduler.setFailureHandler((stats, e) -> reported.add(stats.getName()));
+
+        long interval = ModelScheduler.FAILURE_REPORT_INTERVAL_NS;
+        for (long t = 0; t < interval; t += FRAME_30FPS_NS)
+            scheduler.process(new CountingSource(), t, new ArrayList<>());
+        assertEquals(List.of("broken"), reported);
+
+        scheduler.process(new CountingSource(), interval, new ArrayList<>());
+        assertEquals(2, reported.size());
+        assertEquals(interval / FRAME_30FPS_NS + 2, scheduler.getStats(broken).getFailureCount());
+    }
+
+    @Test
+    public void plansCanBePreparedWhileAnotherIsDispatched() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(2);
+        FakeModel pose = new FakeModel("pose", 32, 32);
+        scheduler.register(pose, 0, 1);
+        CountingSource source = new CountingSource();
+
+        ModelScheduler<List<String>>.Plan first = scheduler.plan(0);
+        scheduler.prepare(first, source);
+        ModelScheduler<List<String>>.Plan second = scheduler.plan(FRAME_30FPS_NS);
+        assertNotNull(second);
+        assertTrue(first != second);
+        assertEquals(FRAME_30FPS_NS, second.getTimestampNs());
+        assertEquals("pose", second.getModelName(0));
+        scheduler.dispatch(first, new ArrayList<>());
+        scheduler.release(first);
+        scheduler.release(second);
+    }
+
+    @Test
+    public void resizableModelRunsAtTheSizeItHadWhenPlanned() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(2);
+        ResizableModel pose = new ResizableModel(16, 32);
+        FakeModel detect = new FakeModel("detect", 32, 32);
+        scheduler.register(pose, 0, 10);
+        scheduler.register(detect, 0, 5);
+        assertEquals(2, scheduler.getInputShapeCount());
+        CountingSource source = new CountingSource();
+
+        ModelScheduler<List<String>>.Plan first = scheduler.plan(0);
+        scheduler.prepare(first, source);
+        assertEquals(2, source.writes);
+        // switched while the first frame is still on its way to dispatch
+        pose.size = 32;
+        scheduler.dispatch(first, new ArrayList<>());
+        scheduler.release(first);
+        assertEquals(List.of(16), pose.seen);
+
+        // now both models want 32x32 and share one tensor
+        assertTrue(scheduler.process(source, FRAME_30FPS_NS, new ArrayList<>()));
+        assertEquals(3, source.writes);
+        assertEquals(List.of(16, 32), pose.seen);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unlistedInputSizeIsRejected() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        ResizableModel pose = new ResizableModel(16, 32);
+        scheduler.register(pose, 0, 1);
+        pose.size = 24;
+        scheduler.plan(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void registrationClosesOnFirstPlan() throws Exception {
+        ModelScheduler<List<String>> scheduler = new ModelScheduler<>(1);
+        scheduler.register(new FakeModel("pose", 32, 32), 0, 1);
+        scheduler.plan(0);
+        scheduler.register(new FakeModel("late", 32, 32), 0, 1);
+    }
+}
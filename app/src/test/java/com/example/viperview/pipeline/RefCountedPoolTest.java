@@ -0,0 +1,115 @@
+package com.example.viperview.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RefCountedPoolTest {
+
+    private final List<int[]> disposed = new ArrayList<>();
+
+    private RefCountedPool<int[]> pool(int maxIdle) {
+        return new RefCountedPool<>(key -> new int[(int) key], disposed::add, maxIdle);
+    }
+
+    @Test
+    public void reusesOnlyAfterTheLastRelease() {
+        RefCountedPool<int[]> pool = pool(2);
+        RefCountedPool.Ref<int[]> decoded = pool.acquire(16);
+        decoded.retain(); // the display keeps it
+        decoded.release(); // the decoder is done
+
+        RefCountedPool.Ref<int[]> next = pool.acquire(16);
+        assertNotSame(decoded.get(), next.get());
+        assertEquals(2, pool.getOutstanding());
+
+        decoded.release(); // off screen
+        RefCountedPool.Ref<int[]> reused = pool.acquire(16);
+        assertSame(decoded.get(), reused.get());
+        assertEquals(1, reused.getRefCount());
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void keysDoNotMix() {
+        RefCountedPool<int[]> pool = pool(2);
+        pool.acquire(16).release();
+        assertEquals(8, pool.acquire(8).get().length);
+        assertEquals(16, pool.acquire(16).get().length);
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    public void extraIdleObjectsAreDisposed() {
+        RefCountedPool<int[]> pool = pool(1);
+        RefCountedPool.Ref<int[]> a = pool.acquire(4), b = pool.acquire(4);
+        a.release();
+        b.release();
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, disposed.size());
+        assertSame(b.get(), disposed.get(0));
+
+        pool.clear();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, disposed.size());
+        assertEquals(0, pool.getOutstanding());
+    }
+
+    @Test
+    public void leaksShowAsOutstanding() {
+        RefCountedPool<int[]> pool = pool(4);
+        for (int i = 0; i < 10; i++) {
+            RefCountedPool.Ref<int[]> ref = pool.acquire(4);
+            if (i % 2 == 0)
+                ref.release();
+        }
+        assertEquals(5, pool.getOutstanding());
+    }
+
+    @Test
+    public void releasingTwiceFails() {
+        RefCountedPool<int[]> pool = pool(4);
+        RefCountedPool.Ref<int[]> ref = pool.acquire(4);
+        ref.release();
+        try {
+            ref.release();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            ref.retain();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void unpooledRefsNeverReachAPool() {
+        int[] value = new int[3];
+        RefCountedPool.Ref<int[]> ref = RefCountedPool.unpooled(value);
+        ref.retain();
+        ref.release();
+        ref.release();
+        assertSame(value, ref.get());
+        assertEquals(0, ref.getRefCount());
+    }
+
+    @Test
+    public void wrappedRefsAreDisposedOnTheLastRelease() {
+        int[] value = new int[3];
+        RefCountedPool.Ref<int[]> ref = RefCountedPool.wrap(value, disposed::add);
+        ref.retain();
+        ref.release();
+        assertEquals(0, disposed.size());
+        ref.release();
+        assertEquals(1, disposed.size());
+        assertSame(value, disposed.get(0));
+    }
+}
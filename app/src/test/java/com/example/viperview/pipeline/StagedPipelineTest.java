@@ -0,0 +1,158 @@
+package com.example.viperview.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class StagedPipelineTest {
+
+    private static final class Job {
+        final int id;
+        boolean preprocessed;
+        boolean inferred;
+
+        Job(int id) {
+            this.id = id;
+        }
+    }
+
+    private static void work(long ms) throws InterruptedException {
+        Thread.sleep(ms);
+    }
+
+    @Test
+    public void stagesOverlapAndKeepOrder() throws Exception {
+        List<Integer> rendered = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger recycled = new AtomicInteger();
+        StagedPipeline<Job> pipeline = new StagedPipeline<>("test", job -> recycled.incrementAndGet());
+        pipeline.addStage("preprocess", job -> {
+            work(10);
+            job.preprocessed = true;
+        });
+        pipeline.addStage("infer", job -> {
+            assertTrue(job.preprocessed);
+            work(10);
+            job.inferred = true;
+        });
+        pipeline.addStage("render", job -> {
+            assertTrue(job.inferred);
+            work(10);
+            rendered.add(job.id);
+        });
+        pipeline.start();
+
+        // feed faster than any single stage: sequentially this would be 30 ms per frame
+        long start = System.nanoTime();
+        for (int i = 0; i < 60; i++) {
+            pipeline.offer(new Job(i));
+            Thread.sleep(5);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        Thread.sleep(100);
+        pipeline.close();
+
+        long sequential = elapsedMs / 30;
+        assertTrue("completed " + pipeline.getCompletedCount() + " vs " + sequential + " sequentially",
+                pipeline.getCompletedCount() > sequential * 3 / 2);
+        for (int i = 1; i < rendered.size(); i++)
+            assertTrue(rendered.get(i) > rendered.get(i - 1));
+        assertEquals(60, recycled.get());
+        assertEquals(60, pipeline.getCompletedCount() + pipeline.getDroppedCount() + pipeline.getFailedCount());
+        assertEquals(3, pipeline.getStageCount());
+        assertEquals(pipeline.getCompletedCount(), pipeline.getStageStats(2).getProcessedCount());
+    }
+
+    @Test
+    public void reportsTheSlowestStageAsBottleneck() throws Exception {
+        StagedPipeline<Job> pipeline = new StagedPipeline<>("test", null);
+        pipeline.addStage("preprocess", job -> work(2));
+        pipeline.addStage("infer", job -> work(15));
+        pipeline.addStage("render", job -> work(2));
+        pipeline.start();
+        for (int i = 0; i < 30; i++) {
+            pipeline.offer(new Job(i));
+            Thread.sleep(3);
+        }
+        Thread.sleep(50);
+        pipeline.close();
+
+        assertEquals("infer", pipeline.getBottleneck().getName());
+        assertTrue(pipeline.getDroppedCount() > 0);
+        // preprocess spends its spare time waiting for infer to take the next job
+        assertTrue(pipeline.getStageStats(0).getBlockedNs() > pipeline.getStageStats(2).getBlockedNs());
+        assertTrue(pipeline.getStageStats(1).getLatency().percentileMs(50) >= 14);
+        assertTrue(pipeline.summary().contains("bottleneck=infer"));
+    }
+
+    @Test
+    public void failedJobsAreRecycledAndReported() throws Exception {
+        AtomicInteger recycled = new AtomicInteger();
+        ConcurrentHashMap<Integer, Exception> failures = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(4);
+        StagedPipeline<Job> pipeline = new StagedPipeline<>("test", job -> {
+            recycled.incrementAndGet();
+            done.countDown();
+        });
+        pipeline.addStage("preprocess", job -> {
+        });
+        pipeline.addStage("infer", job -> {
+            if (job.id % 2 == 1)
+                throw new IllegalStateException("bad frame " + job.id);
+        });
+        pipeline.setFailureHandler((job, e) -> failures.put(job.id, e));
+        pipeline.start();
+        for (int i = 0; i < 4; i++) {
+            pipeline.offer(new Job(i));
+            Thread.sleep(20);
+        }
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        pipeline.close();
+
+        assertEquals(2, pipeline.getFailedCount());
+        assertEquals(2, pipeline.getCompletedCount());
+        assertEquals(4, recycled.get());
+        assertTrue(failures.containsKey(1) && failures.containsKey(3));
+    }
+
+    @Test
+    public void closeRecyclesJobsInFlight() throws Exception {
+        AtomicInteger recycled = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        StagedPipeline<Job> pipeline = new StagedPipeline<>("test", job -> recycled.incrementAndGet());
+        pipeline.addStage("slow", job -> {
+            entered.countDown();
+            work(10_000);
+        });
+        pipeline.start();
+        pipeline.offer(new Job(0));
+        assertTrue(entered.await(2, TimeUnit.SECONDS));
+        pipeline.offer(new Job(1));
+        pipeline.close();
+
+        assertEquals(2, recycled.get());
+        assertEquals(0, pipeline.getCompletedCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stagesCannotBeAddedAfterStart() {
+        StagedPipeline<Job> pipeline = new StagedPipeline<>("test", null);
+        pipeline.addStage("only", job -> {
+        });
+        pipeline.start();
+        try {
+            pipeline.addStage("late", job -> {
+            });
+        } finally {
+            pipeline.close();
+        }
+    }
+}
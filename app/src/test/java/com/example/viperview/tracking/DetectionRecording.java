@@ -0,0 +1,96 @@
+package com.example.viperview.tracking;
+
+import com.example.viperview.yolo.PoseDetections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replayable detection sequence at 30 fps: people moving at constant speed
+ * (the ground truth) and what a detector reports for them, with keypoint
+ * noise, score jitter and optional dropped frames.
+ */
+final class DetectionRecording {
+
+    static final long FRAME_NS = 33_333_333L;
+
+    static final class Person {
+        final float startX, startY, velocityX, velocityY, width, height;
+
+        Person(float startX, float startY, float velocityX, float velocityY, float width, float height) {
+            this.startX = startX;
+            this.startY = startY;
+            this.velocityX = velocityX;
+            this.velocityY = velocityY;
+            this.width = width;
+            this.height = height;
+        }
+
+        float x(long timestampNs) {
+            return startX + velocityX * timestampNs / 1e9f;
+        }
+
+        float y(long timestampNs) {
+            return startY + velocityY * timestampNs / 1e9f;
+        }
+
+        // keypoints on a fixed grid inside the box
+        float keypointX(int k, long timestampNs) {
+            return x(timestampNs) + ((k % 3) - 1) * width / 4;
+        }
+
+        float keypointY(int k, long timestampNs) {
+            return y(timestampNs) + ((k / 3) - 2.5f) * height / 7;
+        }
+    }
+
+    final List<Person> people = new ArrayList<>();
+    private final float noise;
+    private final long seed;
+
+    DetectionRecording(float noise, long seed) {
+        this.noise = noise;
+        this.seed = seed;
+    }
+
+    DetectionRecording add(Person person) {
+        people.add(person);
+        return this;
+    }
+
+    static long timestamp(int frame) {
+        return frame * FRAME_NS;
+    }
+
+    /** Frame {@code frame} as the detector saw it; {@code missing} people are left out. */
+    PoseDetections frame(int frame, int... missing) {
+        Random random = new Random(seed * 7919 + frame);
+        long timestampNs = timestamp(frame);
+        PoseDetections detections = new PoseDetections();
+        for (int p = 0; p < people.size(); p++) {
+            if (contains(missing, p))
+                continue;
+            Person person = people.get(p);
+            int index = detections.add(person.x(timestampNs) + jitter(random),
+                    person.y(timestampNs) + jitter(random), person.width, person.height,
+                    0.7f + random.nextFloat() * 0.25f);
+            for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++)
+                detections.setKeypoint(index, k, person.keypointX(k, timestampNs) + jitter(random),
+                        person.keypointY(k, timestampNs) + jitter(random), 0.9f);
+        }
+        return detections;
+    }
+
+    private float jitter(Random random) {
+        return (float) random.nextGaussian() * noise;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.viperview.tracking;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OneEuroFilterTest {
+
+    private static final long FRAME_NS = 33_333_333L;
+
+    @Test
+    public void stillSignalJittersLess() {
+        OneEuroFilter filter = new OneEuroFilter(1.0, 10.0, 1.0);
+        Random random = new Random(3);
+        double rawError = 0, filteredError = 0;
+        for (int i = 0; i < 300; i++) {
+            double raw = 0.5 + random.nextGaussian() * 0.005;
+            double filtered = filter.filter(raw, i * FRAME_NS);
+            if (i >= 30) {
+                rawError += (raw - 0.5) * (raw - 0.5);
+                filteredError += (filtered - 0.5) * (filtered - 0.5);
+            }
+        }
+        assertTrue("filtered " + filteredError + " raw " + rawError, filteredError < rawError * 0.25);
+    }
+
+    @Test
+    public void movingSignalDoesNotLagMuch() {
+        OneEuroFilter filter = new OneEuroFilter(1.0, 10.0, 1.0);
+        double speed = 0.5; // half a frame width per second
+        double value = 0;
+        for (int i = 0; i < 60; i++)
+            value = filter.filter(speed * i * FRAME_NS / 1e9, i * FRAME_NS);
+
+        double truth = speed * 59 * FRAME_NS / 1e9;
+        assertEquals(truth, value, 0.02);
+        assertEquals(speed, filter.derivative(), 0.02);
+        // prediction makes up for the smoothing lag and extrapolates along the same line
+        assertEquals(truth, filter.predict(59 * FRAME_NS), 0.002);
+        assertEquals(truth + speed * 0.1, filter.predict(59 * FRAME_NS + 100_000_000L), 0.002);
+    }
+
+    @Test
+    public void repeatedTimestampIsIgnored() {
+        OneEuroFilter filter = new OneEuroFilter(1.0, 10.0, 1.0);
+        filter.filter(1.0, 0);
+        assertEquals(1.0, filter.filter(5.0, 0), 0);
+        filter.reset();
+        assertFalse(filter.isInitialized());
+        assertEquals(5.0, filter.filter(5.0, 10), 0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.viperview.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class OrientationRingBufferTest {
+
+    private static final long MS = 1_000_000L;
+
+    // synthetic sensor trace: yaw about +Y at a constant rate, one sample every 5 ms
+    private static void addYaw(OrientationRingBuffer buffer, long timestampNs, double radians) {
+        buffer.add(timestampNs, (float) Math.cos(radians / 2), 0, (float) Math.sin(radians / 2), 0);
+    }
+
+    private static double yawOf(float[] q) {
+        return 2 * Math.atan2(q[2], q[0]);
+    }
+
+    @Test
+    public void interpolatesBetweenSamples() {
+        OrientationRingBuffer buffer = new OrientationRingBuffer(64);
+        for (int i = 0; i < 20; i++)
+            addYaw(buffer, 1000 * MS + i * 5 * MS, i * 0.01);
+        float[] q = new float[4];
+        assertTrue(buffer.sample(1000 * MS + 12 * MS, q));
+        // 12 ms is 2.4 samples in
+        assertEquals(0.024, yawOf(q), 1e-5);
+        assertTrue(buffer.sample(1000 * MS + 15 * MS, q));
+        assertEquals(0.03, yawOf(q), 1e-6);
+        assertEquals(1, q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3], 1e-5);
+    }
+
+    @Test
+    public void clampsToTheNewestAndRejectsTheUnknownPast() {
+        OrientationRingBuffer buffer = new OrientationRingBuffer(8);
+        float[] q = new float[4];
+        assertFalse(buffer.sample(0, q));
+        for (int i = 0; i < 20; i++)
+            addYaw(buffer, i * 5 * MS, i * 0.01);
+        assertTrue(buffer.sample(10_000 * MS, q));
+        assertEquals(0.19, yawOf(q), 1e-6);
+        // eight slots, one kept free for the writer: samples 13..19 remain
+        assertFalse(buffer.sample(12 * 5 * MS, q));
+        assertTrue(buffer.sample(13 * 5 * MS, q));
+        assertEquals(0.13, yawOf(q), 1e-6);
+        // a timestamp from another clock lands long before the ring
+        assertFalse(buffer.sample(-1_000_000 * MS, q));
+    }
+
+    @Test
+    public void takesTheShortWayAroundWhenTheSignFlips() {
+        OrientationRingBuffer buffer = new OrientationRingBuffer(4);
+        buffer.add(0, 1, 0, 0, 0);
+        // same orientation as (cos 0.05, 0, sin 0.05, 0), written with the opposite sign
+        buffer.add(10 * MS, -(float) Math.cos(0.05), 0, -(float) Math.sin(0.05), 0);
+        float[] q = new float[4];
+        assertTrue(buffer.sample(5 * MS, q));
+        assertEquals(0.05, Math.abs(yawOf(q)), 1e-4);
+    }
+
+    @Test
+    public void readersNeverSeeTornSamples() throws Exception {
+        OrientationRingBuffer buffer = new OrientationRingBuffer(16);
+        AtomicBoolean done = new AtomicBoolean();
+        // every sample has w == x, so a mix of two samples would still match but a half-written one would not
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 200_000; i++)
+                buffer.add(i, i, i, 0, 0);
+            done.set(true);
+        });
+        writer.start();
+        float[] q = new float[4];
+        int reads = 0;
+        while (!done.get()) {
+            long newest = buffer.getSampleCount();
+            if (newest < 2 || !buffer.sample(newest - 1, q))
+                continue;
+            assertEquals(q[0], q[1], 1e-6f);
+            assertEquals(0, q[2], 0);
+            reads++;
+        }
+        writer.join();
+        assertTrue(reads > 0);
+    }
+}
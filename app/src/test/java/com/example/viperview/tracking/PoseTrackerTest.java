@@ -0,0 +1,154 @@
+package com.example.viperview.tracking;
+
+import com.example.viperview.yolo.PoseDetections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PoseTrackerTest {
+
+    private static final DetectionRecording.Person LEFT_TO_RIGHT = new DetectionRecording.Person(0.1f, 0.3f, 0.3f,
+            0f, 0.15f, 0.3f);
+    private static final DetectionRecording.Person RIGHT_TO_LEFT = new DetectionRecording.Person(0.9f, 0.7f, -0.3f,
+            0f, 0.15f, 0.3f);
+
+    private static int idNear(TrackedPoses poses, float x, float y) {
+        for (int i = 0; i < poses.count; i++) {
+            if (Math.abs(poses.boxes[i * 4] - x) < 0.05f && Math.abs(poses.boxes[i * 4 + 1] - y) < 0.05f)
+                return poses.ids[i];
+        }
+        return -1;
+    }
+
+    @Test
+    public void idsStayStableWhilePeopleMove() {
+        DetectionRecording recording = new DetectionRecording(0.003f, 1).add(LEFT_TO_RIGHT).add(RIGHT_TO_LEFT);
+        PoseTracker tracker = new PoseTracker();
+        TrackedPoses poses = new TrackedPoses();
+
+        int leftId = -1, rightId = -1;
+        for (int frame = 0; frame < 75; frame++) {
+            long ts = DetectionRecording.timestamp(frame);
+            tracker.update(recording.frame(frame), ts);
+            tracker.predict(ts, poses);
+            assertEquals(2, poses.count);
+            int a = idNear(poses, LEFT_TO_RIGHT.x(ts), LEFT_TO_RIGHT.y(ts));
+            int b = idNear(poses, RIGHT_TO_LEFT.x(ts), RIGHT_TO_LEFT.y(ts));
+            if (frame == 0) {
+                leftId = a;
+                rightId = b;
+                assertNotEquals(leftId, rightId);
+            }
+            assertEquals("frame " + frame, leftId, a);
+            assertEquals("frame " + frame, rightId, b);
+        }
+    }
+
+    @Test
+    public void shortDropoutKeepsIdAndCoasts() {
+        DetectionRecording recording = new DetectionRecording(0.003f, 2).add(LEFT_TO_RIGHT);
+        PoseTracker tracker = new PoseTracker();
+        TrackedPoses poses = new TrackedPoses();
+
+        for (int frame = 0; frame < 10; frame++)
+            tracker.update(recording.frame(frame), DetectionRecording.timestamp(frame));
+        tracker.predict(DetectionRecording.timestamp(9), poses);
+        int id = poses.ids[0];
+
+        // detector misses the person for 4 frames
+        for (int frame = 10; frame < 14; frame++) {
+            long ts = DetectionRecording.timestamp(frame);
+            tracker.update(recording.frame(frame, 0), ts);
+            tracker.predict(ts, poses);
+            assertEquals(1, poses.count);
+            assertEquals(LEFT_TO_RIGHT.x(ts), poses.boxes[0], 0.02f);
+        }
+
+        long ts = DetectionRecording.timestamp(14);
+        tracker.update(recording.frame(14), ts);
+        tracker.predict(ts, poses);
+        assertEquals(1, poses.count);
+        assertEquals(id, poses.ids[0]);
+        assertEquals(1, tracker.getTrackCount());
+    }
+
+    @Test
+    public void lostTrackAgesOutAndNewPersonGetsNewId() {
+        DetectionRecording recording = new DetectionRecording(0.003f, 3).add(LEFT_TO_RIGHT);
+        PoseTracker tracker = new PoseTracker();
+        TrackedPoses poses = new TrackedPoses();
+        for (int frame = 0; frame < 5; frame++)
+            tracker.update(recording.frame(frame), DetectionRecording.timestamp(frame));
+        tracker.predict(DetectionRecording.timestamp(4), poses);
+        int firstId = poses.ids[0];
+
+        long gone = DetectionRecording.timestamp(4) + PoseTracker.MAX_AGE_NS + 1;
+        tracker.update(new PoseDetections(), gone);
+        assertEquals(0, tracker.getTrackCount());
+
+        PoseDetections someoneElse = new DetectionRecording(0.003f, 4).add(RIGHT_TO_LEFT).frame(0);
+        tracker.update(someoneElse, gone + DetectionRecording.FRAME_NS);
+        tracker.predict(gone + DetectionRecording.FRAME_NS, poses);
+        assertEquals(1, poses.count);
+        assertNotEquals(firstId, poses.ids[0]);
+    }
+
+    @Test
+    public void lowScoreDetectionExtendsButNeverStartsTracks() {
+        PoseTracker tracker = new PoseTracker();
+        PoseDetections weak = new PoseDetections();
+        weak.add(0.5f, 0.5f, 0.2f, 0.4f, 0.35f);
+        tracker.update(weak, 0);
+        assertEquals(0, tracker.getTrackCount());
+
+        PoseDetections strong = new PoseDetections();
+        strong.add(0.5f, 0.5f, 0.2f, 0.4f, 0.9f);
+        tracker.update(strong, DetectionRecording.FRAME_NS);
+        tracker.update(weak, 2 * DetectionRecording.FRAME_NS);
+        TrackedPoses poses = new TrackedPoses();
+        tracker.predict(2 * DetectionRecording.FRAME_NS, poses);
+        assertEquals(1, tracker.getTrackCount());
+        assertEquals(0.35f, poses.scores[0], 0f);
+    }
+
+    @Test
+    public void inferringEveryThirdFrameStaysCloseToTruth() {
+        DetectionRecording recording = new DetectionRecording(0.003f, 5).add(LEFT_TO_RIGHT).add(RIGHT_TO_LEFT);
+        PoseTracker tracker = new PoseTracker();
+        tracker.setInferenceInterval(3);
+        TrackedPoses poses = new TrackedPoses();
+
+        double trackedError = 0, heldError = 0;
+        int samples = 0;
+        PoseDetections lastDetections = null;
+        for (int frame = 0; frame < 75; frame++) {
+            long ts = DetectionRecording.timestamp(frame);
+            boolean infer = tracker.shouldInfer();
+            assertEquals(frame % 3 == 0, infer);
+            if (infer) {
+                lastDetections = recording.frame(frame);
+                tracker.update(lastDetections, ts);
+            }
+            tracker.predict(ts, poses);
+            if (frame < 15 || infer)
+                continue;
+            // compare the skipped frames with simply re-showing the last detections
+            for (int i = 0; i < poses.count; i++) {
+                DetectionRecording.Person person = poses.boxes[i * 4 + 1] < 0.5f ? LEFT_TO_RIGHT : RIGHT_TO_LEFT;
+                DetectionRecording.Person held = lastDetections.boxes[i * 4 + 1] < 0.5f ? LEFT_TO_RIGHT
+                        : RIGHT_TO_LEFT;
+                for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+                    trackedError += Math.abs(poses.keypointX(i, k) - person.keypointX(k, ts));
+                    heldError += Math.abs(lastDetections.keypointX(i, k) - held.keypointX(k, ts));
+                    samples++;
+                }
+            }
+        }
+        trackedError /= samples;
+        heldError /= samples;
+        // 0.3 frame widths/s is ~0.01 per frame; held frames are 1.5 frames stale on average
+        assertTrue("tracked " + trackedError, trackedError < 0.005);
+        assertTrue("tracked " + trackedError + " held " + heldError, trackedError < heldError / 2);
+    }
+}
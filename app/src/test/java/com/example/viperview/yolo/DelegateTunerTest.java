@@ -0,0 +1,120 @@
+package com.example.viperview.yolo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DelegateTunerTest {
+
+    private static final DelegateConfig CPU1 = new DelegateConfig(DelegateConfig.Accelerator.CPU, 1);
+    private static final DelegateConfig CPU4 = new DelegateConfig(DelegateConfig.Accelerator.CPU, 4);
+    private static final DelegateConfig GPU = new DelegateConfig(DelegateConfig.Accelerator.GPU, 4);
+    private static final List<DelegateConfig> CANDIDATES = List.of(CPU1, CPU4, GPU,
+            DelegateConfig.NNAPI_DEFAULT);
+
+    private final Map<String, String> stored = new HashMap<>();
+    private final DelegateTuner.Store store = new DelegateTuner.Store() {
+        @Override
+        public String get(String fingerprint) {
+            return stored.get(fingerprint);
+        }
+
+        @Override
+        public void put(String fingerprint, String config) {
+            stored.put(fingerprint, config);
+        }
+
+        @Override
+        public void remove(String fingerprint) {
+            stored.remove(fingerprint);
+        }
+    };
+    private final List<DelegateConfig> measured = new ArrayList<>();
+
+    // NNAPI is the slow one here, as on several of our phones, and the GPU delegate does not load
+    private double measure(DelegateConfig config) {
+        measured.add(config);
+        if (config.accelerator == DelegateConfig.Accelerator.GPU)
+            throw new IllegalStateException("delegate unavailable");
+        if (config.accelerator == DelegateConfig.Accelerator.NNAPI)
+            return 40;
+        return 30.0 / config.threads;
+    }
+
+    @Test
+    public void picksTheFastestAndSkipsDelegatesThatFail() {
+        DelegateTuner tuner = new DelegateTuner(store);
+        assertEquals(CPU4, tuner.choose("phone/model", CANDIDATES, this::measure));
+        assertEquals(CANDIDATES, measured);
+        assertEquals("cpu:4", stored.get("phone/model"));
+        assertTrue(tuner.getReport(), tuner.getReport().contains("gpu:4 failed"));
+    }
+
+    @Test
+    public void laterLaunchesReuseTheStoredChoiceWithoutMeasuring() {
+        stored.put("phone/model", "nnapi:4");
+        DelegateTuner tuner = new DelegateTuner(store);
+        assertEquals(DelegateConfig.NNAPI_DEFAULT, tuner.choose("phone/model", CANDIDATES, this::measure));
+        assertTrue(measured.isEmpty());
+
+        // another fingerprint (OS update, new model) is measured on its own
+        assertEquals(CPU4, tuner.choose("phone/other-model", CANDIDATES, this::measure));
+        assertEquals(4, measured.size());
+    }
+
+    @Test
+    public void storedChoiceThatIsNoLongerACandidateIsMeasuredAgain() {
+        stored.put("phone/model", "gpu:4");
+        assertEquals(CPU4, new DelegateTuner(store).choose("phone/model", List.of(CPU1, CPU4), this::measure));
+        stored.put("phone/model", "tpu");
+        assertEquals(CPU4, new DelegateTuner(store).choose("phone/model", List.of(CPU1, CPU4), this::measure));
+    }
+
+    @Test
+    public void forcedAndResetAreForTesting() {
+        DelegateTuner tuner = new DelegateTuner(store);
+        tuner.setForced(GPU);
+        assertEquals(GPU, tuner.choose("phone/model", CANDIDATES, this::measure));
+        assertTrue(measured.isEmpty());
+        assertTrue(stored.isEmpty());
+
+        tuner.setForced(null);
+        tuner.choose("phone/model", CANDIDATES, this::measure);
+        tuner.reset("phone/model");
+        assertTrue(stored.isEmpty());
+        measured.clear();
+        tuner.choose("phone/model", CANDIDATES, this::measure);
+        assertEquals(4, measured.size());
+
+        measured.clear();
+        tuner.setRemeasure(true);
+        tuner.choose("phone/model", CANDIDATES, this::measure);
+        assertEquals(4, measured.size());
+    }
+
+    @Test
+    public void nothingRunsGivesNull() {
+        DelegateTuner tuner = new DelegateTuner(store);
+        assertNull(tuner.choose("phone/model", List.of(GPU), this::measure));
+        assertTrue(stored.isEmpty());
+    }
+
+    @Test
+    public void configTextRoundTrips() {
+        assertEquals(CPU1, DelegateConfig.parse("cpu:1"));
+        assertEquals(GPU, DelegateConfig.parse(" GPU "));
+        assertEquals(DelegateConfig.NNAPI_DEFAULT, DelegateConfig.parse(DelegateConfig.NNAPI_DEFAULT.toString()));
+        for (String bad : new String[] { "tpu", "cpu:x", "cpu:0", "cpu:1:2" }) {
+            try {
+                DelegateConfig.parse(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
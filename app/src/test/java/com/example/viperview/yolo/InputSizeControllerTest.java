@@ -0,0 +1,133 @@
+package com.example.viperview.yolo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class InputSizeControllerTest {
+
+    private static final int[] SIZES = { 160, 224, 320 };
+    private static final int MIDDLE = 1;
+
+    private static PoseDetections people(float... heights) {
+        PoseDetections detections = new PoseDetections();
+        for (float height : heights)
+            detections.add(0.5f, 0.5f, height / 2, height, 0.9f);
+        return detections;
+    }
+
+    // one decision window at a fixed latency; true if the size changed at its end
+    private static boolean window(InputSizeController controller, double latencyMs, PoseDetections detections) {
+        boolean changed = false;
+        for (int i = 0; i < InputSizeController.WINDOW_FRAMES; i++)
+            changed |= controller.update(latencyMs, detections);
+        return changed;
+    }
+
+    @Test
+    public void overBudgetStepsDown() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        controller.setFrameBudgetMs(30);
+        assertTrue(window(controller, 45, people(0.1f)));
+        assertEquals(160, controller.getSize());
+        assertEquals(1, controller.getSwitchCount());
+    }
+
+    @Test
+    public void holdsForAWholeWindowBeforeDeciding() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        controller.setFrameBudgetMs(30);
+        for (int i = 0; i < InputSizeController.WINDOW_FRAMES - 1; i++)
+            assertFalse(controller.update(200, people(0.5f)));
+        assertEquals(224, controller.getSize());
+    }
+
+    @Test
+    public void smallSubjectStepsUpWhenTheBiggerSizeFits() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        controller.setFrameBudgetMs(30);
+        // 0.15 * 224 = 34 px, too few; 10 ms scaled to 320 is about 20 ms, within headroom
+        assertTrue(window(controller, 10, people(0.6f, 0.15f)));
+        assertEquals(320, controller.getSize());
+    }
+
+    @Test
+    public void smallSubjectStaysWhenTheBiggerSizeWouldNotFit() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        controller.setFrameBudgetMs(30);
+        // about 41 ms predicted at 320
+        assertFalse(window(controller, 20, people(0.15f)));
+        assertEquals(224, controller.getSize());
+    }
+
+    @Test
+    public void largeSubjectsStepDownToSaveTime() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        controller.setFrameBudgetMs(30);
+        // 0.7 * 160 = 112 px, still plenty at the smaller size
+        assertTrue(window(controller, 10, people(0.7f)));
+        assertEquals(160, controller.getSize());
+        // and at 160 nothing pulls either way
+        assertFalse(window(controller, 5, people(0.7f)));
+        assertEquals(160, controller.getSize());
+    }
+
+    @Test
+    public void mediumSubjectsSitInTheDeadBand() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        controller.setFrameBudgetMs(30);
+        // 0.4 * 224 = 90 px is enough, 0.4 * 160 = 64 px would be short of LARGE_SUBJECT_PIXELS
+        for (int i = 0; i < 5; i++)
+            assertFalse(window(controller, 10, people(0.4f)));
+        assertEquals(0, controller.getSwitchCount());
+    }
+
+    @Test
+    public void emptySceneLooksHarderWithinTheBudget() {
+        InputSizeController controller = new InputSizeController(SIZES, 0);
+        controller.setFrameBudgetMs(30);
+        assertTrue(window(controller, 5, people()));
+        assertEquals(224, controller.getSize());
+        assertTrue(window(controller, 10, people()));
+        assertEquals(320, controller.getSize());
+        assertFalse(window(controller, 20, people()));
+    }
+
+    @Test
+    public void measuredLatencyOfASizeBeatsThePrediction() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        controller.setFrameBudgetMs(30);
+        assertTrue(window(controller, 10, people(0.1f)));
+        assertEquals(320, controller.getSize());
+        // 320 turned out much slower than scaling predicted
+        assertTrue(window(controller, 40, people(0.1f)));
+        assertEquals(224, controller.getSize());
+        // so a small subject no longer sends it back up
+        assertFalse(window(controller, 10, people(0.1f)));
+        assertEquals(224, controller.getSize());
+        assertEquals(40, controller.getLatencyMs(2), 1);
+    }
+
+    @Test
+    public void warmupRunsAreLeftOutOfANewSizesLatency() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        for (int i = 0; i < InputSizeController.WARMUP_FRAMES; i++)
+            controller.update(500, people(0.4f));
+        controller.update(10, people(0.4f));
+        assertEquals(10, controller.getLatencyMs(MIDDLE), 1e-9);
+    }
+
+    @Test
+    public void withoutABudgetOnlySubjectSizeDecides() {
+        InputSizeController controller = new InputSizeController(SIZES, MIDDLE);
+        assertTrue(window(controller, 1000, people(0.1f)));
+        assertEquals(320, controller.getSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizesMustAscend() {
+        new InputSizeController(new int[] { 320, 224 }, 0);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.viperview.yolo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The decode + NMS steps PoseDetector.drawSkeleton used to run inline, kept
+ * as a reference for PoseDecoderTest and PoseDecoderBenchmark.
+ */
+final class LegacyPoseDecoder {
+
+    private LegacyPoseDecoder() {
+    }
+
+    static List<float[]> decode(float[][][] detections) {
+        List<float[]> allDetections = new ArrayList<>();
+        for (int i = 0; i < detections[0][0].length; i++) {
+            float conf = detections[0][4][i];
+            if (conf < 0.3f)
+                continue;
+
+            float[] det = new float[56];
+            for (int j = 0; j < 56; j++)
+                det[j] = detections[0][j][i];
+            allDetections.add(det);
+        }
+        return nonMaxSuppression(allDetections, 0.45f);
+    }
+
+    private static float iou(float[] a, float[] b) {
+        float ax1 = a[0] - a[2] / 2, ay1 = a[1] - a[3] / 2;
+        float ax2 = a[0] + a[2] / 2, ay2 = a[1] + a[3] / 2;
+        float bx1 = b[0] - b[2] / 2, by1 = b[1] - b[3] / 2;
+        float bx2 = b[0] + b[2] / 2, by2 = b[1] + b[3] / 2;
+
+        float interX1 = Math.max(ax1, bx1);
+        float interY1 = Math.max(ay1, by1);
+        float interX2 = Math.min(ax2, bx2);
+        float interY2 = Math.min(ay2, by2);
+        float interArea = Math.max(0, interX2 - interX1) * Math.max(0, interY2 - interY1);
+
+        float areaA = (ax2 - ax1) * (ay2 - ay1);
+        float areaB = (bx2 - bx1) * (by2 - by1);
+
+        return interArea / (areaA + areaB - interArea + 1e-6f);
+    }
+
+    private static List<float[]> nonMaxSuppression(List<float[]> detections, float iouThreshold) {
+        List<float[]> results = new ArrayList<>();
+        detections.sort((a, b) -> Float.compare(b[4], a[4]));
+
+        boolean[] removed = new boolean[detections.size()];
+        for (int i = 0; i < detections.size(); i++) {
+            if (removed[i])
+                continue;
+            results.add(detections.get(i));
+            for (int j = i + 1; j < detections.size(); j++) {
+                if (removed[j])
+                    continue;
+                if (iou(detections.get(i), detections.get(j)) > iouThreshold)
+                    removed[j] = true;
+            }
+        }
+        return results;
+    }
+}
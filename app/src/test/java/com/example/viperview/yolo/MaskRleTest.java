@@ -0,0 +1,90 @@
+package com.example.viperview.yolo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MaskRleTest {
+
+    private static byte[] roundTrip(byte[] mask) {
+        byte[] encoded = new byte[MaskRle.maxEncodedSize(mask.length)];
+        int size = MaskRle.encode(mask, mask.length, encoded, 0);
+        assertTrue(size <= encoded.length);
+        byte[] decoded = new byte[mask.length];
+        assertEquals(mask.length, MaskRle.decode(encoded, 0, size, decoded, mask.length));
+        return decoded;
+    }
+
+    @Test
+    public void roundTripsBlobsAndNoise() {
+        Random random = new Random(1);
+        byte[] blob = new byte[64 * 48];
+        for (int y = 10; y < 40; y++)
+            Arrays.fill(blob, y * 64 + 20, y * 64 + 50, (byte) 1);
+        assertArrayEquals(blob, roundTrip(blob));
+
+        byte[] noise = new byte[1000];
+        for (int i = 0; i < noise.length; i++)
+            noise[i] = (byte) random.nextInt(2);
+        assertArrayEquals(noise, roundTrip(noise));
+    }
+
+    @Test
+    public void handlesMasksStartingInsideAndLongRuns() {
+        byte[] full = new byte[100_000];
+        Arrays.fill(full, (byte) 1);
+        byte[] encoded = new byte[16];
+        // empty background run, then one 100000-pixel run in three varint bytes
+        assertEquals(4, MaskRle.encode(full, full.length, encoded, 0));
+        assertArrayEquals(full, roundTrip(full));
+        assertArrayEquals(new byte[300], roundTrip(new byte[300]));
+    }
+
+    @Test
+    public void blobIsMuchSmallerThanTheMask() {
+        byte[] blob = new byte[64 * 48];
+        for (int y = 10; y < 40; y++)
+            Arrays.fill(blob, y * 64 + 20, y * 64 + 50, (byte) 1);
+        byte[] encoded = new byte[MaskRle.maxEncodedSize(blob.length)];
+        assertTrue(MaskRle.encode(blob, blob.length, encoded, 0) < blob.length / 20);
+    }
+
+    @Test
+    public void encodesADetectionWithItsRegion() {
+        float[] output = SegOutputs.detections(2, 10, 21);
+        SegmentationDetections detections = new SegmentationDetections();
+        new SegmentationDecoder(SegOutputs.ANCHORS, SegOutputs.CHANNELS, SegOutputs.PROTO_SIZE,
+                SegOutputs.PROTO_SIZE, SegOutputs.MASK_DIM).decode(output, SegOutputs.protos(22), detections);
+
+        byte[] scratch = new byte[SegOutputs.PROTO_SIZE * SegOutputs.PROTO_SIZE];
+        byte[] out = new byte[MaskRle.REGION_HEADER_BYTES + MaskRle.maxEncodedSize(scratch.length)];
+        int size = MaskRle.encodeMask(detections, 1, scratch, out, 0);
+
+        int[] rect = new int[4];
+        MaskRle.readRegion(out, 0, rect);
+        assertArrayEquals(Arrays.copyOfRange(detections.maskRects, 4, 8), rect);
+        byte[] decoded = new byte[rect[2] * rect[3]];
+        MaskRle.decode(out, MaskRle.REGION_HEADER_BYTES, size - MaskRle.REGION_HEADER_BYTES, decoded,
+                decoded.length);
+        byte[] expected = new byte[decoded.length];
+        detections.binaryMask(1, expected);
+        assertArrayEquals(expected, decoded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRunsPastTheMask() {
+        byte[] encoded = { 5, 10 };
+        MaskRle.decode(encoded, 0, encoded.length, new byte[8], 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedVarint() {
+        byte[] encoded = { (byte) 0x85 };
+        MaskRle.decode(encoded, 0, encoded.length, new byte[8], 8);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.viperview.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PoseAgreementTest {
+
+    // a person with every keypoint at the box centre, offset by (dx, dy)
+    private static void addPerson(PoseDetections detections, float cx, float cy, float size, float dx, float dy) {
+        int d = detections.add(cx, cy, size, size, 0.9f);
+        for (int k = 0; k < PoseDetections.NUM_KEYPOINTS; k++) {
+            int i = d * PoseDetections.KEYPOINT_STRIDE + k * 3;
+            detections.keypoints[i] = cx + dx;
+            detections.keypoints[i + 1] = cy + dy;
+            detections.keypoints[i + 2] = 0.9f;
+        }
+    }
+
+    @Test
+    public void identicalDetectionsAgreeFully() {
+        PoseDetections detections = new PoseDetections();
+        addPerson(detections, 0.3f, 0.5f, 0.2f, 0, 0);
+        addPerson(detections, 0.7f, 0.5f, 0.2f, 0, 0);
+        PoseAgreement agreement = new PoseAgreement();
+        agreement.add(detections, detections);
+
+        assertEquals(1, agreement.getRecall(), 0);
+        assertEquals(1, agreement.getPrecision(), 0);
+        assertEquals(1, agreement.getMeanIou(), 1e-4);
+        assertEquals(0, agreement.getMeanKeypointError(), 0);
+    }
+
+    @Test
+    public void missedAndExtraPeopleCountAgainstRecallAndPrecision() {
+        PoseDetections reference = new PoseDetections();
+        addPerson(reference, 0.2f, 0.5f, 0.2f, 0, 0);
+        addPerson(reference, 0.5f, 0.5f, 0.2f, 0, 0);
+        PoseDetections candidate = new PoseDetections();
+        addPerson(candidate, 0.2f, 0.5f, 0.2f, 0, 0);
+        addPerson(candidate, 0.85f, 0.5f, 0.2f, 0, 0); // nowhere near the second one
+        addPerson(candidate, 0.85f, 0.2f, 0.1f, 0, 0);
+        PoseAgreement agreement = new PoseAgreement();
+        agreement.add(reference, candidate);
+
+        assertEquals(0.5, agreement.getRecall(), 1e-9);
+        assertEquals(1 / 3.0, agreement.getPrecision(), 1e-9);
+    }
+
+    @Test
+    public void keypointErrorIsInPersonSizes() {
+        PoseDetections reference = new PoseDetections();
+        addPerson(reference, 0.5f, 0.5f, 0.4f, 0, 0);
+        PoseDetections candidate = new PoseDetections();
+        addPerson(candidate, 0.5f, 0.5f, 0.4f, 0.04f, 0);
+        PoseAgreement agreement = new PoseAgreement();
+        agreement.add(reference, candidate);
+
+        assertEquals(0.1, agreement.getMeanKeypointError(), 1e-5);
+    }
+
+    @Test
+    public void eachCandidateMatchesOnlyOnce() {
+        PoseDetections reference = new PoseDetections();
+        addPerson(reference, 0.5f, 0.5f, 0.2f, 0, 0);
+        addPerson(reference, 0.51f, 0.5f, 0.2f, 0, 0);
+        PoseDetections candidate = new PoseDetections();
+        addPerson(candidate, 0.5f, 0.5f, 0.2f, 0, 0);
+        PoseAgreement agreement = new PoseAgreement();
+        agreement.add(reference, candidate);
+
+        assertEquals(0.5, agreement.getRecall(), 1e-9);
+        assertEquals(1, agreement.getPrecision(), 1e-9);
+    }
+}
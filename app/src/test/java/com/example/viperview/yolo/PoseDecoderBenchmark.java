@@ -0,0 +1,62 @@
+package com.example.viperview.yolo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Legacy nested-array decode + O(n^2) NMS against PoseDecoder. The legacy
+ * number includes building the float[1][56][8400] the old code was handed.
+ * Run from the IDE via main(); it is not part of the unit test run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseDecoderBenchmark {
+
+    @Param({ "1", "5", "40" })
+    public int people;
+
+    private float[] flat;
+    private float[][][] nested;
+    private final PoseDecoder decoder = new PoseDecoder(PoseOutputs.ANCHORS, PoseOutputs.CHANNELS);
+    private final PoseDetections detections = new PoseDetections();
+
+    @Setup
+    public void setUp() {
+        flat = PoseOutputs.generate(people, 40, 42);
+        nested = PoseOutputs.toNested(flat);
+    }
+
+    @Benchmark
+    public List<float[]> legacy() {
+        return LegacyPoseDecoder.decode(nested);
+    }
+
+    @Benchmark
+    public PoseDetections flat() {
+        decoder.decode(flat, detections);
+        return detections;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PoseDecoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
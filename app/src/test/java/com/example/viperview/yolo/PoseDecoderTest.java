@@ -0,0 +1,116 @@
+package com.example.viperview.yolo;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PoseDecoderTest {
+
+    private static void assertMatchesLegacy(float[] output) {
+        List<float[]> expected = LegacyPoseDecoder.decode(PoseOutputs.toNested(output));
+        PoseDetections actual = new PoseDetections();
+        new PoseDecoder(PoseOutputs.ANCHORS, PoseOutputs.CHANNELS).decode(output, actual);
+
+        assertEquals(expected.size(), actual.count);
+        for (int d = 0; d < actual.count; d++) {
+            float[] det = expected.get(d);
+            for (int j = 0; j < 4; j++)
+                assertEquals(det[j], actual.boxes[d * 4 + j], 0f);
+            assertEquals(det[4], actual.scores[d], 0f);
+            for (int k = 0; k < PoseDetections.KEYPOINT_STRIDE; k++)
+                assertEquals(det[5 + k], actual.keypoints[d * PoseDetections.KEYPOINT_STRIDE + k], 0f);
+        }
+    }
+
+    @Test
+    public void matchesLegacyDecoderOnTypicalFrames() {
+        for (long seed = 0; seed < 10; seed++)
+            assertMatchesLegacy(PoseOutputs.generate(3, 20, seed));
+    }
+
+    @Test
+    public void matchesLegacyDecoderOnCrowdedFrames() {
+        for (long seed = 100; seed < 105; seed++)
+            assertMatchesLegacy(PoseOutputs.generate(40, 60, seed));
+    }
+
+    // the quantized path has to give what the float path gives on the same dequantized values
+    private static void assertQuantizedMatchesFloat(float[] output, Quantization quantization) {
+        byte[] raw = new byte[output.length];
+        float[] dequantized = new float[output.length];
+        for (int i = 0; i < output.length; i++) {
+            raw[i] = quantization.quantize(output[i]);
+            dequantized[i] = quantization.dequantize(raw[i]);
+        }
+        PoseDecoder decoder = new PoseDecoder(PoseOutputs.ANCHORS, PoseOutputs.CHANNELS);
+        PoseDetections expected = new PoseDetections();
+        PoseDetections actual = new PoseDetections();
+        decoder.decode(dequantized, expected);
+        decoder.decode(raw, quantization, actual);
+
+        assertTrue(expected.count > 0);
+        assertEquals(expected.count, actual.count);
+        for (int d = 0; d < actual.count; d++) {
+            for (int j = 0; j < 4; j++)
+                assertEquals(expected.boxes[d * 4 + j], actual.boxes[d * 4 + j], 0f);
+            assertEquals(expected.scores[d], actual.scores[d], 0f);
+            for (int k = 0; k < PoseDetections.KEYPOINT_STRIDE; k++) {
+                int i = d * PoseDetections.KEYPOINT_STRIDE + k;
+                assertEquals(expected.keypoints[i], actual.keypoints[i], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void uint8OutputDecodesLikeItsDequantizedFloats() {
+        for (long seed = 0; seed < 5; seed++)
+            assertQuantizedMatchesFloat(PoseOutputs.generate(3, 20, seed), new Quantization(1 / 255f, 0, false));
+    }
+
+    @Test
+    public void int8OutputDecodesLikeItsDequantizedFloats() {
+        for (long seed = 0; seed < 5; seed++)
+            assertQuantizedMatchesFloat(PoseOutputs.generate(3, 20, seed), new Quantization(1 / 255f, -128, true));
+    }
+
+    @Test
+    public void emptyFrameDecodesToNothing() {
+        float[] output = new float[PoseOutputs.CHANNELS * PoseOutputs.ANCHORS];
+        PoseDetections detections = new PoseDetections();
+        detections.add(0.5f, 0.5f, 0.1f, 0.1f, 1f);
+        new PoseDecoder(PoseOutputs.ANCHORS, PoseOutputs.CHANNELS).decode(output, detections);
+        assertEquals(0, detections.count);
+    }
+
+    @Test
+    public void overlappingBoxesCollapseToHighestScore() {
+        int anchors = 4;
+        float[] output = new float[PoseOutputs.CHANNELS * anchors];
+        float[][] boxes = { { 0.5f, 0.5f, 0.2f, 0.4f, 0.6f }, { 0.51f, 0.5f, 0.2f, 0.4f, 0.9f },
+                { 0.1f, 0.1f, 0.1f, 0.1f, 0.5f }, { 0.9f, 0.9f, 0.1f, 0.1f, 0.2f } };
+        for (int i = 0; i < anchors; i++)
+            for (int j = 0; j < 5; j++)
+                output[j * anchors + i] = boxes[i][j];
+
+        PoseDetections detections = new PoseDetections();
+        new PoseDecoder(anchors, PoseOutputs.CHANNELS).decode(output, detections);
+        assertEquals(2, detections.count);
+        assertEquals(0.9f, detections.scores[0], 0f);
+        assertEquals(0.5f, detections.scores[1], 0f);
+    }
+
+    @Test
+    public void decoderIsReusableAcrossFrames() {
+        PoseDecoder decoder = new PoseDecoder(PoseOutputs.ANCHORS, PoseOutputs.CHANNELS);
+        PoseDetections first = new PoseDetections();
+        PoseDetections again = new PoseDetections();
+        float[] crowded = PoseOutputs.generate(40, 60, 7);
+        decoder.decode(crowded, first);
+        decoder.decode(PoseOutputs.generate(1, 5, 8), again);
+        decoder.decode(crowded, again);
+        assertEquals(first.count, again.count);
+        assertArrayEquals(first.scores, again.scores, 0f);
+    }
+}
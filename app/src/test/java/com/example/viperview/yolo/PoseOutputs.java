@@ -0,0 +1,56 @@
+package com.example.viperview.yolo;
+
+import java.util.Random;
+
+/** Synthetic YOLO pose outputs for decoder tests and benchmarks. */
+final class PoseOutputs {
+
+    static final int ANCHORS = 8400;
+    static final int CHANNELS = 56;
+
+    private PoseOutputs() {
+    }
+
+    /**
+     * Channel-major output with {@code people} clusters of overlapping
+     * candidate boxes, as the model produces around each person, on top of
+     * low-score background anchors.
+     */
+    static float[] generate(int people, int candidatesPerPerson, long seed) {
+        Random random = new Random(seed);
+        float[] output = new float[CHANNELS * ANCHORS];
+        for (int i = 0; i < ANCHORS; i++) {
+            set(output, i, random.nextFloat(), random.nextFloat(), 0.05f + random.nextFloat() * 0.2f,
+                    0.05f + random.nextFloat() * 0.3f, random.nextFloat() * 0.25f);
+        }
+        for (int p = 0; p < people; p++) {
+            float cx = random.nextFloat(), cy = random.nextFloat();
+            float w = 0.05f + random.nextFloat() * 0.15f, h = 0.1f + random.nextFloat() * 0.3f;
+            for (int c = 0; c < candidatesPerPerson; c++) {
+                int anchor = random.nextInt(ANCHORS);
+                set(output, anchor, cx + (random.nextFloat() - 0.5f) * w * 0.3f,
+                        cy + (random.nextFloat() - 0.5f) * h * 0.3f, w * (0.8f + random.nextFloat() * 0.4f),
+                        h * (0.8f + random.nextFloat() * 0.4f), 0.3f + random.nextFloat() * 0.7f);
+            }
+        }
+        for (int k = 5; k < CHANNELS; k++)
+            for (int i = 0; i < ANCHORS; i++)
+                output[k * ANCHORS + i] = random.nextFloat();
+        return output;
+    }
+
+    static float[][][] toNested(float[] output) {
+        float[][][] nested = new float[1][CHANNELS][ANCHORS];
+        for (int k = 0; k < CHANNELS; k++)
+            System.arraycopy(output, k * ANCHORS, nested[0][k], 0, ANCHORS);
+        return nested;
+    }
+
+    private static void set(float[] output, int anchor, float cx, float cy, float w, float h, float score) {
+        output[anchor] = cx;
+        output[ANCHORS + anchor] = cy;
+        output[2 * ANCHORS + anchor] = w;
+        output[3 * ANCHORS + anchor] = h;
+        output[4 * ANCHORS + anchor] = score;
+    }
+}
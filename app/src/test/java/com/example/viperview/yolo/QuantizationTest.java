@@ -0,0 +1,49 @@
+package com.example.viperview.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QuantizationTest {
+
+    @Test
+    public void uint8ReadsBytesUnsigned() {
+        Quantization quantization = new Quantization(0.5f, 10, false);
+        assertEquals(200, quantization.raw((byte) 200));
+        assertEquals(95f, quantization.dequantize((byte) 200), 0f);
+        assertEquals((byte) 200, quantization.quantize(95f));
+    }
+
+    @Test
+    public void int8ReadsBytesSigned() {
+        Quantization quantization = new Quantization(1 / 255f, -128, true);
+        assertEquals(-1, quantization.raw((byte) 0xFF));
+        assertEquals(0f, quantization.dequantize((byte) -128), 0f);
+        assertEquals(1f, quantization.dequantize((byte) 127), 1e-6f);
+    }
+
+    @Test
+    public void quantizeClampsToTheRange() {
+        Quantization uint8 = new Quantization(1 / 255f, 0, false);
+        assertEquals(0, uint8.raw(uint8.quantize(-3f)));
+        assertEquals(255, uint8.raw(uint8.quantize(3f)));
+        Quantization int8 = new Quantization(1 / 255f, -128, true);
+        assertEquals(-128, int8.raw(int8.quantize(-3f)));
+        assertEquals(127, int8.raw(int8.quantize(3f)));
+    }
+
+    @Test
+    public void rawAtLeastIsTheFirstRawValueReachingTheThreshold() {
+        Quantization quantization = new Quantization(0.01f, 0, false);
+        int raw = quantization.rawAtLeast(0.3f);
+        assertTrue(quantization.dequantize(raw) >= 0.3f);
+        assertTrue(quantization.dequantize(raw - 1) < 0.3f);
+        assertEquals(256, quantization.rawAtLeast(5f));
+        assertEquals(0, quantization.rawAtLeast(-1f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scaleMustBePositive() {
+        new Quantization(0, 0, false);
+    }
+}
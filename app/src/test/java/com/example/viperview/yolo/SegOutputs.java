@@ -0,0 +1,119 @@
+package com.example.viperview.yolo;
+
+import java.util.Random;
+
+/** Synthetic YOLO-seg outputs, plus the naive full-frame mask decode, for tests and benchmarks. */
+final class SegOutputs {
+
+    static final int ANCHORS = 8400;
+    static final int CLASSES = 80;
+    static final int MASK_DIM = 32;
+    static final int CHANNELS = 4 + CLASSES + MASK_DIM;
+    static final int PROTO_SIZE = 160;
+
+    private SegOutputs() {
+    }
+
+    /**
+     * Channel-major detection output with {@code objects} clusters of
+     * candidates (each of its own class, boxes spread over the frame) on top
+     * of low-score background anchors.
+     */
+    static float[] detections(int objects, int candidatesPerObject, long seed) {
+        Random random = new Random(seed);
+        float[] output = new float[CHANNELS * ANCHORS];
+        for (int i = 0; i < ANCHORS; i++) {
+            output[i] = random.nextFloat();
+            output[ANCHORS + i] = random.nextFloat();
+            output[2 * ANCHORS + i] = 0.05f + random.nextFloat() * 0.2f;
+            output[3 * ANCHORS + i] = 0.05f + random.nextFloat() * 0.3f;
+            for (int c = 0; c < CLASSES; c++)
+                output[(4 + c) * ANCHORS + i] = random.nextFloat() * 0.2f;
+        }
+        for (int o = 0; o < objects; o++) {
+            float cx = 0.1f + random.nextFloat() * 0.8f, cy = 0.1f + random.nextFloat() * 0.8f;
+            float w = 0.1f + random.nextFloat() * 0.2f, h = 0.15f + random.nextFloat() * 0.3f;
+            int cls = o % CLASSES;
+            for (int c = 0; c < candidatesPerObject; c++) {
+                int anchor = random.nextInt(ANCHORS);
+                output[anchor] = cx + (random.nextFloat() - 0.5f) * w * 0.2f;
+                output[ANCHORS + anchor] = cy + (random.nextFloat() - 0.5f) * h * 0.2f;
+                output[2 * ANCHORS + anchor] = w * (0.9f + random.nextFloat() * 0.2f);
+                output[3 * ANCHORS + anchor] = h * (0.9f + random.nextFloat() * 0.2f);
+                output[(4 + cls) * ANCHORS + anchor] = 0.4f + random.nextFloat() * 0.6f;
+            }
+        }
+        for (int k = 0; k < MASK_DIM; k++)
+            for (int i = 0; i < ANCHORS; i++)
+                output[(4 + CLASSES + k) * ANCHORS + i] = (float) random.nextGaussian();
+        return output;
+    }
+
+    /** NHWC prototypes with smooth blobs, so masks have real edges rather than noise. */
+    static float[] protos(long seed) {
+        Random random = new Random(seed);
+        float[] protos = new float[PROTO_SIZE * PROTO_SIZE * MASK_DIM];
+        for (int k = 0; k < MASK_DIM; k++) {
+            float fx = 0.02f + random.nextFloat() * 0.1f, fy = 0.02f + random.nextFloat() * 0.1f;
+            float phase = random.nextFloat() * 6.28f;
+            for (int y = 0; y < PROTO_SIZE; y++)
+                for (int x = 0; x < PROTO_SIZE; x++)
+                    protos[(y * PROTO_SIZE + x) * MASK_DIM + k] = (float) Math.sin(x * fx + y * fy + phase);
+        }
+        return protos;
+    }
+
+    /**
+     * The straightforward decode: a sigmoid mask over the whole prototype grid
+     * for each detection, then scaled to the frame and cut to the box there.
+     * Returns one frameWidth x frameHeight 0/1 mask per detection.
+     */
+    static byte[][] naiveMasks(float[] output, float[] protos, SegmentationDetections kept, int[] anchors,
+            int frameWidth, int frameHeight) {
+        byte[][] masks = new byte[kept.count][];
+        float[] full = new float[PROTO_SIZE * PROTO_SIZE];
+        for (int d = 0; d < kept.count; d++) {
+            int anchor = anchors[d];
+            for (int p = 0; p < PROTO_SIZE * PROTO_SIZE; p++) {
+                float sum = 0;
+                for (int k = 0; k < MASK_DIM; k++)
+                    sum += output[(4 + CLASSES + k) * ANCHORS + anchor] * protos[p * MASK_DIM + k];
+                full[p] = (float) (1 / (1 + Math.exp(-sum)));
+            }
+            byte[] mask = new byte[frameWidth * frameHeight];
+            float cx = kept.boxes[d * 4], cy = kept.boxes[d * 4 + 1];
+            float hw = kept.boxes[d * 4 + 2] / 2, hh = kept.boxes[d * 4 + 3] / 2;
+            for (int y = 0; y < frameHeight; y++) {
+                float py = Math.max(0, Math.min((y + 0.5f) * PROTO_SIZE / frameHeight - 0.5f, PROTO_SIZE - 1));
+                int y0 = (int) py, y1 = Math.min(y0 + 1, PROTO_SIZE - 1);
+                for (int x = 0; x < frameWidth; x++) {
+                    float px = Math.max(0, Math.min((x + 0.5f) * PROTO_SIZE / frameWidth - 0.5f, PROTO_SIZE - 1));
+                    int x0 = (int) px, x1 = Math.min(x0 + 1, PROTO_SIZE - 1);
+                    float top = full[y0 * PROTO_SIZE + x0] + (full[y0 * PROTO_SIZE + x1] - full[y0 * PROTO_SIZE + x0]) * (px - x0);
+                    float bottom = full[y1 * PROTO_SIZE + x0] + (full[y1 * PROTO_SIZE + x1] - full[y1 * PROTO_SIZE + x0]) * (px - x0);
+                    float value = top + (bottom - top) * (py - y0);
+                    float nx = (x + 0.5f) / frameWidth, ny = (y + 0.5f) / frameHeight;
+                    boolean inBox = nx >= cx - hw && nx <= cx + hw && ny >= cy - hh && ny <= cy + hh;
+                    mask[y * frameWidth + x] = inBox && value > 0.5f ? (byte) 1 : 0;
+                }
+            }
+            masks[d] = mask;
+        }
+        return masks;
+    }
+
+    /** The anchor each kept detection came from, found by its box. */
+    static int[] keptAnchors(float[] output, SegmentationDetections kept) {
+        int[] anchors = new int[kept.count];
+        for (int d = 0; d < kept.count; d++) {
+            for (int i = 0; i < ANCHORS; i++) {
+                if (output[i] == kept.boxes[d * 4] && output[ANCHORS + i] == kept.boxes[d * 4 + 1]
+                        && output[2 * ANCHORS + i] == kept.boxes[d * 4 + 2]) {
+                    anchors[d] = i;
+                    break;
+                }
+            }
+        }
+        return anchors;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.viperview.yolo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mask assembly time against the number of detections, for a 640x480
+ * display frame. naive builds a sigmoid mask over the whole prototype grid
+ * per detection and scales the whole mask to the frame; roi is the full
+ * SegmentationDecoder decode (boxes included) plus upsampling each box.
+ * Run from the IDE via main(); it is not part of the unit test run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentationDecoderBenchmark {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+
+    @Param({ "1", "5", "10", "20" })
+    public int objects;
+
+    private float[] output;
+    private float[] protos;
+    private int[] anchors;
+    private final SegmentationDecoder decoder = new SegmentationDecoder(SegOutputs.ANCHORS, SegOutputs.CHANNELS,
+            SegOutputs.PROTO_SIZE, SegOutputs.PROTO_SIZE, SegOutputs.MASK_DIM);
+    private final SegmentationDetections detections = new SegmentationDetections();
+    private final byte[] mask = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+    private final int[] rect = new int[4];
+
+    @Setup
+    public void setUp() {
+        output = SegOutputs.detections(objects, 20, 42);
+        protos = SegOutputs.protos(43);
+        decoder.decode(output, protos, detections);
+        anchors = SegOutputs.keptAnchors(output, detections);
+    }
+
+    @Benchmark
+    public byte[][] naive() {
+        return SegOutputs.naiveMasks(output, protos, detections, anchors, FRAME_WIDTH, FRAME_HEIGHT);
+    }
+
+    @Benchmark
+    public int roi() {
+        decoder.decode(output, protos, detections);
+        int set = 0;
+        for (int d = 0; d < detections.count; d++)
+            set += detections.upsampleMask(d, FRAME_WIDTH, FRAME_HEIGHT, mask, rect);
+        return set;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SegmentationDecoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.viperview.yolo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SegmentationDecoderTest {
+
+    private static SegmentationDecoder decoder() {
+        return new SegmentationDecoder(SegOutputs.ANCHORS, SegOutputs.CHANNELS, SegOutputs.PROTO_SIZE,
+                SegOutputs.PROTO_SIZE, SegOutputs.MASK_DIM);
+    }
+
+    @Test
+    public void keepsOneDetectionPerObject() {
+        float[] output = SegOutputs.detections(5, 20, 1);
+        SegmentationDetections out = new SegmentationDetections();
+        decoder().decode(output, SegOutputs.protos(2), out);
+
+        assertEquals(5, out.count);
+        boolean[] seen = new boolean[5];
+        for (int d = 0; d < out.count; d++) {
+            seen[out.classes[d]] = true;
+            assertTrue(out.scores[d] >= 0.4f);
+        }
+        for (boolean s : seen)
+            assertTrue(s);
+        for (int d = 1; d < out.count; d++)
+            assertTrue(out.scores[d] <= out.scores[d - 1]);
+    }
+
+    @Test
+    public void roiMaskMatchesFullProductInsideTheBox() {
+        float[] output = SegOutputs.detections(4, 10, 3);
+        float[] protos = SegOutputs.protos(4);
+        SegmentationDetections out = new SegmentationDetections();
+        decoder().decode(output, protos, out);
+        int[] anchors = SegOutputs.keptAnchors(output, out);
+
+        int compared = 0;
+        for (int d = 0; d < out.count; d++) {
+            int x0 = out.maskRects[d * 4], y0 = out.maskRects[d * 4 + 1];
+            int w = out.maskRects[d * 4 + 2], h = out.maskRects[d * 4 + 3];
+            assertTrue(w > 0 && h > 0);
+            for (int y = y0; y < y0 + h; y++) {
+                for (int x = x0; x < x0 + w; x++) {
+                    double sum = 0;
+                    for (int k = 0; k < SegOutputs.MASK_DIM; k++)
+                        sum += output[(4 + SegOutputs.CLASSES + k) * SegOutputs.ANCHORS + anchors[d]]
+                                * protos[(y * SegOutputs.PROTO_SIZE + x) * SegOutputs.MASK_DIM + k];
+                    double sigmoid = 1 / (1 + Math.exp(-sum));
+                    if (Math.abs(sum) > 1e-4)
+                        assertEquals(sigmoid > 0.5, out.contains(d, x, y));
+                    compared++;
+                }
+            }
+            assertTrue(!out.contains(d, x0 - 1, y0) && !out.contains(d, x0, y0 + h));
+        }
+        assertTrue(compared > 0);
+    }
+
+    @Test
+    public void maskWorkFollowsBoxArea() {
+        float[] output = SegOutputs.detections(6, 10, 5);
+        SegmentationDetections out = new SegmentationDetections();
+        decoder().decode(output, SegOutputs.protos(6), out);
+
+        int roiPixels = 0;
+        for (int d = 0; d < out.count; d++)
+            roiPixels += out.maskRects[d * 4 + 2] * out.maskRects[d * 4 + 3];
+        assertEquals(roiPixels, out.maskOffsets[out.count]);
+        // boxes are at most 30% x 45% of the frame
+        assertTrue(roiPixels < out.count * SegOutputs.PROTO_SIZE * SegOutputs.PROTO_SIZE / 5);
+    }
+
+    @Test
+    public void upsampledMaskMatchesNaiveFullFrameDecode() {
+        int frameWidth = 320, frameHeight = 240;
+        float[] output = SegOutputs.detections(3, 10, 7);
+        float[] protos = SegOutputs.protos(8);
+        SegmentationDetections out = new SegmentationDetections();
+        decoder().decode(output, protos, out);
+        byte[][] naive = SegOutputs.naiveMasks(output, protos, out, SegOutputs.keptAnchors(output, out),
+                frameWidth, frameHeight);
+
+        byte[] mask = new byte[frameWidth * frameHeight];
+        int[] rect = new int[4];
+        for (int d = 0; d < out.count; d++) {
+            int set = out.upsampleMask(d, frameWidth, frameHeight, mask, rect);
+            int naiveSet = 0, mismatches = 0, outside = 0;
+            for (int y = 0; y < frameHeight; y++) {
+                for (int x = 0; x < frameWidth; x++) {
+                    boolean expected = naive[d][y * frameWidth + x] != 0;
+                    if (expected)
+                        naiveSet++;
+                    boolean inRect = x >= rect[0] && x < rect[0] + rect[2] && y >= rect[1] && y < rect[1] + rect[3];
+                    if (!inRect) {
+                        if (expected)
+                            outside++;
+                        continue;
+                    }
+                    if (expected != (mask[(y - rect[1]) * rect[2] + x - rect[0]] != 0))
+                        mismatches++;
+                }
+            }
+            assertEquals(0, outside);
+            assertTrue(naiveSet > 0);
+            // only pixels right on the mask edge or the box border may differ
+            assertTrue("mismatches " + mismatches + " of " + naiveSet, mismatches < naiveSet / 20 + 20);
+            assertEquals(naiveSet, set, naiveSet / 20 + 20);
+        }
+    }
+
+    @Test
+    public void reusesItsBuffersFrameToFrame() {
+        SegmentationDecoder decoder = decoder();
+        float[] protos = SegOutputs.protos(10);
+        SegmentationDetections out = new SegmentationDetections();
+        decoder.decode(SegOutputs.detections(8, 10, 11), protos, out);
+        float[] logits = out.maskLogits;
+        decoder.decode(SegOutputs.detections(6, 10, 12), protos, out);
+        assertSame(logits, out.maskLogits);
+    }
+
+    @Test
+    public void copyKeepsMasks() {
+        float[] output = SegOutputs.detections(3, 10, 13);
+        SegmentationDetections out = new SegmentationDetections();
+        decoder().decode(output, SegOutputs.protos(14), out);
+        SegmentationDetections copy = new SegmentationDetections(1);
+        copy.copyFrom(out);
+
+        assertEquals(out.count, copy.count);
+        byte[] a = new byte[SegOutputs.PROTO_SIZE * SegOutputs.PROTO_SIZE];
+        byte[] b = new byte[a.length];
+        for (int d = 0; d < out.count; d++) {
+            assertEquals(out.binaryMask(d, a), copy.binaryMask(d, b));
+            assertArrayEquals(a, b);
+        }
+    }
+}
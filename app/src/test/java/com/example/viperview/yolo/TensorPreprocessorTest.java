@@ -0,0 +1,262 @@
+package com.example.viperview.yolo;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TensorPreprocessorTest {
+
+    private static final int SIZE = 224;
+
+    // The YUV path skips the 8-bit RGB image the Bitmap path rounds through and
+    // samples chroma per 2x2 block, so allow 3/255 per channel, ~1/255 on average.
+    private static final float MAX_ERROR = 3f / 255;
+    private static final float MEAN_ERROR = 1f / 255;
+
+    @Test
+    public void argbAtModelSizeMatchesLegacyLoop() {
+        int[] pixels = new int[SIZE * SIZE];
+        Random random = new Random(1);
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+
+        // what PoseDetector.run used to do after createScaledBitmap
+        FloatBuffer legacy = FloatBuffer.allocate(SIZE * SIZE * 3);
+        for (int p : pixels) {
+            legacy.put(((p >> 16) & 0xFF) / 255f);
+            legacy.put(((p >> 8) & 0xFF) / 255f);
+            legacy.put((p & 0xFF) / 255f);
+        }
+
+        FloatBuffer tensor = FloatBuffer.allocate(SIZE * SIZE * 3);
+        new TensorPreprocessor(SIZE, SIZE).fromArgb(pixels, SIZE, SIZE, SIZE, tensor);
+        assertEquals(0, tensor.position());
+        assertArrayEquals(legacy.array(), tensor.array(), 0f);
+    }
+
+    @Test
+    public void argbDownscaleAveragesNeighbours() {
+        // 2x2 checkerboard of black and white halves to mid grey at half size
+        int[] pixels = new int[4 * 4];
+        for (int y = 0; y < 4; y++)
+            for (int x = 0; x < 4; x++)
+                pixels[y * 4 + x] = ((x + y) & 1) == 0 ? 0xFFFFFFFF : 0xFF000000;
+
+        FloatBuffer tensor = FloatBuffer.allocate(2 * 2 * 3);
+        new TensorPreprocessor(2, 2).fromArgb(pixels, 4, 4, 4, tensor);
+        for (float value : tensor.array())
+            assertEquals(0.5f, value, 1e-6f);
+    }
+
+    @Test
+    public void paddedRgbaPlaneMatchesArgbPixels() {
+        int width = 37, height = 21, rowStride = 40 * 4;
+        int[] pixels = new int[width * height];
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+        Random random = new Random(3);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int p = 0xFF000000 | random.nextInt(0x1000000);
+                pixels[y * width + x] = p;
+                int at = y * rowStride + x * 4;
+                plane.put(at, (byte) (p >> 16));
+                plane.put(at + 1, (byte) (p >> 8));
+                plane.put(at + 2, (byte) p);
+                plane.put(at + 3, (byte) 0xFF);
+            }
+            for (int at = y * rowStride + width * 4; at < (y + 1) * rowStride; at++)
+                plane.put(at, (byte) 0x7F); // padding must never be sampled
+        }
+
+        FloatBuffer viaArgb = FloatBuffer.allocate(16 * 16 * 3);
+        new TensorPreprocessor(16, 16).fromArgb(pixels, width, height, width, viaArgb);
+        FloatBuffer direct = FloatBuffer.allocate(16 * 16 * 3);
+        new TensorPreprocessor(16, 16).fromRgba(plane, 0, rowStride, width, height, direct);
+        assertArrayEquals(viaArgb.array(), direct.array(), 1e-6f);
+        assertEquals(0, plane.position());
+
+        // a crop is just an offset into the plane
+        int cropX = 5, cropY = 3, cropW = 20, cropH = 12;
+        int[] cropped = new int[cropW * cropH];
+        for (int y = 0; y < cropH; y++)
+            System.arraycopy(pixels, (cropY + y) * width + cropX, cropped, y * cropW, cropW);
+        new TensorPreprocessor(16, 16).fromArgb(cropped, cropW, cropH, cropW, viaArgb);
+        new TensorPreprocessor(16, 16).fromRgba(plane, cropY * rowStride + cropX * 4, rowStride, cropW, cropH,
+                direct);
+        assertArrayEquals(viaArgb.array(), direct.array(), 1e-6f);
+    }
+
+    @Test
+    public void nv21PathMatchesBitmapPath() {
+        int width = 640, height = 480;
+        byte[] nv21 = syntheticNv21(width, height);
+
+        // Bitmap path: decode to 8-bit ARGB (what ImageProxy.toBitmap gives), then resize
+        FloatBuffer viaBitmap = FloatBuffer.allocate(SIZE * SIZE * 3);
+        new TensorPreprocessor(SIZE, SIZE).fromArgb(nv21ToArgb(nv21, width, height), width, height, width,
+                viaBitmap);
+
+        FloatBuffer direct = FloatBuffer.allocate(SIZE * SIZE * 3);
+        new TensorPreprocessor(SIZE, SIZE).fromNv21(nv21, width, height, direct);
+
+        float max = 0, sum = 0;
+        for (int i = 0; i < direct.capacity(); i++) {
+            float error = Math.abs(direct.get(i) - viaBitmap.get(i));
+            max = Math.max(max, error);
+            sum += error;
+        }
+        assertTrue("max error " + max * 255 + "/255", max <= MAX_ERROR);
+        assertTrue("mean error " + sum / direct.capacity() * 255 + "/255", sum / direct.capacity() <= MEAN_ERROR);
+    }
+
+    @Test
+    public void stridedPlanesMatchPackedNv21() {
+        int width = 320, height = 240, yStride = 384, uvStride = 192;
+        byte[] nv21 = syntheticNv21(width, height);
+
+        // same image as padded I420 planes (pixel stride 1)
+        ByteBuffer y = ByteBuffer.allocate(yStride * height);
+        ByteBuffer u = ByteBuffer.allocate(uvStride * height / 2);
+        ByteBuffer v = ByteBuffer.allocate(uvStride * height / 2);
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++)
+                y.put(row * yStride + col, nv21[row * width + col]);
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                int src = width * height + row * width + col * 2;
+                v.put(row * uvStride + col, nv21[src]);
+                u.put(row * uvStride + col, nv21[src + 1]);
+            }
+        }
+
+        TensorPreprocessor preprocessor = new TensorPreprocessor(SIZE, SIZE);
+        FloatBuffer packed = FloatBuffer.allocate(SIZE * SIZE * 3);
+        preprocessor.fromNv21(nv21, width, height, packed);
+        FloatBuffer planar = FloatBuffer.allocate(SIZE * SIZE * 3);
+        preprocessor.fromYuv(y, 0, yStride, u, 0, v, 0, uvStride, 1, width, height, planar);
+
+        assertArrayEquals(packed.array(), planar.array(), 0f);
+        assertEquals(0, y.position());
+    }
+
+    // Smooth colour gradients with a few soft blobs, kept away from clipping.
+    private static byte[] syntheticNv21(int width, int height) {
+        int[] rgb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double blob = Math.sin(x / 23.0) * Math.cos(y / 17.0);
+                int r = (int) (40 + 150.0 * x / width + 20 * blob);
+                int g = (int) (60 + 120.0 * y / height - 20 * blob);
+                int b = (int) (180 - 120.0 * (x + y) / (width + height) + 15 * blob);
+                rgb[y * width + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int i = 0; i < width * height; i++) {
+            int p = rgb[i];
+            nv21[i] = (byte) clamp(Math.round(0.299 * (p >> 16 & 0xFF) + 0.587 * (p >> 8 & 0xFF)
+                    + 0.114 * (p & 0xFF)));
+        }
+        for (int y = 0; y < height; y += 2) {
+            for (int x = 0; x < width; x += 2) {
+                // average the 2x2 block, as a camera's chroma subsampling would
+                double r = 0, g = 0, b = 0;
+                for (int k = 0; k < 4; k++) {
+                    int p = rgb[(y + k / 2) * width + x + k % 2];
+                    r += (p >> 16 & 0xFF) / 4.0;
+                    g += (p >> 8 & 0xFF) / 4.0;
+                    b += (p & 0xFF) / 4.0;
+                }
+                int uv = width * height + (y / 2) * width + x;
+                nv21[uv] = (byte) clamp(Math.round(128 + 0.5 * r - 0.418688 * g - 0.081312 * b));
+                nv21[uv + 1] = (byte) clamp(Math.round(128 - 0.168736 * r - 0.331264 * g + 0.5 * b));
+            }
+        }
+        return nv21;
+    }
+
+    private static int[] nv21ToArgb(byte[] nv21, int width, int height) {
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = nv21[y * width + x] & 0xFF;
+                int uv = width * height + (y / 2) * width + (x & ~1);
+                int v = (nv21[uv] & 0xFF) - 128;
+                int u = (nv21[uv + 1] & 0xFF) - 128;
+                int r = clamp(Math.round(luma + 1.402f * v));
+                int g = clamp(Math.round(luma - 0.344136f * u - 0.714136f * v));
+                int b = clamp(Math.round(luma + 1.772f * u));
+                argb[y * width + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return argb;
+    }
+
+    private static int clamp(long value) {
+        return (int) Math.max(0, Math.min(255, value));
+    }
+
+    @Test
+    public void quantizedInputStoresPixelValuesWithoutNormalizing() {
+        int[] pixels = new int[8 * 8];
+        Random random = new Random(5);
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+
+        // scale 1/255 and zero point 0 store the 8-bit value itself
+        ByteBuffer uint8 = ByteBuffer.allocate(8 * 8 * 3);
+        new TensorPreprocessor(8, 8, new Quantization(1 / 255f, 0, false)).fromArgb(pixels, 8, 8, 8, uint8);
+        assertEquals(0, uint8.position());
+        // int8 with zero point -128 is the same shifted by 128
+        ByteBuffer int8 = ByteBuffer.allocate(8 * 8 * 3);
+        new TensorPreprocessor(8, 8, new Quantization(1 / 255f, -128, true)).fromArgb(pixels, 8, 8, 8, int8);
+        for (int p = 0; p < pixels.length; p++) {
+            for (int channel = 0; channel < 3; channel++) {
+                int expected = (pixels[p] >> (16 - channel * 8)) & 0xFF;
+                assertEquals(expected, uint8.get(p * 3 + channel) & 0xFF);
+                assertEquals(expected - 128, int8.get(p * 3 + channel));
+            }
+        }
+    }
+
+    @Test
+    public void quantizedResizeStaysWithinAStepOfTheFloatPath() {
+        int width = 37, height = 21;
+        int[] pixels = new int[width * height];
+        Random random = new Random(6);
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+
+        FloatBuffer floats = FloatBuffer.allocate(16 * 16 * 3);
+        new TensorPreprocessor(16, 16).fromArgb(pixels, width, height, width, floats);
+        ByteBuffer bytes = ByteBuffer.allocate(16 * 16 * 3);
+        new TensorPreprocessor(16, 16, new Quantization(1 / 255f, 0, false))
+                .fromArgb(pixels, width, height, width, bytes);
+        for (int i = 0; i < floats.capacity(); i++)
+            assertEquals(floats.get(i) * 255, bytes.get(i) & 0xFF, 1f);
+    }
+
+    @Test
+    public void quantizedNv21StaysWithinAStepOfTheFloatPath() {
+        int width = 30, height = 18;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(7).nextBytes(nv21);
+
+        FloatBuffer floats = FloatBuffer.allocate(16 * 16 * 3);
+        new TensorPreprocessor(16, 16).fromNv21(nv21, width, height, floats);
+        ByteBuffer bytes = ByteBuffer.allocate(16 * 16 * 3);
+        new TensorPreprocessor(16, 16, new Quantization(1 / 255f, 0, false)).fromNv21(nv21, width, height, bytes);
+        for (int i = 0; i < floats.capacity(); i++)
+            assertEquals(floats.get(i) * 255, bytes.get(i) & 0xFF, 1f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void floatPreprocessorRejectsAByteTensor() {
+        new TensorPreprocessor(2, 2).fromArgb(new int[4], 2, 2, 2, ByteBuffer.allocate(12));
+    }
+}